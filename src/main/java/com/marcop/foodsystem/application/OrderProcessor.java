@@ -6,35 +6,72 @@ import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.TreeMultimap;
+import com.google.common.base.Splitter;
 import com.marcop.foodsystem.builders.KitchenBuilder;
 import com.marcop.foodsystem.charts.ChartUtils;
 import com.marcop.foodsystem.dto.KitchenMenuItemsDto;
 import com.marcop.foodsystem.dto.KitchenMenusDeserializer;
-import com.marcop.foodsystem.dto.OrderDeserializer;
+import com.marcop.foodsystem.flightrecorder.FlightEvents;
+import com.marcop.foodsystem.flightrecorder.ProcessorPhaseEvent;
 import com.marcop.foodsystem.indexing.KitchenMenuItemIndexes;
+import com.marcop.foodsystem.input.OrderPipeline;
+import com.marcop.foodsystem.input.OrderReader;
 import com.marcop.foodsystem.model.Kitchen;
 import com.marcop.foodsystem.model.Menu;
 import com.marcop.foodsystem.model.Order;
 import com.marcop.foodsystem.model.OrderItem;
 import com.marcop.foodsystem.model.OrderProcessingStrategy;
 import com.marcop.foodsystem.model.OrderState;
+import com.marcop.foodsystem.model.RejectionReason;
+import com.marcop.foodsystem.model.SheddingPolicy;
+import com.marcop.foodsystem.output.OutputSink;
+import com.marcop.foodsystem.output.OutputSinks;
+import com.marcop.foodsystem.replay.OrderEventReplayer;
+import com.marcop.foodsystem.server.StatsServer;
+import com.marcop.foodsystem.simulation.AdmissionControl;
+import com.marcop.foodsystem.simulation.CapacitySolver;
+import com.marcop.foodsystem.simulation.ItemLevelSimulator;
+import com.marcop.foodsystem.simulation.KitchenSimulator;
+import com.marcop.foodsystem.simulation.MonteCarloSimulator;
+import com.marcop.foodsystem.simulation.ParallelKitchenSimulator;
+import com.marcop.foodsystem.simulation.QueueingMetrics;
+import com.marcop.foodsystem.simulation.SchedulingStats;
+import com.marcop.foodsystem.simulation.SimulationCheckpointer;
+import com.marcop.foodsystem.simulation.SimulationOptions;
+import com.marcop.foodsystem.simulation.SimulationReport;
+import com.marcop.foodsystem.simulation.StationPools;
+import com.marcop.foodsystem.snapshot.StatsSnapshot;
+import com.marcop.foodsystem.store.CompletedOrderStore;
 import com.marcop.foodsystem.store.OrderInMemoryStore;
+import com.marcop.foodsystem.store.OrderIndex;
+import com.marcop.foodsystem.store.OrderOffHeapStore;
+import com.marcop.foodsystem.store.OrderPendingQueue;
+import com.marcop.foodsystem.store.OrderQueue;
+import com.marcop.foodsystem.store.OrderRejections;
+import com.marcop.foodsystem.store.OrderSpillingQueue;
 import com.marcop.foodsystem.store.OrderStore;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
-import org.apache.hadoop.fs.Path;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 import static com.marcop.foodsystem.charts.ChartUtils.STATS_PAGE_FILE_NAME;
@@ -52,9 +89,22 @@ import static com.marcop.foodsystem.charts.ChartUtils.STATS_PAGE_FILE_NAME;
  * 7. Simulates preparing all orders submitted to the application.
  * 8. Computes statistics.
  * 9. Creates a website to visualize the statistics.
+ * 10. Saves a snapshot of the statistics, to merge with other runs (see StatsSnapshotMerger).
  *
  * Usage: OrderProcessor -kn kitchen_name -kmc (optional) kitchen_max_concurrent_orders
- *                       -ip order_input_path (json) -op stats_output_path
+ *                       -ip order_input_path (json file, directory or glob) -op stats_output_path -p (optional) parallelism
+ *                       -cd (optional) checkpoint_dir -r (optional, resume from checkpoint_dir)
+ *                       --serve (optional) [port] -oh (optional) [off_heap_file]
+ *                       -rp (optional) replay_sink -rs (optional) replay_speedup
+ *                       -sc (optional) station_capacities (e.g. grill=4,fryer=2)
+ *                       -il (optional, item level scheduling)
+ *                       -sla (optional) sla_pending_minutes, to find the smallest capacity meeting it instead
+ *                       -mpo (optional) max_pending_orders -mpw (optional) max_pending_wait_minutes
+ *                       -shed (optional) shedding_policy (newest, oldest or largest)
+ *                       -mc (optional) monte_carlo_replicas, to estimate metrics over sampled cook times instead
+ *                       -mcs (optional) monte_carlo_seed
+ *                       -spill (optional) max_pending_orders_in_memory, spilling the rest to disk
+ *                       -jfr (optional, record Java Flight Recorder events, e.g. with -XX:StartFlightRecording)
  */
 public class OrderProcessor
 {
@@ -62,6 +112,25 @@ public class OrderProcessor
     private static final String OPTION_KITCHEN_MAX_CONCURRENT_ITEMS = "kitchen_max_concurrent_items";
     private static final String OPTION_ORDER_INPUT_PATH= "order_input_path";
     private static final String OPTION_OUTPUT_PATH = "output_path";
+    private static final String OPTION_PARALLELISM = "parallelism";
+    private static final String OPTION_CHECKPOINT_DIR = "checkpoint_dir";
+    private static final String OPTION_RESUME = "resume";
+    private static final String OPTION_SERVE = "serve";
+    private static final String OPTION_OFF_HEAP = "off_heap";
+    private static final String OPTION_REPLAY = "replay";
+    private static final String OPTION_REPLAY_SPEEDUP = "replay_speedup";
+    private static final String OPTION_STATION_CAPACITIES = "station_capacities";
+    private static final String OPTION_ITEM_LEVEL = "item_level";
+    private static final String OPTION_SLA_PENDING_MINUTES = "sla_pending_minutes";
+    private static final String OPTION_MAX_PENDING_ORDERS = "max_pending_orders";
+    private static final String OPTION_MAX_PENDING_WAIT_MINUTES = "max_pending_wait_minutes";
+    private static final String OPTION_SHEDDING_POLICY = "shedding_policy";
+    private static final String OPTION_MONTE_CARLO_REPLICAS = "monte_carlo_replicas";
+    private static final String OPTION_MONTE_CARLO_SEED = "monte_carlo_seed";
+    private static final String OPTION_MAX_PENDING_ORDERS_IN_MEMORY = "max_pending_orders_in_memory";
+    private static final String OPTION_FLIGHT_EVENTS = "flight_events";
+    private static final String CAPACITY_PROBES_FILE_NAME = "csv/capacity_probes.csv";
+    private static final String MONTE_CARLO_FILE_NAME = "csv/monte_carlo.csv";
     private static final OrderProcessingStrategy DEFAULT_STRATEGY = OrderProcessingStrategy.FIRST_COME_FIRST_SERVE;
     private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
     private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
@@ -72,80 +141,518 @@ public class OrderProcessor
             .addOption(
                     "kmc", OPTION_KITCHEN_MAX_CONCURRENT_ITEMS, true,
                     "Maximum number of items that the kitchen can process in parallel.")
-            .addOption("ip", OPTION_ORDER_INPUT_PATH, true, "Path to file containing orders to be processed.")
-            .addOption("op", OPTION_OUTPUT_PATH, true, "Path for new output directory containing all outputs.");
+            .addOption("ip", OPTION_ORDER_INPUT_PATH, true,
+                    "Path to file, directory or glob of files containing orders to be processed.")
+            .addOption("op", OPTION_OUTPUT_PATH, true, "Path for new output directory containing all outputs.")
+            .addOption("p", OPTION_PARALLELISM, true,
+                    "Number of threads to read input and simulate with. Input files are parsed in parallel, "
+                            + "and orders separated by idle kitchen periods are simulated in parallel.")
+            .addOption("cd", OPTION_CHECKPOINT_DIR, true,
+                    "Directory to periodically checkpoint the simulation to. Only supported with parallelism 1.")
+            .addOption("r", OPTION_RESUME, false, "Resume the simulation from the checkpoint in checkpoint_dir.")
+            .addOption(Option.builder("s").longOpt(OPTION_SERVE).hasArg().optionalArg(true).argName("port")
+                    .desc("Serve live stats as JSON on localhost (default port " + StatsServer.DEFAULT_PORT
+                            + "), until interrupted. Only supported with parallelism 1.").build())
+            .addOption(Option.builder("oh").longOpt(OPTION_OFF_HEAP).hasArg().optionalArg(true).argName("file")
+                    .desc("Keep completed orders off the Java heap, in direct memory, or memory-mapped to a file "
+                            + "if given. For very large runs.").build())
+            .addOption("rp", OPTION_REPLAY, true,
+                    "Replay order events of the simulation in wall clock time, as JSON lines, to a sink: "
+                            + "- for standard output, tcp:port for a local socket, or a file or named pipe path.")
+            .addOption("rs", OPTION_REPLAY_SPEEDUP, true,
+                    "Speedup factor of the replay over simulated time (default " + OrderEventReplayer.DEFAULT_SPEEDUP
+                            + ").")
+            .addOption("sc", OPTION_STATION_CAPACITIES, true,
+                    "Maximum concurrent items per station, e.g. grill=4,fryer=2. Overrides the kitchen configuration.")
+            .addOption("il", OPTION_ITEM_LEVEL, false,
+                    "Schedule each item as a slot frees up, rather than whole orders, so orders may have more items "
+                            + "than the kitchen's maximum. Compares against whole order admission.")
+            .addOption("sla", OPTION_SLA_PENDING_MINUTES, true,
+                    "Instead of simulating once, find the smallest kitchen_max_concurrent_items at which the 95th "
+                            + "percentile of pending time is under this many minutes.")
+            .addOption("mpo", OPTION_MAX_PENDING_ORDERS, true,
+                    "Maximum number of orders waiting in the pending queue. Orders over the limit are shed.")
+            .addOption("mpw", OPTION_MAX_PENDING_WAIT_MINUTES, true,
+                    "Maximum expected wait (minutes) of an arriving order, from the work ahead of it over the "
+                            + "kitchen's maximum. Orders over the limit are shed.")
+            .addOption("shed", OPTION_SHEDDING_POLICY, true,
+                    "Which order to shed when the pending queue is over a limit: newest (default), oldest or "
+                            + "largest. With a limit, the simulation runs on one thread.")
+            .addOption("mc", OPTION_MONTE_CARLO_REPLICAS, true,
+                    "Instead of simulating once, simulate this many replicas with cook times drawn from each menu "
+                            + "item's cook_time_distribution, and estimate metrics with 95% confidence intervals.")
+            .addOption("mcs", OPTION_MONTE_CARLO_SEED, true,
+                    "Seed for the Monte Carlo replicas (default " + MonteCarloSimulator.DEFAULT_SEED + ").")
+            .addOption("spill", OPTION_MAX_PENDING_ORDERS_IN_MEMORY, true,
+                    "Maximum pending orders held in memory. The rest are spilled to sorted runs in the temporary "
+                            + "directory, and the simulation runs on one thread. For inputs larger than the heap, "
+                            + "with -oh.")
+            .addOption("jfr", OPTION_FLIGHT_EVENTS, false,
+                    "Emit Java Flight Recorder events for submitted and completed orders, clearing finished orders "
+                            + "and each phase of the run. Recorded while a recording is running, e.g. with "
+                            + "-XX:StartFlightRecording.");
 
-    public static void main( String[] args ) throws ParseException, IOException
+    public static void main( String[] args ) throws ParseException, IOException, InterruptedException
     {
         CommandLine cmdLine = new GnuParser().parse(OPTIONS, args);
+        // Set before anything is simulated, so that simulator threads see it.
+        FlightEvents.setEnabled(cmdLine.hasOption(OPTION_FLIGHT_EVENTS));
         Preconditions.checkArgument(
                 cmdLine.hasOption(OPTION_KITCHEN_NAME) &&
                         cmdLine.hasOption(OPTION_ORDER_INPUT_PATH) &&
                         cmdLine.hasOption(OPTION_OUTPUT_PATH), "Missing required argument. See help.");
         String kitchenName = cmdLine.getOptionValue(OPTION_KITCHEN_NAME);
-        Path inputPath = new Path(cmdLine.getOptionValue(OPTION_ORDER_INPUT_PATH));
-        Path outputPath = new Path(cmdLine.getOptionValue(OPTION_OUTPUT_PATH));
+        String inputPath = cmdLine.getOptionValue(OPTION_ORDER_INPUT_PATH);
+        // Local outputs are written with the JDK alone, other URIs (e.g. hdfs://) through Hadoop.
+        OutputSink outputSink = OutputSinks.open(cmdLine.getOptionValue(OPTION_OUTPUT_PATH));
         int maxConcurrentItems = cmdLine.hasOption(OPTION_KITCHEN_MAX_CONCURRENT_ITEMS)
                 ? Integer.parseInt(cmdLine.getOptionValue(OPTION_KITCHEN_MAX_CONCURRENT_ITEMS)) : 0;
+        SimulationOptions simulationOptions = new SimulationOptions();
+        if (cmdLine.hasOption(OPTION_PARALLELISM)) {
+            simulationOptions.setParallelism(Integer.parseInt(cmdLine.getOptionValue(OPTION_PARALLELISM)));
+        }
+        simulationOptions.setCheckpointDir(cmdLine.getOptionValue(OPTION_CHECKPOINT_DIR));
+        simulationOptions.setResume(cmdLine.hasOption(OPTION_RESUME));
+        Preconditions.checkArgument(!simulationOptions.isResume() || simulationOptions.getCheckpointDir() != null,
+                "Resuming requires a checkpoint directory.");
+        // Parallel segments only complete their orders when merged at the end, so there would be nothing live to serve.
+        Preconditions.checkArgument(!cmdLine.hasOption(OPTION_SERVE) || simulationOptions.getParallelism() == 1,
+                "Serving live stats is only supported with parallelism 1.");
+        if (cmdLine.hasOption(OPTION_STATION_CAPACITIES)) {
+            Map<String, Integer> stationCapacities = new HashMap<>();
+            for (Map.Entry<String, String> entry : Splitter.on(',').trimResults().withKeyValueSeparator('=')
+                    .split(cmdLine.getOptionValue(OPTION_STATION_CAPACITIES)).entrySet()) {
+                stationCapacities.put(entry.getKey(), Integer.parseInt(entry.getValue()));
+            }
+            simulationOptions.setStationCapacities(stationCapacities);
+        }
+        simulationOptions.setItemLevel(cmdLine.hasOption(OPTION_ITEM_LEVEL));
+        if (cmdLine.hasOption(OPTION_MAX_PENDING_ORDERS)) {
+            simulationOptions.setMaxPendingOrders(Integer.parseInt(cmdLine.getOptionValue(OPTION_MAX_PENDING_ORDERS)));
+        }
+        if (cmdLine.hasOption(OPTION_MAX_PENDING_WAIT_MINUTES)) {
+            simulationOptions.setMaxExpectedWaitMinutes(
+                    Integer.parseInt(cmdLine.getOptionValue(OPTION_MAX_PENDING_WAIT_MINUTES)));
+        }
+        if (cmdLine.hasOption(OPTION_SHEDDING_POLICY)) {
+            simulationOptions.setSheddingPolicy(SheddingPolicy.valueOf(
+                    "REJECT_" + cmdLine.getOptionValue(OPTION_SHEDDING_POLICY).toUpperCase()));
+        }
+        if (cmdLine.hasOption(OPTION_MAX_PENDING_ORDERS_IN_MEMORY)) {
+            simulationOptions.setMaxPendingOrdersInMemory(
+                    Integer.parseInt(cmdLine.getOptionValue(OPTION_MAX_PENDING_ORDERS_IN_MEMORY)));
+        }
 
-        // Extract orders from JSON
-        SimpleModule module =
-                new SimpleModule("OrderDeserializer", new Version(1, 0, 0, null, null, null));
-        module.addDeserializer(Order.class, new OrderDeserializer());
-        OBJECT_MAPPER.registerModule(module);
-        byte[] jsonOrderData = Files.readAllBytes(Paths.get(inputPath.toString()));
-        List<Order> orders = OBJECT_MAPPER.readValue(
-                jsonOrderData,
-                OBJECT_MAPPER.getTypeFactory().constructCollectionType(List.class, Order.class)
-        );
+        // Extract orders from JSON. The input can be a single file, or a directory or glob of shard files.
+        // When pending orders spill to disk, the simulation streams the input instead, parsing orders as it queues
+        // them, so the input is never held on the heap. Capacity and Monte Carlo runs simulate the orders many
+        // times, so always read them.
+        boolean streaming = simulationOptions.getMaxPendingOrdersInMemory() > 0
+                && !cmdLine.hasOption(OPTION_SLA_PENDING_MINUTES) && !cmdLine.hasOption(OPTION_MONTE_CARLO_REPLICAS);
+        OrderReader orderReader = new OrderReader(simulationOptions.getParallelism());
+        List<Order> orders = null;
+        if (!streaming) {
+            ProcessorPhaseEvent readPhase = FlightEvents.beginPhase("read orders", kitchenName);
+            orders = orderReader.read(inputPath);
+            FlightEvents.endPhase(readPhase);
+        }
+        if (cmdLine.hasOption(OPTION_SLA_PENDING_MINUTES)) {
+            int slaPendingMinutes = Integer.parseInt(cmdLine.getOptionValue(OPTION_SLA_PENDING_MINUTES));
+            CapacitySolver.Result result = solveCapacity(kitchenName, orders, slaPendingMinutes,
+                    simulationOptions.getParallelism(), new OrderRejections());
+            writeCapacityProbes(result, outputSink);
+            LOGGER.info(String.format("Smallest kitchen_max_concurrent_items with 95th percentile pending time "
+                    + "under %s minutes: %s. Probes: %s.", slaPendingMinutes, result.getCapacity(),
+                    outputSink.describe(CAPACITY_PROBES_FILE_NAME)));
+            return;
+        }
+        if (cmdLine.hasOption(OPTION_MONTE_CARLO_REPLICAS)) {
+            int replicas = Integer.parseInt(cmdLine.getOptionValue(OPTION_MONTE_CARLO_REPLICAS));
+            long seed = cmdLine.hasOption(OPTION_MONTE_CARLO_SEED)
+                    ? Long.parseLong(cmdLine.getOptionValue(OPTION_MONTE_CARLO_SEED))
+                    : MonteCarloSimulator.DEFAULT_SEED;
+            MonteCarloSimulator.Result result = runMonteCarlo(kitchenName, maxConcurrentItems, orders, replicas, seed,
+                    simulationOptions.getParallelism(), new OrderRejections());
+            writeMonteCarloReplicas(result, outputSink);
+            LOGGER.info(String.format("Monte Carlo estimates over %s replicas, with 95%% confidence intervals: "
+                            + "mean pending %s minutes, mean completion %s minutes, throughput %s orders per hour. "
+                            + "Replicas: %s.", replicas, describe(result.getPendingEstimate(), 60000),
+                    describe(result.getCompletionEstimate(), 60000), describe(result.getThroughputEstimate(), 1),
+                    outputSink.describe(MONTE_CARLO_FILE_NAME)));
+            return;
+        }
 
-        OrderInMemoryStore completedOrders = new OrderInMemoryStore();
-        OrderInMemoryStore rejectedOrders = new OrderInMemoryStore();
-        runProcessing(kitchenName, maxConcurrentItems, orders, DEFAULT_STRATEGY, completedOrders, rejectedOrders);
+        // Completed orders are queried by service, item and price, so declare all secondary indexes.
+        // Very large runs can keep completed orders off heap instead, which are only added to and queried.
+        CompletedOrderStore completedOrders;
+        if (!cmdLine.hasOption(OPTION_OFF_HEAP)) {
+            completedOrders = new OrderInMemoryStore(EnumSet.allOf(OrderIndex.class));
+        } else if (cmdLine.getOptionValue(OPTION_OFF_HEAP) == null) {
+            completedOrders = new OrderOffHeapStore();
+        } else {
+            completedOrders = new OrderOffHeapStore(Paths.get(cmdLine.getOptionValue(OPTION_OFF_HEAP)));
+        }
+        // Rejected orders are only counted, by reason, so a dirty input does not fill the heap.
+        OrderRejections rejections = new OrderRejections();
+        StatsServer statsServer = null;
+        if (cmdLine.hasOption(OPTION_SERVE)) {
+            int port = cmdLine.getOptionValue(OPTION_SERVE) != null
+                    ? Integer.parseInt(cmdLine.getOptionValue(OPTION_SERVE)) : StatsServer.DEFAULT_PORT;
+            statsServer = new StatsServer(port, completedOrders, rejections);
+            statsServer.start();
+            simulationOptions.setProgressListener(statsServer::refresh);
+            simulationOptions.setCompletionListener(statsServer::recordCompleted);
+            LOGGER.info(String.format("Serving live stats at http://localhost:%s/stats.", statsServer.getPort()));
+        }
+        SimulationReport simulationReport;
+        if (streaming) {
+            try (OrderReader.OrderStream orderStream = orderReader.stream(inputPath)) {
+                simulationReport = runProcessing(kitchenName, maxConcurrentItems, orderStream, DEFAULT_STRATEGY,
+                        simulationOptions, completedOrders, rejections);
+            }
+        } else {
+            simulationReport = runProcessing(kitchenName, maxConcurrentItems, orders, DEFAULT_STRATEGY,
+                    simulationOptions, completedOrders, rejections);
+        }
+        if (statsServer != null) {
+            statsServer.publish();
+        }
 
         // Compute stats from completed orders.
-        // Get sorted Order price (cents) table
-        TreeMultimap<Integer, Order> ordersByPrice = completedOrders.getOrdersByPrice();
+        ProcessorPhaseEvent statsPhase = FlightEvents.beginPhase("create stats page", kitchenName);
+        // Get number of orders by price (cents)
+        SortedMap<Integer, Integer> priceDistribution = completedOrders.getPriceDistribution();
 
-        // Get sorted Order pending time table
-        TreeMultimap<Integer, Order> ordersByPendingTime = completedOrders.getOrdersByPendingDuration();
+        // Get number of orders by pending time
+        SortedMap<Integer, Integer> pendingTimeDistribution = completedOrders.getPendingDurationDistribution();
 
         // Get sorted order state counts by time
         Map<Timestamp, Map<OrderState, Integer>> orderStateCountsByTime = completedOrders.getOrderStateCountsByTime();
 
         // Get revenue (cents) by item table
-        Map<String, Integer> revenueByItem = completedOrders.getRevenueByItem();
+        Map<String, Long> revenueByItem = completedOrders.getRevenueByItem();
 
         // Get revenue (cents) by service table
-        Map<String, Integer> revenueByService = completedOrders.getRevenueByService();
+        Map<String, Long> revenueByService = completedOrders.getRevenueByService();
 
         // Get total revenue (cents).
-        int totalRevenue = completedOrders.getTotalRevenue();
-
-        // Get rejected order count
-        int rejectedOrderCount = rejectedOrders.getCurrentNumOrders();
+        long totalRevenue = completedOrders.getTotalRevenue();
 
         // Create Stats Page
         LOGGER.info("Creating Stats Page.");
         ChartUtils.createStatsPage(
                 kitchenName,
                 maxConcurrentItems,
-                ordersByPrice,
-                ordersByPendingTime,
+                priceDistribution,
+                pendingTimeDistribution,
                 orderStateCountsByTime,
                 revenueByItem,
                 revenueByService,
                 totalRevenue,
-                rejectedOrderCount,
-                outputPath);
-        LOGGER.info(String.format("Stats page location: %s.", new Path(outputPath, STATS_PAGE_FILE_NAME).toString()));
+                rejections,
+                simulationReport,
+                outputSink);
+        FlightEvents.endPhase(statsPhase);
+        LOGGER.info(String.format("Stats page location: %s.", outputSink.describe(STATS_PAGE_FILE_NAME)));
+        // Save the stats, so that runs can be merged into reports over longer periods by StatsSnapshotMerger.
+        ProcessorPhaseEvent snapshotPhase = FlightEvents.beginPhase("save stats snapshot", kitchenName);
+        try (OutputStream out = outputSink.create(StatsSnapshot.FILE_NAME)) {
+            StatsSnapshot.of(kitchenName, maxConcurrentItems, completedOrders, rejections,
+                    simulationReport.getQueueingMetrics()).writeTo(out);
+        }
+        FlightEvents.endPhase(snapshotPhase);
+        LOGGER.info(String.format("Stats snapshot location: %s.", outputSink.describe(StatsSnapshot.FILE_NAME)));
+        if (cmdLine.hasOption(OPTION_REPLAY)) {
+            double speedup = cmdLine.hasOption(OPTION_REPLAY_SPEEDUP)
+                    ? Double.parseDouble(cmdLine.getOptionValue(OPTION_REPLAY_SPEEDUP))
+                    : OrderEventReplayer.DEFAULT_SPEEDUP;
+            ProcessorPhaseEvent replayPhase = FlightEvents.beginPhase("replay order events", kitchenName);
+            replayOrderEvents(completedOrders, cmdLine.getOptionValue(OPTION_REPLAY), speedup);
+            FlightEvents.endPhase(replayPhase);
+        }
+        if (completedOrders instanceof Closeable) {
+            // Release off heap memory now. The stats server only serves its last published stats.
+            ((Closeable) completedOrders).close();
+        }
         LOGGER.info("Application is complete.");
+        if (statsServer != null) {
+            LOGGER.info("Still serving stats. Interrupt to stop.");
+            statsServer.join();
+        }
+    }
+
+    /** Replay the order events of completed orders to a sink, as a load generator. */
+    private static void replayOrderEvents(CompletedOrderStore completedOrders, String sink, double speedup)
+            throws IOException {
+        LOGGER.info(String.format("Replaying order events to %s at %sx speed.", sink, speedup));
+        OrderEventReplayer replayer = new OrderEventReplayer(speedup);
+        try (OutputStream out = OrderEventReplayer.openSink(sink)) {
+            replayer.replay(completedOrders, out);
+        }
+        LOGGER.info(String.format("Replayed %s order events. Lateness: mean %s us, max %s us.",
+                replayer.getEventCount(), replayer.getMeanLatenessNanos() / 1000,
+                replayer.getMaxLatenessNanos() / 1000));
+    }
+
+    @VisibleForTesting
+    public static SimulationReport runProcessing(String kitchenName, int maxConcurrentItems,
+                                                 List<Order> orders, OrderProcessingStrategy strategy,
+                                                 CompletedOrderStore completedOrders, OrderRejections rejections)
+            throws IOException {
+        return runProcessing(kitchenName, maxConcurrentItems, orders, strategy, new SimulationOptions(),
+                completedOrders, rejections);
     }
 
     @VisibleForTesting
-    public static void runProcessing(String kitchenName, int maxConcurrentItems,
+    public static SimulationReport runProcessing(String kitchenName, final int maxConcurrentItems,
                                      List<Order> orders, OrderProcessingStrategy strategy,
-                                     OrderStore completedOrders, OrderStore rejectedOrders) throws IOException {
+                                     SimulationOptions simulationOptions,
+                                     CompletedOrderStore completedOrders, OrderRejections rejections)
+            throws IOException {
+        return runProcessing(kitchenName, maxConcurrentItems, orders.iterator(), strategy, simulationOptions,
+                completedOrders, rejections);
+    }
+
+    /**
+     * Simulate processing orders, queued as they are iterated. When pending orders are spilled to disk, pass an
+     * OrderReader.OrderStream, so that orders are parsed as they are queued, rather than all held on the heap.
+     */
+    public static SimulationReport runProcessing(String kitchenName, final int maxConcurrentItems,
+                                     Iterator<Order> orders, OrderProcessingStrategy strategy,
+                                     SimulationOptions simulationOptions,
+                                     CompletedOrderStore completedOrders, OrderRejections rejections)
+            throws IOException {
+        ProcessorPhaseEvent configurePhase = FlightEvents.beginPhase("configure kitchen", kitchenName);
+        Kitchen kitchen = configureKitchen(kitchenName, maxConcurrentItems, simulationOptions);
+        // Station capacities are only simulated if any are configured, since they cost time per order.
+        SimulationReport simulationReport = new SimulationReport();
+        QueueingMetrics queueingMetrics = new QueueingMetrics(maxConcurrentItems);
+        simulationReport.setQueueingMetrics(queueingMetrics);
+        StationPools stationPools = null;
+        if (!kitchen.getStationCapacities().isEmpty()) {
+            LOGGER.info(String.format("Station capacities: %s.", kitchen.getStationCapacities()));
+            stationPools = new StationPools(maxConcurrentItems, kitchen.getStationCapacities());
+            simulationReport.setStationPools(stationPools);
+        }
+        final StationPools validationStationPools = stationPools;
+        // Item level scheduling can make orders with more items than the kitchen's maximum, a few at a time.
+        final int validationMaxConcurrentItems = simulationOptions.isItemLevel() ? 0 : maxConcurrentItems;
+        boolean spilling = simulationOptions.getMaxPendingOrdersInMemory() > 0;
+        if (simulationOptions.isItemLevel()) {
+            Preconditions.checkArgument(maxConcurrentItems > 0, "Item level scheduling needs a maximum item count.");
+            Preconditions.checkArgument(!spilling, "Item level scheduling does not support spilling pending orders.");
+            Preconditions.checkArgument(stationPools == null && simulationOptions.getCheckpointDir() == null,
+                    "Item level scheduling does not support station capacities or checkpointing.");
+        }
+        AdmissionControl admissionControl = null;
+        if (simulationOptions.isAdmissionControlled()) {
+            Preconditions.checkArgument(
+                    !simulationOptions.isItemLevel() && simulationOptions.getCheckpointDir() == null,
+                    "Admission control does not support item level scheduling or checkpointing.");
+            admissionControl = new AdmissionControl(simulationOptions.getMaxPendingOrders(),
+                    simulationOptions.getMaxExpectedWaitMinutes() * 60 * 1000L, simulationOptions.getSheddingPolicy(),
+                    rejections);
+            simulationReport.setAdmissionControl(admissionControl);
+        }
+        LOGGER.info("Building Kitchen Indexes.");
+        // Build index to lookup cook times.
+        KitchenMenuItemIndexes menuItemIndexes = new KitchenMenuItemIndexes(kitchen);
+        LOGGER.info("Setting up order stores.");
+        // Input is almost always sorted by orderedAt, so the pending queue appends and dequeues in O(1).
+        // Very large inputs can spill pending orders to disk instead, and merge them back as they are dequeued.
+        OrderQueue pendingOrders = spilling
+                ? new OrderSpillingQueue(simulationOptions.getMaxPendingOrdersInMemory())
+                : new OrderPendingQueue();
+        // Orders for the whole order admission comparison, with item level scheduling.
+        List<Order> acceptedOrders = new ArrayList<>();
+        Supplier<OrderStore> processingStoreFactory = () -> maxConcurrentItems > 0
+                ? new OrderInMemoryStore(maxConcurrentItems)
+                : new OrderInMemoryStore();
+
+        FlightEvents.endPhase(configurePhase);
+
+        LOGGER.info("Adding new orders to pending queue");
+        ProcessorPhaseEvent queuePhase = FlightEvents.beginPhase("queue orders", kitchenName);
+        // Orders are validated and enriched in parallel, then added to the pending queue in their original order.
+        new OrderPipeline(simulationOptions.getParallelism(), OrderPipeline.DEFAULT_BATCH_SIZE).run(
+                orders,
+                order -> validateAndEnrichOrder(
+                        order, menuItemIndexes, validationMaxConcurrentItems, validationStationPools, rejections),
+                order -> {
+                    if (order.getState() == OrderState.REJECTED) {
+                        return;
+                    }
+                    boolean orderAdded = pendingOrders.addOrder(order);
+                    if (!orderAdded) {
+                        // This should not happen.
+                        throw new RuntimeException("Order could not be added to the pending queue.");
+                    }
+                    if (simulationOptions.isItemLevel()) {
+                        acceptedOrders.add(order);
+                    }
+                });
+        if (rejections.getTotal() > 0) {
+            rejections.logSummary();
+        }
+        if (pendingOrders instanceof OrderSpillingQueue) {
+            LOGGER.info(String.format("Spilled %s pending orders to %s sorted runs.",
+                    ((OrderSpillingQueue) pendingOrders).getSpilledOrderCount(),
+                    ((OrderSpillingQueue) pendingOrders).getRunCount()));
+        } else if (((OrderPendingQueue) pendingOrders).getFallbackCount() > 0) {
+            LOGGER.info(String.format("%s orders were out of orderedAt order, and queued in a tree.",
+                    ((OrderPendingQueue) pendingOrders).getFallbackCount()));
+        }
+        FlightEvents.endPhase(queuePhase);
+        LOGGER.info("Processing orders...");
+        ProcessorPhaseEvent simulatePhase = FlightEvents.beginPhase("simulate", kitchenName);
+        if (simulationOptions.isItemLevel()) {
+            runItemLevel(maxConcurrentItems, acceptedOrders, pendingOrders, strategy, simulationOptions,
+                    completedOrders, simulationReport);
+        } else if (simulationOptions.getParallelism() > 1 && admissionControl == null && !spilling) {
+            Preconditions.checkArgument(simulationOptions.getCheckpointDir() == null,
+                    "Checkpointing is only supported with parallelism 1.");
+            ParallelKitchenSimulator simulator = new ParallelKitchenSimulator(simulationOptions.getParallelism(),
+                    simulationOptions.getIdleGapMinutes(), strategy, processingStoreFactory);
+            simulator.setStationPools(stationPools);
+            simulator.setQueueingMetrics(queueingMetrics);
+            simulator.setCompletionListener(simulationOptions.getCompletionListener());
+            simulator.run(pendingOrders, completedOrders);
+        } else {
+            KitchenSimulator simulator =
+                    new KitchenSimulator(pendingOrders, processingStoreFactory.get(), completedOrders, strategy);
+            if (stationPools != null) {
+                simulator.setStationPools(stationPools);
+            }
+            simulator.setQueueingMetrics(queueingMetrics);
+            // Set before resuming, so that the listener also sees orders completed before the checkpoint.
+            simulator.setCompletionListener(simulationOptions.getCompletionListener());
+            if (admissionControl != null) {
+                // Shedding depends on the pending queue over the whole run, so is not split into segments.
+                simulator.setAdmissionControl(admissionControl);
+            }
+            if (simulationOptions.getCheckpointDir() != null) {
+                simulator.setCheckpointer(new SimulationCheckpointer(
+                        Paths.get(simulationOptions.getCheckpointDir()),
+                        simulationOptions.getCheckpointIntervalSeconds() * 1000L));
+                if (simulationOptions.isResume()) {
+                    LOGGER.info(simulator.resume()
+                            ? "Resumed simulation from checkpoint."
+                            : "No checkpoint found, starting simulation from the beginning.");
+                }
+            }
+            simulator.setProgressListener(simulationOptions.getProgressListener());
+            simulator.run();
+        }
+        if (pendingOrders instanceof OrderSpillingQueue) {
+            ((OrderSpillingQueue) pendingOrders).close();
+        }
+        FlightEvents.endPhase(simulatePhase);
+        LOGGER.info("All order processing complete.");
+        if (admissionControl != null) {
+            LOGGER.info(String.format("Admission control (%s) shed %s of %s orders. Completed %.1f orders per hour, "
+                            + "mean pending %.1f minutes.", admissionControl.getPolicy(),
+                    admissionControl.getShedCount(), admissionControl.getArrivedCount(),
+                    queueingMetrics.getCompletionsPerHour(), queueingMetrics.getMeanPendingMillis() / 60000));
+        }
+        LOGGER.info(String.format("Mean utilization %.1f%%, mean pending depth %.2f orders (Little's law %.2f).",
+                queueingMetrics.getMeanUtilization() * 100, queueingMetrics.getMeanPendingDepth(),
+                queueingMetrics.getLittlesLawPendingDepth()));
+        return simulationReport;
+    }
+
+    /**
+     * Find the smallest kitchen capacity at which the 95th percentile of pending time is under a limit, simulating
+     * the same validated orders at each capacity probed. Orders are validated once, without a capacity, and the
+     * search starts from the largest order.
+     */
+    @VisibleForTesting
+    public static CapacitySolver.Result solveCapacity(String kitchenName, List<Order> orders, int slaPendingMinutes,
+                                                      int parallelism, OrderRejections rejections)
+            throws IOException {
+        KitchenMenuItemIndexes menuItemIndexes =
+                new KitchenMenuItemIndexes(configureKitchen(kitchenName, 0, new SimulationOptions()));
+        List<Order> validOrders = validateOrders(orders, menuItemIndexes, 0, parallelism, rejections);
+        LOGGER.info(String.format("Solving capacity for %s orders, on %s threads.", validOrders.size(), parallelism));
+        ProcessorPhaseEvent solvePhase = FlightEvents.beginPhase("solve capacity", kitchenName);
+        CapacitySolver.Result result =
+                new CapacitySolver(validOrders, parallelism, DEFAULT_STRATEGY).solve(slaPendingMinutes * 60 * 1000L);
+        FlightEvents.endPhase(solvePhase);
+        return result;
+    }
+
+    /**
+     * Simulate replicas of the validated orders at a capacity, with cook times drawn from each menu item's
+     * distribution, in parallel. Orders are validated once and shared by every replica.
+     */
+    @VisibleForTesting
+    public static MonteCarloSimulator.Result runMonteCarlo(String kitchenName, int maxConcurrentItems,
+                                                           List<Order> orders, int replicas, long seed,
+                                                           int parallelism, OrderRejections rejections)
+            throws IOException {
+        KitchenMenuItemIndexes menuItemIndexes = new KitchenMenuItemIndexes(
+                configureKitchen(kitchenName, maxConcurrentItems, new SimulationOptions()));
+        List<Order> validOrders = validateOrders(orders, menuItemIndexes, maxConcurrentItems, parallelism, rejections);
+        LOGGER.info(String.format("Running %s Monte Carlo replicas of %s orders, on %s threads.", replicas,
+                validOrders.size(), parallelism));
+        ProcessorPhaseEvent monteCarloPhase = FlightEvents.beginPhase("monte carlo", kitchenName);
+        MonteCarloSimulator.Result result =
+                new MonteCarloSimulator(validOrders, menuItemIndexes, maxConcurrentItems, parallelism)
+                        .run(replicas, seed);
+        FlightEvents.endPhase(monteCarloPhase);
+        return result;
+    }
+
+    /** Validate and enrich orders in parallel, and get those which are not rejected, in their original order. */
+    private static List<Order> validateOrders(List<Order> orders, KitchenMenuItemIndexes menuItemIndexes,
+                                              int maxConcurrentItems, int parallelism, OrderRejections rejections) {
+        List<Order> validOrders = new ArrayList<>();
+        new OrderPipeline(parallelism, OrderPipeline.DEFAULT_BATCH_SIZE).run(
+                orders.iterator(),
+                order -> validateAndEnrichOrder(order, menuItemIndexes, maxConcurrentItems, null, rejections),
+                order -> {
+                    if (order.getState() != OrderState.REJECTED) {
+                        validOrders.add(order);
+                    }
+                });
+        if (rejections.getTotal() > 0) {
+            rejections.logSummary();
+        }
+        return validOrders;
+    }
+
+    /** Write each Monte Carlo replica's mean pending and completion minutes, and orders per hour, as CSV. */
+    private static void writeMonteCarloReplicas(MonteCarloSimulator.Result result, OutputSink outputSink)
+            throws IOException {
+        try (OutputStream out = outputSink.create(MONTE_CARLO_FILE_NAME)) {
+            StringBuilder csv = new StringBuilder();
+            for (int i = 0; i < result.getReplicas(); i++) {
+                csv.append(Joiner.on(',').join(i, result.getMeanPendingMillis()[i] / 60000,
+                        result.getMeanCompletionMillis()[i] / 60000, result.getCompletionsPerHour()[i])).append('\n');
+            }
+            out.write(csv.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String describe(MonteCarloSimulator.Estimate estimate, double unit) {
+        return String.format("%.2f [%.2f, %.2f]", estimate.getMean() / unit, estimate.getLow() / unit,
+                estimate.getHigh() / unit);
+    }
+
+    /** Write each capacity probed, whether it met the limit, and its 95th percentile pending minutes, as CSV. */
+    private static void writeCapacityProbes(CapacitySolver.Result result, OutputSink outputSink) throws IOException {
+        try (OutputStream out = outputSink.create(CAPACITY_PROBES_FILE_NAME)) {
+            StringBuilder csv = new StringBuilder();
+            for (CapacitySolver.Probe probe : result.getProbes()) {
+                csv.append(Joiner.on(',').join(probe.getCapacity(), probe.isMet(), probe.isStoppedEarly()
+                        ? "" : probe.getPercentilePendingMillis() / 60000.0)).append('\n');
+            }
+            out.write(csv.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /** Build a kitchen from its configuration in resources/kitchens.json, with station capacities overridden. */
+    private static Kitchen configureKitchen(String kitchenName, int maxConcurrentItems,
+                                            SimulationOptions simulationOptions) throws IOException {
         LOGGER.info(String.format("Configuring Kitchen %s.", kitchenName));
 
         // Get kitchen's menus from JSON resources
@@ -167,6 +674,12 @@ public class OrderProcessor
         KitchenBuilder kitchenBuilder = new KitchenBuilder();
         kitchenBuilder.setName(kitchenName);
         kitchenBuilder.setMaxConcurrentItems(maxConcurrentItems);
+        Map<String, Map<String, Integer>> stationCapacitiesByKitchenName =
+                kitchenMenuItemsDto.getStationCapacitiesByKitchenName();
+        if (stationCapacitiesByKitchenName != null && stationCapacitiesByKitchenName.containsKey(kitchenName)) {
+            kitchenBuilder.setStationCapacities(stationCapacitiesByKitchenName.get(kitchenName));
+        }
+        kitchenBuilder.setStationCapacities(simulationOptions.getStationCapacities());
         // Get kitchen's menus from resources
         List<String> menuNames = new ArrayList<>();
         for (Menu menu : menus) {
@@ -180,44 +693,94 @@ public class OrderProcessor
                         kitchenName, Joiner.on(',').join(menuNames),
                         maxConcurrentItems == 0 ? "INF" : maxConcurrentItems)
         );
-        LOGGER.info("Building Kitchen Indexes.");
-        // Build index to lookup cook times.
-        KitchenMenuItemIndexes menuItemIndexes = new KitchenMenuItemIndexes(kitchen);
-        LOGGER.info("Setting up order stores.");
-        OrderInMemoryStore pendingOrders = new OrderInMemoryStore();
-        OrderInMemoryStore processingOrders = maxConcurrentItems > 0
-                ? new OrderInMemoryStore(maxConcurrentItems)
-                : new OrderInMemoryStore();
+        return kitchen;
+    }
 
-        LOGGER.info("Adding new orders to pending queue");
+    /**
+     * Simulate orders with item level scheduling, after simulating those which fit in the kitchen with whole order
+     * admission, so the two can be compared on the same orders. Both run in the ItemLevelSimulator's continuous
+     * time, so the comparison is not skewed by KitchenSimulator's minute steps.
+     */
+    private static void runItemLevel(int maxConcurrentItems, List<Order> orders, OrderQueue pendingOrders,
+                                     OrderProcessingStrategy strategy, SimulationOptions simulationOptions,
+                                     CompletedOrderStore completedOrders, SimulationReport simulationReport) {
+        OrderQueue wholeOrderPending = new OrderPendingQueue();
+        List<Order> comparedOrders = new ArrayList<>();
         for (Order order : orders) {
-            if (order.getOrderedAt() == null) {
-                LOGGER.warning("Order rejected, since it is missing timestamp.");
-                order.updateState(OrderState.REJECTED);
-                rejectedOrders.addOrder(order);
-                continue;
+            if (order.getOrderItemsSize() <= maxConcurrentItems) {
+                wholeOrderPending.addOrder(order);
+                comparedOrders.add(order);
             }
-            if (order.getOrderItemsSize() == 0) {
-                LOGGER.warning("Order rejected, since it has no items.");
-                order.updateState(OrderState.REJECTED);
-                rejectedOrders.addOrder(order);
-                continue;
-            }
-            enrichOrderWithCookTimes(order, menuItemIndexes);
-            order.updateState(OrderState.CREATED);
-            boolean orderAdded = pendingOrders.addOrder(order);
-            if (!orderAdded) {
-                // This should not happen.
-                throw new RuntimeException("Order could not be added to the pending queue.");
+        }
+        ItemLevelSimulator wholeOrderSimulator =
+                new ItemLevelSimulator(wholeOrderPending, new OrderInMemoryStore(), maxConcurrentItems, strategy);
+        wholeOrderSimulator.setWholeOrder(true);
+        wholeOrderSimulator.run();
+        SchedulingStats wholeOrderScheduling = SchedulingStats.of(comparedOrders, maxConcurrentItems);
+        for (Order order : comparedOrders) {
+            order.resetProgress();
+        }
+
+        ItemLevelSimulator simulator =
+                new ItemLevelSimulator(pendingOrders, completedOrders, maxConcurrentItems, strategy);
+        simulator.setProgressListener(simulationOptions.getProgressListener());
+        simulator.setCompletionListener(simulationOptions.getCompletionListener());
+        simulator.setQueueingMetrics(simulationReport.getQueueingMetrics());
+        simulator.run();
+        SchedulingStats itemLevelScheduling = SchedulingStats.of(comparedOrders, maxConcurrentItems);
+        simulationReport.setSchedulingComparison(wholeOrderScheduling, itemLevelScheduling);
+        simulationReport.setOversizedOrderCount(orders.size() - comparedOrders.size());
+        LOGGER.info(String.format(
+                "Item level scheduling: utilization %.1f%% (whole order %.1f%%), mean pending %.1f minutes "
+                        + "(whole order %.1f minutes), %s orders larger than the kitchen.",
+                itemLevelScheduling.getUtilization() * 100, wholeOrderScheduling.getUtilization() * 100,
+                itemLevelScheduling.getMeanPendingMillis() / 60000, wholeOrderScheduling.getMeanPendingMillis() / 60000,
+                orders.size() - comparedOrders.size()));
+    }
+
+    /**
+     * Reject an order if it is invalid, otherwise add cook times and mark it as created.
+     * Called from multiple threads, so must only modify the order, and the thread safe rejections.
+     */
+    private static void validateAndEnrichOrder(Order order, KitchenMenuItemIndexes kitchenMenuItemIndexes,
+                                               int maxConcurrentItems, StationPools stationPools,
+                                               OrderRejections rejections) {
+        if (order.getOrderedAt() == null) {
+            reject(order, RejectionReason.MISSING_TIMESTAMP, "missing timestamp", rejections);
+            return;
+        }
+        if (order.getOrderItemsSize() == 0) {
+            reject(order, RejectionReason.NO_ITEMS, "no items", rejections);
+            return;
+        }
+        if (maxConcurrentItems > 0 && order.getOrderItemsSize() > maxConcurrentItems) {
+            // Kitchens cannot process only part of an order at a time.
+            reject(order, RejectionReason.TOO_MANY_ITEMS,
+                    order.getOrderItemsSize() + " items, kitchen maximum is " + maxConcurrentItems, rejections);
+            return;
+        }
+        for (OrderItem item : order.getOrderItems()) {
+            if (!kitchenMenuItemIndexes.hasMenuItem(item.getName())) {
+                reject(order, RejectionReason.UNKNOWN_ITEM, "unknown item " + item.getName(), rejections);
+                return;
             }
         }
-        LOGGER.info("Processing orders...");
-        submitAndProcess(pendingOrders, processingOrders, completedOrders, strategy);
-        LOGGER.info("All order processing complete.");
+        enrichOrderWithCookTimes(order, kitchenMenuItemIndexes);
+        if (stationPools != null && stationPools.findOversizedPool(order) != StationPools.NO_POOL) {
+            reject(order, RejectionReason.TOO_MANY_ITEMS, "too many items for station "
+                    + stationPools.getPoolName(stationPools.findOversizedPool(order)), rejections);
+            return;
+        }
+        order.updateState(OrderState.CREATED);
+    }
+
+    private static void reject(Order order, RejectionReason reason, String detail, OrderRejections rejections) {
+        order.updateState(OrderState.REJECTED);
+        rejections.reject(order, reason, detail);
     }
 
     /**
-     * Add item cook times, and total cook time to an order.
+     * Add item cook times and stations, and total cook time to an order.
      *
      */
     private static void enrichOrderWithCookTimes(Order order, KitchenMenuItemIndexes kitchenMenuItemIndexes) {
@@ -225,78 +788,11 @@ public class OrderProcessor
         for (OrderItem item : order.getOrderItems()) {
             int itemCookTime = kitchenMenuItemIndexes.getCookTime(item.getName());
             item.setCookTimeSeconds(itemCookTime);
+            item.setStation(kitchenMenuItemIndexes.getStation(item.getName()));
             if (itemCookTime > maxCookTime) {
                 maxCookTime = itemCookTime;
             }
         }
         order.setTotalCookTimeSeconds(maxCookTime);
     }
-
-    /**
-     * Submit orders from pending queue to processing queue, until the processing queue can no longer accept.
-     * Then process orders until there is room to accept more. Keep repeating until all orders are completed.
-     */
-    private static void submitAndProcess(OrderStore pendingOrders, OrderStore processingOrders,
-                                         OrderStore completedOrders, OrderProcessingStrategy strategy) {
-        Order orderToSubmit = pendingOrders.getAndDequeueOrder(strategy);
-        // Start with first order's timestamp.
-        Timestamp currentTime = orderToSubmit.getOrderedAt();
-        boolean getOrder = false;
-        while (pendingOrders.getCurrentNumOrders() > 0) {
-            // Submit all pending orders.
-            boolean isOrderSubmitted = true;
-            while (isOrderSubmitted) {
-                if (getOrder) {
-                    orderToSubmit = pendingOrders.getAndDequeueOrder(strategy);
-                    if (orderToSubmit == null) {
-                        break;
-                    }
-                    currentTime = orderToSubmit.getOrderedAt();
-                } else {
-                    // orderToSubmit in memory still needs to be submitted. Skip fetching a new order.
-                    getOrder = true;
-                }
-                if (orderToSubmit != null
-                        && orderToSubmit.getOrderItemsSize() > processingOrders.getMaxAllowedItems()) {
-                    // Kitchens cannot process only part of an order at a time.
-                    // As such it must be large enough to process all of the orders items at the same time.
-                    throw new RuntimeException("Kitchen is too small to process this order. Item count = "
-                            + orderToSubmit.getOrderItems().size());
-                }
-                // Try to submit order for processing.
-                isOrderSubmitted = processingOrders.submitOrder(orderToSubmit, currentTime);
-            }
-            currentTime = processBatch(processingOrders, completedOrders, currentTime);
-            getOrder = false;
-        }
-        // Now that all orders have been submitted, finish processing remaining orders
-        while (processingOrders.getCurrentNumOrders() > 0) {
-            currentTime = processBatch(processingOrders, completedOrders, currentTime);
-        }
-    }
-
-    /**
-     * For a given timestamp, clear all orders which would be complete by that time.
-     */
-    private static Timestamp processBatch(OrderStore processingOrders,
-                                          OrderStore completedOrders,
-                                          Timestamp startedAt) {
-        Timestamp queryTime = startedAt;
-        int minutesElapsed = 0;
-
-        while (processingOrders.getCurrentNumOrders() > 0) {
-            queryTime = new Timestamp(queryTime.getTime() + (minutesElapsed * 60 * 1000L));
-            List<Order> completedOrderBatch = processingOrders.clearFinishedOrders(queryTime);
-            if (!completedOrderBatch.isEmpty()) {
-                for (Order completedOrder : completedOrderBatch) {
-                    completedOrders.addOrder(completedOrder);
-                }
-                break;
-            } else {
-                // If no batch for query time, increment time.
-                minutesElapsed++;
-            }
-        }
-        return queryTime;
-    }
 }
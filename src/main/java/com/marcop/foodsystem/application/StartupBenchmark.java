@@ -0,0 +1,156 @@
+package com.marcop.foodsystem.application;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * StartupBenchmark - Measures the cold start of short OrderProcessor runs, each in a new JVM.
+ *
+ * For each run it reports the time to first order (from launching the JVM, until the simulation starts on the first
+ * order), the total run time, and the number of classes loaded, in total and from Hadoop. Then the median of each.
+ *
+ * Usage: StartupBenchmark -ip order_input_path -kn (optional) kitchen_name -n (optional) runs
+ */
+public class StartupBenchmark {
+
+    private static final String OPTION_ORDER_INPUT_PATH = "order_input_path";
+    private static final String OPTION_KITCHEN_NAME = "kitchen_name";
+    private static final String OPTION_RUNS = "runs";
+    private static final String DEFAULT_KITCHEN_NAME = "testKitchen";
+    private static final int DEFAULT_RUNS = 5;
+    // Logged by OrderProcessor once orders are queued, before the first order is simulated.
+    private static final String FIRST_ORDER_MARKER = "Processing orders...";
+
+    private static final Options OPTIONS = new Options()
+            .addOption("ip", OPTION_ORDER_INPUT_PATH, true, "Path to orders to run OrderProcessor on.")
+            .addOption("kn", OPTION_KITCHEN_NAME, true, "Name of the kitchen (default " + DEFAULT_KITCHEN_NAME + ").")
+            .addOption("n", OPTION_RUNS, true, "Number of runs to measure (default " + DEFAULT_RUNS + ").");
+
+    /** Measurements of one run. */
+    private static class Run {
+        long timeToFirstOrderMillis = -1;
+        long totalMillis;
+        int loadedClasses;
+        int hadoopClasses;
+    }
+
+    public static void main(String[] args) throws ParseException, IOException, InterruptedException {
+        CommandLine cmdLine = new DefaultParser().parse(OPTIONS, args);
+        Preconditions.checkArgument(cmdLine.hasOption(OPTION_ORDER_INPUT_PATH), "Missing required argument. See help.");
+        String inputPath = cmdLine.getOptionValue(OPTION_ORDER_INPUT_PATH);
+        String kitchenName = cmdLine.getOptionValue(OPTION_KITCHEN_NAME, DEFAULT_KITCHEN_NAME);
+        int runs = cmdLine.hasOption(OPTION_RUNS)
+                ? Integer.parseInt(cmdLine.getOptionValue(OPTION_RUNS)) : DEFAULT_RUNS;
+
+        List<Run> results = new ArrayList<>();
+        System.out.println("run\ttime_to_first_order_ms\ttotal_ms\tclasses\thadoop_classes");
+        for (int i = 0; i < runs; i++) {
+            Run run = measure(inputPath, kitchenName);
+            results.add(run);
+            System.out.println(String.format("%d\t%d\t%d\t%d\t%d", i + 1, run.timeToFirstOrderMillis, run.totalMillis,
+                    run.loadedClasses, run.hadoopClasses));
+        }
+        long[] timeToFirstOrder = new long[runs];
+        long[] total = new long[runs];
+        long[] classes = new long[runs];
+        long[] hadoopClasses = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            timeToFirstOrder[i] = results.get(i).timeToFirstOrderMillis;
+            total[i] = results.get(i).totalMillis;
+            classes[i] = results.get(i).loadedClasses;
+            hadoopClasses[i] = results.get(i).hadoopClasses;
+        }
+        System.out.println(String.format("median\t%d\t%d\t%d\t%d",
+                median(timeToFirstOrder), median(total), median(classes), median(hadoopClasses)));
+    }
+
+    /** Run OrderProcessor in a new JVM, with the same classpath, logging class loads to standard output. */
+    private static Run measure(String inputPath, String kitchenName) throws IOException, InterruptedException {
+        Path outputDir = Files.createTempDirectory("startup-benchmark");
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder processBuilder = new ProcessBuilder(Arrays.asList(
+                java, "-verbose:class", "-cp", System.getProperty("java.class.path"),
+                OrderProcessor.class.getName(),
+                "-kn", kitchenName, "-ip", inputPath, "-op", outputDir.toString()));
+        Run run = new Run();
+        long startNanos = System.nanoTime();
+        Process process = processBuilder.start();
+        CompletableFuture<Void> classLog = CompletableFuture.runAsync(() -> countLoadedClasses(process, run));
+        try (BufferedReader log = new BufferedReader(
+                new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = log.readLine()) != null) {
+                if (run.timeToFirstOrderMillis < 0 && line.contains(FIRST_ORDER_MARKER)) {
+                    run.timeToFirstOrderMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+                }
+            }
+        }
+        int exitCode = process.waitFor();
+        run.totalMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        try {
+            classLog.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to read class loading log.", e.getCause());
+        }
+        if (exitCode != 0) {
+            throw new RuntimeException("OrderProcessor failed with exit code " + exitCode);
+        }
+        deleteRecursively(outputDir);
+        return run;
+    }
+
+    /** Count classes loaded, from the -verbose:class log on the standard output of a run. */
+    private static void countLoadedClasses(Process process, Run run) {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // "[Loaded name from ...]" before Java 9, "[...][class,load] name source: ..." since.
+                if (line.startsWith("[Loaded ") || line.contains("[class,load]")) {
+                    run.loadedClasses++;
+                    if (line.contains(" org.apache.hadoop.")) {
+                        run.hadoopClasses++;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read class loading log.", e);
+        }
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(dir)) {
+            walk.forEach(paths::add);
+        }
+        Collections.reverse(paths);
+        for (Path path : paths) {
+            Files.delete(path);
+        }
+    }
+}
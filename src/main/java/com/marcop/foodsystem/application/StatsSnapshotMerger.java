@@ -0,0 +1,135 @@
+package com.marcop.foodsystem.application;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.marcop.foodsystem.charts.ChartUtils;
+import com.marcop.foodsystem.output.OutputSink;
+import com.marcop.foodsystem.output.OutputSinks;
+import com.marcop.foodsystem.snapshot.StatsSnapshot;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.marcop.foodsystem.charts.ChartUtils.STATS_PAGE_FILE_NAME;
+
+/**
+ * StatsSnapshotMerger - Merges the stats snapshots of OrderProcessor runs (e.g. one per day) into one stats page,
+ * without re-reading or re-simulating their orders. The merged snapshot is saved too, so merges can be merged
+ * (e.g. weeks into a month).
+ *
+ * Usage: StatsSnapshotMerger -is snapshot_input_paths (comma separated files, directories or globs)
+ *                            -op stats_output_path
+ */
+public class StatsSnapshotMerger {
+
+    private static final String OPTION_SNAPSHOT_INPUT_PATHS = "snapshot_input_paths";
+    private static final String OPTION_OUTPUT_PATH = "output_path";
+    private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    private static final Options OPTIONS = new Options()
+            .addOption("is", OPTION_SNAPSHOT_INPUT_PATHS, true,
+                    "Comma separated snapshot files, directories (searched for *" + StatsSnapshot.FILE_EXTENSION
+                            + " files) or globs, e.g. runs/2019-01-*/" + StatsSnapshot.FILE_NAME + ".")
+            .addOption("op", OPTION_OUTPUT_PATH, true, "Path for new output directory containing all outputs.");
+
+    public static void main(String[] args) throws ParseException, IOException {
+        CommandLine cmdLine = new DefaultParser().parse(OPTIONS, args);
+        Preconditions.checkArgument(cmdLine.hasOption(OPTION_SNAPSHOT_INPUT_PATHS)
+                && cmdLine.hasOption(OPTION_OUTPUT_PATH), "Missing required argument. See help.");
+        List<Path> snapshotFiles = new ArrayList<>();
+        for (String inputPath : Splitter.on(',').trimResults().omitEmptyStrings()
+                .split(cmdLine.getOptionValue(OPTION_SNAPSHOT_INPUT_PATHS))) {
+            snapshotFiles.addAll(resolve(inputPath));
+        }
+        Preconditions.checkArgument(!snapshotFiles.isEmpty(), "No snapshots found.");
+        LOGGER.info(String.format("Merging %s snapshots.", snapshotFiles.size()));
+        StatsSnapshot snapshot = merge(snapshotFiles);
+
+        OutputSink outputSink = OutputSinks.open(cmdLine.getOptionValue(OPTION_OUTPUT_PATH));
+        LOGGER.info("Creating Stats Page.");
+        ChartUtils.createStatsPage(
+                snapshot.getKitchenName(),
+                snapshot.getMaxConcurrentItems(),
+                snapshot.getPriceDistribution(),
+                snapshot.getPendingDurationDistribution(),
+                snapshot.getOrderStateCountsByTime(),
+                snapshot.getRevenueByItem(),
+                snapshot.getRevenueByService(),
+                snapshot.getTotalRevenue(),
+                snapshot.getRejections(),
+                snapshot.getSimulationReport(),
+                outputSink);
+        try (OutputStream out = outputSink.create(StatsSnapshot.FILE_NAME)) {
+            snapshot.writeTo(out);
+        }
+        LOGGER.info(String.format("Stats page of %s runs: %s. Merged snapshot: %s.", snapshot.getRunCount(),
+                outputSink.describe(STATS_PAGE_FILE_NAME), outputSink.describe(StatsSnapshot.FILE_NAME)));
+    }
+
+    /** Read and merge snapshot files, in the order given. */
+    @VisibleForTesting
+    static StatsSnapshot merge(List<Path> snapshotFiles) throws IOException {
+        StatsSnapshot merged = null;
+        for (Path snapshotFile : snapshotFiles) {
+            StatsSnapshot snapshot;
+            try (InputStream in = Files.newInputStream(snapshotFile)) {
+                snapshot = StatsSnapshot.readFrom(in);
+            }
+            if (merged == null) {
+                merged = snapshot;
+            } else {
+                merged.merge(snapshot);
+            }
+        }
+        return merged;
+    }
+
+    /** Resolve a file, directory or glob to a sorted list of snapshot files. */
+    @VisibleForTesting
+    static List<Path> resolve(String inputPath) throws IOException {
+        Path path = Paths.get(inputPath);
+        if (Files.isRegularFile(path)) {
+            return Collections.singletonList(path);
+        }
+        PathMatcher matcher;
+        Path root;
+        if (Files.isDirectory(path)) {
+            root = path;
+            matcher = file -> file.getFileName().toString().endsWith(StatsSnapshot.FILE_EXTENSION);
+        } else {
+            // Walk from the deepest directory without wildcards.
+            root = path.isAbsolute() ? path.getRoot() : Paths.get("");
+            for (Path part : path) {
+                if (part.toString().matches(".*[*?\\[{].*")) {
+                    break;
+                }
+                root = root.resolve(part);
+            }
+            PathMatcher glob = FileSystems.getDefault().getPathMatcher("glob:" + path.normalize());
+            matcher = file -> glob.matches(file.normalize());
+        }
+        if (!Files.isDirectory(root)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.walk(root)) {
+            return files.filter(Files::isRegularFile).filter(matcher::matches).sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -16,12 +16,14 @@ public class KitchenBuilder {
     private String name;
     private Map<String, Menu> menusByName;
     private int maxConcurrentItems;
+    private Map<String, Integer> stationCapacities;
 
     public KitchenBuilder() {
         kitchen = null;
         name = null;
         menusByName = new HashMap<>();
         maxConcurrentItems = DEFAULT_MAX_CONCURENT_ITEMS;
+        stationCapacities = new HashMap<>();
     }
 
     /** Set name of the Kitchen */
@@ -46,8 +48,18 @@ public class KitchenBuilder {
         this.maxConcurrentItems = maxConcurentItems;
     }
 
+    /** Set the maximum number of items a station can process concurrently. This replaces any previous capacity. */
+    public void setStationCapacity(String station, int capacity) {
+        stationCapacities.put(station, capacity);
+    }
+
+    /** Set the capacities of several stations, by station name. */
+    public void setStationCapacities(Map<String, Integer> stationCapacities) {
+        this.stationCapacities.putAll(stationCapacities);
+    }
+
     public Kitchen build() {
-        return new Kitchen(name, new HashSet<>(menusByName.values()), maxConcurrentItems);
+        return new Kitchen(name, new HashSet<>(menusByName.values()), maxConcurrentItems, stationCapacities);
     }
 
 }
@@ -1,20 +1,27 @@
 package com.marcop.foodsystem.charts;
 
 import com.google.common.base.Joiner;
-import com.google.common.collect.TreeMultimap;
-import com.marcop.foodsystem.model.Order;
+import com.google.common.html.HtmlEscapers;
 import com.marcop.foodsystem.model.OrderState;
-import org.apache.hadoop.fs.Path;
+import com.marcop.foodsystem.model.RejectionReason;
+import com.marcop.foodsystem.output.OutputSink;
+import com.marcop.foodsystem.simulation.QueueingMetrics;
+import com.marcop.foodsystem.simulation.SchedulingStats;
+import com.marcop.foodsystem.simulation.SimulationReport;
+import com.marcop.foodsystem.simulation.StationPools;
+import com.marcop.foodsystem.store.OrderRejections;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.axis.DateAxis;
 import org.jfree.chart.axis.DateTickUnit;
 import org.jfree.chart.axis.DateTickUnitType;
+import org.jfree.chart.axis.NumberAxis;
 import org.jfree.chart.labels.PieSectionLabelGenerator;
 import org.jfree.chart.labels.StandardPieSectionLabelGenerator;
 import org.jfree.chart.plot.PiePlot;
 import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.data.general.DefaultPieDataset;
 import org.jfree.data.time.Millisecond;
 import org.jfree.data.time.TimeSeries;
@@ -23,20 +30,20 @@ import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
 
 import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.SortedMap;
 
-import static org.jfree.chart.ChartUtils.saveChartAsPNG;
+import static org.jfree.chart.ChartUtils.writeChartAsPNG;
 
 public class ChartUtils {
 
@@ -46,6 +53,8 @@ public class ChartUtils {
     private static final String revenueByServiceFileName = "charts/revenue_by_service.png";
     private static final String revenueByItemFileName = "csv/revenue_by_item.csv";
     private static final String orderStatesOverTimeFileName = "charts/order_states_over_time.png";
+    private static final String kitchenLoadOverTimeFileName = "charts/kitchen_load_over_time.png";
+    private static final String kitchenLoadFileName = "csv/kitchen_load.csv";
 
     private static final NumberFormat currencyFormatterDollars;
     static
@@ -63,14 +72,16 @@ public class ChartUtils {
     public static final String STATS_PAGE_FILE_NAME = "index.html";
 
     /** Create chart (PNG) for Orders by price. */
-    private static void createOrderByPriceChart(TreeMultimap<Integer, Order> ordersByPrice,
-                                               Path outputPath) throws IOException {
+    private static void createOrderByPriceChart(SortedMap<Integer, Integer> priceDistribution,
+                                               OutputSink outputSink) throws IOException {
         XYSeries series = new XYSeries("Order Price");
         XYSeriesCollection dataset = new XYSeriesCollection();
         int orderNumber = 1;
-        for (Map.Entry entry : ordersByPrice.entries()) {
-            series.add(orderNumber, ((double) ((Integer) entry.getKey())) / 100.0);
-            orderNumber++;
+        for (Map.Entry<Integer, Integer> entry : priceDistribution.entrySet()) {
+            for (int i = 0; i < entry.getValue(); i++) {
+                series.add(orderNumber, entry.getKey() / 100.0);
+                orderNumber++;
+            }
         }
         dataset.addSeries(series);
 
@@ -84,22 +95,22 @@ public class ChartUtils {
                 true,
                 false
         );
-        outputPath = new Path(outputPath, ordersByPriceFileName);
-        File outFile = new File(outputPath.toString());
-        outFile.getParentFile().mkdirs();
-        outFile.createNewFile();
-        saveChartAsPNG(outFile, chart, 640, 480);
+        try (OutputStream out = outputSink.create(ordersByPriceFileName)) {
+            writeChartAsPNG(out, chart, 640, 480);
+        }
     }
 
     /** Create chart (PNG) for Orders by pending duration. */
-    private static void createOrderByPendingTime(TreeMultimap<Integer, Order> ordersByPendingTime,
-                                                Path outputPath) throws IOException {
+    private static void createOrderByPendingTime(SortedMap<Integer, Integer> pendingTimeDistribution,
+                                                OutputSink outputSink) throws IOException {
         XYSeries series = new XYSeries("Time Order is in Pending State (minutes)");
         XYSeriesCollection dataset = new XYSeriesCollection();
         int orderNumber = 1;
-        for (Map.Entry entry : ordersByPendingTime.entries()) {
-            series.add(orderNumber, ((Integer) entry.getKey()));
-            orderNumber++;
+        for (Map.Entry<Integer, Integer> entry : pendingTimeDistribution.entrySet()) {
+            for (int i = 0; i < entry.getValue(); i++) {
+                series.add(orderNumber, entry.getKey());
+                orderNumber++;
+            }
         }
         dataset.addSeries(series);
 
@@ -113,15 +124,13 @@ public class ChartUtils {
                 true,
                 false
         );
-        outputPath = new Path(outputPath, ordersByPendingTimeFileName);
-        File outFile = new File(outputPath.toString());
-        outFile.getParentFile().mkdirs();
-        outFile.createNewFile();
-        saveChartAsPNG(outFile, chart, 640, 480);
+        try (OutputStream out = outputSink.create(ordersByPendingTimeFileName)) {
+            writeChartAsPNG(out, chart, 640, 480);
+        }
     }
 
     /** Create chart (PNG) for Revenue by Item. */
-    private static void createRevenueByServiceChart(Map<String, Integer> revenueByService, Path outputPath)
+    private static void createRevenueByServiceChart(Map<String, Long> revenueByService, OutputSink outputSink)
             throws IOException {
         DefaultPieDataset dataset = new DefaultPieDataset( );
         for (String service : revenueByService.keySet()) {
@@ -140,15 +149,14 @@ public class ChartUtils {
                 "{0}\n{1} ({2})", currencyFormatterDollars, new DecimalFormat("0%"));
         plot.setLabelGenerator(gen);
 
-        outputPath = new Path(outputPath, revenueByServiceFileName);
-        File outFile = new File(outputPath.toString());
-        outFile.getParentFile().mkdirs();
-        outFile.createNewFile();
-        saveChartAsPNG(outFile, chart, 640, 480);
+        try (OutputStream out = outputSink.create(revenueByServiceFileName)) {
+            writeChartAsPNG(out, chart, 640, 480);
+        }
     }
 
     /** Create Table for Revenue by Item. */
-    private static String revenueByItemTable(Map<String, Integer> revenueByItem, Path outputPath) throws IOException {
+    private static String revenueByItemTable(Map<String, Long> revenueByItem, OutputSink outputSink)
+            throws IOException {
         StringBuilder stringCsv = new StringBuilder();
         StringBuilder stringMapTable = new StringBuilder();
 
@@ -158,7 +166,7 @@ public class ChartUtils {
         while (it.hasNext()) {
             Map.Entry pair = (Map.Entry)it.next();
             String item = (String) pair.getKey();
-            double revenue = (double) ((Integer) pair.getValue()) / 100;
+            double revenue = (double) (Long) pair.getValue() / 100;
             stringMapTable.append("<tr><td>" + item + "</td><td>"
                     + currencyFormatterDollarsAndCents.format(revenue)
                     + "</td></tr>");
@@ -166,17 +174,74 @@ public class ChartUtils {
             it.remove(); // avoids a ConcurrentModificationException
         }
         // Save raw CSV and return formatted table for display.
-        File file = new File(new Path(outputPath, revenueByItemFileName).toString());
-        file.getParentFile().mkdirs();
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+        try (BufferedWriter writer = new BufferedWriter(
+                new OutputStreamWriter(outputSink.create(revenueByItemFileName), StandardCharsets.UTF_8))) {
             writer.write(stringCsv.toString());
         }
         return stringMapTable.toString();
     }
 
+    /** Create table of rejection counts by reason, with example rejected orders. */
+    private static String rejectionsTable(OrderRejections rejections) {
+        StringBuilder stringMapTable = new StringBuilder();
+        stringMapTable.append("<table>");
+        for (Map.Entry<RejectionReason, Long> entry : rejections.getCountsByReason().entrySet()) {
+            stringMapTable.append("<tr><td>" + entry.getKey().getDescription() + "</td><td>"
+                    + entry.getValue() + "</td><td>");
+            for (String example : rejections.getExamples(entry.getKey())) {
+                stringMapTable.append(HtmlEscapers.htmlEscaper().escape(example) + "<br>");
+            }
+            stringMapTable.append("</td></tr>");
+        }
+        stringMapTable.append("</table>");
+        return stringMapTable.toString();
+    }
+
+    /** Create table of station capacity stats, to show which station limits throughput. */
+    private static String stationsTable(StationPools stationPools) {
+        StringBuilder stringMapTable = new StringBuilder();
+        stringMapTable.append("<table>");
+        stringMapTable.append("<tr><th>Station</th><th>Capacity</th><th>Utilization</th><th>Peak items</th>"
+                + "<th>Orders held up</th><th>Minutes orders were held up</th></tr>");
+        for (StationPools.PoolStats stats : stationPools.getStats()) {
+            stringMapTable.append("<tr><td>" + stats.getName() + "</td><td>"
+                    + (stats.getCapacity() == 0 ? "INF" : stats.getCapacity()) + "</td><td>"
+                    + (Double.isNaN(stats.getUtilization())
+                            ? "-" : new DecimalFormat("0.0%").format(stats.getUtilization())) + "</td><td>"
+                    + stats.getPeakInUse() + "</td><td>"
+                    + stats.getHeldOrders() + "</td><td>"
+                    + stats.getBlockedMillis() / (60 * 1000) + "</td></tr>");
+        }
+        stringMapTable.append("</table>");
+        return stringMapTable.toString();
+    }
+
+    /** Create table comparing whole order admission with item level scheduling, over the same orders. */
+    private static String schedulingTable(SimulationReport simulationReport) {
+        StringBuilder stringMapTable = new StringBuilder();
+        stringMapTable.append("<table>");
+        stringMapTable.append("<tr><th>Scheduling</th><th>Orders</th><th>Utilization</th>"
+                + "<th>Mean minutes pending</th><th>Max minutes pending</th><th>Mean minutes to complete</th></tr>");
+        stringMapTable.append(schedulingRow("Whole order", simulationReport.getWholeOrderScheduling()));
+        stringMapTable.append(schedulingRow("Item level", simulationReport.getItemLevelScheduling()));
+        stringMapTable.append("</table>");
+        return stringMapTable.toString();
+    }
+
+    private static String schedulingRow(String mode, SchedulingStats stats) {
+        DecimalFormat minutesFormat = new DecimalFormat("0.0");
+        return "<tr><td>" + mode + "</td><td>"
+                + stats.getOrderCount() + "</td><td>"
+                + (Double.isNaN(stats.getUtilization())
+                        ? "-" : new DecimalFormat("0.0%").format(stats.getUtilization())) + "</td><td>"
+                + minutesFormat.format(stats.getMeanPendingMillis() / 60000) + "</td><td>"
+                + minutesFormat.format(stats.getMaxPendingMillis() / 60000.0) + "</td><td>"
+                + minutesFormat.format(stats.getMeanLeadMillis() / 60000) + "</td></tr>";
+    }
+
     /** Create chart (PNG) for Order states over time. */
     private static void createOrderStateCountsByTimeChart(
-            Map<Timestamp, Map<OrderState, Integer>> orderStateCountsByTime, Path outputPath) throws IOException {
+            Map<Timestamp, Map<OrderState, Integer>> orderStateCountsByTime, OutputSink outputSink) throws IOException {
         TimeSeriesCollection dataset = new TimeSeriesCollection();
 
         TimeSeries pendingSeries = new TimeSeries("Number of Orders Pending");
@@ -219,33 +284,92 @@ public class ChartUtils {
         axis.setDateFormatOverride(new SimpleDateFormat("dd-MMM HH:mm"));
         axis.setTickUnit(new DateTickUnit(DateTickUnitType.HOUR, 4));
         axis.setVerticalTickLabels(true);
-        outputPath = new Path(outputPath, orderStatesOverTimeFileName);
-        File outFile = new File(outputPath.toString());
-        outFile.getParentFile().mkdirs();
-        outFile.createNewFile();
-        saveChartAsPNG(outFile, chart, 1920, 480);
+        try (OutputStream out = outputSink.create(orderStatesOverTimeFileName)) {
+            writeChartAsPNG(out, chart, 1920, 480);
+        }
+    }
+
+    /** Create chart (PNG) and raw CSV for kitchen utilization and pending queue depth over time. */
+    private static void createKitchenLoadChart(QueueingMetrics queueingMetrics, OutputSink outputSink)
+            throws IOException {
+        TimeSeries utilizationSeries = new TimeSeries("Utilization (%)");
+        TimeSeries pendingSeries = new TimeSeries("Mean Orders Pending");
+        long[] bucketStartMillis = queueingMetrics.getBucketStartMillis();
+        double[] utilization = queueingMetrics.getUtilizationByBucket();
+        double[] pendingDepth = queueingMetrics.getPendingDepthByBucket();
+        long[] arrivals = queueingMetrics.getArrivalsByBucket();
+        long[] completions = queueingMetrics.getCompletionsByBucket();
+        StringBuilder stringCsv = new StringBuilder();
+        for (int i = 0; i < bucketStartMillis.length; i++) {
+            Millisecond bucket = new Millisecond(new Timestamp(bucketStartMillis[i]));
+            if (!Double.isNaN(utilization[i])) {
+                utilizationSeries.add(bucket, utilization[i] * 100);
+            }
+            pendingSeries.add(bucket, pendingDepth[i]);
+            stringCsv.append(Joiner.on(',').join(new Timestamp(bucketStartMillis[i]), arrivals[i], completions[i],
+                    utilization[i], pendingDepth[i], "\n"));
+        }
+
+        JFreeChart chart = ChartFactory.createTimeSeriesChart("Kitchen Load Over Time", "Time", "Utilization (%)",
+                new TimeSeriesCollection(utilizationSeries), true, true, false);
+        XYPlot plot = (XYPlot) chart.getPlot();
+        plot.setDataset(1, new TimeSeriesCollection(pendingSeries));
+        plot.setRangeAxis(1, new NumberAxis("Mean Orders Pending"));
+        plot.mapDatasetToRangeAxis(1, 1);
+        plot.setRenderer(1, new XYLineAndShapeRenderer(true, false));
+        DateAxis axis = (DateAxis) plot.getDomainAxis();
+        axis.setDateFormatOverride(new SimpleDateFormat("dd-MMM HH:mm"));
+        axis.setVerticalTickLabels(true);
+        try (OutputStream out = outputSink.create(kitchenLoadOverTimeFileName)) {
+            writeChartAsPNG(out, chart, 1920, 480);
+        }
+        try (BufferedWriter writer = new BufferedWriter(
+                new OutputStreamWriter(outputSink.create(kitchenLoadFileName), StandardCharsets.UTF_8))) {
+            writer.write(stringCsv.toString());
+        }
+    }
+
+    /** Create summary of kitchen utilization and queueing, with the pending queue depth checked by Little's law. */
+    private static String kitchenLoadSummary(QueueingMetrics queueingMetrics) {
+        DecimalFormat format = new DecimalFormat("0.00");
+        return "<p>Mean utilization: " + (Double.isNaN(queueingMetrics.getMeanUtilization())
+                        ? "-" : new DecimalFormat("0.0%").format(queueingMetrics.getMeanUtilization())) + "</p>\n"
+                + "<p>Arrivals per hour: " + format.format(queueingMetrics.getArrivalsPerHour())
+                + ", completions per hour: " + format.format(queueingMetrics.getCompletionsPerHour()) + "</p>\n"
+                + "<p>Mean orders pending: " + format.format(queueingMetrics.getMeanPendingDepth())
+                + " (Little's law, arrival rate times mean pending time: "
+                + format.format(queueingMetrics.getLittlesLawPendingDepth()) + ")</p>\n"
+                + "<p>Mean orders in process: " + format.format(queueingMetrics.getMeanProcessingOrders())
+                + ", mean minutes in process: " + format.format(queueingMetrics.getMeanProcessingMillis() / 60000)
+                + "</p>\n";
     }
 
     public static void createStatsPage(
             String kitchenName,
             int maxConcurrentItems,
-            TreeMultimap<Integer, Order> ordersByPrice,
-            TreeMultimap<Integer, Order> ordersByPendingTime,
+            SortedMap<Integer, Integer> priceDistribution,
+            SortedMap<Integer, Integer> pendingTimeDistribution,
             Map<Timestamp, Map<OrderState, Integer>> orderStateCountsByTime,
-            Map<String, Integer> revenueByItem,
-            Map<String, Integer> revenueByService,
-            int totalRevenue,
-            int rejectedOrderCount,
-            Path outputPath) throws IOException {
-        createOrderByPriceChart(ordersByPrice, outputPath);
-        createOrderByPendingTime(ordersByPendingTime, outputPath);
-        createOrderStateCountsByTimeChart(orderStateCountsByTime, outputPath);
-        createRevenueByServiceChart(revenueByService, outputPath);
+            Map<String, Long> revenueByItem,
+            Map<String, Long> revenueByService,
+            long totalRevenue,
+            OrderRejections rejections,
+            SimulationReport simulationReport,
+            OutputSink outputSink) throws IOException {
+        createOrderByPriceChart(priceDistribution, outputSink);
+        createOrderByPendingTime(pendingTimeDistribution, outputSink);
+        int processedOrderCount = 0;
+        for (int count : priceDistribution.values()) {
+            processedOrderCount += count;
+        }
+        long rejectedOrderCount = rejections.getTotal();
+        createOrderStateCountsByTimeChart(orderStateCountsByTime, outputSink);
+        createRevenueByServiceChart(revenueByService, outputSink);
+        createKitchenLoadChart(simulationReport.getQueueingMetrics(), outputSink);
 
         try {
 
-            OutputStream htmlfile= new FileOutputStream(
-                    new File(new Path(outputPath, STATS_PAGE_FILE_NAME).toString()));
+            OutputStream htmlfile= outputSink.create(STATS_PAGE_FILE_NAME);
             PrintStream printhtml = new PrintStream(htmlfile);
 
             String htmlTxt = "";
@@ -262,22 +386,42 @@ public class ChartUtils {
 
             // Descriptive stats
             htmlTxt += "<h2>Descriptive Stats</h2>\n";
-            htmlTxt += "<p>Total orders received: " + (rejectedOrderCount + ordersByPrice.size()) + "</p>\n";
-            htmlTxt += "<p>Orders successfully processed: " + ordersByPrice.size() + "</p>\n";
-            htmlTxt += "<p>Orders rejected (typically due to having zero items): " + rejectedOrderCount + "</p>\n";
+            htmlTxt += "<p>Total orders received: " + (rejectedOrderCount + processedOrderCount) + "</p>\n";
+            htmlTxt += "<p>Orders successfully processed: " + processedOrderCount + "</p>\n";
+            htmlTxt += "<p>Orders rejected: " + rejectedOrderCount + "</p>\n";
             htmlTxt += "<p>Total revenue: " + currencyFormatterDollars.format((totalRevenue) / 100) + "</p>\n";
 
+            // Kitchen load
+            htmlTxt += "<h2>Kitchen Load (raw CSV by " + QueueingMetrics.DEFAULT_BUCKET_MINUTES
+                    + " minutes in output DIR)</h2>\n";
+            htmlTxt += kitchenLoadSummary(simulationReport.getQueueingMetrics());
+
             // Charts
             htmlTxt += "<h2>Charts</h2>";
             htmlTxt+="<p><img src=\"" + ordersByPriceFileName + "\"></p>";
             htmlTxt+="<p><img src=\"" + ordersByPendingTimeFileName + "\"></p>";
             htmlTxt+="<p><img src=\"" + revenueByServiceFileName + "\"></p>";
             htmlTxt+="<p><img src=\"" + orderStatesOverTimeFileName + "\"></p>";
+            htmlTxt+="<p><img src=\"" + kitchenLoadOverTimeFileName + "\"></p>";
 
             // Tables
             htmlTxt += "<h2>Tables</h2>";
             htmlTxt += "<h3>Revenue by Item (also available as raw CSV in output DIR)</h3>";
-            htmlTxt+="<p>" + revenueByItemTable(revenueByItem, outputPath) + "</p>";
+            htmlTxt+="<p>" + revenueByItemTable(revenueByItem, outputSink) + "</p>";
+            if (simulationReport.getStationPools() != null) {
+                htmlTxt += "<h3>Stations</h3>";
+                htmlTxt += "<p>" + stationsTable(simulationReport.getStationPools()) + "</p>";
+            }
+            if (simulationReport.getItemLevelScheduling() != null) {
+                htmlTxt += "<h3>Scheduling (orders which fit the kitchen whole)</h3>";
+                htmlTxt += "<p>" + schedulingTable(simulationReport) + "</p>";
+                htmlTxt += "<p>Orders larger than the kitchen, only possible with item level scheduling: "
+                        + simulationReport.getOversizedOrderCount() + "</p>";
+            }
+            if (rejectedOrderCount > 0) {
+                htmlTxt += "<h3>Rejections (reason, count, first examples)</h3>";
+                htmlTxt += "<p>" + rejectionsTable(rejections) + "</p>";
+            }
 
             htmlTxt+="</body></html>";
             printhtml.println(htmlTxt);
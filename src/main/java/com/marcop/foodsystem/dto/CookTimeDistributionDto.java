@@ -0,0 +1,73 @@
+package com.marcop.foodsystem.dto;
+
+import com.google.common.base.Preconditions;
+import com.marcop.foodsystem.model.CookTimeDistribution;
+
+/**
+ * Optional "cook_time_distribution" of a menu item, e.g. {"type": "lognormal", "sigma": 0.25}.
+ * Types: "uniform" (min, max), "normal" (stddev) and "lognormal" (sigma), around the item's cook_time.
+ */
+public class CookTimeDistributionDto {
+    private String type;
+    private int min;
+    private int max;
+    private double stddev;
+    private double sigma;
+
+    String getType() {
+        return type;
+    }
+
+    void setType(String type) {
+        this.type = type;
+    }
+
+    int getMin() {
+        return min;
+    }
+
+    void setMin(int min) {
+        this.min = min;
+    }
+
+    int getMax() {
+        return max;
+    }
+
+    void setMax(int max) {
+        this.max = max;
+    }
+
+    double getStddev() {
+        return stddev;
+    }
+
+    void setStddev(double stddev) {
+        this.stddev = stddev;
+    }
+
+    double getSigma() {
+        return sigma;
+    }
+
+    void setSigma(double sigma) {
+        this.sigma = sigma;
+    }
+
+    /** Convert to CookTimeDistribution, around an item's cook time. */
+    public CookTimeDistribution toCookTimeDistribution(int cookTimeSeconds) {
+        Preconditions.checkArgument(type != null, "Cook time distribution must have a type.");
+        switch (type) {
+            case "fixed":
+                return CookTimeDistribution.fixed(cookTimeSeconds);
+            case "uniform":
+                return CookTimeDistribution.uniform(min, max);
+            case "normal":
+                return CookTimeDistribution.normal(cookTimeSeconds, stddev);
+            case "lognormal":
+                return CookTimeDistribution.logNormal(cookTimeSeconds, sigma);
+            default:
+                throw new IllegalArgumentException("Unknown cook time distribution type: " + type);
+        }
+    }
+}
@@ -5,9 +5,10 @@ import com.marcop.foodsystem.model.Menu;
 import java.util.Map;
 import java.util.Set;
 
-/** Wrapper around kitchen name to menus mapping */
+/** Wrapper around kitchen name to menus mapping, and kitchen name to station capacities mapping */
 public class KitchenMenuItemsDto {
     private Map<String, Set<Menu>> menusByKitchenName;
+    private Map<String, Map<String, Integer>> stationCapacitiesByKitchenName;
 
     public Map<String, Set<Menu>> getMenusByKitchenName() {
         return menusByKitchenName;
@@ -16,4 +17,12 @@ public class KitchenMenuItemsDto {
     public void setMenusByKitchenName(Map<String, Set<Menu>> menusByKitchenName) {
         this.menusByKitchenName = menusByKitchenName;
     }
+
+    public Map<String, Map<String, Integer>> getStationCapacitiesByKitchenName() {
+        return stationCapacitiesByKitchenName;
+    }
+
+    public void setStationCapacitiesByKitchenName(Map<String, Map<String, Integer>> stationCapacitiesByKitchenName) {
+        this.stationCapacitiesByKitchenName = stationCapacitiesByKitchenName;
+    }
 }
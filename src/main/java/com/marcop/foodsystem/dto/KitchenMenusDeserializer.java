@@ -36,6 +36,7 @@ public class KitchenMenusDeserializer extends StdDeserializer<KitchenMenuItemsDt
         Iterator<JsonNode> kitchens = node.elements();
 
         Map<String, Set<Menu>> menusByKitchenName = new HashMap<>();
+        Map<String, Map<String, Integer>> stationCapacitiesByKitchenName = new HashMap<>();
         while (kitchens.hasNext()) {
             JsonNode kitchenNode = kitchens.next();
             String kitchenName = kitchenNode.get("name").asText();
@@ -62,9 +63,21 @@ public class KitchenMenusDeserializer extends StdDeserializer<KitchenMenuItemsDt
             if (!Strings.isNullOrEmpty(kitchenName) || !menus.isEmpty()) {
                 menusByKitchenName.put(kitchenName, menus);
             }
+            // Optional station capacities, e.g. "stations": {"grill": 4, "fryer": 2}
+            Map<String, Integer> stationCapacities = new HashMap<>();
+            JsonNode stationsNode = kitchenNode.get("stations");
+            if (stationsNode != null) {
+                Iterator<Map.Entry<String, JsonNode>> stations = stationsNode.fields();
+                while (stations.hasNext()) {
+                    Map.Entry<String, JsonNode> station = stations.next();
+                    stationCapacities.put(station.getKey(), station.getValue().asInt());
+                }
+            }
+            stationCapacitiesByKitchenName.put(kitchenName, stationCapacities);
         }
         KitchenMenuItemsDto kitchenMenuItemsDto = new KitchenMenuItemsDto();
         kitchenMenuItemsDto.setMenusByKitchenName(menusByKitchenName);
+        kitchenMenuItemsDto.setStationCapacitiesByKitchenName(stationCapacitiesByKitchenName);
         return kitchenMenuItemsDto;
     }
 }
@@ -7,6 +7,9 @@ public class MenuItemDto {
     private String name;
     @JsonProperty("cook_time")
     private int cookTimeSeconds;
+    private String station;
+    @JsonProperty("cook_time_distribution")
+    private CookTimeDistributionDto cookTimeDistribution;
 
     String getName() {
         return name;
@@ -24,8 +27,25 @@ public class MenuItemDto {
         this.cookTimeSeconds = cookTimeSeconds;
     }
 
+    String getStation() {
+        return station;
+    }
+
+    void setStation(String station) {
+        this.station = station;
+    }
+
+    CookTimeDistributionDto getCookTimeDistribution() {
+        return cookTimeDistribution;
+    }
+
+    void setCookTimeDistribution(CookTimeDistributionDto cookTimeDistribution) {
+        this.cookTimeDistribution = cookTimeDistribution;
+    }
+
     /** Convert to MenuItem */
     public MenuItem toMenuItem() {
-        return new MenuItem(name, cookTimeSeconds);
+        return new MenuItem(name, cookTimeSeconds, station, cookTimeDistribution == null
+                ? null : cookTimeDistribution.toCookTimeDistribution(cookTimeSeconds));
     }
 }
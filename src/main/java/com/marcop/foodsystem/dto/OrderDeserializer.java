@@ -24,12 +24,25 @@ public class OrderDeserializer extends StdDeserializer<Order> {
 
     private final ObjectMapper MAPPER = new ObjectMapper();
 
+    // ID for the next order, or -1 to use Order's own ID sequence.
+    private long nextOrderId;
+
     public OrderDeserializer() {
         this(null);
     }
 
     public OrderDeserializer(Class<?> vc) {
         super(vc);
+        nextOrderId = -1;
+    }
+
+    /**
+     * Assign consecutive order IDs, starting at firstOrderId, in the order the orders are read.
+     * Used so that IDs do not depend on how reads of multiple inputs interleave.
+     */
+    public OrderDeserializer(long firstOrderId) {
+        this(null);
+        nextOrderId = firstOrderId;
     }
 
     @Override
@@ -55,6 +68,9 @@ public class OrderDeserializer extends StdDeserializer<Order> {
                 items.addAll(orderItemDto.toOrderItems());
             }
         }
-        return new Order(orderedAt, name, service, items);
+        if (nextOrderId < 0) {
+            return new Order(orderedAt, name, service, items);
+        }
+        return new Order(nextOrderId++, orderedAt, name, service, items);
     }
 }
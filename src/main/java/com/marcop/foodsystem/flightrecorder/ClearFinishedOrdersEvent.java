@@ -0,0 +1,29 @@
+package com.marcop.foodsystem.flightrecorder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timestamp;
+
+/**
+ * A call to OrderStore.clearFinishedOrders on the processing store, which scans every processing order.
+ * Its duration is wall clock time.
+ */
+@Name("com.marcop.foodsystem.ClearFinishedOrders")
+@Label("Clear Finished Orders")
+@Category({"Food System", "Stores"})
+@StackTrace(false)
+public final class ClearFinishedOrdersEvent extends Event {
+
+    @Label("Query Time")
+    @Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+    long queryTime;
+
+    @Label("Scanned Orders")
+    int scannedOrders;
+
+    @Label("Cleared Orders")
+    int clearedOrders;
+}
@@ -0,0 +1,108 @@
+package com.marcop.foodsystem.flightrecorder;
+
+import com.marcop.foodsystem.model.Order;
+
+import java.sql.Timestamp;
+
+/**
+ * Emits custom Java Flight Recorder events for the order lifecycle and OrderProcessor phases, so that kitchen
+ * behavior can be related to CPU, GC and allocation profiles in one recording.
+ *
+ * Events are only created once enabled (OrderProcessor -jfr), and then only committed while a recording is running,
+ * e.g. with -XX:StartFlightRecording. While disabled, instrumented code only reads a flag: no event is allocated.
+ * Begin methods return null while disabled, and end methods ignore null.
+ *
+ * Events record work done, so with parallelism, orders of speculative segment runs which are later discarded are
+ * recorded too, as well as their re-simulation.
+ */
+public final class FlightEvents {
+
+    // Set once, before simulating, but read on pipeline and simulation threads.
+    private static volatile boolean enabled;
+
+    private FlightEvents() {
+    }
+
+    public static void setEnabled(boolean enabled) {
+        FlightEvents.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Record an order submitted for processing, at a simulation time. */
+    public static void orderSubmitted(Order order, Timestamp submittedAt) {
+        if (!enabled) {
+            return;
+        }
+        OrderSubmittedEvent event = new OrderSubmittedEvent();
+        if (event.shouldCommit()) {
+            event.orderId = order.getId();
+            event.itemCount = order.getOrderItemsSize();
+            event.orderedAt = order.getOrderedAt().getTime();
+            event.submittedAt = submittedAt.getTime();
+            event.pendingMillis = event.submittedAt - event.orderedAt;
+            event.commit();
+        }
+    }
+
+    /** Record a completed order, with its pending and cook durations. */
+    public static void orderCompleted(Order order) {
+        if (!enabled) {
+            return;
+        }
+        OrderCompletedEvent event = new OrderCompletedEvent();
+        if (event.shouldCommit()) {
+            long startedAt = order.getProcessingStartedAt().getTime();
+            event.orderId = order.getId();
+            event.itemCount = order.getOrderItemsSize();
+            event.completedAt = order.getCompletedAt().getTime();
+            event.pendingMillis = startedAt - order.getOrderedAt().getTime();
+            event.cookMillis = event.completedAt - startedAt;
+            event.commit();
+        }
+    }
+
+    /** Begin timing a clearFinishedOrders call, which scans a number of processing orders. */
+    public static ClearFinishedOrdersEvent beginClearFinishedOrders(int scannedOrders) {
+        if (!enabled) {
+            return null;
+        }
+        ClearFinishedOrdersEvent event = new ClearFinishedOrdersEvent();
+        event.scannedOrders = scannedOrders;
+        event.begin();
+        return event;
+    }
+
+    public static void endClearFinishedOrders(ClearFinishedOrdersEvent event, Timestamp queryTime,
+                                              int clearedOrders) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.queryTime = queryTime.getTime();
+            event.clearedOrders = clearedOrders;
+            event.commit();
+        }
+    }
+
+    /** Begin timing a phase of an OrderProcessor run. */
+    public static ProcessorPhaseEvent beginPhase(String phase, String kitchenName) {
+        if (!enabled) {
+            return null;
+        }
+        ProcessorPhaseEvent event = new ProcessorPhaseEvent();
+        event.phase = phase;
+        event.kitchenName = kitchenName;
+        event.begin();
+        return event;
+    }
+
+    public static void endPhase(ProcessorPhaseEvent event) {
+        if (event != null) {
+            event.commit();
+        }
+    }
+}
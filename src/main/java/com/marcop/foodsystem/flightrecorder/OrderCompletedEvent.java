@@ -0,0 +1,40 @@
+package com.marcop.foodsystem.flightrecorder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import jdk.jfr.Timestamp;
+
+/**
+ * An order was completed. Times are simulation times, not wall clock times.
+ */
+@Name("com.marcop.foodsystem.OrderCompleted")
+@Label("Order Completed")
+@Category({"Food System", "Orders"})
+@StackTrace(false)
+public final class OrderCompletedEvent extends Event {
+
+    @Label("Order ID")
+    long orderId;
+
+    @Label("Items")
+    int itemCount;
+
+    @Label("Completed At")
+    @Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+    long completedAt;
+
+    @Label("Pending Duration")
+    @Description("Time from being ordered to processing starting.")
+    @Timespan(Timespan.MILLISECONDS)
+    long pendingMillis;
+
+    @Label("Cook Duration")
+    @Description("Time from processing starting to completion.")
+    @Timespan(Timespan.MILLISECONDS)
+    long cookMillis;
+}
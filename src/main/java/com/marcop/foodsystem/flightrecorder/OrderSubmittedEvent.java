@@ -0,0 +1,39 @@
+package com.marcop.foodsystem.flightrecorder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import jdk.jfr.Timestamp;
+
+/**
+ * An order was submitted for processing. Times are simulation times, not wall clock times.
+ */
+@Name("com.marcop.foodsystem.OrderSubmitted")
+@Label("Order Submitted")
+@Category({"Food System", "Orders"})
+@StackTrace(false)
+public final class OrderSubmittedEvent extends Event {
+
+    @Label("Order ID")
+    long orderId;
+
+    @Label("Items")
+    int itemCount;
+
+    @Label("Ordered At")
+    @Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+    long orderedAt;
+
+    @Label("Submitted At")
+    @Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+    long submittedAt;
+
+    @Label("Pending Duration")
+    @Description("Time from being ordered to being submitted.")
+    @Timespan(Timespan.MILLISECONDS)
+    long pendingMillis;
+}
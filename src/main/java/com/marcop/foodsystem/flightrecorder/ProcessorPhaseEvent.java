@@ -0,0 +1,23 @@
+package com.marcop.foodsystem.flightrecorder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A phase of an OrderProcessor run, e.g. reading orders or simulating them. Its duration is wall clock time.
+ */
+@Name("com.marcop.foodsystem.ProcessorPhase")
+@Label("Order Processor Phase")
+@Category("Food System")
+@StackTrace(false)
+public final class ProcessorPhaseEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Kitchen")
+    String kitchenName;
+}
@@ -2,6 +2,7 @@ package com.marcop.foodsystem.indexing;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.marcop.foodsystem.model.CookTimeDistribution;
 import com.marcop.foodsystem.model.Kitchen;
 import com.marcop.foodsystem.model.Menu;
 import com.marcop.foodsystem.model.MenuItem;
@@ -15,9 +16,13 @@ import java.util.Map;
 public class KitchenMenuItemIndexes {
 
     private final Map<String, Integer> cookTimeByMenuItemName;
+    private final Map<String, String> stationByMenuItemName;
+    private final Map<String, CookTimeDistribution> cookTimeDistributionByMenuItemName;
 
     public KitchenMenuItemIndexes(Kitchen kitchen) {
         cookTimeByMenuItemName = new HashMap<>();
+        stationByMenuItemName = new HashMap<>();
+        cookTimeDistributionByMenuItemName = new HashMap<>();
         // Build cookTimeByMenuItemName index.
         for (Menu menu : kitchen.getMenus()) {
             if (menu.getMenuItemsSize() == 0) {
@@ -30,11 +35,29 @@ public class KitchenMenuItemIndexes {
                 Preconditions.checkArgument(
                         !Strings.isNullOrEmpty(menu.getName()), "Cannot build index due to invalid item name.");
                 cookTimeByMenuItemName.put(menuItem.getName(), menuItem.getCookTimeSeconds());
+                if (menuItem.getStation() != null) {
+                    stationByMenuItemName.put(menuItem.getName(), menuItem.getStation());
+                }
+                cookTimeDistributionByMenuItemName.put(menuItem.getName(), menuItem.getCookTimeDistribution());
             }
         }
     }
 
+    public boolean hasMenuItem(String menuItemName) {
+        return cookTimeByMenuItemName.containsKey(menuItemName);
+    }
+
     public int getCookTime(String menuItemName) {
         return cookTimeByMenuItemName.get(menuItemName);
     }
+
+    /** Get the station which prepares a menu item, or null if it is not assigned to a station. */
+    public String getStation(String menuItemName) {
+        return stationByMenuItemName.get(menuItemName);
+    }
+
+    /** Get how a menu item's cook time varies, which is fixed unless configured. */
+    public CookTimeDistribution getCookTimeDistribution(String menuItemName) {
+        return cookTimeDistributionByMenuItemName.get(menuItemName);
+    }
 }
@@ -0,0 +1,388 @@
+package com.marcop.foodsystem.indexing;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Suppliers;
+import com.google.common.primitives.ImmutableLongArray;
+import com.marcop.foodsystem.model.Order;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Index of the pending [orderedAt, processingStartedAt) and processing [processingStartedAt, completedAt) intervals
+ * of completed orders, to find what was pending or in process at a time, or during a window.
+ *
+ * Counts come from the sorted start and end times of each phase's intervals: the intervals overlapping a window are
+ * those which start before its end, less those which ended by its start, so counts are two binary searches, and
+ * counts of items are the same over prefix sums of item counts. Lists of orders come from a centered interval tree,
+ * in O(log n + k) for k orders found. Empty intervals (e.g. orders which never waited) contain no time, so are
+ * never found.
+ *
+ * The index is immutable, built from the orders once, and holds primitive arrays of times and order IDs only, so
+ * it can be built over an off heap store. Orders are looked up by ID in the store. A Builder collects the times as
+ * orders complete, so a live index can be rebuilt without reading every order back, or built lazily.
+ */
+public class OrderIntervalIndex {
+
+    public enum Phase {
+        // From orderedAt until processingStartedAt.
+        PENDING,
+        // From processingStartedAt until completedAt.
+        PROCESSING
+    }
+
+    private final Intervals pending;
+    private final Intervals processing;
+
+    public OrderIntervalIndex(Iterable<Order> completedOrders) {
+        this(builder().addAll(completedOrders));
+    }
+
+    private OrderIntervalIndex(Builder builder) {
+        this(builder.orderIds, builder.orderedAtMillis, builder.startedMillis, builder.completedMillis,
+                builder.itemCounts, builder.size);
+    }
+
+    /** Index the first size orders of the builder's columns. */
+    private OrderIntervalIndex(long[] allOrderIds, long[] allOrderedAtMillis, long[] allStartedMillis,
+                               long[] allCompletedMillis, int[] allItemCounts, int size) {
+        long[] orderIds = Arrays.copyOf(allOrderIds, size);
+        long[] orderedAtMillis = Arrays.copyOf(allOrderedAtMillis, size);
+        long[] startedMillis = Arrays.copyOf(allStartedMillis, size);
+        long[] completedMillis = Arrays.copyOf(allCompletedMillis, size);
+        int[] itemCounts = Arrays.copyOf(allItemCounts, size);
+        pending = new Intervals(orderIds, orderedAtMillis, startedMillis, itemCounts);
+        processing = new Intervals(orderIds, startedMillis, completedMillis, itemCounts);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Collects the times of completed orders as they complete, in primitive columns, so an index can be built at
+     * any point without reading the orders back from a store. The builder can still be added to after a build.
+     */
+    public static class Builder {
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private long[] orderIds = new long[INITIAL_CAPACITY];
+        private long[] orderedAtMillis = new long[INITIAL_CAPACITY];
+        private long[] startedMillis = new long[INITIAL_CAPACITY];
+        private long[] completedMillis = new long[INITIAL_CAPACITY];
+        private int[] itemCounts = new int[INITIAL_CAPACITY];
+        private int size;
+
+        private Builder() {
+        }
+
+        public Builder add(Order order) {
+            Preconditions.checkArgument(order.getProcessingStartedAt() != null && order.getCompletedAt() != null,
+                    "Order " + order.getId() + " has not been completed.");
+            if (size == orderIds.length) {
+                int capacity = size * 2;
+                orderIds = Arrays.copyOf(orderIds, capacity);
+                orderedAtMillis = Arrays.copyOf(orderedAtMillis, capacity);
+                startedMillis = Arrays.copyOf(startedMillis, capacity);
+                completedMillis = Arrays.copyOf(completedMillis, capacity);
+                itemCounts = Arrays.copyOf(itemCounts, capacity);
+            }
+            orderIds[size] = order.getId();
+            orderedAtMillis[size] = order.getOrderedAt().getTime();
+            startedMillis[size] = order.getProcessingStartedAt().getTime();
+            completedMillis[size] = order.getCompletedAt().getTime();
+            itemCounts[size] = order.getOrderItemsSize();
+            size++;
+            return this;
+        }
+
+        public Builder addAll(Iterable<Order> orders) {
+            for (Order order : orders) {
+                add(order);
+            }
+            return this;
+        }
+
+        /** Get the number of orders added. */
+        public int size() {
+            return size;
+        }
+
+        /** Build an index of the orders added so far. */
+        public OrderIntervalIndex build() {
+            return new OrderIntervalIndex(this);
+        }
+
+        /**
+         * Get an index of the orders added so far, built on first use, at most once. Added orders are never
+         * rewritten (growing copies the columns), so it may be used on another thread while more orders are added,
+         * once safely published to it (e.g. through a volatile field).
+         */
+        public Supplier<OrderIntervalIndex> buildLazily() {
+            long[] orderIds = this.orderIds;
+            long[] orderedAtMillis = this.orderedAtMillis;
+            long[] startedMillis = this.startedMillis;
+            long[] completedMillis = this.completedMillis;
+            int[] itemCounts = this.itemCounts;
+            int size = this.size;
+            return Suppliers.memoize(() -> new OrderIntervalIndex(
+                    orderIds, orderedAtMillis, startedMillis, completedMillis, itemCounts, size));
+        }
+    }
+
+    /** Get the number of orders in a phase at a time. */
+    public int countAt(Phase phase, Timestamp at) {
+        return intervals(phase).count(at.getTime(), at.getTime() + 1);
+    }
+
+    /** Get the number of orders in a phase at any time in [from, to). */
+    public int countDuring(Phase phase, Timestamp from, Timestamp to) {
+        checkWindow(from, to);
+        return intervals(phase).count(from.getTime(), to.getTime());
+    }
+
+    /** Get the number of items of the orders in a phase at a time. */
+    public long countItemsAt(Phase phase, Timestamp at) {
+        return intervals(phase).countItems(at.getTime());
+    }
+
+    /** Get the IDs of orders in a phase at a time, in no particular order. */
+    public long[] getOrderIdsAt(Phase phase, Timestamp at) {
+        return intervals(phase).find(at.getTime(), at.getTime() + 1);
+    }
+
+    /** Get the IDs of orders in a phase at any time in [from, to), in no particular order. */
+    public long[] getOrderIdsDuring(Phase phase, Timestamp from, Timestamp to) {
+        checkWindow(from, to);
+        return intervals(phase).find(from.getTime(), to.getTime());
+    }
+
+    /** Get the number of non-empty intervals indexed for a phase. */
+    public int size(Phase phase) {
+        return intervals(phase).startMillis.length;
+    }
+
+    private Intervals intervals(Phase phase) {
+        return phase == Phase.PENDING ? pending : processing;
+    }
+
+    private static void checkWindow(Timestamp from, Timestamp to) {
+        Preconditions.checkArgument(from.before(to), "Window start must be before its end.");
+    }
+
+    /** Number of values in a sorted array which are at most a value. */
+    private static int countAtMost(long[] sorted, long value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** Half open intervals [start, end) of one phase. */
+    private static class Intervals {
+        // Each interval, by start time.
+        private final long[] startMillis;
+        private final long[] endMillis;
+        private final long[] orderIds;
+
+        // Sorted start and end times, and prefix sums of item counts in the same order (one longer).
+        private final long[] sortedStartMillis;
+        private final long[] sortedEndMillis;
+        private final long[] itemsByStart;
+        private final long[] itemsByEnd;
+
+        // Centered interval tree, as arrays by node. Node n holds the intervals containing its center, as a slice
+        // [from, to) of byStart (ascending start) and byEnd (descending end), and children with the intervals
+        // ending by its center (left) and starting after it (right), or -1.
+        private final long[] centerMillis;
+        private final int[] left;
+        private final int[] right;
+        private final int[] sliceFrom;
+        private final int[] sliceTo;
+        private final int[] byStart;
+        private final int[] byEnd;
+        private int nodeCount;
+        private int sliceEnd;
+        private final int root;
+
+        Intervals(long[] allOrderIds, long[] allStartMillis, long[] allEndMillis, int[] itemCounts) {
+            int n = 0;
+            int[] nonEmpty = new int[allOrderIds.length];
+            for (int i = 0; i < allOrderIds.length; i++) {
+                if (allEndMillis[i] > allStartMillis[i]) {
+                    nonEmpty[n++] = i;
+                }
+            }
+            // Scratch space for sorting and partitioning, shared by every step of the build.
+            int[] scratch = new int[n];
+            sortByKey(nonEmpty, 0, n, allStartMillis, scratch);
+            startMillis = new long[n];
+            endMillis = new long[n];
+            orderIds = new long[n];
+            long[] items = new long[n];
+            for (int i = 0; i < n; i++) {
+                startMillis[i] = allStartMillis[nonEmpty[i]];
+                endMillis[i] = allEndMillis[nonEmpty[i]];
+                orderIds[i] = allOrderIds[nonEmpty[i]];
+                items[i] = itemCounts[nonEmpty[i]];
+            }
+
+            sortedStartMillis = startMillis;
+            itemsByStart = prefixSums(items);
+            // Reused for the end order, then for the intervals being partitioned into nodes.
+            int[] intervals = nonEmpty;
+            for (int i = 0; i < n; i++) {
+                intervals[i] = i;
+            }
+            sortByKey(intervals, 0, n, endMillis, scratch);
+            sortedEndMillis = new long[n];
+            long[] itemsInEndOrder = new long[n];
+            for (int i = 0; i < n; i++) {
+                sortedEndMillis[i] = endMillis[intervals[i]];
+                itemsInEndOrder[i] = items[intervals[i]];
+            }
+            itemsByEnd = prefixSums(itemsInEndOrder);
+
+            // Each node holds at least the interval its center is taken from, so there are at most n nodes.
+            centerMillis = new long[n];
+            left = new int[n];
+            right = new int[n];
+            sliceFrom = new int[n];
+            sliceTo = new int[n];
+            byStart = new int[n];
+            byEnd = new int[n];
+            for (int i = 0; i < n; i++) {
+                intervals[i] = i;
+            }
+            root = build(intervals, 0, n, scratch);
+        }
+
+        /**
+         * Build a node from the intervals in [from, to) of intervals, by start time, and get its number, or -1 if
+         * there are none. The range is partitioned in place into the left and right children's intervals.
+         */
+        private int build(int[] intervals, int from, int to, int[] scratch) {
+            if (from == to) {
+                return -1;
+            }
+            int node = nodeCount++;
+            long center = startMillis[intervals[from + (to - from) / 2]];
+            int leftTo = from;
+            int rightLength = 0;
+            sliceFrom[node] = sliceEnd;
+            // Partitioning keeps each part in start order. Left intervals are moved down over the range, which has
+            // already been read, and right intervals wait in scratch until the end of it is free.
+            for (int k = from; k < to; k++) {
+                int i = intervals[k];
+                if (endMillis[i] <= center) {
+                    intervals[leftTo++] = i;
+                } else if (startMillis[i] > center) {
+                    scratch[rightLength++] = i;
+                } else {
+                    byStart[sliceEnd] = i;
+                    byEnd[sliceEnd++] = i;
+                }
+            }
+            int rightFrom = to - rightLength;
+            System.arraycopy(scratch, 0, intervals, rightFrom, rightLength);
+            sliceTo[node] = sliceEnd;
+            sortByKey(byEnd, sliceFrom[node], sliceTo[node], endMillis, scratch);
+            reverse(byEnd, sliceFrom[node], sliceTo[node]);
+            centerMillis[node] = center;
+            left[node] = build(intervals, from, leftTo, scratch);
+            right[node] = build(intervals, rightFrom, to, scratch);
+            return node;
+        }
+
+        /** Stable sort of values[from, to) by keys[value], with scratch at least as long as the range. */
+        private static void sortByKey(int[] values, int from, int to, long[] keys, int[] scratch) {
+            int size = to - from;
+            // Bottom up merge sort, so there are no boxed comparisons.
+            for (int width = 1; width < size; width *= 2) {
+                for (int low = 0; low < size; low += 2 * width) {
+                    int mid = Math.min(low + width, size);
+                    int high = Math.min(low + 2 * width, size);
+                    int i = from + low;
+                    int j = from + mid;
+                    int k = low;
+                    while (i < from + mid && j < from + high) {
+                        scratch[k++] = keys[values[j]] < keys[values[i]] ? values[j++] : values[i++];
+                    }
+                    while (i < from + mid) {
+                        scratch[k++] = values[i++];
+                    }
+                    while (j < from + high) {
+                        scratch[k++] = values[j++];
+                    }
+                }
+                System.arraycopy(scratch, 0, values, from, size);
+            }
+        }
+
+        private static void reverse(int[] values, int from, int to) {
+            for (int i = from, j = to - 1; i < j; i++, j--) {
+                int value = values[i];
+                values[i] = values[j];
+                values[j] = value;
+            }
+        }
+
+        /** Number of intervals overlapping [from, to): those starting before to, less those ended by from. */
+        int count(long fromMillis, long toMillis) {
+            return countAtMost(sortedStartMillis, toMillis - 1) - countAtMost(sortedEndMillis, fromMillis);
+        }
+
+        long countItems(long atMillis) {
+            return itemsByStart[countAtMost(sortedStartMillis, atMillis)]
+                    - itemsByEnd[countAtMost(sortedEndMillis, atMillis)];
+        }
+
+        long[] find(long fromMillis, long toMillis) {
+            ImmutableLongArray.Builder found = ImmutableLongArray.builder();
+            find(root, fromMillis, toMillis, found);
+            return found.build().toArray();
+        }
+
+        private void find(int node, long fromMillis, long toMillis, ImmutableLongArray.Builder found) {
+            while (node != -1) {
+                long center = centerMillis[node];
+                if (toMillis <= center) {
+                    // Node intervals end after the window, so overlap it if they start before its end.
+                    for (int k = sliceFrom[node]; k < sliceTo[node] && startMillis[byStart[k]] < toMillis; k++) {
+                        found.add(orderIds[byStart[k]]);
+                    }
+                    node = left[node];
+                } else if (fromMillis >= center) {
+                    // Node intervals start before the window, so overlap it if they end after its start.
+                    for (int k = sliceFrom[node]; k < sliceTo[node] && endMillis[byEnd[k]] > fromMillis; k++) {
+                        found.add(orderIds[byEnd[k]]);
+                    }
+                    node = right[node];
+                } else {
+                    // The window contains the center, so every node interval overlaps it.
+                    for (int k = sliceFrom[node]; k < sliceTo[node]; k++) {
+                        found.add(orderIds[byStart[k]]);
+                    }
+                    find(left[node], fromMillis, toMillis, found);
+                    node = right[node];
+                }
+            }
+        }
+
+        private static long[] prefixSums(long[] values) {
+            long[] sums = new long[values.length + 1];
+            for (int i = 0; i < values.length; i++) {
+                sums[i + 1] = sums[i] + values[i];
+            }
+            return sums;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.marcop.foodsystem.input;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.marcop.foodsystem.model.Order;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+
+/**
+ * Applies a stage (e.g. validate and enrich) to orders in parallel batches, then passes them to a sink in their
+ * original order.
+ *
+ * A feeder thread cuts the source into batches, and submits each batch to a pool of workers. Results wait in a
+ * bounded queue, in source order, so the feeder blocks when the sink falls behind. The sink runs on the calling
+ * thread, so it can insert into stores which are not thread safe. If the stage or the sink fails, the feeder and
+ * the workers are interrupted, and the failure is thrown from run.
+ */
+public class OrderPipeline {
+
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+    // Batches queued (in progress or done) per worker thread.
+    private static final int QUEUED_BATCHES_PER_THREAD = 4;
+    private static final Future<List<Order>> END_OF_SOURCE = CompletableFuture.completedFuture(null);
+
+    private final int parallelism;
+    private final int batchSize;
+
+    public OrderPipeline(int parallelism, int batchSize) {
+        Preconditions.checkArgument(parallelism > 0, "Parallelism must be greater than 0.");
+        Preconditions.checkArgument(batchSize > 0, "Batch size must be greater than 0.");
+        this.parallelism = parallelism;
+        this.batchSize = batchSize;
+    }
+
+    /** Apply stage to every order from source, in parallel, then sink to each, in source order. */
+    public void run(Iterator<Order> source, Consumer<Order> stage, Consumer<Order> sink) {
+        if (parallelism == 1) {
+            while (source.hasNext()) {
+                Order order = source.next();
+                stage.accept(order);
+                sink.accept(order);
+            }
+            return;
+        }
+        BlockingQueue<Future<List<Order>>> batches = new ArrayBlockingQueue<>(parallelism * QUEUED_BATCHES_PER_THREAD);
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, daemonThreads("order-pipeline-worker-%d"));
+        ExecutorService feeder = Executors.newSingleThreadExecutor(daemonThreads("order-pipeline-feeder-%d"));
+        try {
+            Future<Void> feed = feeder.submit(() -> {
+                Future<List<Order>> end = END_OF_SOURCE;
+                try {
+                    while (source.hasNext()) {
+                        List<Order> batch = new ArrayList<>(batchSize);
+                        while (batch.size() < batchSize && source.hasNext()) {
+                            batch.add(source.next());
+                        }
+                        batches.put(workers.submit(() -> {
+                            for (Order order : batch) {
+                                stage.accept(order);
+                            }
+                            return batch;
+                        }));
+                    }
+                } catch (RuntimeException e) {
+                    // Reported by the calling thread, after the batches read before the failure.
+                    CompletableFuture<List<Order>> failure = new CompletableFuture<>();
+                    failure.completeExceptionally(e);
+                    end = failure;
+                }
+                // Never put after an interrupt: the calling thread has stopped taking, so the queue may stay full.
+                batches.put(end);
+                return null;
+            });
+            while (true) {
+                Future<List<Order>> batch = batches.take();
+                if (batch == END_OF_SOURCE) {
+                    break;
+                }
+                for (Order order : await(batch)) {
+                    sink.accept(order);
+                }
+            }
+            await(feed);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while processing orders.", e);
+        } finally {
+            feeder.shutdownNow();
+            workers.shutdownNow();
+        }
+    }
+
+    // Daemon threads, so a stuck stage cannot keep the JVM alive after the calling thread gives up.
+    private static ThreadFactory daemonThreads(String nameFormat) {
+        return new ThreadFactoryBuilder().setDaemon(true).setNameFormat(nameFormat).build();
+    }
+
+    private static <T> T await(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
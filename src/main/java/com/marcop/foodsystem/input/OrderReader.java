@@ -0,0 +1,434 @@
+package com.marcop.foodsystem.input;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.Version;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.google.common.base.CharMatcher;
+import com.marcop.foodsystem.dto.OrderDeserializer;
+import com.marcop.foodsystem.model.Order;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.xerial.snappy.SnappyFramedInputStream;
+import org.xerial.snappy.SnappyInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads orders from JSON files, through the Hadoop FileSystem API.
+ * The input path can be a single file, a directory of shard files, or a glob (e.g. orders/2019-01-01-*.json).
+ * Shards are parsed in parallel, and merged by orderedAt into a single list.
+ * Compressed files are decompressed while they are parsed, without being written to disk first. The format is
+ * detected from magic bytes (gzip, snappy-java and snappy framed streams), or else from the file extension (Hadoop codecs).
+ *
+ * A single local file of JSON, gzip or snappy is read with the JDK alone (see read(String)), so that short runs do not
+ * pay for loading the Hadoop FileSystem. The Hadoop configuration is only created when it is needed.
+ *
+ * Inputs larger than the heap are streamed instead (see stream(String)): each shard is parsed an order at a time
+ * from a Jackson JsonParser, and the shards are merged by orderedAt as they are parsed, so only one order per shard
+ * is held at a time.
+ */
+public class OrderReader {
+
+    private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+    // Order IDs are assigned in blocks per shard, so that they do not depend on the order shards are parsed in. Each
+    // read reserves its blocks from Order's ID sequence, so reads do not collide with each other, or other orders.
+    private static final long ORDER_IDS_PER_SHARD = 1L << 40;
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+    private static final byte[] GZIP_MAGIC = {(byte) 0x1f, (byte) 0x8b};
+    // Header of snappy-java's own stream format (SnappyOutputStream).
+    private static final byte[] SNAPPY_STREAM_MAGIC = {(byte) 0x82, 'S', 'N', 'A', 'P', 'P', 'Y', 0x00};
+    // Stream identifier chunk of the snappy framing format.
+    private static final byte[] SNAPPY_FRAMED_MAGIC = {(byte) 0xff, 0x06, 0x00, 0x00, 's', 'N', 'a', 'P', 'p', 'Y'};
+    private static final Comparator<Order> BY_ORDERED_AT = Comparator.comparing(
+            Order::getOrderedAt, Comparator.nullsFirst(Comparator.<Timestamp>naturalOrder()));
+
+    private final int parallelism;
+    private Configuration conf;
+    private CompressionCodecFactory codecFactory;
+
+    public OrderReader(Configuration conf, int parallelism) {
+        this.conf = conf;
+        this.parallelism = parallelism;
+    }
+
+    /** Create a reader, which creates a default Hadoop configuration if it needs one. */
+    public OrderReader(int parallelism) {
+        this(null, parallelism);
+    }
+
+    private synchronized Configuration getConf() {
+        if (conf == null) {
+            conf = new Configuration();
+        }
+        return conf;
+    }
+
+    private synchronized CompressionCodecFactory getCodecFactory() {
+        if (codecFactory == null) {
+            codecFactory = new CompressionCodecFactory(getConf());
+        }
+        return codecFactory;
+    }
+
+    /** Read all orders from a file, directory or glob, given as a string path or URI. */
+    public List<Order> read(String inputPath) throws IOException {
+        List<Order> orders = readLocalFile(inputPath);
+        return orders != null ? orders : read(new Path(inputPath));
+    }
+
+    /**
+     * Read orders from a path with the JDK alone, if it is a single local file which is gzip or snappy (by magic
+     * bytes), or uncompressed with a .json extension. Otherwise return null, for the Hadoop FileSystem to read.
+     */
+    private static List<Order> readLocalFile(String inputPath) throws IOException {
+        InputStream inputStream = openLocalFile(inputPath);
+        if (inputStream == null) {
+            return null;
+        }
+        try {
+            return parseOrders(inputStream, Order.reserveIds(ORDER_IDS_PER_SHARD));
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /** Open a path with the JDK alone, decompressed, if readLocalFile can read it. Otherwise return null. */
+    private static InputStream openLocalFile(String inputPath) throws IOException {
+        if (CharMatcher.anyOf(":*?[]{}\\").matchesAnyOf(inputPath)) {
+            // A URI, or a glob.
+            return null;
+        }
+        java.nio.file.Path file = Paths.get(inputPath);
+        if (!Files.isRegularFile(file) || !isVisible(file.getFileName().toString())) {
+            return null;
+        }
+        InputStream inputStream = new BufferedInputStream(Files.newInputStream(file), READ_BUFFER_BYTES);
+        try {
+            InputStream decompressed = decompressByMagic(inputStream);
+            if (decompressed != null) {
+                inputStream = decompressed;
+            } else if (!inputPath.endsWith(".json")) {
+                inputStream.close();
+                return null;
+            }
+            LOGGER.info(String.format("Reading orders from 1 file(s) in %s.", inputPath));
+            return inputStream;
+        } catch (IOException | RuntimeException e) {
+            inputStream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Stream orders from a file, directory or glob, given as a string path or URI. Shards are merged by orderedAt as
+     * they are parsed, so unlike read, a shard which is not sorted by orderedAt is not sorted first. Close the stream
+     * once done with it.
+     */
+    public OrderStream stream(String inputPath) throws IOException {
+        InputStream localFile = openLocalFile(inputPath);
+        if (localFile != null) {
+            return new OrderStream(Collections.singletonList(localFile), Order.reserveIds(ORDER_IDS_PER_SHARD));
+        }
+        List<Path> shards = listShards(new Path(inputPath));
+        LOGGER.info(String.format("Streaming orders from %d file(s) in %s.", shards.size(), inputPath));
+        List<InputStream> inputStreams = new ArrayList<>();
+        try {
+            for (Path shard : shards) {
+                inputStreams.add(openDecompressed(shard));
+            }
+        } catch (IOException | RuntimeException e) {
+            for (InputStream inputStream : inputStreams) {
+                inputStream.close();
+            }
+            throw e;
+        }
+        return new OrderStream(inputStreams, Order.reserveIds(inputStreams.size() * ORDER_IDS_PER_SHARD));
+    }
+
+    /** Read all orders from a file, directory or glob. */
+    public List<Order> read(Path inputPath) throws IOException {
+        final List<Path> shards = listShards(inputPath);
+        LOGGER.info(String.format("Reading orders from %d file(s) in %s.", shards.size(), inputPath));
+        long firstOrderId = Order.reserveIds(shards.size() * ORDER_IDS_PER_SHARD);
+        if (shards.size() == 1) {
+            return readShard(shards.get(0), firstOrderId);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, shards.size()));
+        try {
+            List<Future<List<Order>>> shardReads = new ArrayList<>();
+            for (int i = 0; i < shards.size(); i++) {
+                final int shardIndex = i;
+                shardReads.add(executor.submit((Callable<List<Order>>) () -> {
+                    List<Order> orders = readShard(shards.get(shardIndex),
+                            firstOrderId + shardIndex * ORDER_IDS_PER_SHARD);
+                    // Stable sort, so orders with the same orderedAt keep their order in the file.
+                    orders.sort(BY_ORDERED_AT);
+                    return orders;
+                }));
+            }
+            List<List<Order>> shardOrders = new ArrayList<>();
+            for (Future<List<Order>> shardRead : shardReads) {
+                shardOrders.add(shardRead.get());
+            }
+            return mergeByOrderedAt(shardOrders);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading orders.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to read orders.", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** Skip hidden and bookkeeping files (e.g. .crc, _SUCCESS). */
+    private static boolean isVisible(String fileName) {
+        return !fileName.startsWith(".") && !fileName.startsWith("_");
+    }
+
+    /** Resolve a file, directory or glob to a sorted list of files. */
+    private List<Path> listShards(Path inputPath) throws IOException {
+        PathFilter visibleFiles = path -> isVisible(path.getName());
+        FileSystem fileSystem = inputPath.getFileSystem(getConf());
+        FileStatus[] matches = fileSystem.globStatus(inputPath, visibleFiles);
+        if (matches == null || matches.length == 0) {
+            throw new IOException("No order input found at " + inputPath);
+        }
+        List<Path> shards = new ArrayList<>();
+        for (FileStatus match : matches) {
+            if (match.isDirectory()) {
+                for (FileStatus child : fileSystem.listStatus(match.getPath(), visibleFiles)) {
+                    if (child.isFile()) {
+                        shards.add(child.getPath());
+                    }
+                }
+            } else {
+                shards.add(match.getPath());
+            }
+        }
+        if (shards.isEmpty()) {
+            throw new IOException("No order files found at " + inputPath);
+        }
+        shards.sort(Comparator.comparing(Path::toString));
+        return shards;
+    }
+
+    /** Parse a single JSON file of orders, with IDs from firstOrderId. */
+    private List<Order> readShard(Path shard, long firstOrderId) throws IOException {
+        try (InputStream inputStream = openDecompressed(shard)) {
+            return parseOrders(inputStream, firstOrderId);
+        }
+    }
+
+    /** Parse a JSON array of orders from a stream. */
+    private static List<Order> parseOrders(InputStream inputStream, long firstOrderId) throws IOException {
+        ObjectMapper objectMapper = orderMapper(firstOrderId);
+        return objectMapper.readValue(
+                inputStream,
+                objectMapper.getTypeFactory().constructCollectionType(List.class, Order.class));
+    }
+
+    /** Create a mapper which deserializes the orders of a shard, with IDs from the shard's block. */
+    private static ObjectMapper orderMapper(long firstOrderId) {
+        ObjectMapper objectMapper = new ObjectMapper();
+        SimpleModule module = new SimpleModule("OrderDeserializer", new Version(1, 0, 0, null, null, null));
+        module.addDeserializer(Order.class, new OrderDeserializer(firstOrderId));
+        objectMapper.registerModule(module);
+        return objectMapper;
+    }
+
+    /** Open a file, decompressing it as it is read if it is compressed. */
+    private InputStream openDecompressed(Path shard) throws IOException {
+        InputStream inputStream =
+                new BufferedInputStream(shard.getFileSystem(getConf()).open(shard), READ_BUFFER_BYTES);
+        try {
+            InputStream decompressed = decompressByMagic(inputStream);
+            if (decompressed != null) {
+                return decompressed;
+            }
+            CompressionCodec codec = getCodecFactory().getCodec(shard);
+            if (codec != null) {
+                return codec.createInputStream(inputStream);
+            }
+            return inputStream;
+        } catch (IOException | RuntimeException e) {
+            inputStream.close();
+            throw e;
+        }
+    }
+
+    /** Wrap a stream to decompress it, if it starts with the magic bytes of a known format, or else return null. */
+    private static InputStream decompressByMagic(InputStream inputStream) throws IOException {
+        if (startsWith(inputStream, GZIP_MAGIC)) {
+            return new GZIPInputStream(inputStream, READ_BUFFER_BYTES);
+        }
+        if (startsWith(inputStream, SNAPPY_STREAM_MAGIC)) {
+            return new SnappyInputStream(inputStream);
+        }
+        if (startsWith(inputStream, SNAPPY_FRAMED_MAGIC)) {
+            return new SnappyFramedInputStream(inputStream);
+        }
+        return null;
+    }
+
+    /** Check if a stream starts with the given bytes, without consuming them. */
+    private static boolean startsWith(InputStream inputStream, byte[] magic) throws IOException {
+        inputStream.mark(magic.length);
+        try {
+            for (byte magicByte : magic) {
+                if (inputStream.read() != (magicByte & 0xff)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            inputStream.reset();
+        }
+    }
+
+    /** K-way merge of lists sorted by orderedAt. Ties are taken from the earlier shard first. */
+    private static List<Order> mergeByOrderedAt(final List<List<Order>> shardOrders) {
+        int totalOrders = 0;
+        // Heap of {shard index, position in shard}.
+        PriorityQueue<int[]> heads = new PriorityQueue<>(Math.max(1, shardOrders.size()), (a, b) -> {
+            int compare = BY_ORDERED_AT.compare(shardOrders.get(a[0]).get(a[1]), shardOrders.get(b[0]).get(b[1]));
+            return compare != 0 ? compare : Integer.compare(a[0], b[0]);
+        });
+        for (int i = 0; i < shardOrders.size(); i++) {
+            totalOrders += shardOrders.get(i).size();
+            if (!shardOrders.get(i).isEmpty()) {
+                heads.add(new int[] {i, 0});
+            }
+        }
+        List<Order> orders = new ArrayList<>(totalOrders);
+        while (!heads.isEmpty()) {
+            int[] head = heads.poll();
+            List<Order> shard = shardOrders.get(head[0]);
+            orders.add(shard.get(head[1]));
+            if (++head[1] < shard.size()) {
+                heads.add(head);
+            }
+        }
+        return orders;
+    }
+
+    /**
+     * Orders streamed from one or more shards, merged by orderedAt. Ties are taken from the earlier shard first.
+     * Each shard is parsed an order at a time, so the stream holds one parsed order per shard.
+     */
+    public static class OrderStream implements Iterator<Order>, Closeable {
+        private final List<ShardParser> shards = new ArrayList<>();
+        // Shards with orders left, by their next order.
+        private final PriorityQueue<ShardParser> heads;
+
+        /** Stream the shards, giving shard i the IDs from firstOrderId + i * ORDER_IDS_PER_SHARD. */
+        private OrderStream(List<InputStream> inputStreams, long firstOrderId) throws IOException {
+            heads = new PriorityQueue<>(Math.max(1, inputStreams.size()),
+                    Comparator.comparing((ShardParser shard) -> shard.next, BY_ORDERED_AT)
+                            .thenComparingInt(shard -> shard.shardIndex));
+            try {
+                for (int i = 0; i < inputStreams.size(); i++) {
+                    ShardParser shard = new ShardParser(inputStreams.get(i), i, firstOrderId + i * ORDER_IDS_PER_SHARD);
+                    shards.add(shard);
+                    if (shard.next != null) {
+                        heads.add(shard);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                for (int i = shards.size(); i < inputStreams.size(); i++) {
+                    inputStreams.get(i).close();
+                }
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Order next() {
+            ShardParser shard = heads.poll();
+            if (shard == null) {
+                throw new NoSuchElementException();
+            }
+            Order order = shard.next;
+            try {
+                shard.advance();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to parse orders of shard " + shard.shardIndex + ".", e);
+            }
+            if (shard.next != null) {
+                heads.add(shard);
+            }
+            return order;
+        }
+
+        @Override
+        public void close() throws IOException {
+            heads.clear();
+            for (ShardParser shard : shards) {
+                shard.parser.close();
+            }
+        }
+    }
+
+    /** Parser of a JSON array of orders, an order at a time, holding the next order. */
+    private static class ShardParser {
+        private final int shardIndex;
+        private final ObjectMapper objectMapper;
+        private final JsonParser parser;
+        // Next order in the shard, or null once it is read.
+        private Order next;
+
+        ShardParser(InputStream inputStream, int shardIndex, long firstOrderId) throws IOException {
+            this.shardIndex = shardIndex;
+            this.objectMapper = orderMapper(firstOrderId);
+            // Closing the parser closes the stream.
+            this.parser = objectMapper.getFactory().createParser(inputStream);
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                parser.close();
+                throw new IOException("Expected a JSON array of orders in shard " + shardIndex + ".");
+            }
+            advance();
+        }
+
+        void advance() throws IOException {
+            next = parser.nextToken() == JsonToken.END_ARRAY ? null : objectMapper.readValue(parser, Order.class);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.marcop.foodsystem.model;
+
+import com.google.common.base.Preconditions;
+
+import java.util.SplittableRandom;
+
+/**
+ * How long a menu item takes to prepare, when it varies between preparations. Sampled by Monte Carlo simulations,
+ * while normal simulations use the item's fixed cook time.
+ *
+ * Immutable, so one instance is shared by every replica. Sampling draws from the replica's own random source and
+ * does not allocate.
+ **/
+public final class CookTimeDistribution {
+
+    public enum Type {
+        // Always the item's cook time.
+        FIXED,
+        // Uniform between a minimum and maximum.
+        UNIFORM,
+        // Normal around the item's cook time, with a standard deviation.
+        NORMAL,
+        // Log-normal with the item's cook time as median, and a shape (sigma of the log).
+        LOG_NORMAL
+    }
+
+    // Shortest cook time sampled, so that a wide normal distribution never gives an item which takes no time.
+    private static final int MIN_COOK_TIME_SECONDS = 1;
+
+    private final Type type;
+    // Cook time (in seconds): the fixed value, mean or median. The minimum for UNIFORM.
+    private final int cookTimeSeconds;
+    // Maximum for UNIFORM, standard deviation (in seconds) for NORMAL, sigma for LOG_NORMAL.
+    private final double spread;
+
+    private CookTimeDistribution(Type type, int cookTimeSeconds, double spread) {
+        Preconditions.checkArgument(cookTimeSeconds > 0, "Cook time must be greater than 0.");
+        Preconditions.checkArgument(spread >= 0, "Cook time spread must not be negative.");
+        this.type = type;
+        this.cookTimeSeconds = cookTimeSeconds;
+        this.spread = spread;
+    }
+
+    public static CookTimeDistribution fixed(int cookTimeSeconds) {
+        return new CookTimeDistribution(Type.FIXED, cookTimeSeconds, 0);
+    }
+
+    public static CookTimeDistribution uniform(int minCookTimeSeconds, int maxCookTimeSeconds) {
+        Preconditions.checkArgument(maxCookTimeSeconds >= minCookTimeSeconds,
+                "Maximum cook time must not be less than the minimum.");
+        return new CookTimeDistribution(Type.UNIFORM, minCookTimeSeconds, maxCookTimeSeconds);
+    }
+
+    public static CookTimeDistribution normal(int meanCookTimeSeconds, double stddevSeconds) {
+        return new CookTimeDistribution(Type.NORMAL, meanCookTimeSeconds, stddevSeconds);
+    }
+
+    public static CookTimeDistribution logNormal(int medianCookTimeSeconds, double sigma) {
+        return new CookTimeDistribution(Type.LOG_NORMAL, medianCookTimeSeconds, sigma);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /** Draw a cook time (in seconds), of at least one second. */
+    public int sample(SplittableRandom random) {
+        switch (type) {
+            case UNIFORM:
+                return cookTimeSeconds + random.nextInt((int) spread - cookTimeSeconds + 1);
+            case NORMAL:
+                return Math.max(MIN_COOK_TIME_SECONDS,
+                        (int) Math.round(cookTimeSeconds + spread * nextGaussian(random)));
+            case LOG_NORMAL:
+                return Math.max(MIN_COOK_TIME_SECONDS,
+                        (int) Math.round(cookTimeSeconds * Math.exp(spread * nextGaussian(random))));
+            default:
+                return cookTimeSeconds;
+        }
+    }
+
+    /** Get the mean cook time (in seconds), ignoring the one second floor. */
+    public double getMeanSeconds() {
+        switch (type) {
+            case UNIFORM:
+                return (cookTimeSeconds + spread) / 2;
+            case LOG_NORMAL:
+                return cookTimeSeconds * Math.exp(spread * spread / 2);
+            default:
+                return cookTimeSeconds;
+        }
+    }
+
+    /** Standard normal draw by Box-Muller, as SplittableRandom has no nextGaussian. */
+    private static double nextGaussian(SplittableRandom random) {
+        // 1 - u is in (0, 1], so the log is finite.
+        double u = 1 - random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    @Override
+    public String toString() {
+        return type + "(" + cookTimeSeconds + (type == Type.FIXED ? "" : ", " + spread) + ")";
+    }
+}
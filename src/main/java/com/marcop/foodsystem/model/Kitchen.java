@@ -3,6 +3,9 @@ package com.marcop.foodsystem.model;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -21,13 +24,27 @@ public class Kitchen {
     // If this is 0, it implies that parallelism is unconstrained.
     private final int maxConcurentItems;
 
-    public Kitchen(String name, Set<Menu> menus, int maxConcurentItems) {
+    // Maximum number of items which each station (e.g. grill, fryer) can prepare concurrently, by station name.
+    // Stations which are not listed are unconstrained.
+    private final Map<String, Integer> stationCapacities;
+
+    public Kitchen(String name, Set<Menu> menus, int maxConcurentItems, Map<String, Integer> stationCapacities) {
         Preconditions.checkArgument(!Strings.isNullOrEmpty(name), "Kitchen name must be set and not empty");
         Preconditions.checkArgument(menus != null && !menus.isEmpty(), "Kitchen needs at least one menu");
         Preconditions.checkArgument(maxConcurentItems >= 0, "maxConcurentItems cannot be negative");
+        for (Map.Entry<String, Integer> entry : stationCapacities.entrySet()) {
+            Preconditions.checkArgument(!Strings.isNullOrEmpty(entry.getKey()), "Station name must be set");
+            Preconditions.checkArgument(entry.getValue() > 0,
+                    "Capacity of station " + entry.getKey() + " must be greater than 0");
+        }
         this.name = name;
         this.menus = menus;
         this.maxConcurentItems = maxConcurentItems;
+        this.stationCapacities = Collections.unmodifiableMap(new HashMap<>(stationCapacities));
+    }
+
+    public Kitchen(String name, Set<Menu> menus, int maxConcurentItems) {
+        this(name, menus, maxConcurentItems, Collections.<String, Integer>emptyMap());
     }
 
     public String getName() {
@@ -48,4 +65,8 @@ public class Kitchen {
     public int getMaxConcurentItems() {
         return maxConcurentItems;
     }
+
+    public Map<String, Integer> getStationCapacities() {
+        return stationCapacities;
+    }
 }
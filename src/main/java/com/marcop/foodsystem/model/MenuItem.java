@@ -17,11 +17,28 @@ public class MenuItem {
     // How long (in seconds) it takes to prepare the item.
     private final int cookTimeSeconds;
 
-    public MenuItem (String name, int cookTimeSeconds) {
+    // Station which prepares the item (e.g. "grill"), or null if not assigned to a station.
+    private final String station;
+
+    // How cook time varies between preparations, for Monte Carlo simulations. Fixed unless configured.
+    private final CookTimeDistribution cookTimeDistribution;
+
+    public MenuItem (String name, int cookTimeSeconds, String station, CookTimeDistribution cookTimeDistribution) {
         Preconditions.checkArgument(!Strings.isNullOrEmpty(name), "Name must be a non-empty String.");
         Preconditions.checkArgument(cookTimeSeconds > 0, "Cook time must be greater than 0.");
         this.name = name;
         this.cookTimeSeconds = cookTimeSeconds;
+        this.station = Strings.emptyToNull(station);
+        this.cookTimeDistribution = cookTimeDistribution != null
+                ? cookTimeDistribution : CookTimeDistribution.fixed(cookTimeSeconds);
+    }
+
+    public MenuItem (String name, int cookTimeSeconds, String station) {
+        this(name, cookTimeSeconds, station, null);
+    }
+
+    public MenuItem (String name, int cookTimeSeconds) {
+        this(name, cookTimeSeconds, null);
     }
 
     public String getName() {
@@ -31,4 +48,12 @@ public class MenuItem {
     public int getCookTimeSeconds() {
         return cookTimeSeconds;
     }
+
+    public String getStation() {
+        return station;
+    }
+
+    public CookTimeDistribution getCookTimeDistribution() {
+        return cookTimeDistribution;
+    }
 }
@@ -2,11 +2,17 @@ package com.marcop.foodsystem.model;
 
 import java.sql.Timestamp;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Represents a food order, which has a list of items, and other attributes.
  */
 public class Order implements Comparable<Order> {
+    // Source of IDs for newly ingested orders, and of the blocks of IDs reserved by readers (see reserveIds).
+    private static final AtomicLong ID_SEQUENCE = new AtomicLong();
+
+    // Unique ID, assigned when the order is ingested. Orders are looked up and removed from stores by ID.
+    private final long id;
     // When the order was submitted to the system.
     private final Timestamp orderedAt;
     // First and last name of ordering individual.
@@ -27,6 +33,11 @@ public class Order implements Comparable<Order> {
     private int totalPriceCents;
 
     public Order(Timestamp orderedAt, String name, String service, List<OrderItem> orderItems) {
+        this(ID_SEQUENCE.getAndIncrement(), orderedAt, name, service, orderItems);
+    }
+
+    public Order(long id, Timestamp orderedAt, String name, String service, List<OrderItem> orderItems) {
+        this.id = id;
         this.orderedAt = orderedAt;
         this.name = name;
         this.service = service;
@@ -41,6 +52,20 @@ public class Order implements Comparable<Order> {
         }
     }
 
+    /**
+     * Reserve count consecutive IDs, which no other order created in this process is given, and get the first.
+     * Used to assign IDs in blocks (e.g. per input shard) which do not collide with each other, or with IDs assigned
+     * by the constructor without one.
+     */
+    public static long reserveIds(long count) {
+        return ID_SEQUENCE.getAndAdd(count);
+    }
+
+    /** Get ID. */
+    public long getId() {
+        return id;
+    }
+
     /** Get orderedAt as a Timestamp. */
     public Timestamp getOrderedAt() {
         return orderedAt;
@@ -109,6 +134,18 @@ public class Order implements Comparable<Order> {
         state = newState;
     }
 
+    /** Clear processing progress, so that the order can be simulated again. */
+    public void resetProgress() {
+        processingStartedAt = null;
+        completedAt = null;
+        state = OrderState.CREATED;
+        for (OrderItem item : orderItems) {
+            item.updateState(ItemState.PENDING);
+            item.setProcessingStartedAt(null);
+            item.setCompletedAt(null);
+        }
+    }
+
     /** Set total cook time. */
     public void setTotalCookTimeSeconds(int totalCookTimeSeconds) {
         this.totalCookTimeSeconds = totalCookTimeSeconds;
@@ -125,6 +162,11 @@ public class Order implements Comparable<Order> {
         if (nameCompare != 0) {
             return nameCompare;
         }
-        return anotherOrder.getService().compareTo(service);
+        int serviceCompare = anotherOrder.getService().compareTo(service);
+        if (serviceCompare != 0) {
+            return serviceCompare;
+        }
+        // Otherwise identical orders are distinct entities. Earlier ingested orders come first.
+        return Long.compare(id, anotherOrder.getId());
     }
 }
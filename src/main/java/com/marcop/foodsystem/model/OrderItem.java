@@ -1,5 +1,7 @@
 package com.marcop.foodsystem.model;
 
+import java.sql.Timestamp;
+
 /**
  * An item associated with an order, and appropriate attributes.
  */
@@ -8,6 +10,9 @@ public class OrderItem {
     private final int priceCents;
     private ItemState state;
     private int cookTimeSeconds;
+    private String station;
+    private Timestamp processingStartedAt;
+    private Timestamp completedAt;
 
     public OrderItem(String name, int priceCents) {
         this.name = name;
@@ -38,4 +43,31 @@ public class OrderItem {
     public void setCookTimeSeconds(int cookTimeSeconds) {
         this.cookTimeSeconds = cookTimeSeconds;
     }
+
+    /** Get the kitchen station which prepares this item, or null if it is not assigned to a station. */
+    public String getStation() {
+        return station;
+    }
+
+    public void setStation(String station) {
+        this.station = station;
+    }
+
+    /** Get the time this item started processing, or null if it has not started. */
+    public Timestamp getProcessingStartedAt() {
+        return processingStartedAt;
+    }
+
+    public void setProcessingStartedAt(Timestamp processingStartedAt) {
+        this.processingStartedAt = processingStartedAt;
+    }
+
+    /** Get the time this item completed, or null if it has not completed. */
+    public Timestamp getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(Timestamp completedAt) {
+        this.completedAt = completedAt;
+    }
 }
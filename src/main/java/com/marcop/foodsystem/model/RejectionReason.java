@@ -0,0 +1,28 @@
+package com.marcop.foodsystem.model;
+
+public enum RejectionReason {
+    // Order has no orderedAt timestamp.
+    MISSING_TIMESTAMP("Missing timestamp"),
+    // Order has no items.
+    NO_ITEMS("No items"),
+    // Order has an item which is not on any of the kitchen's menus.
+    UNKNOWN_ITEM("Unknown item"),
+    // Order has more items than the kitchen, or one of its stations, can process at the same time.
+    TOO_MANY_ITEMS("Too many items for kitchen or station"),
+    // Order arrived while the pending queue was over its limit, and was shed.
+    SHED_NEWEST("Shed on arrival, pending queue over limit"),
+    // Order had waited longest when the pending queue went over its limit, and was shed.
+    SHED_OLDEST("Shed oldest, pending queue over limit"),
+    // Order had the most items when the pending queue went over its limit, and was shed.
+    SHED_LARGEST("Shed largest, pending queue over limit");
+
+    private final String description;
+
+    RejectionReason(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
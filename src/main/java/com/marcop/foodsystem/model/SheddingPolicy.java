@@ -0,0 +1,24 @@
+package com.marcop.foodsystem.model;
+
+/**
+ * Which pending order to reject when the pending queue is over its limit.
+ */
+public enum SheddingPolicy {
+    // Reject the order arriving.
+    REJECT_NEWEST(RejectionReason.SHED_NEWEST),
+    // Reject the order which has waited longest.
+    REJECT_OLDEST(RejectionReason.SHED_OLDEST),
+    // Reject the order with the most items, including the order arriving.
+    REJECT_LARGEST(RejectionReason.SHED_LARGEST);
+
+    private final RejectionReason rejectionReason;
+
+    SheddingPolicy(RejectionReason rejectionReason) {
+        this.rejectionReason = rejectionReason;
+    }
+
+    /** Get the reason orders rejected by this policy are counted under. */
+    public RejectionReason getRejectionReason() {
+        return rejectionReason;
+    }
+}
@@ -0,0 +1,32 @@
+package com.marcop.foodsystem.output;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes outputs through the Hadoop FileSystem API, e.g. to hdfs:// or s3a:// locations.
+ */
+public class HadoopOutputSink implements OutputSink {
+
+    private final Configuration conf;
+    private final Path root;
+
+    public HadoopOutputSink(Configuration conf, Path root) {
+        this.conf = conf;
+        this.root = root;
+    }
+
+    @Override
+    public OutputStream create(String relativePath) throws IOException {
+        Path file = new Path(root, relativePath);
+        return file.getFileSystem(conf).create(file, true);
+    }
+
+    @Override
+    public String describe(String relativePath) {
+        return new Path(root, relativePath).toString();
+    }
+}
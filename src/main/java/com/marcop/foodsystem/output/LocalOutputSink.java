@@ -0,0 +1,33 @@
+package com.marcop.foodsystem.output;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes outputs to a directory on the local filesystem, with the JDK alone.
+ */
+public class LocalOutputSink implements OutputSink {
+
+    private final Path root;
+
+    public LocalOutputSink(Path root) {
+        this.root = root;
+    }
+
+    @Override
+    public OutputStream create(String relativePath) throws IOException {
+        Path file = root.resolve(relativePath);
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        return new BufferedOutputStream(Files.newOutputStream(file));
+    }
+
+    @Override
+    public String describe(String relativePath) {
+        return root.resolve(relativePath).toString();
+    }
+}
@@ -0,0 +1,17 @@
+package com.marcop.foodsystem.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Location that application outputs (stats page, charts, tables) are written to, by path relative to the location.
+ * See OutputSinks to open one for a path or URI.
+ */
+public interface OutputSink {
+
+    // Create a file for writing, replacing any existing file. Parent directories are created as needed.
+    OutputStream create(String relativePath) throws IOException;
+
+    // Describe where a file is written, e.g. for logging.
+    String describe(String relativePath);
+}
@@ -0,0 +1,37 @@
+package com.marcop.foodsystem.output;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+
+import java.net.URI;
+import java.nio.file.Paths;
+
+/**
+ * Opens the output sink for an output path.
+ */
+public class OutputSinks {
+
+    private OutputSinks() {
+    }
+
+    /**
+     * Open a sink for a local path (or file: URI) with the JDK alone, or for any other URI (e.g. hdfs://) through
+     * Hadoop. Hadoop classes are only loaded in the second case, which keeps short local runs fast to start.
+     */
+    public static OutputSink open(String outputPath) {
+        if (outputPath.startsWith("file:")) {
+            URI uri = URI.create(outputPath);
+            // An opaque URI (e.g. file:out) is a relative path, which Paths.get(URI) rejects.
+            return new LocalOutputSink(uri.isOpaque()
+                    ? Paths.get(outputPath.substring("file:".length())) : Paths.get(uri));
+        }
+        if (outputPath.contains("://")) {
+            return openHadoop(outputPath);
+        }
+        return new LocalOutputSink(Paths.get(outputPath));
+    }
+
+    private static OutputSink openHadoop(String outputPath) {
+        return new HadoopOutputSink(new Configuration(), new Path(outputPath));
+    }
+}
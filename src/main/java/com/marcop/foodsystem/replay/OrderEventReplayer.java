@@ -0,0 +1,240 @@
+package com.marcop.foodsystem.replay;
+
+import com.google.common.base.Preconditions;
+import com.marcop.foodsystem.model.ItemState;
+import com.marcop.foodsystem.model.OrderState;
+import com.marcop.foodsystem.store.CompletedOrderStore;
+import com.marcop.foodsystem.store.OrderEventLog;
+
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays the order lifecycle events of a finished simulation (CREATED, PROCESSING, COMPLETE) at wall clock pace,
+ * sped up by a factor, as JSON lines to a sink. Used as a load generator for downstream consumers.
+ *
+ * Events are first sorted by simulated time, into primitive arrays. Each event is then written when its wall clock
+ * deadline is reached: the replayer parks until shortly before the next deadline, and spins the rest of the way,
+ * since parking alone can oversleep by far more than the gap between events. Events which are due together are
+ * written as one batch, and the sink is flushed before each wait.
+ *
+ * Event line: {"time":1546329605000,"order_id":12,"state":"CREATED","items":2}
+ */
+public class OrderEventReplayer {
+
+    public static final double DEFAULT_SPEEDUP = 1.0;
+    // Stop parking this long before a deadline, and spin instead.
+    private static final long SPIN_NANOS = 200_000;
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final int MAX_LINE_BYTES = 128;
+    private static final OrderState[] ORDER_STATES = OrderState.values();
+
+    private final double speedup;
+    private final byte[] buffer;
+    private int bufferSize;
+    private long eventCount;
+    private long maxLatenessNanos;
+    private long totalLatenessNanos;
+    private long batchCount;
+
+    public OrderEventReplayer(double speedup) {
+        Preconditions.checkArgument(speedup > 0, "Speedup must be greater than 0.");
+        this.speedup = speedup;
+        this.buffer = new byte[BUFFER_BYTES];
+    }
+
+    /**
+     * Open a sink for replayed events: "-" for standard output, "tcp:port" for a socket to a local port, or else
+     * a file path (which may be a named pipe).
+     */
+    public static OutputStream openSink(String target) throws IOException {
+        if (target.equals("-")) {
+            // Leave standard output open for the rest of the application.
+            return new FilterOutputStream(System.out) {
+                @Override
+                public void write(byte[] bytes, int offset, int length) throws IOException {
+                    out.write(bytes, offset, length);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+        }
+        if (target.startsWith("tcp:")) {
+            Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                    Integer.parseInt(target.substring("tcp:".length())));
+            socket.setTcpNoDelay(true);
+            return socket.getOutputStream();
+        }
+        return new FileOutputStream(target);
+    }
+
+    /** Replay the order events of a store to out, in time order. Blocks until the last event is written. */
+    public void replay(CompletedOrderStore store, OutputStream out) throws IOException {
+        EventArrays events = new EventArrays();
+        store.replayEvents(null, events);
+        int[] order = sortByTime(events.times, events.size);
+        eventCount = 0;
+        maxLatenessNanos = 0;
+        totalLatenessNanos = 0;
+        batchCount = 0;
+        bufferSize = 0;
+        if (order.length == 0) {
+            return;
+        }
+        long firstTime = events.times[order[0]];
+        long startNanos = System.nanoTime();
+        int next = 0;
+        while (next < order.length) {
+            long deadline = startNanos + toReplayNanos(events.times[order[next]] - firstTime);
+            long now = System.nanoTime();
+            if (now < deadline) {
+                flush(out);
+                awaitDeadline(deadline);
+                now = System.nanoTime();
+            }
+            long lateness = now - deadline;
+            maxLatenessNanos = Math.max(maxLatenessNanos, lateness);
+            totalLatenessNanos += lateness;
+            batchCount++;
+            // Write every event which is now due.
+            do {
+                int event = order[next];
+                writeEvent(out, events.times[event], events.ids[event], events.states[event], events.numItems[event]);
+                next++;
+            } while (next < order.length && startNanos + toReplayNanos(events.times[order[next]] - firstTime) <= now);
+        }
+        flush(out);
+        eventCount = order.length;
+    }
+
+    private long toReplayNanos(long simulatedMillis) {
+        return (long) (simulatedMillis * 1_000_000L / speedup);
+    }
+
+    private static void awaitDeadline(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > SPIN_NANOS) {
+            LockSupport.parkNanos(remaining - SPIN_NANOS);
+        }
+        while (System.nanoTime() < deadline) {
+            // Spin.
+        }
+    }
+
+    private void writeEvent(OutputStream out, long time, long orderId, byte state, int numItems) throws IOException {
+        if (bufferSize + MAX_LINE_BYTES > buffer.length) {
+            flush(out);
+        }
+        append("{\"time\":");
+        append(time);
+        append(",\"order_id\":");
+        append(orderId);
+        append(",\"state\":\"");
+        append(ORDER_STATES[state].name());
+        append("\",\"items\":");
+        append(numItems);
+        append("}\n");
+    }
+
+    private void append(String ascii) {
+        for (int i = 0; i < ascii.length(); i++) {
+            buffer[bufferSize++] = (byte) ascii.charAt(i);
+        }
+    }
+
+    private void append(long value) {
+        append(Long.toString(value));
+    }
+
+    private void flush(OutputStream out) throws IOException {
+        if (bufferSize > 0) {
+            out.write(buffer, 0, bufferSize);
+            bufferSize = 0;
+        }
+        out.flush();
+    }
+
+    /** Get the number of events written by the last replay. */
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    /** Get the most that a batch of events was written after its deadline, in the last replay. */
+    public long getMaxLatenessNanos() {
+        return maxLatenessNanos;
+    }
+
+    /** Get the mean of how long batches of events were written after their deadline, in the last replay. */
+    public long getMeanLatenessNanos() {
+        return batchCount == 0 ? 0 : totalLatenessNanos / batchCount;
+    }
+
+    /** Stable sort of event indexes by time, so events at the same time keep the order they were recorded in. */
+    private static int[] sortByTime(long[] times, int size) {
+        int[] order = new int[size];
+        int[] merged = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        // Bottom up merge sort, so there are no boxed comparisons.
+        for (int width = 1; width < size; width *= 2) {
+            for (int low = 0; low < size; low += 2 * width) {
+                int mid = Math.min(low + width, size);
+                int high = Math.min(low + 2 * width, size);
+                int i = low;
+                int j = mid;
+                int k = low;
+                while (i < mid && j < high) {
+                    merged[k++] = times[order[j]] < times[order[i]] ? order[j++] : order[i++];
+                }
+                while (i < mid) {
+                    merged[k++] = order[i++];
+                }
+                while (j < high) {
+                    merged[k++] = order[j++];
+                }
+            }
+            int[] swap = order;
+            order = merged;
+            merged = swap;
+        }
+        return order;
+    }
+
+    /** Order events collected from a store, in primitive arrays. Item events are not replayed. */
+    private static class EventArrays implements OrderEventLog.Visitor {
+        long[] times = new long[1024];
+        long[] ids = new long[1024];
+        byte[] states = new byte[1024];
+        int[] numItems = new int[1024];
+        int size;
+
+        @Override
+        public void onOrderEvent(long timeMillis, long orderId, int numItems, OrderState state) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+                states = Arrays.copyOf(states, size * 2);
+                this.numItems = Arrays.copyOf(this.numItems, size * 2);
+            }
+            times[size] = timeMillis;
+            ids[size] = orderId;
+            states[size] = (byte) state.ordinal();
+            this.numItems[size] = numItems;
+            size++;
+        }
+
+        @Override
+        public void onItemEvent(long timeMillis, long orderId, int itemIndex, ItemState state) {
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.marcop.foodsystem.server;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Suppliers;
+import com.marcop.foodsystem.indexing.OrderIntervalIndex;
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+import com.marcop.foodsystem.model.OrderState;
+import com.marcop.foodsystem.model.RejectionReason;
+import com.marcop.foodsystem.store.CompletedOrderStore;
+import com.marcop.foodsystem.store.OrderCursor;
+import com.marcop.foodsystem.store.OrderPage;
+import com.marcop.foodsystem.store.OrderRejections;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Serves order stats as JSON over local HTTP, while the simulation runs.
+ *
+ * Stats are counters, kept up to date as each order completes (see recordCompleted), so they cost nothing per
+ * refresh. They are published as a snapshot on the simulation thread (see refresh), at most once per refresh
+ * interval, and only if an order has completed (or been rejected) since. Requests are served from the latest
+ * snapshot, so polling never touches the stores. Each response has an ETag of the completed and rejected counts, so
+ * unchanged stats return 304 Not Modified. The timeline grows with every order, so is kept as a log of transition
+ * times, and counted and serialized on its first request for each snapshot.
+ *
+ * Endpoints: /stats, /stats/revenue/service, /stats/revenue/item, /stats/timeline,
+ *            /stats/distribution/price, /stats/distribution/pending, /stats/rejections,
+ *            /stats/state?at=millis or /stats/state?from=millis&to=millis (add &ids=true for order IDs)
+ *
+ * /stats/state answers what was pending or in process at a time, or during a window, from an OrderIntervalIndex
+ * of the completed orders in the snapshot, from order times collected by recordCompleted. The index is built on the
+ * first /stats/state request for each snapshot, so publishing stays cheap when no one asks for state.
+ */
+public class StatsServer {
+
+    public static final int DEFAULT_PORT = 8099;
+    public static final long DEFAULT_REFRESH_INTERVAL_MILLIS = 1000;
+    private static final int MAX_THREADS = 8;
+    private static final int PAGE_SIZE = 1000;
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final OrderState[] TRANSITION_STATES = {
+            OrderState.CREATED, OrderState.PROCESSING, OrderState.COMPLETE};
+    private static final int INITIAL_TRANSITIONS = 3 * 1024;
+
+    private final OrderRejections rejections;
+    private final long refreshIntervalMillis;
+    private final Server server;
+    private volatile Snapshot snapshot;
+    private long lastRefreshMillis;
+    // Stats of the completed orders, only used on the simulation thread.
+    private long completedCount;
+    private long totalRevenue;
+    private final Map<String, Long> revenueByService = new HashMap<>();
+    private final Map<String, Long> revenueByItem = new HashMap<>();
+    private final SortedMap<Integer, Integer> priceDistribution = new TreeMap<>();
+    private final SortedMap<Integer, Integer> pendingDurationDistribution = new TreeMap<>();
+    // Times of the transitions of the completed orders, into TRANSITION_STATES in turn, three per order. Only
+    // appended to (growing copies the array), so a snapshot's timeline can be counted later, from the first
+    // transitions, on a request thread.
+    private long[] transitionMillis = new long[INITIAL_TRANSITIONS];
+    private int transitionCount;
+    // Times of the completed orders, for the interval index of each snapshot.
+    private final OrderIntervalIndex.Builder intervalsBuilder = OrderIntervalIndex.builder();
+
+    /** Stats as JSON response bodies by path, for a given pair of completed and rejected counts. */
+    private static class Snapshot {
+        final long completedVersion;
+        final long rejectedVersion;
+        final String etag;
+        // Bodies which grow with every order (the timeline) are serialized on their first request.
+        final Map<String, Supplier<byte[]>> bodiesByPath;
+        // Built on the first /stats/state request for this snapshot, rather than on every publish.
+        final Supplier<OrderIntervalIndex> intervals;
+
+        Snapshot(long completedVersion, long rejectedVersion, Map<String, Supplier<byte[]>> bodiesByPath,
+                 Supplier<OrderIntervalIndex> intervals) {
+            this.completedVersion = completedVersion;
+            this.rejectedVersion = rejectedVersion;
+            this.etag = "\"" + completedVersion + "-" + rejectedVersion + "\"";
+            this.bodiesByPath = bodiesByPath;
+            this.intervals = intervals;
+        }
+    }
+
+    /**
+     * Serve stats of the orders in completedOrders, which must then be passed to recordCompleted as they complete.
+     */
+    public StatsServer(int port, CompletedOrderStore completedOrders, OrderRejections rejections,
+                       long refreshIntervalMillis) {
+        OrderCursor cursor = null;
+        do {
+            OrderPage page = completedOrders.getOrdersByOrderedAt(null, null, cursor, PAGE_SIZE);
+            for (Order order : page.getOrders()) {
+                recordCompleted(order);
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        this.rejections = rejections;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        this.server = new Server(new QueuedThreadPool(MAX_THREADS));
+        ServerConnector connector = new ServerConnector(server);
+        connector.setHost("localhost");
+        connector.setPort(port);
+        server.addConnector(connector);
+        ServletContextHandler context = new ServletContextHandler();
+        context.addServlet(new ServletHolder(new StatsServlet()), "/stats/*");
+        server.setHandler(context);
+    }
+
+    public StatsServer(int port, CompletedOrderStore completedOrders, OrderRejections rejections) {
+        this(port, completedOrders, rejections, DEFAULT_REFRESH_INTERVAL_MILLIS);
+    }
+
+    public void start() throws IOException {
+        publish();
+        try {
+            server.start();
+        } catch (Exception e) {
+            throw new IOException("Failed to start stats server.", e);
+        }
+    }
+
+    /** Block until the server is stopped. */
+    public void join() throws InterruptedException {
+        server.join();
+    }
+
+    public void stop() throws IOException {
+        try {
+            server.stop();
+        } catch (Exception e) {
+            throw new IOException("Failed to stop stats server.", e);
+        }
+    }
+
+    /** Get the port the server is listening on. */
+    public int getPort() {
+        return ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+    }
+
+    /**
+     * Add a completed order to the stats. Must be called on the simulation thread, as each order completes.
+     */
+    public void recordCompleted(Order order) {
+        completedCount++;
+        totalRevenue += order.getTotalPriceCents();
+        revenueByService.merge(order.getService(), (long) order.getTotalPriceCents(), Long::sum);
+        for (OrderItem item : order.getOrderItems()) {
+            revenueByItem.merge(item.getName(), (long) item.getPriceCents(), Long::sum);
+        }
+        priceDistribution.merge(order.getTotalPriceCents(), 1, Integer::sum);
+        long pendingMillis = order.getProcessingStartedAt().getTime() - order.getOrderedAt().getTime();
+        pendingDurationDistribution.merge((int) (pendingMillis / (60 * 1000)), 1, Integer::sum);
+        if (transitionCount == transitionMillis.length) {
+            transitionMillis = Arrays.copyOf(transitionMillis, transitionCount * 2);
+        }
+        transitionMillis[transitionCount++] = order.getOrderedAt().getTime();
+        transitionMillis[transitionCount++] = order.getProcessingStartedAt().getTime();
+        transitionMillis[transitionCount++] = order.getCompletedAt().getTime();
+        intervalsBuilder.add(order);
+    }
+
+    /** Count transitions into each state, keyed by epoch millis rather than Timestamp.toString. */
+    private static SortedMap<Long, Map<OrderState, Integer>> timeline(long[] transitionMillis, int count) {
+        SortedMap<Long, Map<OrderState, Integer>> timeline = new TreeMap<>();
+        for (int i = 0; i < count; i++) {
+            timeline.computeIfAbsent(transitionMillis[i], time -> new EnumMap<>(OrderState.class))
+                    .merge(TRANSITION_STATES[i % TRANSITION_STATES.length], 1, Integer::sum);
+        }
+        return timeline;
+    }
+
+    /**
+     * Update the snapshot, if the refresh interval has passed and the stats have changed.
+     * Must be called on the thread which modifies the stores.
+     */
+    public void refresh() {
+        if (System.currentTimeMillis() - lastRefreshMillis >= refreshIntervalMillis) {
+            publish();
+        }
+    }
+
+    /** Update the snapshot, if the stats have changed. Must be called on the thread which modifies the stores. */
+    public void publish() {
+        lastRefreshMillis = System.currentTimeMillis();
+        Snapshot current = snapshot;
+        long completedVersion = completedCount;
+        long rejectedVersion = rejections.getTotal();
+        if (current != null && current.completedVersion == completedVersion
+                && current.rejectedVersion == rejectedVersion) {
+            return;
+        }
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("version", completedVersion + "-" + rejectedVersion);
+        summary.put("completedOrders", completedCount);
+        summary.put("rejectedOrders", rejectedVersion);
+        summary.put("totalRevenueCents", totalRevenue);
+        Map<RejectionReason, Object> rejectionsByReason = new LinkedHashMap<>();
+        for (Map.Entry<RejectionReason, Long> entry : rejections.getCountsByReason().entrySet()) {
+            Map<String, Object> reasonStats = new LinkedHashMap<>();
+            reasonStats.put("count", entry.getValue());
+            reasonStats.put("examples", rejections.getExamples(entry.getKey()));
+            rejectionsByReason.put(entry.getKey(), reasonStats);
+        }
+        Map<String, Supplier<byte[]>> bodiesByPath = new HashMap<>();
+        bodiesByPath.put("", Suppliers.ofInstance(toJson(summary)));
+        bodiesByPath.put("/revenue/service", Suppliers.ofInstance(toJson(revenueByService)));
+        bodiesByPath.put("/revenue/item", Suppliers.ofInstance(toJson(revenueByItem)));
+        long[] transitions = transitionMillis;
+        int transitionsInSnapshot = transitionCount;
+        bodiesByPath.put("/timeline", Suppliers.memoize(() -> toJson(timeline(transitions, transitionsInSnapshot))));
+        bodiesByPath.put("/distribution/price", Suppliers.ofInstance(toJson(priceDistribution)));
+        bodiesByPath.put("/distribution/pending", Suppliers.ofInstance(toJson(pendingDurationDistribution)));
+        bodiesByPath.put("/rejections", Suppliers.ofInstance(toJson(rejectionsByReason)));
+        snapshot = new Snapshot(completedVersion, rejectedVersion, bodiesByPath,
+                intervalsBuilder.buildLazily());
+    }
+
+    /** Get the orders pending and in process at a time, or during a window, as JSON. */
+    private static byte[] stateJson(OrderIntervalIndex intervals, HttpServletRequest request) {
+        boolean window = request.getParameter("at") == null;
+        Timestamp from = new Timestamp(Long.parseLong(request.getParameter(window ? "from" : "at")));
+        Timestamp to = window ? new Timestamp(Long.parseLong(request.getParameter("to"))) : null;
+        Map<String, Object> state = new LinkedHashMap<>();
+        for (OrderIntervalIndex.Phase phase : OrderIntervalIndex.Phase.values()) {
+            String name = phase.name().toLowerCase();
+            state.put(name, window ? intervals.countDuring(phase, from, to) : intervals.countAt(phase, from));
+            if (!window) {
+                state.put(name + "Items", intervals.countItemsAt(phase, from));
+            }
+            if (Boolean.parseBoolean(request.getParameter("ids"))) {
+                state.put(name + "OrderIds", window
+                        ? intervals.getOrderIdsDuring(phase, from, to) : intervals.getOrderIdsAt(phase, from));
+            }
+        }
+        return toJson(state);
+    }
+
+    private static byte[] toJson(Object value) {
+        try {
+            return OBJECT_MAPPER.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("Failed to serialize stats.", e);
+        }
+    }
+
+    private class StatsServlet extends HttpServlet {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+            Snapshot current = snapshot;
+            String path = request.getPathInfo() == null || request.getPathInfo().equals("/")
+                    ? "" : request.getPathInfo();
+            byte[] body;
+            if (path.equals("/state")) {
+                try {
+                    body = stateJson(current.intervals.get(), request);
+                } catch (IllegalArgumentException e) {
+                    // Including a missing or malformed time.
+                    response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+                    return;
+                }
+            } else {
+                Supplier<byte[]> lazyBody = current.bodiesByPath.get(path);
+                body = lazyBody == null ? null : lazyBody.get();
+            }
+            if (body == null) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            response.setHeader("ETag", current.etag);
+            response.setHeader("Cache-Control", "no-cache");
+            if (current.etag.equals(request.getHeader("If-None-Match"))) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+            response.setContentType("application/json");
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.marcop.foodsystem.simulation;
+
+import com.google.common.base.Preconditions;
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderState;
+import com.marcop.foodsystem.model.SheddingPolicy;
+import com.marcop.foodsystem.store.OrderRejections;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded queue of orders which have arrived at the kitchen, but are not yet processing.
+ *
+ * An arriving order is queued, then orders are shed by the policy while the queue is over its limits: a maximum
+ * number of pending orders, and a maximum expected wait for the arriving order. The expected wait is the item time
+ * still to do ahead of it (orders processing, the order at the head of the line and the orders queued before it),
+ * spread over the kitchen's capacity. Shed orders are rejected, and counted under their policy's reason.
+ *
+ * The order at the head of the line, waiting for room in the kitchen, has left the queue, so is never shed.
+ * A limit of 0 is unlimited.
+ */
+public class AdmissionControl {
+
+    private final int maxPendingOrders;
+    private final long maxExpectedWaitMillis;
+    private final SheddingPolicy policy;
+    private final OrderRejections rejections;
+
+    // Orders queued, by arrival.
+    private final ArrayDeque<Order> queue = new ArrayDeque<>();
+    // Item time (items times cook time) of the orders queued.
+    private long queuedItemMillis;
+    private long arrivedCount;
+    private long shedCount;
+
+    public AdmissionControl(int maxPendingOrders, long maxExpectedWaitMillis, SheddingPolicy policy,
+                            OrderRejections rejections) {
+        Preconditions.checkArgument(maxPendingOrders >= 0, "Maximum pending orders must not be negative.");
+        Preconditions.checkArgument(maxExpectedWaitMillis >= 0, "Maximum expected wait must not be negative.");
+        this.maxPendingOrders = maxPendingOrders;
+        this.maxExpectedWaitMillis = maxExpectedWaitMillis;
+        this.policy = policy;
+        this.rejections = rejections;
+    }
+
+    /**
+     * Queue an arriving order, and shed orders until the queue is within its limits.
+     * workAheadItemMillis gives the item time still to do outside the queue, and is only called with a wait limit.
+     */
+    public void offer(Order order, LongSupplier workAheadItemMillis, int maxConcurrentItems) {
+        arrivedCount++;
+        queue.addLast(order);
+        queuedItemMillis += itemMillis(order);
+        long workAhead = maxExpectedWaitMillis > 0 ? workAheadItemMillis.getAsLong() : 0;
+        while (isOverLimit(order, workAhead, maxConcurrentItems)) {
+            Order shedOrder = selectShedOrder(order);
+            shed(shedOrder, queue.size() > maxPendingOrders && maxPendingOrders > 0
+                    ? "pending queue at " + maxPendingOrders + " orders"
+                    : "expected wait over " + maxExpectedWaitMillis / 60000.0 + " minutes");
+            if (shedOrder == order) {
+                break;
+            }
+        }
+    }
+
+    /** Remove the order which arrived first, to be processed, or get null if none are queued. */
+    public Order poll() {
+        Order order = queue.pollFirst();
+        if (order != null) {
+            queuedItemMillis -= itemMillis(order);
+        }
+        return order;
+    }
+
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    /** Get the number of orders which arrived, including those shed. */
+    public long getArrivedCount() {
+        return arrivedCount;
+    }
+
+    public long getShedCount() {
+        return shedCount;
+    }
+
+    public SheddingPolicy getPolicy() {
+        return policy;
+    }
+
+    private boolean isOverLimit(Order arriving, long workAheadItemMillis, int maxConcurrentItems) {
+        if (maxPendingOrders > 0 && queue.size() > maxPendingOrders) {
+            return true;
+        }
+        if (maxExpectedWaitMillis == 0 || maxConcurrentItems <= 0) {
+            return false;
+        }
+        // The arriving order is last, so everything else queued is ahead of it.
+        long aheadItemMillis = workAheadItemMillis + queuedItemMillis - itemMillis(arriving);
+        return aheadItemMillis / maxConcurrentItems > maxExpectedWaitMillis;
+    }
+
+    private Order selectShedOrder(Order arriving) {
+        switch (policy) {
+            case REJECT_OLDEST:
+                return queue.peekFirst();
+            case REJECT_LARGEST:
+                // Newest first, so ties shed the order which has waited least.
+                Order largest = arriving;
+                for (Iterator<Order> it = queue.descendingIterator(); it.hasNext(); ) {
+                    Order order = it.next();
+                    if (order.getOrderItemsSize() > largest.getOrderItemsSize()) {
+                        largest = order;
+                    }
+                }
+                return largest;
+            default:
+                return arriving;
+        }
+    }
+
+    private void shed(Order order, String detail) {
+        queue.removeLastOccurrence(order);
+        queuedItemMillis -= itemMillis(order);
+        shedCount++;
+        order.updateState(OrderState.REJECTED);
+        rejections.reject(order, policy.getRejectionReason(), detail);
+    }
+
+    /** Get the item time an order takes in the kitchen, as all of its items are held until it completes. */
+    static long itemMillis(Order order) {
+        return order.getOrderItemsSize() * order.getTotalCookTimeSeconds() * 1000L;
+    }
+}
@@ -0,0 +1,239 @@
+package com.marcop.foodsystem.simulation;
+
+import com.google.common.base.Preconditions;
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+import com.marcop.foodsystem.model.OrderProcessingStrategy;
+import com.marcop.foodsystem.store.OrderInMemoryStore;
+import com.marcop.foodsystem.store.OrderPendingQueue;
+import com.marcop.foodsystem.store.OrderQueue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Finds the smallest kitchen capacity (max concurrent items) at which a percentile of order pending times stays
+ * under a limit, by simulating the same orders at different capacities.
+ *
+ * The search narrows a range of capacities in rounds. Each round probes capacities spread over the range, one per
+ * thread, and keeps the part of the range between the largest capacity which broke the limit and the
+ * smallest which met it. A probe stops as soon as more orders have waited past the limit than the percentile
+ * allows, since the limit is then broken whatever happens to the remaining orders. Probes are spread geometrically
+ * while the range is wide, since the upper bound (a slot for every item) is usually far above the answer.
+ *
+ * The search assumes pending time falls as capacity grows. That mostly holds, but not strictly (a simulation
+ * only frees capacity at minute steps), so the result is a capacity which meets the limit where one less breaks
+ * it, and every probe above it met the limit too. A smaller, isolated capacity may also meet it.
+ *
+ * Orders must be validated and enriched with cook times. Each probe simulates its own copies of them, with a
+ * KitchenSimulator, so results match a normal run at that capacity.
+ */
+public class CapacitySolver {
+
+    public static final double DEFAULT_PERCENTILE = 0.95;
+
+    private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    private final List<Order> orders;
+    private final int parallelism;
+    private final OrderProcessingStrategy strategy;
+    private final double percentile;
+
+    public CapacitySolver(List<Order> orders, int parallelism, OrderProcessingStrategy strategy, double percentile) {
+        Preconditions.checkArgument(!orders.isEmpty(), "There are no orders to solve for.");
+        Preconditions.checkArgument(parallelism > 0, "Parallelism must be greater than 0.");
+        Preconditions.checkArgument(percentile > 0 && percentile <= 1, "Percentile must be in (0, 1].");
+        this.orders = orders;
+        this.parallelism = parallelism;
+        this.strategy = strategy;
+        this.percentile = percentile;
+    }
+
+    public CapacitySolver(List<Order> orders, int parallelism, OrderProcessingStrategy strategy) {
+        this(orders, parallelism, strategy, DEFAULT_PERCENTILE);
+    }
+
+    /** Find the smallest capacity at which the percentile of pending times is under a limit. */
+    public Result solve(long maxPendingMillis) {
+        Preconditions.checkArgument(maxPendingMillis > 0, "Pending time limit must be greater than 0.");
+        // The kitchen must fit the largest order. With a slot for every item, no order ever waits.
+        int largestOrderItems = 0;
+        int totalItems = 0;
+        for (Order order : orders) {
+            largestOrderItems = Math.max(largestOrderItems, order.getOrderItemsSize());
+            totalItems += order.getOrderItemsSize();
+        }
+        // Capacities up to low break the limit, and high meets it.
+        int low = largestOrderItems - 1;
+        int high = totalItems;
+        List<Probe> probes = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            while (high - low > 1) {
+                List<Callable<Probe>> round = new ArrayList<>();
+                for (int probeCapacity : spread(low, high)) {
+                    round.add(() -> probe(probeCapacity, maxPendingMillis));
+                }
+                for (Future<Probe> future : executor.invokeAll(round)) {
+                    Probe probe = await(future);
+                    probes.add(probe);
+                    LOGGER.info(String.format("Capacity %s: %s.", probe.getCapacity(), probe.isStoppedEarly()
+                            ? "breaks the limit, stopped early"
+                            : (probe.isMet() ? "meets" : "breaks") + " the limit, percentile pending "
+                                    + probe.getPercentilePendingMillis() / 60000 + " minutes"));
+                }
+                // Keep above the largest capacity which broke the limit, even if a smaller one met it.
+                for (Probe probe : probes) {
+                    if (!probe.isMet()) {
+                        low = Math.max(low, probe.getCapacity());
+                    }
+                }
+                high = totalItems;
+                for (Probe probe : probes) {
+                    if (probe.isMet() && probe.getCapacity() > low) {
+                        high = Math.min(high, probe.getCapacity());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while solving.", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        probes.sort((a, b) -> Integer.compare(a.getCapacity(), b.getCapacity()));
+        return new Result(high, probes);
+    }
+
+    /** Get capacities to probe between low and high (exclusive), at most one per thread. */
+    private List<Integer> spread(int low, int high) {
+        List<Integer> capacities = new ArrayList<>();
+        boolean geometric = high > 4 * (low + 1);
+        for (int i = 1; i <= parallelism; i++) {
+            double fraction = i / (double) (parallelism + 1);
+            int capacity = geometric
+                    ? (int) ((low + 1) * Math.pow(high / (double) (low + 1), fraction))
+                    : low + (int) Math.round((high - low) * fraction);
+            capacity = Math.max(capacity, low + 1);
+            if (capacity < high && (capacities.isEmpty() || capacity > capacities.get(capacities.size() - 1))) {
+                capacities.add(capacity);
+            }
+        }
+        return capacities;
+    }
+
+    /** Simulate copies of the orders at a capacity, stopping once the limit is broken. */
+    public Probe probe(int capacity, long maxPendingMillis) {
+        OrderQueue pendingOrders = new OrderPendingQueue();
+        for (Order order : orders) {
+            pendingOrders.addOrder(copy(order));
+        }
+        // Orders which may wait past the limit, with the percentile still under it.
+        long allowedLateOrders = orders.size() - (long) Math.ceil(percentile * orders.size());
+        long[] pendingMillis = new long[orders.size()];
+        int[] submitted = new int[1];
+        long[] lateOrders = new long[1];
+        KitchenSimulator simulator = new KitchenSimulator(pendingOrders, new OrderInMemoryStore(capacity),
+                new OrderInMemoryStore(), strategy);
+        simulator.setSubmitListener(order -> {
+            long orderPendingMillis = order.getProcessingStartedAt().getTime() - order.getOrderedAt().getTime();
+            pendingMillis[submitted[0]++] = orderPendingMillis;
+            if (orderPendingMillis >= maxPendingMillis && ++lateOrders[0] > allowedLateOrders) {
+                simulator.stop();
+            }
+        });
+        simulator.run();
+        if (simulator.isStopped()) {
+            return new Probe(capacity, false, true, -1);
+        }
+        Arrays.sort(pendingMillis);
+        long percentilePendingMillis = pendingMillis[(int) Math.ceil(percentile * orders.size()) - 1];
+        return new Probe(capacity, percentilePendingMillis < maxPendingMillis, false, percentilePendingMillis);
+    }
+
+    /** Copy an order, so that it can be simulated independently. */
+    private static Order copy(Order order) {
+        List<OrderItem> items = new ArrayList<>(order.getOrderItemsSize());
+        for (OrderItem item : order.getOrderItems()) {
+            OrderItem itemCopy = new OrderItem(item.getName(), item.getPriceCents());
+            itemCopy.setCookTimeSeconds(item.getCookTimeSeconds());
+            itemCopy.setStation(item.getStation());
+            items.add(itemCopy);
+        }
+        Order copy = new Order(order.getId(), order.getOrderedAt(), order.getName(), order.getService(), items);
+        copy.setTotalCookTimeSeconds(order.getTotalCookTimeSeconds());
+        return copy;
+    }
+
+    private static <T> T await(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /** Result of simulating at one capacity. */
+    public static class Probe {
+        private final int capacity;
+        private final boolean met;
+        private final boolean stoppedEarly;
+        private final long percentilePendingMillis;
+
+        Probe(int capacity, boolean met, boolean stoppedEarly, long percentilePendingMillis) {
+            this.capacity = capacity;
+            this.met = met;
+            this.stoppedEarly = stoppedEarly;
+            this.percentilePendingMillis = percentilePendingMillis;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        /** Get whether the percentile of pending times was under the limit. */
+        public boolean isMet() {
+            return met;
+        }
+
+        /** Get whether the simulation stopped early, as the limit was already broken. */
+        public boolean isStoppedEarly() {
+            return stoppedEarly;
+        }
+
+        /** Get the percentile of pending times, or -1 if the simulation stopped early. */
+        public long getPercentilePendingMillis() {
+            return percentilePendingMillis;
+        }
+    }
+
+    /** Smallest capacity which meets the limit, and every probe, by capacity. */
+    public static class Result {
+        private final int capacity;
+        private final List<Probe> probes;
+
+        Result(int capacity, List<Probe> probes) {
+            this.capacity = capacity;
+            this.probes = Collections.unmodifiableList(probes);
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public List<Probe> getProbes() {
+            return probes;
+        }
+    }
+}
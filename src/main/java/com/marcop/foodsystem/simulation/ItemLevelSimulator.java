@@ -0,0 +1,257 @@
+package com.marcop.foodsystem.simulation;
+
+import com.google.common.base.Preconditions;
+import com.marcop.foodsystem.flightrecorder.FlightEvents;
+import com.marcop.foodsystem.model.ItemState;
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+import com.marcop.foodsystem.model.OrderProcessingStrategy;
+import com.marcop.foodsystem.model.OrderState;
+import com.marcop.foodsystem.store.CompletedOrderStore;
+import com.marcop.foodsystem.store.OrderQueue;
+
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Simulates preparing orders in a kitchen one item at a time, instead of admitting whole orders.
+ * Each item takes one of the kitchen's slots only while it cooks, so an order can start as soon as one slot is
+ * free, and orders with more items than the kitchen has slots can still be made.
+ *
+ * If staggered (the default), an order's longest item starts first, and its other items are only released once
+ * they would finish with it, so they do not hold slots early. Ready items start in order of their orders, so
+ * items of earlier orders go first.
+ *
+ * For comparison, it can instead admit whole orders: an order starts once there are free slots for all of its
+ * items, and its items keep their slots until the order is completed, as in KitchenSimulator.
+ *
+ * Time is continuous (milliseconds), and advances from event to event: an order arriving, an item being released,
+ * or an item finishing. An order's processingStartedAt is when its first item starts, and its completedAt is when
+ * its last item finishes. Orders are recorded as FlightEvents, if enabled, as submitted when their first item starts.
+ */
+public class ItemLevelSimulator {
+
+    private static final Comparator<ItemRun> BY_ORDER_THEN_LONGEST = Comparator
+            .comparingLong((ItemRun run) -> run.orderRun.sequence)
+            .thenComparing(Comparator.comparingLong((ItemRun run) -> run.cookMillis).reversed());
+
+    private final OrderQueue pendingOrders;
+    private final CompletedOrderStore completedOrders;
+    private final int maxConcurrentItems;
+    private final OrderProcessingStrategy strategy;
+    private boolean staggered = true;
+    private boolean wholeOrder;
+    // Optional callbacks after each batch of orders completes, and with each completed order.
+    private Runnable progressListener;
+    private Consumer<Order> completionListener;
+    // Optional utilization and queueing metrics, with items busy only while they cook, unless whole order.
+    private QueueingMetrics queueingMetrics;
+
+    // Items which may start, once there is a free slot.
+    private final PriorityQueue<ItemRun> readyItems = new PriorityQueue<>(BY_ORDER_THEN_LONGEST);
+    // Items waiting to be released, by release time.
+    private final PriorityQueue<ItemRun> deferredItems =
+            new PriorityQueue<>(Comparator.comparingLong((ItemRun run) -> run.releaseMillis));
+    // With whole order admission, orders waiting for slots, in arrival order.
+    private final ArrayDeque<OrderRun> waitingOrders = new ArrayDeque<>();
+    // Items cooking, by done time.
+    private final PriorityQueue<ItemRun> cookingItems =
+            new PriorityQueue<>(Comparator.comparingLong((ItemRun run) -> run.doneMillis));
+    private long orderSequence;
+
+    public ItemLevelSimulator(OrderQueue pendingOrders, CompletedOrderStore completedOrders, int maxConcurrentItems,
+                              OrderProcessingStrategy strategy) {
+        Preconditions.checkArgument(maxConcurrentItems > 0, "Item level scheduling needs a kitchen capacity.");
+        this.pendingOrders = pendingOrders;
+        this.completedOrders = completedOrders;
+        this.maxConcurrentItems = maxConcurrentItems;
+        this.strategy = strategy;
+    }
+
+    /** Set whether an order's items are staggered to finish together, or all released when the order arrives. */
+    public void setStaggered(boolean staggered) {
+        this.staggered = staggered;
+    }
+
+    /** Set whether to admit whole orders instead of items, as a baseline. Orders must fit in the kitchen. */
+    public void setWholeOrder(boolean wholeOrder) {
+        this.wholeOrder = wholeOrder;
+    }
+
+    /** Record completed orders in queueing metrics. */
+    public void setQueueingMetrics(QueueingMetrics queueingMetrics) {
+        this.queueingMetrics = queueingMetrics;
+    }
+
+    /** Set a callback to run on the simulation thread after each batch of orders completes. */
+    public void setProgressListener(Runnable progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /** Set a callback to run on the simulation thread with each order as it completes. */
+    public void setCompletionListener(Consumer<Order> completionListener) {
+        this.completionListener = completionListener;
+    }
+
+    /** Simulate all pending orders, until every order is completed. */
+    public void run() {
+        Order nextOrder = pendingOrders.getAndDequeueOrder(strategy);
+        int freeSlots = maxConcurrentItems;
+        while (nextOrder != null || !readyItems.isEmpty() || !deferredItems.isEmpty() || !cookingItems.isEmpty()
+                || !waitingOrders.isEmpty()) {
+            long now = Long.MAX_VALUE;
+            if (nextOrder != null) {
+                now = nextOrder.getOrderedAt().getTime();
+            }
+            if (!deferredItems.isEmpty()) {
+                now = Math.min(now, deferredItems.peek().releaseMillis);
+            }
+            if (!cookingItems.isEmpty()) {
+                now = Math.min(now, cookingItems.peek().doneMillis);
+            }
+            Preconditions.checkState(now != Long.MAX_VALUE, "Items are ready, but none can ever start.");
+
+            boolean isOrderCompleted = false;
+            while (!cookingItems.isEmpty() && cookingItems.peek().doneMillis <= now) {
+                ItemRun run = cookingItems.poll();
+                run.item.updateState(ItemState.COMPLETE);
+                run.item.setCompletedAt(new Timestamp(run.doneMillis));
+                if (!wholeOrder) {
+                    freeSlots++;
+                    if (queueingMetrics != null) {
+                        queueingMetrics.recordBusyItems(run.doneMillis - run.cookMillis, run.doneMillis, 1);
+                    }
+                }
+                if (--run.orderRun.remainingItems == 0) {
+                    Order order = run.orderRun.order;
+                    if (wholeOrder) {
+                        freeSlots += order.getOrderItemsSize();
+                    }
+                    order.setCompletedAt(new Timestamp(now));
+                    order.updateState(OrderState.COMPLETE);
+                    completedOrders.addOrder(order);
+                    FlightEvents.orderCompleted(order);
+                    if (queueingMetrics != null && wholeOrder) {
+                        queueingMetrics.recordCompleted(order);
+                    } else if (queueingMetrics != null) {
+                        queueingMetrics.recordOrder(order);
+                    }
+                    if (completionListener != null) {
+                        completionListener.accept(order);
+                    }
+                    isOrderCompleted = true;
+                }
+            }
+            while (!deferredItems.isEmpty() && deferredItems.peek().releaseMillis <= now) {
+                readyItems.add(deferredItems.poll());
+            }
+            while (nextOrder != null && nextOrder.getOrderedAt().getTime() <= now) {
+                if (wholeOrder) {
+                    Preconditions.checkArgument(nextOrder.getOrderItemsSize() <= maxConcurrentItems,
+                            "Kitchen is too small to process this order whole. Item count = "
+                                    + nextOrder.getOrderItemsSize());
+                    waitingOrders.add(new OrderRun(nextOrder, orderSequence++));
+                } else {
+                    arrive(nextOrder);
+                }
+                nextOrder = pendingOrders.getAndDequeueOrder(strategy);
+            }
+            while (!waitingOrders.isEmpty() && freeSlots >= waitingOrders.peek().remainingItems) {
+                OrderRun orderRun = waitingOrders.poll();
+                for (OrderItem item : orderRun.order.getOrderItems()) {
+                    start(new ItemRun(orderRun, item), now);
+                }
+                freeSlots -= orderRun.remainingItems;
+            }
+            while (freeSlots > 0 && !readyItems.isEmpty()) {
+                start(readyItems.poll(), now);
+                freeSlots--;
+            }
+            if (isOrderCompleted && progressListener != null) {
+                progressListener.run();
+            }
+        }
+    }
+
+    private void arrive(Order order) {
+        OrderRun orderRun = new OrderRun(order, orderSequence++);
+        for (OrderItem item : order.getOrderItems()) {
+            ItemRun run = new ItemRun(orderRun, item);
+            if (!staggered) {
+                readyItems.add(run);
+            } else if (orderRun.longestItem == null || run.cookMillis > orderRun.longestItem.cookMillis) {
+                if (orderRun.longestItem != null) {
+                    orderRun.heldItems.add(orderRun.longestItem);
+                }
+                orderRun.longestItem = run;
+            } else {
+                orderRun.heldItems.add(run);
+            }
+        }
+        if (staggered) {
+            readyItems.add(orderRun.longestItem);
+        }
+    }
+
+    private void start(ItemRun run, long now) {
+        run.item.updateState(ItemState.IN_PROCESS);
+        run.item.setProcessingStartedAt(new Timestamp(now));
+        run.doneMillis = now + run.cookMillis;
+        cookingItems.add(run);
+        OrderRun orderRun = run.orderRun;
+        if (orderRun.order.getProcessingStartedAt() == null) {
+            orderRun.order.setProcessingStartedAt(new Timestamp(now));
+            orderRun.order.updateState(OrderState.PROCESSING);
+            FlightEvents.orderSubmitted(orderRun.order, orderRun.order.getProcessingStartedAt());
+        }
+        if (run == orderRun.longestItem) {
+            // Release the other items so that they finish with the longest item.
+            for (ItemRun heldItem : orderRun.heldItems) {
+                heldItem.releaseMillis = run.doneMillis - heldItem.cookMillis;
+                if (heldItem.releaseMillis <= now) {
+                    readyItems.add(heldItem);
+                } else {
+                    deferredItems.add(heldItem);
+                }
+            }
+            orderRun.heldItems = null;
+        }
+    }
+
+    /** Progress of an order. */
+    private static class OrderRun {
+        private final Order order;
+        // Position in which the order arrived, which orders its ready items.
+        private final long sequence;
+        private int remainingItems;
+        // When staggered, the item which starts first, and the items released once it starts.
+        private ItemRun longestItem;
+        private List<ItemRun> heldItems = new ArrayList<>();
+
+        OrderRun(Order order, long sequence) {
+            this.order = order;
+            this.sequence = sequence;
+            this.remainingItems = order.getOrderItemsSize();
+        }
+    }
+
+    /** Progress of one item of an order. */
+    private static class ItemRun {
+        private final OrderRun orderRun;
+        private final OrderItem item;
+        private final long cookMillis;
+        private long releaseMillis;
+        private long doneMillis;
+
+        ItemRun(OrderRun orderRun, OrderItem item) {
+            this.orderRun = orderRun;
+            this.item = item;
+            this.cookMillis = item.getCookTimeSeconds() * 1000L;
+        }
+    }
+}
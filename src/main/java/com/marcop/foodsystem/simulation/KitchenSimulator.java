@@ -0,0 +1,487 @@
+package com.marcop.foodsystem.simulation;
+
+import com.google.common.base.Preconditions;
+import com.marcop.foodsystem.flightrecorder.ClearFinishedOrdersEvent;
+import com.marcop.foodsystem.flightrecorder.FlightEvents;
+import com.marcop.foodsystem.model.ItemState;
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+import com.marcop.foodsystem.model.OrderProcessingStrategy;
+import com.marcop.foodsystem.model.OrderState;
+import com.marcop.foodsystem.store.CompletedOrderStore;
+import com.marcop.foodsystem.store.OrderCursor;
+import com.marcop.foodsystem.store.OrderPage;
+import com.marcop.foodsystem.store.OrderQueue;
+import com.marcop.foodsystem.store.OrderStore;
+
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Simulates preparing orders in a kitchen.
+ * Submits orders from the pending queue to the processing queue, until the processing queue can no longer accept.
+ * Then processes orders until there is room to accept more. Completed orders are moved to the completed store.
+ *
+ * The simulation can be continued: after submitAll returns, more orders can be added to the pending store, and
+ * submitAll called again. This gives the same result as if all orders had been pending from the start.
+ *
+ * If a SimulationCheckpointer is set, the simulation state is checkpointed periodically, and can be resumed from
+ * the latest checkpoint with the same final results.
+ *
+ * If StationPools are set, an order is only submitted once every station it uses has room for its items, and the
+ * pools account for which station held up pending orders.
+ *
+ * If QueueingMetrics are set, each order is recorded in them as it completes.
+ *
+ * If AdmissionControl is set, pending orders arrive into its bounded queue as simulation time passes their orderedAt
+ * (checked at each step), and are submitted from it in arrival order. Orders it sheds are never processed. Without
+ * limits, results are the same as without admission control.
+ *
+ * A submit listener sees each order as it is submitted, and may stop the simulation early (e.g. once its result is
+ * known), leaving the remaining orders pending or processing.
+ *
+ * Submitted and completed orders, and clearFinishedOrders calls, are recorded as FlightEvents, if enabled.
+ */
+public class KitchenSimulator {
+
+    private static final int PAGE_SIZE = 1000;
+
+    private final OrderQueue pendingOrders;
+    private final OrderStore processingOrders;
+    private final CompletedOrderStore completedOrders;
+    private final OrderProcessingStrategy strategy;
+    // Order which has been dequeued, but could not be submitted yet.
+    private Order heldOrder;
+    // Current simulation time.
+    private Timestamp currentTime;
+    // Number of orders dequeued from pending so far.
+    private long dequeuedCount;
+    // Optional checkpointing. When set, dequeue indexes of orders not yet completed are tracked by order ID.
+    private SimulationCheckpointer checkpointer;
+    private long totalOrders;
+    private Map<Long, Long> dequeueIndexByOrderId;
+    // Optional callbacks after each batch of orders completes, and with each completed order.
+    private Runnable progressListener;
+    private Consumer<Order> completionListener;
+    // Optional station capacities. When set, the pool which held up heldOrder, and since when, are tracked.
+    private StationPools stationPools;
+    private int heldByPool = StationPools.NO_POOL;
+    private long heldSinceMillis;
+    // Optional utilization and queueing metrics.
+    private QueueingMetrics queueingMetrics;
+    // Optional callback after each order is submitted, and whether the simulation should stop early.
+    private Consumer<Order> submitListener;
+    private boolean stopRequested;
+    // Optional admission control, with the next pending order (dequeued, but not yet arrived), and the latest
+    // simulation time reached, up to which orders have arrived.
+    private AdmissionControl admissionControl;
+    private Order nextArrival;
+    private long arrivedUntilMillis = Long.MIN_VALUE;
+
+    public KitchenSimulator(OrderQueue pendingOrders, OrderStore processingOrders, CompletedOrderStore completedOrders,
+                            OrderProcessingStrategy strategy) {
+        this.pendingOrders = pendingOrders;
+        this.processingOrders = processingOrders;
+        this.completedOrders = completedOrders;
+        this.strategy = strategy;
+    }
+
+    /** Simulate all pending orders, until every order is completed. */
+    public void run() {
+        submitAll();
+        finish();
+        if (stopRequested) {
+            return;
+        }
+        if (checkpointer != null) {
+            checkpointer.clear();
+        }
+    }
+
+    /** Enable checkpointing. Must be set before the simulation starts, with every order pending. */
+    public void setCheckpointer(SimulationCheckpointer checkpointer) {
+        Preconditions.checkState(dequeuedCount == 0, "Checkpointing must be enabled before simulation starts.");
+        this.checkpointer = checkpointer;
+        this.totalOrders = pendingOrders.getCurrentNumOrders();
+        this.dequeueIndexByOrderId = new HashMap<>();
+    }
+
+    /** Enable station capacities. Must be set before the simulation starts. */
+    public void setStationPools(StationPools stationPools) {
+        Preconditions.checkState(dequeuedCount == 0, "Station pools must be set before simulation starts.");
+        this.stationPools = stationPools;
+    }
+
+    public StationPools getStationPools() {
+        return stationPools;
+    }
+
+    /** Record completed orders in queueing metrics. Must be set before the simulation starts. */
+    public void setQueueingMetrics(QueueingMetrics queueingMetrics) {
+        Preconditions.checkState(dequeuedCount == 0, "Queueing metrics must be set before simulation starts.");
+        this.queueingMetrics = queueingMetrics;
+    }
+
+    /** Enable admission control. Must be set before the simulation starts, and not with checkpointing. */
+    public void setAdmissionControl(AdmissionControl admissionControl) {
+        Preconditions.checkState(dequeuedCount == 0 && checkpointer == null,
+                "Admission control must be set before simulation starts, and without checkpointing.");
+        this.admissionControl = admissionControl;
+    }
+
+    /** Set a callback to run on the simulation thread after each order is submitted for processing. */
+    public void setSubmitListener(Consumer<Order> submitListener) {
+        this.submitListener = submitListener;
+    }
+
+    /** Stop the simulation after the current step. Call from the simulation thread, e.g. in a listener. */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    public boolean isStopped() {
+        return stopRequested;
+    }
+
+    /** Set a callback to run on the simulation thread after each batch of orders completes. */
+    public void setProgressListener(Runnable progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /** Set a callback to run on the simulation thread with each order as it completes, including on resume. */
+    public void setCompletionListener(Consumer<Order> completionListener) {
+        this.completionListener = completionListener;
+    }
+
+    /**
+     * Restore the simulation state from the latest checkpoint. Returns false if there is no checkpoint.
+     * The pending store must hold the same orders as the checkpointed run, since orders are matched by position.
+     */
+    public boolean resume() {
+        Preconditions.checkState(checkpointer != null && dequeuedCount == 0, "Cannot resume this simulation.");
+        SimulationCheckpointer.Checkpoint checkpoint = checkpointer.load();
+        if (checkpoint == null) {
+            return false;
+        }
+        Preconditions.checkState(checkpoint.totalOrders == totalOrders,
+                "Checkpoint was taken with " + checkpoint.totalOrders + " orders, but there are " + totalOrders);
+        Order[] dequeuedOrders = new Order[(int) checkpoint.dequeuedCount];
+        for (int i = 0; i < dequeuedOrders.length; i++) {
+            dequeuedOrders[i] = dequeue();
+        }
+        // Rebuild completed orders, and with them the completed store's stats.
+        for (int i = 0; i < checkpoint.completedDequeueIndexes.length; i++) {
+            Order order = dequeuedOrders[(int) checkpoint.completedDequeueIndexes[i]];
+            Timestamp processingStartedAt = new Timestamp(checkpoint.completedStartMillis[i]);
+            order.setProcessingStartedAt(processingStartedAt);
+            order.setCompletedAt(getDoneTime(order));
+            order.updateState(OrderState.COMPLETE);
+            for (OrderItem item : order.getOrderItems()) {
+                item.updateState(ItemState.COMPLETE);
+                item.setProcessingStartedAt(processingStartedAt);
+                item.setCompletedAt(order.getCompletedAt());
+            }
+            completedOrders.addOrder(order);
+            dequeueIndexByOrderId.remove(order.getId());
+            if (stationPools != null) {
+                stationPools.recordCompleted(order);
+            }
+            if (queueingMetrics != null) {
+                queueingMetrics.recordCompleted(order);
+            }
+            if (completionListener != null) {
+                completionListener.accept(order);
+            }
+        }
+        for (int i = 0; i < checkpoint.inFlightDequeueIndexes.size(); i++) {
+            Order order = dequeuedOrders[checkpoint.inFlightDequeueIndexes.get(i).intValue()];
+            processingOrders.submitOrder(order, new Timestamp(checkpoint.inFlightStartMillis.get(i)));
+            if (stationPools != null) {
+                stationPools.admit(order, checkpoint.inFlightStartMillis.get(i));
+            }
+        }
+        if (checkpoint.heldDequeueIndex != SimulationCheckpointer.NONE) {
+            heldOrder = dequeuedOrders[(int) checkpoint.heldDequeueIndex];
+        }
+        heldByPool = checkpoint.heldByPool;
+        heldSinceMillis = checkpoint.heldSinceMillis;
+        if (stationPools != null) {
+            stationPools.restoreFrom(checkpoint);
+        }
+        currentTime = checkpoint.currentTimeMillis == Long.MIN_VALUE
+                ? null : new Timestamp(checkpoint.currentTimeMillis);
+        return true;
+    }
+
+    /**
+     * Submit all pending orders for processing, processing orders as needed to make room.
+     * Returns once every pending order has been submitted. Orders may still be processing.
+     */
+    public void submitAll() {
+        while (!stopRequested) {
+            maybeCheckpoint();
+            // Submit pending orders until the kitchen cannot accept more.
+            boolean isOrderSubmitted = true;
+            while (isOrderSubmitted && !stopRequested) {
+                Order orderToSubmit;
+                if (heldOrder != null) {
+                    // heldOrder still needs to be submitted. Skip fetching a new order.
+                    orderToSubmit = heldOrder;
+                    heldOrder = null;
+                } else {
+                    orderToSubmit = admissionControl == null ? dequeue() : dequeueAdmitted();
+                    if (orderToSubmit == null) {
+                        break;
+                    }
+                    // Orders which arrived while the kitchen was full start now, not back when they were placed.
+                    if (currentTime == null || orderToSubmit.getOrderedAt().after(currentTime)) {
+                        currentTime = orderToSubmit.getOrderedAt();
+                    }
+                }
+                if (orderToSubmit.getOrderItemsSize() > processingOrders.getMaxAllowedItems()) {
+                    // Kitchens cannot process only part of an order at a time.
+                    // As such it must be large enough to process all of the orders items at the same time.
+                    throw new RuntimeException("Kitchen is too small to process this order. Item count = "
+                            + orderToSubmit.getOrderItems().size());
+                }
+                // Try to submit order for processing.
+                isOrderSubmitted = stationPools == null
+                        ? processingOrders.submitOrder(orderToSubmit, currentTime)
+                        : submitToStations(orderToSubmit);
+                if (!isOrderSubmitted) {
+                    heldOrder = orderToSubmit;
+                } else {
+                    FlightEvents.orderSubmitted(orderToSubmit, currentTime);
+                    if (submitListener != null) {
+                        submitListener.accept(orderToSubmit);
+                    }
+                }
+            }
+            if (heldOrder == null) {
+                // Pending queue is empty.
+                return;
+            }
+            currentTime = processBatch(currentTime);
+            if (admissionControl != null) {
+                arriveUntil(currentTime.getTime());
+            }
+        }
+    }
+
+    /**
+     * Get the first admitted order, after orders arrive up to the latest time reached. If none are queued, the next
+     * pending order arrives, until one is admitted. Returns null once no orders are pending.
+     */
+    private Order dequeueAdmitted() {
+        arriveUntil(arrivedUntilMillis);
+        while (admissionControl.isEmpty()) {
+            Order order = nextArrival != null ? nextArrival : dequeue();
+            nextArrival = null;
+            if (order == null) {
+                return null;
+            }
+            arrivedUntilMillis = Math.max(arrivedUntilMillis, order.getOrderedAt().getTime());
+            arrive(order);
+        }
+        return admissionControl.poll();
+    }
+
+    /** Offer pending orders ordered at or before a time to admission control, in order. */
+    private void arriveUntil(long millis) {
+        arrivedUntilMillis = Math.max(arrivedUntilMillis, millis);
+        while (true) {
+            if (nextArrival == null) {
+                nextArrival = dequeue();
+                if (nextArrival == null) {
+                    return;
+                }
+            }
+            if (nextArrival.getOrderedAt().getTime() > arrivedUntilMillis) {
+                return;
+            }
+            Order order = nextArrival;
+            nextArrival = null;
+            arrive(order);
+        }
+    }
+
+    private void arrive(Order order) {
+        admissionControl.offer(order, this::getWorkAheadItemMillis, processingOrders.getMaxAllowedItems());
+    }
+
+    /** Get the item time still to do for orders processing, and the order held at the head of the line. */
+    private long getWorkAheadItemMillis() {
+        long workAhead = heldOrder == null ? 0 : AdmissionControl.itemMillis(heldOrder);
+        OrderCursor cursor = null;
+        do {
+            OrderPage page = processingOrders.getOrdersByOrderedAt(null, null, cursor, PAGE_SIZE);
+            for (Order order : page.getOrders()) {
+                long remainingMillis = getDoneTime(order).getTime() - arrivedUntilMillis;
+                workAhead += Math.max(0, remainingMillis) * order.getOrderItemsSize();
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return workAhead;
+    }
+
+    /**
+     * Submit an order if every station it uses has room, and account for the time it waited for stations.
+     * Returns if the order was submitted.
+     */
+    private boolean submitToStations(Order order) {
+        if (heldByPool != StationPools.NO_POOL) {
+            // The order was held, and is being retried.
+            stationPools.recordBlocked(heldByPool, currentTime.getTime() - heldSinceMillis);
+        }
+        int oversizedPool = stationPools.findOversizedPool(order);
+        if (oversizedPool != StationPools.NO_POOL) {
+            throw new RuntimeException("Station " + stationPools.getPoolName(oversizedPool)
+                    + " is too small to process this order. Item count = " + order.getOrderItemsSize());
+        }
+        int blockingPool = stationPools.findBlockingPool(order);
+        if (blockingPool == StationPools.NO_POOL && processingOrders.submitOrder(order, currentTime)) {
+            stationPools.admit(order, currentTime.getTime());
+            heldByPool = StationPools.NO_POOL;
+            return true;
+        }
+        if (blockingPool == StationPools.NO_POOL) {
+            // The processing store has no room.
+            blockingPool = StationPools.KITCHEN_POOL;
+        }
+        if (heldByPool == StationPools.NO_POOL) {
+            stationPools.recordHeld(blockingPool);
+        }
+        heldByPool = blockingPool;
+        heldSinceMillis = currentTime.getTime();
+        return false;
+    }
+
+    /** Process orders until all submitted orders are completed. */
+    public void finish() {
+        while (processingOrders.getCurrentNumOrders() > 0 && !stopRequested) {
+            maybeCheckpoint();
+            currentTime = processBatch(currentTime);
+        }
+    }
+
+    /**
+     * Get the time at which every order submitted so far will be done, or null if no orders are processing.
+     * If this is not after the next pending order's orderedAt, the kitchen will be idle when that order arrives.
+     */
+    public Timestamp getBusyUntil() {
+        Timestamp busyUntil = null;
+        OrderCursor cursor = null;
+        do {
+            OrderPage page = processingOrders.getOrdersByOrderedAt(null, null, cursor, PAGE_SIZE);
+            for (Order order : page.getOrders()) {
+                Timestamp doneTime = getDoneTime(order);
+                if (busyUntil == null || doneTime.after(busyUntil)) {
+                    busyUntil = doneTime;
+                }
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return busyUntil;
+    }
+
+    /** Get the queue which orders are submitted from. */
+    public OrderQueue getPendingOrders() {
+        return pendingOrders;
+    }
+
+    /** Get the store which completed orders are moved to. */
+    public CompletedOrderStore getCompletedOrders() {
+        return completedOrders;
+    }
+
+    private Order dequeue() {
+        Order order = pendingOrders.getAndDequeueOrder(strategy);
+        if (order != null) {
+            if (checkpointer != null) {
+                dequeueIndexByOrderId.put(order.getId(), dequeuedCount);
+            }
+            dequeuedCount++;
+        }
+        return order;
+    }
+
+    /** Write a checkpoint, if checkpointing is enabled and one is due. */
+    private void maybeCheckpoint() {
+        if (checkpointer == null || !checkpointer.isDue()) {
+            return;
+        }
+        SimulationCheckpointer.Checkpoint checkpoint = new SimulationCheckpointer.Checkpoint();
+        checkpoint.totalOrders = totalOrders;
+        checkpoint.dequeuedCount = dequeuedCount;
+        checkpoint.currentTimeMillis = currentTime == null ? Long.MIN_VALUE : currentTime.getTime();
+        if (heldOrder != null) {
+            checkpoint.heldDequeueIndex = dequeueIndexByOrderId.get(heldOrder.getId());
+        }
+        checkpoint.heldByPool = heldByPool;
+        checkpoint.heldSinceMillis = heldSinceMillis;
+        if (stationPools != null) {
+            stationPools.saveTo(checkpoint);
+        }
+        OrderCursor cursor = null;
+        do {
+            OrderPage page = processingOrders.getOrdersByOrderedAt(null, null, cursor, PAGE_SIZE);
+            for (Order order : page.getOrders()) {
+                checkpoint.inFlightDequeueIndexes.add(dequeueIndexByOrderId.get(order.getId()));
+                checkpoint.inFlightStartMillis.add(order.getProcessingStartedAt().getTime());
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        checkpointer.writeCheckpoint(checkpoint);
+    }
+
+    private static Timestamp getDoneTime(Order order) {
+        return new Timestamp(order.getProcessingStartedAt().getTime() + (order.getTotalCookTimeSeconds() * 1000L));
+    }
+
+    /**
+     * For a given timestamp, clear all orders which would be complete by that time.
+     * If no orders are complete, step time forward until some are.
+     */
+    private Timestamp processBatch(Timestamp startedAt) {
+        Timestamp queryTime = startedAt;
+        int minutesElapsed = 0;
+
+        while (processingOrders.getCurrentNumOrders() > 0) {
+            queryTime = new Timestamp(queryTime.getTime() + (minutesElapsed * 60 * 1000L));
+            ClearFinishedOrdersEvent clearEvent =
+                    FlightEvents.beginClearFinishedOrders(processingOrders.getCurrentNumOrders());
+            List<Order> completedOrderBatch = processingOrders.clearFinishedOrders(queryTime);
+            FlightEvents.endClearFinishedOrders(clearEvent, queryTime, completedOrderBatch.size());
+            if (stationPools != null) {
+                stationPools.releaseUntil(queryTime.getTime());
+            }
+            if (!completedOrderBatch.isEmpty()) {
+                for (Order completedOrder : completedOrderBatch) {
+                    completedOrders.addOrder(completedOrder);
+                    FlightEvents.orderCompleted(completedOrder);
+                    if (queueingMetrics != null) {
+                        queueingMetrics.recordCompleted(completedOrder);
+                    }
+                    if (completionListener != null) {
+                        completionListener.accept(completedOrder);
+                    }
+                    if (checkpointer != null) {
+                        checkpointer.recordCompletion(dequeueIndexByOrderId.remove(completedOrder.getId()),
+                                completedOrder.getProcessingStartedAt().getTime());
+                    }
+                }
+                break;
+            } else {
+                // If no batch for query time, increment time.
+                minutesElapsed++;
+            }
+        }
+        if (progressListener != null) {
+            progressListener.run();
+        }
+        return queryTime;
+    }
+}
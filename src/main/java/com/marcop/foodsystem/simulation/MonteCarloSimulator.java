@@ -0,0 +1,266 @@
+package com.marcop.foodsystem.simulation;
+
+import com.google.common.base.Preconditions;
+import com.marcop.foodsystem.indexing.KitchenMenuItemIndexes;
+import com.marcop.foodsystem.model.CookTimeDistribution;
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Simulates the same orders many times, with cook times drawn from each menu item's CookTimeDistribution, and
+ * estimates mean pending time, completion time (from order to completion) and throughput with 95% confidence
+ * intervals over the replicas.
+ *
+ * Orders are flattened once into arrays (arrival times, item counts and item distributions), shared read-only by
+ * every replica. A replica only draws cook times and keeps the orders in process in a heap of primitives, so it
+ * allocates nothing but its random source, and thousands of replicas of a day run in seconds. Replicas run on a
+ * pool of threads, each drawing from its own SplittableRandom seeded from the replica number, so results do not
+ * depend on the number of threads.
+ *
+ * Replicas schedule whole orders first come first serve in continuous time, as ItemLevelSimulator does with whole
+ * order admission, rather than in KitchenSimulator's minute steps. Orders must be validated and fit the kitchen.
+ */
+public class MonteCarloSimulator {
+
+    public static final long DEFAULT_SEED = 1;
+
+    // Normal quantile for a two sided 95% confidence interval.
+    private static final double Z_95 = 1.959964;
+
+    // Orders by arrival time.
+    private final long[] orderedAtMillis;
+    private final int[] itemCounts;
+    // Distributions of the items of order i, from firstItems[i] until firstItems[i + 1].
+    private final int[] firstItems;
+    private final CookTimeDistribution[] itemDistributions;
+    private final int maxConcurrentItems;
+    private final int parallelism;
+
+    public MonteCarloSimulator(List<Order> orders, KitchenMenuItemIndexes kitchenMenuItemIndexes,
+                               int maxConcurrentItems, int parallelism) {
+        Preconditions.checkArgument(!orders.isEmpty(), "There are no orders to simulate.");
+        Preconditions.checkArgument(parallelism > 0, "Parallelism must be greater than 0.");
+        this.maxConcurrentItems = maxConcurrentItems;
+        this.parallelism = parallelism;
+        List<Order> sortedOrders = new ArrayList<>(orders);
+        sortedOrders.sort(Comparator.comparing(Order::getOrderedAt));
+        orderedAtMillis = new long[sortedOrders.size()];
+        itemCounts = new int[sortedOrders.size()];
+        firstItems = new int[sortedOrders.size() + 1];
+        List<CookTimeDistribution> distributions = new ArrayList<>();
+        for (int i = 0; i < sortedOrders.size(); i++) {
+            Order order = sortedOrders.get(i);
+            Preconditions.checkArgument(maxConcurrentItems <= 0 || order.getOrderItemsSize() <= maxConcurrentItems,
+                    "Order " + order.getId() + " has more items than the kitchen can process.");
+            orderedAtMillis[i] = order.getOrderedAt().getTime();
+            itemCounts[i] = order.getOrderItemsSize();
+            firstItems[i] = distributions.size();
+            for (OrderItem item : order.getOrderItems()) {
+                distributions.add(kitchenMenuItemIndexes.getCookTimeDistribution(item.getName()));
+            }
+        }
+        firstItems[sortedOrders.size()] = distributions.size();
+        itemDistributions = distributions.toArray(new CookTimeDistribution[0]);
+    }
+
+    /** Run a number of replicas, from a seed. */
+    public Result run(int replicas, long seed) {
+        Preconditions.checkArgument(replicas > 0, "Replicas must be greater than 0.");
+        double[] meanPendingMillis = new double[replicas];
+        double[] meanCompletionMillis = new double[replicas];
+        double[] completionsPerHour = new double[replicas];
+        AtomicInteger nextReplica = new AtomicInteger();
+        List<Callable<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < Math.min(parallelism, replicas); i++) {
+            workers.add(() -> {
+                Replica replica = new Replica();
+                for (int r = nextReplica.getAndIncrement(); r < replicas; r = nextReplica.getAndIncrement()) {
+                    replica.run(new SplittableRandom(seed * 0x9E3779B97F4A7C15L + r));
+                    meanPendingMillis[r] = replica.totalPendingMillis / (double) orderedAtMillis.length;
+                    meanCompletionMillis[r] = replica.totalCompletionMillis / (double) orderedAtMillis.length;
+                    long spanMillis = replica.lastCompletionMillis - orderedAtMillis[0];
+                    completionsPerHour[r] = orderedAtMillis.length * 3600000.0 / spanMillis;
+                }
+                return null;
+            });
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(workers.size());
+        try {
+            for (Future<Void> future : executor.invokeAll(workers)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while running replicas.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return new Result(meanPendingMillis, meanCompletionMillis, completionsPerHour);
+    }
+
+    /** One thread's replica state, reused for each replica it runs. */
+    private class Replica {
+        // Orders in process, as a binary min-heap by completion time, with their item counts.
+        private final long[] heapDoneMillis = new long[Math.max(maxConcurrentItems, 0)];
+        private final int[] heapItems = new int[heapDoneMillis.length];
+        private int heapSize;
+
+        private long totalPendingMillis;
+        private long totalCompletionMillis;
+        private long lastCompletionMillis;
+
+        void run(SplittableRandom random) {
+            heapSize = 0;
+            totalPendingMillis = 0;
+            totalCompletionMillis = 0;
+            lastCompletionMillis = Long.MIN_VALUE;
+            int freeItems = maxConcurrentItems;
+            long lastStartedMillis = Long.MIN_VALUE;
+            for (int i = 0; i < orderedAtMillis.length; i++) {
+                int cookSeconds = 0;
+                for (int j = firstItems[i]; j < firstItems[i + 1]; j++) {
+                    cookSeconds = Math.max(cookSeconds, itemDistributions[j].sample(random));
+                }
+                // First come first serve, so an order never starts before the one ahead of it.
+                long startedMillis = Math.max(orderedAtMillis[i], lastStartedMillis);
+                if (maxConcurrentItems > 0) {
+                    while (heapSize > 0 && (heapDoneMillis[0] <= startedMillis || freeItems < itemCounts[i])) {
+                        startedMillis = Math.max(startedMillis, heapDoneMillis[0]);
+                        freeItems += heapItems[0];
+                        pop();
+                    }
+                }
+                long completedMillis = startedMillis + cookSeconds * 1000L;
+                if (maxConcurrentItems > 0) {
+                    push(completedMillis, itemCounts[i]);
+                    freeItems -= itemCounts[i];
+                }
+                lastStartedMillis = startedMillis;
+                totalPendingMillis += startedMillis - orderedAtMillis[i];
+                totalCompletionMillis += completedMillis - orderedAtMillis[i];
+                lastCompletionMillis = Math.max(lastCompletionMillis, completedMillis);
+            }
+        }
+
+        private void push(long doneMillis, int items) {
+            int i = heapSize++;
+            while (i > 0 && heapDoneMillis[(i - 1) / 2] > doneMillis) {
+                heapDoneMillis[i] = heapDoneMillis[(i - 1) / 2];
+                heapItems[i] = heapItems[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            heapDoneMillis[i] = doneMillis;
+            heapItems[i] = items;
+        }
+
+        private void pop() {
+            long doneMillis = heapDoneMillis[--heapSize];
+            int items = heapItems[heapSize];
+            int i = 0;
+            for (int child = 1; child < heapSize; child = 2 * i + 1) {
+                if (child + 1 < heapSize && heapDoneMillis[child + 1] < heapDoneMillis[child]) {
+                    child++;
+                }
+                if (heapDoneMillis[child] >= doneMillis) {
+                    break;
+                }
+                heapDoneMillis[i] = heapDoneMillis[child];
+                heapItems[i] = heapItems[child];
+                i = child;
+            }
+            heapDoneMillis[i] = doneMillis;
+            heapItems[i] = items;
+        }
+    }
+
+    /** Mean of a metric over replicas, with a 95% confidence interval. */
+    public static class Estimate {
+        private final double mean;
+        private final double halfWidth;
+
+        Estimate(double[] values) {
+            double sum = 0;
+            for (double value : values) {
+                sum += value;
+            }
+            mean = sum / values.length;
+            double squares = 0;
+            for (double value : values) {
+                squares += (value - mean) * (value - mean);
+            }
+            halfWidth = values.length < 2 ? 0 : Z_95 * Math.sqrt(squares / (values.length - 1) / values.length);
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public double getLow() {
+            return mean - halfWidth;
+        }
+
+        public double getHigh() {
+            return mean + halfWidth;
+        }
+    }
+
+    /** Metrics of each replica, and their estimates. */
+    public static class Result {
+        private final double[] meanPendingMillis;
+        private final double[] meanCompletionMillis;
+        private final double[] completionsPerHour;
+
+        Result(double[] meanPendingMillis, double[] meanCompletionMillis, double[] completionsPerHour) {
+            this.meanPendingMillis = meanPendingMillis;
+            this.meanCompletionMillis = meanCompletionMillis;
+            this.completionsPerHour = completionsPerHour;
+        }
+
+        public int getReplicas() {
+            return meanPendingMillis.length;
+        }
+
+        /** Get each replica's mean time from order until processing started. */
+        public double[] getMeanPendingMillis() {
+            return meanPendingMillis;
+        }
+
+        /** Get each replica's mean time from order until completion. */
+        public double[] getMeanCompletionMillis() {
+            return meanCompletionMillis;
+        }
+
+        /** Get each replica's orders completed per hour, from the first order until the last completion. */
+        public double[] getCompletionsPerHour() {
+            return completionsPerHour;
+        }
+
+        public Estimate getPendingEstimate() {
+            return new Estimate(meanPendingMillis);
+        }
+
+        public Estimate getCompletionEstimate() {
+            return new Estimate(meanCompletionMillis);
+        }
+
+        public Estimate getThroughputEstimate() {
+            return new Estimate(completionsPerHour);
+        }
+    }
+}
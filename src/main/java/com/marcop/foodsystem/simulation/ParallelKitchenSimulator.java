@@ -0,0 +1,206 @@
+package com.marcop.foodsystem.simulation;
+
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderProcessingStrategy;
+import com.marcop.foodsystem.store.CompletedOrderStore;
+import com.marcop.foodsystem.store.OrderCursor;
+import com.marcop.foodsystem.store.OrderInMemoryStore;
+import com.marcop.foodsystem.store.OrderPage;
+import com.marcop.foodsystem.store.OrderPendingQueue;
+import com.marcop.foodsystem.store.OrderQueue;
+import com.marcop.foodsystem.store.OrderStore;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Simulates a kitchen on multiple threads, with the same results as a single KitchenSimulator.
+ *
+ * Whenever the kitchen goes fully idle (nothing pending or processing), the simulation state resets. So segments of
+ * orders separated by idle periods (e.g. overnight) can be simulated independently:
+ * 1. Pending orders are split into segments at gaps in orderedAt of at least idleGapMinutes (predicted cut points).
+ * 2. Each segment is simulated in parallel, starting from an idle kitchen.
+ * 3. Cut points are checked in order. A cut is confirmed if every order before it is done by the time the first
+ *    order after it arrives. Otherwise the preceding simulation is continued through the segment serially.
+ * 4. Confirmed simulations finish processing in parallel, and their completed orders (and station stats) are merged.
+ *    Queueing metrics are recorded, and the completion listener called, as completed orders are merged.
+ */
+public class ParallelKitchenSimulator {
+
+    public static final int DEFAULT_IDLE_GAP_MINUTES = 30;
+
+    private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+    // Split into more segments than threads, so that uneven segments still keep all threads busy.
+    private static final int SEGMENTS_PER_THREAD = 4;
+    private static final int PAGE_SIZE = 1000;
+
+    private final int parallelism;
+    private final long idleGapMillis;
+    private final OrderProcessingStrategy strategy;
+    private final Supplier<OrderStore> processingStoreFactory;
+    private StationPools stationPools;
+    private QueueingMetrics queueingMetrics;
+    private Consumer<Order> completionListener;
+
+    public ParallelKitchenSimulator(int parallelism, int idleGapMinutes, OrderProcessingStrategy strategy,
+                                    Supplier<OrderStore> processingStoreFactory) {
+        this.parallelism = parallelism;
+        this.idleGapMillis = idleGapMinutes * 60 * 1000L;
+        this.strategy = strategy;
+        this.processingStoreFactory = processingStoreFactory;
+    }
+
+    /** Enable station capacities. Each simulation gets empty copies, and their stats are merged into these. */
+    public void setStationPools(StationPools stationPools) {
+        this.stationPools = stationPools;
+    }
+
+    /** Record completed orders in queueing metrics, as they are merged. */
+    public void setQueueingMetrics(QueueingMetrics queueingMetrics) {
+        this.queueingMetrics = queueingMetrics;
+    }
+
+    /** Set a callback to run on the calling thread with each completed order, as it is merged. */
+    public void setCompletionListener(Consumer<Order> completionListener) {
+        this.completionListener = completionListener;
+    }
+
+    /** Simulate all pending orders, and add them to completedOrders. */
+    public void run(OrderQueue pendingOrders, CompletedOrderStore completedOrders) {
+        List<List<Order>> segments = partition(pendingOrders);
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            // Speculatively simulate each segment, starting from an idle kitchen.
+            List<Future<KitchenSimulator>> speculativeRuns = new ArrayList<>();
+            for (final List<Order> segment : segments) {
+                speculativeRuns.add(executor.submit(() -> {
+                    KitchenSimulator simulator = newSimulator(segment);
+                    simulator.submitAll();
+                    return simulator;
+                }));
+            }
+
+            // Confirm cut points in order.
+            List<KitchenSimulator> confirmedRuns = new ArrayList<>();
+            KitchenSimulator currentRun = await(speculativeRuns.get(0));
+            int missedCuts = 0;
+            for (int i = 1; i < segments.size(); i++) {
+                KitchenSimulator speculativeRun = await(speculativeRuns.get(i));
+                List<Order> segment = segments.get(i);
+                Timestamp busyUntil = currentRun.getBusyUntil();
+                if (busyUntil == null || !busyUntil.after(segment.get(0).getOrderedAt())) {
+                    // Kitchen is idle when the segment starts, so the speculative run is exact.
+                    confirmedRuns.add(currentRun);
+                    currentRun = speculativeRun;
+                } else {
+                    // Kitchen is still busy. Discard the speculative run, and continue the current one.
+                    missedCuts++;
+                    for (Order order : segment) {
+                        order.resetProgress();
+                        currentRun.getPendingOrders().addOrder(order);
+                    }
+                    currentRun.submitAll();
+                }
+            }
+            confirmedRuns.add(currentRun);
+            LOGGER.info(String.format(
+                    "Simulated %d segments on %d threads. %d predicted idle cut points were busy.",
+                    segments.size(), parallelism, missedCuts));
+
+            // Finish processing in parallel.
+            List<Callable<Void>> finishers = new ArrayList<>();
+            for (final KitchenSimulator confirmedRun : confirmedRuns) {
+                finishers.add(() -> {
+                    confirmedRun.finish();
+                    return null;
+                });
+            }
+            for (Future<Void> finisher : executor.invokeAll(finishers)) {
+                await(finisher);
+            }
+
+            for (KitchenSimulator confirmedRun : confirmedRuns) {
+                mergeOrders(confirmedRun.getCompletedOrders(), completedOrders);
+                if (stationPools != null) {
+                    stationPools.mergeStats(confirmedRun.getStationPools());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while simulating.", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** Dequeue all pending orders, and split them into segments at predicted idle cut points. */
+    private List<List<Order>> partition(OrderQueue pendingOrders) {
+        int minSegmentSize = Math.max(1, pendingOrders.getCurrentNumOrders() / (parallelism * SEGMENTS_PER_THREAD));
+        List<List<Order>> segments = new ArrayList<>();
+        List<Order> segment = new ArrayList<>();
+        Order previousOrder = null;
+        Order order;
+        while ((order = pendingOrders.getAndDequeueOrder(strategy)) != null) {
+            if (previousOrder != null && segment.size() >= minSegmentSize
+                    && order.getOrderedAt().getTime() - previousOrder.getOrderedAt().getTime() >= idleGapMillis) {
+                segments.add(segment);
+                segment = new ArrayList<>();
+            }
+            segment.add(order);
+            previousOrder = order;
+        }
+        segments.add(segment);
+        return segments;
+    }
+
+    private KitchenSimulator newSimulator(List<Order> segment) {
+        OrderQueue segmentPendingOrders = new OrderPendingQueue();
+        for (Order order : segment) {
+            segmentPendingOrders.addOrder(order);
+        }
+        KitchenSimulator simulator = new KitchenSimulator(
+                segmentPendingOrders, processingStoreFactory.get(), new OrderInMemoryStore(), strategy);
+        if (stationPools != null) {
+            simulator.setStationPools(stationPools.copyEmpty());
+        }
+        return simulator;
+    }
+
+    /** Add every order in one store to another, and record it in the queueing metrics and listener, if any. */
+    private void mergeOrders(CompletedOrderStore fromStore, CompletedOrderStore toStore) {
+        OrderCursor cursor = null;
+        do {
+            OrderPage page = fromStore.getOrdersByOrderedAt(null, null, cursor, PAGE_SIZE);
+            for (Order order : page.getOrders()) {
+                toStore.addOrder(order);
+                if (queueingMetrics != null) {
+                    queueingMetrics.recordCompleted(order);
+                }
+                if (completionListener != null) {
+                    completionListener.accept(order);
+                }
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+    }
+
+    private static <T> T await(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package com.marcop.foodsystem.simulation;
+
+import com.google.common.base.Preconditions;
+import com.marcop.foodsystem.model.Order;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Kitchen utilization and queueing metrics, updated as orders complete in a simulation.
+ *
+ * Every update is O(1). Totals (time-weighted areas, counts, durations) are kept directly. Time series per bucket
+ * (e.g. every 15 minutes) are kept as difference arrays: an interval adds its partial time to the buckets it
+ * starts and ends in, and marks the buckets in between as fully covered with one counter each at its ends. The
+ * series are only summed up when read.
+ *
+ * The mean pending queue depth from the series can be checked against Little's law (depth = arrival rate times
+ * mean pending time), which holds over the whole run since the kitchen starts and ends empty.
+ *
+ * Metrics of separate runs merge exactly, since totals add up and difference arrays add up bucket by bucket. So they
+ * can be saved with writeTo, and merged into one report without the orders, e.g. a month from daily runs.
+ */
+public class QueueingMetrics {
+
+    public static final int DEFAULT_BUCKET_MINUTES = 15;
+
+    private final int maxConcurrentItems;
+    private final long bucketMillis;
+
+    // Totals.
+    private long arrivals;
+    private long completions;
+    private long totalPendingMillis;
+    private long totalProcessingMillis;
+    private long busyItemMillis;
+    private long firstArrivalMillis = Long.MAX_VALUE;
+    private long lastCompletionMillis = Long.MIN_VALUE;
+
+    // Series, indexed by bucket - firstBucket.
+    private long firstBucket;
+    private final Series pending = new Series();
+    private final Series processing = new Series();
+    private final Series busyItems = new Series();
+    private long[] arrivalsByBucket = new long[0];
+    private long[] completionsByBucket = new long[0];
+
+    public QueueingMetrics(int maxConcurrentItems, int bucketMinutes) {
+        Preconditions.checkArgument(bucketMinutes > 0, "Bucket minutes must be greater than 0.");
+        this.maxConcurrentItems = maxConcurrentItems;
+        this.bucketMillis = bucketMinutes * 60 * 1000L;
+    }
+
+    public QueueingMetrics(int maxConcurrentItems) {
+        this(maxConcurrentItems, DEFAULT_BUCKET_MINUTES);
+    }
+
+    /**
+     * Record a completed order: its arrival, time pending and time processing, with all of its items busy while
+     * it is processing.
+     */
+    public void recordCompleted(Order order) {
+        recordOrder(order);
+        recordBusyItems(order.getProcessingStartedAt().getTime(), order.getCompletedAt().getTime(),
+                order.getOrderItemsSize());
+    }
+
+    /** Record a completed order, without its items. Busy items are recorded separately, with recordBusyItems. */
+    public void recordOrder(Order order) {
+        long orderedMillis = order.getOrderedAt().getTime();
+        long startedMillis = order.getProcessingStartedAt().getTime();
+        long completedMillis = order.getCompletedAt().getTime();
+        arrivals++;
+        completions++;
+        totalPendingMillis += startedMillis - orderedMillis;
+        totalProcessingMillis += completedMillis - startedMillis;
+        firstArrivalMillis = Math.min(firstArrivalMillis, orderedMillis);
+        lastCompletionMillis = Math.max(lastCompletionMillis, completedMillis);
+        ensureBuckets(orderedMillis, completedMillis);
+        arrivalsByBucket[index(orderedMillis)]++;
+        completionsByBucket[index(completedMillis)]++;
+        pending.add(orderedMillis, startedMillis, 1);
+        processing.add(startedMillis, completedMillis, 1);
+    }
+
+    /** Record a number of items taking kitchen slots from one time until another. */
+    public void recordBusyItems(long fromMillis, long toMillis, int itemCount) {
+        ensureBuckets(fromMillis, toMillis);
+        busyItemMillis += (toMillis - fromMillis) * itemCount;
+        busyItems.add(fromMillis, toMillis, itemCount);
+    }
+
+    /** Add the metrics of another run, with the same bucket size and capacity, as if recorded here. */
+    public void merge(QueueingMetrics other) {
+        Preconditions.checkArgument(other.bucketMillis == bucketMillis
+                && other.maxConcurrentItems == maxConcurrentItems, "Metrics must have the same buckets and capacity.");
+        if (other.arrivalsByBucket.length == 0) {
+            return;
+        }
+        // The other series' last bucket is an end marker, which ensureBuckets adds one of.
+        ensureBuckets(other.firstBucket * bucketMillis,
+                (other.firstBucket + other.arrivalsByBucket.length - 2) * bucketMillis);
+        int offset = (int) (other.firstBucket - firstBucket);
+        addAt(arrivalsByBucket, other.arrivalsByBucket, offset);
+        addAt(completionsByBucket, other.completionsByBucket, offset);
+        pending.merge(other.pending, offset);
+        processing.merge(other.processing, offset);
+        busyItems.merge(other.busyItems, offset);
+        arrivals += other.arrivals;
+        completions += other.completions;
+        totalPendingMillis += other.totalPendingMillis;
+        totalProcessingMillis += other.totalProcessingMillis;
+        busyItemMillis += other.busyItemMillis;
+        firstArrivalMillis = Math.min(firstArrivalMillis, other.firstArrivalMillis);
+        lastCompletionMillis = Math.max(lastCompletionMillis, other.lastCompletionMillis);
+    }
+
+    /** Write the metrics, to be read back with readFrom. */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(maxConcurrentItems);
+        out.writeLong(bucketMillis);
+        out.writeLong(arrivals);
+        out.writeLong(completions);
+        out.writeLong(totalPendingMillis);
+        out.writeLong(totalProcessingMillis);
+        out.writeLong(busyItemMillis);
+        out.writeLong(firstArrivalMillis);
+        out.writeLong(lastCompletionMillis);
+        out.writeLong(firstBucket);
+        out.writeInt(arrivalsByBucket.length);
+        for (long[] values : new long[][] {arrivalsByBucket, completionsByBucket, pending.partialMillis,
+                pending.coveringDelta, processing.partialMillis, processing.coveringDelta, busyItems.partialMillis,
+                busyItems.coveringDelta}) {
+            for (long value : values) {
+                out.writeLong(value);
+            }
+        }
+    }
+
+    /** Read metrics written by writeTo. */
+    public static QueueingMetrics readFrom(DataInputStream in) throws IOException {
+        int maxConcurrentItems = in.readInt();
+        long bucketMillis = in.readLong();
+        QueueingMetrics metrics = new QueueingMetrics(maxConcurrentItems, (int) (bucketMillis / 60000));
+        Preconditions.checkArgument(metrics.bucketMillis == bucketMillis, "Invalid bucket size: " + bucketMillis);
+        metrics.arrivals = in.readLong();
+        metrics.completions = in.readLong();
+        metrics.totalPendingMillis = in.readLong();
+        metrics.totalProcessingMillis = in.readLong();
+        metrics.busyItemMillis = in.readLong();
+        metrics.firstArrivalMillis = in.readLong();
+        metrics.lastCompletionMillis = in.readLong();
+        metrics.firstBucket = in.readLong();
+        int length = in.readInt();
+        metrics.arrivalsByBucket = readLongs(in, length);
+        metrics.completionsByBucket = readLongs(in, length);
+        for (Series series : new Series[] {metrics.pending, metrics.processing, metrics.busyItems}) {
+            series.partialMillis = readLongs(in, length);
+            series.coveringDelta = readLongs(in, length);
+        }
+        return metrics;
+    }
+
+    private static long[] readLongs(DataInputStream in, int length) throws IOException {
+        long[] values = new long[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = in.readLong();
+        }
+        return values;
+    }
+
+    private static void addAt(long[] values, long[] others, int offset) {
+        for (int i = 0; i < others.length; i++) {
+            values[offset + i] += others[i];
+        }
+    }
+
+    /** Get the time from the first order arriving until the last is completed. */
+    public long getSpanMillis() {
+        return arrivals == 0 ? 0 : lastCompletionMillis - firstArrivalMillis;
+    }
+
+    public long getArrivals() {
+        return arrivals;
+    }
+
+    public long getCompletions() {
+        return completions;
+    }
+
+    public double getArrivalsPerHour() {
+        return perHour(arrivals);
+    }
+
+    public double getCompletionsPerHour() {
+        return perHour(completions);
+    }
+
+    /** Get the mean time orders were pending (W in Little's law). */
+    public double getMeanPendingMillis() {
+        return arrivals == 0 ? 0 : totalPendingMillis / (double) arrivals;
+    }
+
+    public double getMeanProcessingMillis() {
+        return completions == 0 ? 0 : totalProcessingMillis / (double) completions;
+    }
+
+    /** Get the time-weighted mean number of pending orders (L in Little's law), from the series. */
+    public double getMeanPendingDepth() {
+        return timeWeightedMean(pending);
+    }
+
+    public double getMeanProcessingOrders() {
+        return timeWeightedMean(processing);
+    }
+
+    /** Get the time-weighted mean items in process over the kitchen's capacity, or NaN if it is unlimited. */
+    public double getMeanUtilization() {
+        return maxConcurrentItems > 0 && getSpanMillis() > 0
+                ? busyItemMillis / ((double) maxConcurrentItems * getSpanMillis()) : Double.NaN;
+    }
+
+    /** Get the mean pending queue depth predicted by Little's law, arrival rate times mean pending time. */
+    public double getLittlesLawPendingDepth() {
+        return getSpanMillis() == 0 ? 0 : arrivals / (double) getSpanMillis() * getMeanPendingMillis();
+    }
+
+    /** Get the start time of each bucket in the series, from the first arrival until the last completion. */
+    public long[] getBucketStartMillis() {
+        long[] startMillis = new long[getBucketCount()];
+        for (int i = 0; i < startMillis.length; i++) {
+            startMillis[i] = (firstBucket + index(firstArrivalMillis) + i) * bucketMillis;
+        }
+        return startMillis;
+    }
+
+    /** Get the time-weighted mean pending orders in each bucket. */
+    public double[] getPendingDepthByBucket() {
+        return trim(pending.meansByBucket(1));
+    }
+
+    /** Get the time-weighted mean items in process over the kitchen's capacity in each bucket. */
+    public double[] getUtilizationByBucket() {
+        return trim(busyItems.meansByBucket(maxConcurrentItems > 0 ? maxConcurrentItems : Double.NaN));
+    }
+
+    public long[] getArrivalsByBucket() {
+        return trim(arrivalsByBucket);
+    }
+
+    public long[] getCompletionsByBucket() {
+        return trim(completionsByBucket);
+    }
+
+    private int getBucketCount() {
+        return arrivals == 0 ? 0 : index(lastCompletionMillis) - index(firstArrivalMillis) + 1;
+    }
+
+    private double[] trim(double[] values) {
+        int from = arrivals == 0 ? 0 : index(firstArrivalMillis);
+        return Arrays.copyOfRange(values, from, from + getBucketCount());
+    }
+
+    private long[] trim(long[] values) {
+        int from = arrivals == 0 ? 0 : index(firstArrivalMillis);
+        return Arrays.copyOfRange(values, from, from + getBucketCount());
+    }
+
+    private double perHour(long count) {
+        return getSpanMillis() == 0 ? 0 : count * 3600000.0 / getSpanMillis();
+    }
+
+    private double timeWeightedMean(Series series) {
+        if (getSpanMillis() == 0) {
+            return 0;
+        }
+        double area = 0;
+        for (double bucketArea : series.areasByBucket()) {
+            area += bucketArea;
+        }
+        return area / getSpanMillis();
+    }
+
+    private int index(long millis) {
+        return (int) (Math.floorDiv(millis, bucketMillis) - firstBucket);
+    }
+
+    /** Grow the series to cover a time range. Amortized O(1), as the arrays at least double when they grow. */
+    private void ensureBuckets(long fromMillis, long toMillis) {
+        long fromBucket = Math.floorDiv(fromMillis, bucketMillis);
+        long toBucket = Math.floorDiv(toMillis, bucketMillis);
+        if (arrivalsByBucket.length == 0) {
+            firstBucket = fromBucket;
+        }
+        if (fromBucket < firstBucket) {
+            int shift = (int) Math.max(firstBucket - fromBucket, arrivalsByBucket.length);
+            arrivalsByBucket = shift(arrivalsByBucket, shift);
+            completionsByBucket = shift(completionsByBucket, shift);
+            pending.shift(shift);
+            processing.shift(shift);
+            busyItems.shift(shift);
+            firstBucket -= shift;
+        }
+        // One more bucket than the last, for the difference arrays' end markers.
+        int length = (int) (toBucket - firstBucket + 2);
+        if (length > arrivalsByBucket.length) {
+            length = Math.max(length, arrivalsByBucket.length * 2);
+            arrivalsByBucket = Arrays.copyOf(arrivalsByBucket, length);
+            completionsByBucket = Arrays.copyOf(completionsByBucket, length);
+            pending.grow(length);
+            processing.grow(length);
+            busyItems.grow(length);
+        }
+    }
+
+    private static long[] shift(long[] values, int shift) {
+        long[] shifted = new long[values.length + shift];
+        System.arraycopy(values, 0, shifted, shift, values.length);
+        return shifted;
+    }
+
+    /** Time-weighted level over buckets, as difference arrays. */
+    private class Series {
+        // Weighted time in each bucket, from intervals which start or end part way through it.
+        private long[] partialMillis = new long[0];
+        // Change in the weight of intervals covering each bucket from its start.
+        private long[] coveringDelta = new long[0];
+
+        void add(long fromMillis, long toMillis, int weight) {
+            addFrom(fromMillis, weight);
+            addFrom(toMillis, -weight);
+        }
+
+        /** Add a level of weight from a time onwards. */
+        private void addFrom(long millis, int weight) {
+            int bucket = index(millis);
+            long bucketEndMillis = (firstBucket + bucket + 1) * bucketMillis;
+            partialMillis[bucket] += (bucketEndMillis - millis) * weight;
+            coveringDelta[bucket + 1] += weight;
+        }
+
+        double[] areasByBucket() {
+            double[] areas = new double[partialMillis.length];
+            long covering = 0;
+            for (int i = 0; i < areas.length; i++) {
+                covering += coveringDelta[i];
+                areas[i] = partialMillis[i] + covering * (double) bucketMillis;
+            }
+            return areas;
+        }
+
+        double[] meansByBucket(double divisor) {
+            double[] means = areasByBucket();
+            for (int i = 0; i < means.length; i++) {
+                means[i] /= bucketMillis * divisor;
+            }
+            return means;
+        }
+
+        void merge(Series other, int offset) {
+            addAt(partialMillis, other.partialMillis, offset);
+            addAt(coveringDelta, other.coveringDelta, offset);
+        }
+
+        void grow(int length) {
+            partialMillis = Arrays.copyOf(partialMillis, length);
+            coveringDelta = Arrays.copyOf(coveringDelta, length);
+        }
+
+        void shift(int shift) {
+            partialMillis = QueueingMetrics.shift(partialMillis, shift);
+            coveringDelta = QueueingMetrics.shift(coveringDelta, shift);
+        }
+    }
+}
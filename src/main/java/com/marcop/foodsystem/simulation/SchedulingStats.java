@@ -0,0 +1,81 @@
+package com.marcop.foodsystem.simulation;
+
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+
+/**
+ * Summary of how well a set of simulated orders used the kitchen, to compare scheduling modes on the same orders.
+ * Utilization is the time items spent cooking, over the kitchen's slots for the time from the first order until
+ * the last was completed.
+ */
+public class SchedulingStats {
+
+    private final int orderCount;
+    private final double meanPendingMillis;
+    private final long maxPendingMillis;
+    private final double meanLeadMillis;
+    private final double utilization;
+
+    private SchedulingStats(int orderCount, double meanPendingMillis, long maxPendingMillis, double meanLeadMillis,
+                            double utilization) {
+        this.orderCount = orderCount;
+        this.meanPendingMillis = meanPendingMillis;
+        this.maxPendingMillis = maxPendingMillis;
+        this.meanLeadMillis = meanLeadMillis;
+        this.utilization = utilization;
+    }
+
+    /** Summarize completed orders, simulated in a kitchen with a number of slots (0 if unlimited). */
+    public static SchedulingStats of(Iterable<Order> orders, int maxConcurrentItems) {
+        int orderCount = 0;
+        long totalPendingMillis = 0;
+        long maxPendingMillis = 0;
+        long totalLeadMillis = 0;
+        long cookingItemMillis = 0;
+        long firstOrderedMillis = Long.MAX_VALUE;
+        long lastCompletedMillis = Long.MIN_VALUE;
+        for (Order order : orders) {
+            long orderedMillis = order.getOrderedAt().getTime();
+            long pendingMillis = order.getProcessingStartedAt().getTime() - orderedMillis;
+            orderCount++;
+            totalPendingMillis += pendingMillis;
+            maxPendingMillis = Math.max(maxPendingMillis, pendingMillis);
+            totalLeadMillis += order.getCompletedAt().getTime() - orderedMillis;
+            for (OrderItem item : order.getOrderItems()) {
+                cookingItemMillis += item.getCookTimeSeconds() * 1000L;
+            }
+            firstOrderedMillis = Math.min(firstOrderedMillis, orderedMillis);
+            lastCompletedMillis = Math.max(lastCompletedMillis, order.getCompletedAt().getTime());
+        }
+        double utilization = maxConcurrentItems > 0 && lastCompletedMillis > firstOrderedMillis
+                ? cookingItemMillis / ((double) maxConcurrentItems * (lastCompletedMillis - firstOrderedMillis))
+                : Double.NaN;
+        return orderCount == 0
+                ? new SchedulingStats(0, 0, 0, 0, Double.NaN)
+                : new SchedulingStats(orderCount, totalPendingMillis / (double) orderCount, maxPendingMillis,
+                        totalLeadMillis / (double) orderCount, utilization);
+    }
+
+    public int getOrderCount() {
+        return orderCount;
+    }
+
+    /** Get the mean time from ordered until processing started. */
+    public double getMeanPendingMillis() {
+        return meanPendingMillis;
+    }
+
+    public long getMaxPendingMillis() {
+        return maxPendingMillis;
+    }
+
+    /** Get the mean time from ordered until completed. */
+    public double getMeanLeadMillis() {
+        return meanLeadMillis;
+    }
+
+    /** Get utilization, or NaN if the kitchen has unlimited slots. */
+    public double getUtilization() {
+        return utilization;
+    }
+}
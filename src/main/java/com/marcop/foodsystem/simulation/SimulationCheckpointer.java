@@ -0,0 +1,222 @@
+package com.marcop.foodsystem.simulation;
+
+import com.google.common.base.Preconditions;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes periodic checkpoints of a KitchenSimulator, so that a long simulation can be resumed after a crash.
+ *
+ * Orders are identified by their position in the pending queue (dequeue index), which is the same for every run
+ * over the same input. A checkpoint directory contains:
+ * - completions.log: append-only (dequeue index, processing start millis) records for completed orders.
+ *   Completed orders, and all stats derived from them, are rebuilt from this on resume.
+ * - checkpoint.bin: number of orders dequeued, current time, held order, in-flight orders, how many completion
+ *   records were written, and the station pool stats which are not rebuilt from orders (which pool holds up the
+ *   held order and since when, held and blocked totals, and peaks). Replaced atomically at each checkpoint.
+ * So each checkpoint only writes the orders completed since the last one, plus the (small) in-flight state.
+ *
+ * A checkpoint always refers to a prefix of the completions log. So a simulation which starts from the beginning
+ * deletes any checkpoint of an earlier run before it truncates the log, and a resumed one only truncates the log
+ * after the records its checkpoint refers to.
+ */
+public class SimulationCheckpointer {
+
+    private static final String COMPLETIONS_FILE_NAME = "completions.log";
+    private static final String CHECKPOINT_FILE_NAME = "checkpoint.bin";
+    private static final int CHECKPOINT_MAGIC = 0x464f4f44;
+    private static final int CHECKPOINT_VERSION = 2;
+    private static final int COMPLETION_RECORD_BYTES = 16;
+    static final long NONE = -1;
+
+    private final Path directory;
+    private final long intervalMillis;
+    private DataOutputStream completionsLog;
+    private long completionCount;
+    private long lastCheckpointMillis;
+
+    public SimulationCheckpointer(Path directory, long intervalMillis) {
+        this.directory = directory;
+        this.intervalMillis = intervalMillis;
+        this.lastCheckpointMillis = System.currentTimeMillis();
+    }
+
+    /** Check if enough time has passed since the last checkpoint. */
+    boolean isDue() {
+        return System.currentTimeMillis() - lastCheckpointMillis >= intervalMillis;
+    }
+
+    /** Append a completed order to the completions log. */
+    void recordCompletion(long dequeueIndex, long processingStartedAtMillis) {
+        try {
+            if (completionsLog == null) {
+                startCompletionsLog();
+            }
+            completionsLog.writeLong(dequeueIndex);
+            completionsLog.writeLong(processingStartedAtMillis);
+            completionCount++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write completions log.", e);
+        }
+    }
+
+    /** Write a checkpoint of the current simulation state. */
+    void writeCheckpoint(Checkpoint checkpoint) {
+        try {
+            if (completionsLog == null) {
+                startCompletionsLog();
+            }
+            // The completions log must hold every record the checkpoint refers to, before the checkpoint is replaced.
+            completionsLog.flush();
+            Path tempFile = directory.resolve(CHECKPOINT_FILE_NAME + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeInt(CHECKPOINT_MAGIC);
+                out.writeInt(CHECKPOINT_VERSION);
+                out.writeLong(checkpoint.totalOrders);
+                out.writeLong(checkpoint.dequeuedCount);
+                out.writeLong(checkpoint.currentTimeMillis);
+                out.writeLong(checkpoint.heldDequeueIndex);
+                out.writeLong(completionCount);
+                out.writeInt(checkpoint.inFlightDequeueIndexes.size());
+                for (int i = 0; i < checkpoint.inFlightDequeueIndexes.size(); i++) {
+                    out.writeLong(checkpoint.inFlightDequeueIndexes.get(i));
+                    out.writeLong(checkpoint.inFlightStartMillis.get(i));
+                }
+                out.writeInt(checkpoint.heldByPool);
+                out.writeLong(checkpoint.heldSinceMillis);
+                out.writeInt(checkpoint.poolBlockedMillis.length);
+                for (int pool = 0; pool < checkpoint.poolBlockedMillis.length; pool++) {
+                    out.writeLong(checkpoint.poolBlockedMillis[pool]);
+                    out.writeLong(checkpoint.poolHeldOrders[pool]);
+                    out.writeInt(checkpoint.poolPeakInUse[pool]);
+                }
+            }
+            Files.move(tempFile, directory.resolve(CHECKPOINT_FILE_NAME),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            lastCheckpointMillis = System.currentTimeMillis();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write checkpoint.", e);
+        }
+    }
+
+    /**
+     * Load the latest checkpoint, or return null if there is none.
+     * Completion records written after the checkpoint are discarded, and new records are appended after it.
+     */
+    Checkpoint load() {
+        Path checkpointFile = directory.resolve(CHECKPOINT_FILE_NAME);
+        if (!Files.exists(checkpointFile)) {
+            return null;
+        }
+        try {
+            Checkpoint checkpoint = new Checkpoint();
+            long checkpointCompletionCount;
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(checkpointFile))) {
+                Preconditions.checkState(in.readInt() == CHECKPOINT_MAGIC && in.readInt() == CHECKPOINT_VERSION,
+                        "Unrecognized checkpoint file: " + checkpointFile);
+                checkpoint.totalOrders = in.readLong();
+                checkpoint.dequeuedCount = in.readLong();
+                checkpoint.currentTimeMillis = in.readLong();
+                checkpoint.heldDequeueIndex = in.readLong();
+                checkpointCompletionCount = in.readLong();
+                int inFlightCount = in.readInt();
+                for (int i = 0; i < inFlightCount; i++) {
+                    checkpoint.inFlightDequeueIndexes.add(in.readLong());
+                    checkpoint.inFlightStartMillis.add(in.readLong());
+                }
+                checkpoint.heldByPool = in.readInt();
+                checkpoint.heldSinceMillis = in.readLong();
+                int poolCount = in.readInt();
+                checkpoint.poolBlockedMillis = new long[poolCount];
+                checkpoint.poolHeldOrders = new long[poolCount];
+                checkpoint.poolPeakInUse = new int[poolCount];
+                for (int pool = 0; pool < poolCount; pool++) {
+                    checkpoint.poolBlockedMillis[pool] = in.readLong();
+                    checkpoint.poolHeldOrders[pool] = in.readLong();
+                    checkpoint.poolPeakInUse[pool] = in.readInt();
+                }
+            }
+            checkpoint.completedDequeueIndexes = new long[(int) checkpointCompletionCount];
+            checkpoint.completedStartMillis = new long[(int) checkpointCompletionCount];
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Files.newInputStream(directory.resolve(COMPLETIONS_FILE_NAME))))) {
+                for (int i = 0; i < checkpointCompletionCount; i++) {
+                    checkpoint.completedDequeueIndexes[i] = in.readLong();
+                    checkpoint.completedStartMillis[i] = in.readLong();
+                }
+            }
+            openCompletionsLog(checkpointCompletionCount);
+            return checkpoint;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load checkpoint.", e);
+        }
+    }
+
+    /** Delete the checkpoint, once the simulation has finished. */
+    void clear() {
+        try {
+            if (completionsLog != null) {
+                completionsLog.close();
+                completionsLog = null;
+            }
+            Files.deleteIfExists(directory.resolve(CHECKPOINT_FILE_NAME));
+            Files.deleteIfExists(directory.resolve(COMPLETIONS_FILE_NAME));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete checkpoint.", e);
+        }
+    }
+
+    /**
+     * Start the completions log of a simulation from the beginning. A checkpoint of an earlier run is deleted first,
+     * since it refers to records of the log which are about to be overwritten.
+     */
+    private void startCompletionsLog() throws IOException {
+        Files.deleteIfExists(directory.resolve(CHECKPOINT_FILE_NAME));
+        openCompletionsLog(0);
+    }
+
+    /** Open the completions log for appending, after the first recordCount records. */
+    private void openCompletionsLog(long recordCount) throws IOException {
+        Files.createDirectories(directory);
+        Path completionsFile = directory.resolve(COMPLETIONS_FILE_NAME);
+        try (FileChannel channel = FileChannel.open(
+                completionsFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.truncate(recordCount * COMPLETION_RECORD_BYTES);
+        }
+        completionsLog = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(completionsFile.toFile(), true)));
+        completionCount = recordCount;
+    }
+
+    /** Simulation state at a checkpoint. Orders are identified by dequeue index. */
+    static class Checkpoint {
+        long totalOrders;
+        long dequeuedCount;
+        long currentTimeMillis;
+        long heldDequeueIndex = NONE;
+        List<Long> inFlightDequeueIndexes = new ArrayList<>();
+        List<Long> inFlightStartMillis = new ArrayList<>();
+        long[] completedDequeueIndexes = new long[0];
+        long[] completedStartMillis = new long[0];
+        // Station pool holding up the held order, and since when, or NO_POOL.
+        int heldByPool = StationPools.NO_POOL;
+        long heldSinceMillis;
+        // Station pool stats by pool, or empty without station pools.
+        long[] poolBlockedMillis = new long[0];
+        long[] poolHeldOrders = new long[0];
+        int[] poolPeakInUse = new int[0];
+    }
+}
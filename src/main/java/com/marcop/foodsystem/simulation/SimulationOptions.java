@@ -0,0 +1,161 @@
+package com.marcop.foodsystem.simulation;
+
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.SheddingPolicy;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Options for how orders are simulated. The defaults give a single threaded simulation.
+ */
+public class SimulationOptions {
+
+    public static final int DEFAULT_CHECKPOINT_INTERVAL_SECONDS = 60;
+
+    // Number of threads to simulate with.
+    private int parallelism;
+    // Minimum gap between orders (minutes) at which the kitchen is predicted to go idle.
+    private int idleGapMinutes;
+    // Directory to write checkpoints to, or null to disable checkpointing.
+    private String checkpointDir;
+    // Minimum time between checkpoints (seconds).
+    private int checkpointIntervalSeconds;
+    // Resume from the checkpoint in checkpointDir, if there is one.
+    private boolean resume;
+    // Called on the simulation thread as orders complete, or null. Not called by parallel simulations.
+    private Runnable progressListener;
+    // Called on the simulation thread with each order as it completes, or null. Parallel simulations call it as
+    // completed orders are merged.
+    private Consumer<Order> completionListener;
+
+    // Station capacities by station name, which override those configured for the kitchen.
+    private Map<String, Integer> stationCapacities;
+    // Schedule items, rather than whole orders, and compare with whole order admission.
+    private boolean itemLevel;
+    // Admission control limits on the pending queue: orders, and expected wait (minutes). 0 is unlimited.
+    private int maxPendingOrders;
+    private int maxExpectedWaitMinutes;
+    // Which order to shed when the pending queue is over a limit.
+    private SheddingPolicy sheddingPolicy;
+    // Maximum pending orders held in memory, with the rest spilled to disk, or 0 to hold all of them.
+    private int maxPendingOrdersInMemory;
+
+    public SimulationOptions() {
+        parallelism = 1;
+        sheddingPolicy = SheddingPolicy.REJECT_NEWEST;
+        idleGapMinutes = ParallelKitchenSimulator.DEFAULT_IDLE_GAP_MINUTES;
+        checkpointIntervalSeconds = DEFAULT_CHECKPOINT_INTERVAL_SECONDS;
+        stationCapacities = new HashMap<>();
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int getIdleGapMinutes() {
+        return idleGapMinutes;
+    }
+
+    public void setIdleGapMinutes(int idleGapMinutes) {
+        this.idleGapMinutes = idleGapMinutes;
+    }
+
+    public String getCheckpointDir() {
+        return checkpointDir;
+    }
+
+    public void setCheckpointDir(String checkpointDir) {
+        this.checkpointDir = checkpointDir;
+    }
+
+    public int getCheckpointIntervalSeconds() {
+        return checkpointIntervalSeconds;
+    }
+
+    public void setCheckpointIntervalSeconds(int checkpointIntervalSeconds) {
+        this.checkpointIntervalSeconds = checkpointIntervalSeconds;
+    }
+
+    public boolean isResume() {
+        return resume;
+    }
+
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+    public Runnable getProgressListener() {
+        return progressListener;
+    }
+
+    public void setProgressListener(Runnable progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    public Consumer<Order> getCompletionListener() {
+        return completionListener;
+    }
+
+    public void setCompletionListener(Consumer<Order> completionListener) {
+        this.completionListener = completionListener;
+    }
+
+    public Map<String, Integer> getStationCapacities() {
+        return stationCapacities;
+    }
+
+    public void setStationCapacities(Map<String, Integer> stationCapacities) {
+        this.stationCapacities = stationCapacities;
+    }
+
+    public boolean isItemLevel() {
+        return itemLevel;
+    }
+
+    public void setItemLevel(boolean itemLevel) {
+        this.itemLevel = itemLevel;
+    }
+
+    public int getMaxPendingOrders() {
+        return maxPendingOrders;
+    }
+
+    public void setMaxPendingOrders(int maxPendingOrders) {
+        this.maxPendingOrders = maxPendingOrders;
+    }
+
+    public int getMaxExpectedWaitMinutes() {
+        return maxExpectedWaitMinutes;
+    }
+
+    public void setMaxExpectedWaitMinutes(int maxExpectedWaitMinutes) {
+        this.maxExpectedWaitMinutes = maxExpectedWaitMinutes;
+    }
+
+    public SheddingPolicy getSheddingPolicy() {
+        return sheddingPolicy;
+    }
+
+    public void setSheddingPolicy(SheddingPolicy sheddingPolicy) {
+        this.sheddingPolicy = sheddingPolicy;
+    }
+
+    public int getMaxPendingOrdersInMemory() {
+        return maxPendingOrdersInMemory;
+    }
+
+    public void setMaxPendingOrdersInMemory(int maxPendingOrdersInMemory) {
+        this.maxPendingOrdersInMemory = maxPendingOrdersInMemory;
+    }
+
+    /** Get whether the pending queue has any admission control limit. */
+    public boolean isAdmissionControlled() {
+        return maxPendingOrders > 0 || maxExpectedWaitMinutes > 0;
+    }
+}
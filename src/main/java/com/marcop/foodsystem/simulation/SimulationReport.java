@@ -0,0 +1,66 @@
+package com.marcop.foodsystem.simulation;
+
+/**
+ * Results of a simulation, other than the completed orders themselves.
+ */
+public class SimulationReport {
+
+    // Utilization and queueing metrics of the simulation.
+    private QueueingMetrics queueingMetrics;
+    // Station capacity stats, or null if the kitchen has no station capacities.
+    private StationPools stationPools;
+    // With item level scheduling, stats of whole order admission and of item level scheduling, over the orders
+    // both can simulate. Otherwise null.
+    private SchedulingStats wholeOrderScheduling;
+    private SchedulingStats itemLevelScheduling;
+    // With item level scheduling, number of orders with more items than the kitchen has slots.
+    private int oversizedOrderCount;
+    // Admission control of the pending queue, or null if it is unbounded.
+    private AdmissionControl admissionControl;
+
+    public QueueingMetrics getQueueingMetrics() {
+        return queueingMetrics;
+    }
+
+    public void setQueueingMetrics(QueueingMetrics queueingMetrics) {
+        this.queueingMetrics = queueingMetrics;
+    }
+
+    public StationPools getStationPools() {
+        return stationPools;
+    }
+
+    public void setStationPools(StationPools stationPools) {
+        this.stationPools = stationPools;
+    }
+
+    public SchedulingStats getWholeOrderScheduling() {
+        return wholeOrderScheduling;
+    }
+
+    public SchedulingStats getItemLevelScheduling() {
+        return itemLevelScheduling;
+    }
+
+    /** Set the stats of each scheduling mode, over the same orders. */
+    public void setSchedulingComparison(SchedulingStats wholeOrderScheduling, SchedulingStats itemLevelScheduling) {
+        this.wholeOrderScheduling = wholeOrderScheduling;
+        this.itemLevelScheduling = itemLevelScheduling;
+    }
+
+    public int getOversizedOrderCount() {
+        return oversizedOrderCount;
+    }
+
+    public void setOversizedOrderCount(int oversizedOrderCount) {
+        this.oversizedOrderCount = oversizedOrderCount;
+    }
+
+    public AdmissionControl getAdmissionControl() {
+        return admissionControl;
+    }
+
+    public void setAdmissionControl(AdmissionControl admissionControl) {
+        this.admissionControl = admissionControl;
+    }
+}
@@ -0,0 +1,325 @@
+package com.marcop.foodsystem.simulation;
+
+import com.google.common.base.Preconditions;
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Capacity pools of a kitchen: the whole kitchen (max concurrent items), and each station with a configured
+ * capacity (e.g. grill, fryer). An order is admitted only if every pool has room for its items, and its items hold
+ * their pools until the order is done.
+ *
+ * Each pool keeps a min heap of the done times of the items it holds, so releasing capacity as time advances is
+ * O(log n) per item. Pools also account for how busy they were, and for how long they held up pending orders,
+ * which shows which station actually limits throughput.
+ */
+public class StationPools {
+
+    // Index of the whole kitchen pool.
+    public static final int KITCHEN_POOL = 0;
+    // Returned when no pool blocks an order.
+    public static final int NO_POOL = -1;
+    public static final String KITCHEN_POOL_NAME = "(kitchen)";
+
+    private final int maxConcurrentItems;
+    private final Map<String, Integer> stationCapacities;
+    private final String[] names;
+    // Capacity by pool, or 0 if unconstrained.
+    private final int[] capacities;
+    private final Map<String, Integer> poolByStation;
+    private final int[] inUse;
+    private final LongMinHeap[] doneTimes;
+    // Stats by pool.
+    private final long[] busyItemMillis;
+    private final long[] blockedMillis;
+    private final long[] heldOrders;
+    private final int[] peakInUse;
+    private long firstStartMillis;
+    private long lastDoneMillis;
+
+    /** Stats of one pool. */
+    public static class PoolStats {
+        private final String name;
+        private final int capacity;
+        private final long busyItemMillis;
+        private final long blockedMillis;
+        private final long heldOrders;
+        private final int peakInUse;
+        private final double utilization;
+
+        PoolStats(String name, int capacity, long busyItemMillis, long blockedMillis, long heldOrders, int peakInUse,
+                  double utilization) {
+            this.name = name;
+            this.capacity = capacity;
+            this.busyItemMillis = busyItemMillis;
+            this.blockedMillis = blockedMillis;
+            this.heldOrders = heldOrders;
+            this.peakInUse = peakInUse;
+            this.utilization = utilization;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** Get the capacity, or 0 if unconstrained. */
+        public int getCapacity() {
+            return capacity;
+        }
+
+        /** Get the total time items held this pool, summed over items. */
+        public long getBusyItemMillis() {
+            return busyItemMillis;
+        }
+
+        /** Get the total time pending orders waited because this pool was full. */
+        public long getBlockedMillis() {
+            return blockedMillis;
+        }
+
+        /** Get the number of orders which had to wait because this pool was full. */
+        public long getHeldOrders() {
+            return heldOrders;
+        }
+
+        /** Get the most items which held this pool at once, or 0 if unconstrained. */
+        public int getPeakInUse() {
+            return peakInUse;
+        }
+
+        /** Get busy item time over capacity times the simulated span, or NaN if unconstrained. */
+        public double getUtilization() {
+            return utilization;
+        }
+    }
+
+    /**
+     * Create pools for a kitchen's max concurrent items (0 if unconstrained), and the capacities of its stations.
+     * Items at stations without a capacity only count against the whole kitchen.
+     */
+    public StationPools(int maxConcurrentItems, Map<String, Integer> stationCapacities) {
+        this.maxConcurrentItems = maxConcurrentItems;
+        this.stationCapacities = new TreeMap<>(stationCapacities);
+        int numPools = 1 + this.stationCapacities.size();
+        this.names = new String[numPools];
+        this.capacities = new int[numPools];
+        this.poolByStation = new HashMap<>();
+        names[KITCHEN_POOL] = KITCHEN_POOL_NAME;
+        capacities[KITCHEN_POOL] = maxConcurrentItems;
+        int pool = 1;
+        for (Map.Entry<String, Integer> entry : this.stationCapacities.entrySet()) {
+            names[pool] = entry.getKey();
+            capacities[pool] = entry.getValue();
+            poolByStation.put(entry.getKey(), pool);
+            pool++;
+        }
+        this.inUse = new int[numPools];
+        this.doneTimes = new LongMinHeap[numPools];
+        for (int i = 0; i < numPools; i++) {
+            doneTimes[i] = new LongMinHeap();
+        }
+        this.busyItemMillis = new long[numPools];
+        this.blockedMillis = new long[numPools];
+        this.heldOrders = new long[numPools];
+        this.peakInUse = new int[numPools];
+        this.firstStartMillis = Long.MAX_VALUE;
+        this.lastDoneMillis = Long.MIN_VALUE;
+    }
+
+    /** Create empty pools with the same capacities, e.g. for another simulation of the same kitchen. */
+    public StationPools copyEmpty() {
+        return new StationPools(maxConcurrentItems, stationCapacities);
+    }
+
+    /** Count an order's items by pool. */
+    private int[] countItemsByPool(Order order) {
+        int[] itemsByPool = new int[names.length];
+        itemsByPool[KITCHEN_POOL] = order.getOrderItemsSize();
+        for (OrderItem item : order.getOrderItems()) {
+            Integer pool = item.getStation() == null ? null : poolByStation.get(item.getStation());
+            if (pool != null) {
+                itemsByPool[pool]++;
+            }
+        }
+        return itemsByPool;
+    }
+
+    /**
+     * Get a pool whose capacity is smaller than the order's items in it, so the order can never be admitted,
+     * or NO_POOL. Does not modify the pools, so it is safe to call from multiple threads.
+     */
+    public int findOversizedPool(Order order) {
+        int[] itemsByPool = countItemsByPool(order);
+        for (int pool = 0; pool < names.length; pool++) {
+            if (capacities[pool] > 0 && itemsByPool[pool] > capacities[pool]) {
+                return pool;
+            }
+        }
+        return NO_POOL;
+    }
+
+    /** Get the first pool without room for the order's items, or NO_POOL if the order can be admitted. */
+    public int findBlockingPool(Order order) {
+        int[] itemsByPool = countItemsByPool(order);
+        for (int pool = 0; pool < names.length; pool++) {
+            if (capacities[pool] > 0 && itemsByPool[pool] > capacities[pool] - inUse[pool]) {
+                return pool;
+            }
+        }
+        return NO_POOL;
+    }
+
+    /** Take capacity for an order's items, until the order is done. */
+    public void admit(Order order, long startMillis) {
+        long doneMillis = startMillis + order.getTotalCookTimeSeconds() * 1000L;
+        int[] itemsByPool = countItemsByPool(order);
+        for (int pool = 0; pool < names.length; pool++) {
+            if (capacities[pool] == 0) {
+                // Unconstrained, so there is no need to track when capacity is released.
+                continue;
+            }
+            for (int i = 0; i < itemsByPool[pool]; i++) {
+                doneTimes[pool].push(doneMillis);
+            }
+            inUse[pool] += itemsByPool[pool];
+            peakInUse[pool] = Math.max(peakInUse[pool], inUse[pool]);
+        }
+        recordBusy(itemsByPool, startMillis, doneMillis);
+    }
+
+    /** Account for an order which was completed before these pools were created (e.g. before a resume). */
+    public void recordCompleted(Order order) {
+        long startMillis = order.getProcessingStartedAt().getTime();
+        recordBusy(countItemsByPool(order), startMillis, startMillis + order.getTotalCookTimeSeconds() * 1000L);
+    }
+
+    private void recordBusy(int[] itemsByPool, long startMillis, long doneMillis) {
+        for (int pool = 0; pool < names.length; pool++) {
+            busyItemMillis[pool] += itemsByPool[pool] * (doneMillis - startMillis);
+        }
+        firstStartMillis = Math.min(firstStartMillis, startMillis);
+        lastDoneMillis = Math.max(lastDoneMillis, doneMillis);
+    }
+
+    /** Release the capacity of every item which is done at or before a time. */
+    public void releaseUntil(long timeMillis) {
+        for (int pool = 0; pool < names.length; pool++) {
+            LongMinHeap heap = doneTimes[pool];
+            while (heap.size() > 0 && heap.peek() <= timeMillis) {
+                heap.pop();
+                inUse[pool]--;
+            }
+        }
+    }
+
+    /** Record that a pending order had to wait, because a pool was full. */
+    public void recordHeld(int pool) {
+        heldOrders[pool]++;
+    }
+
+    /** Record time that a pending order waited, because a pool was full. */
+    public void recordBlocked(int pool, long millis) {
+        blockedMillis[pool] += millis;
+    }
+
+    /** Add the stats of other pools, for the same kitchen, to these. */
+    public void mergeStats(StationPools other) {
+        for (int pool = 0; pool < names.length; pool++) {
+            busyItemMillis[pool] += other.busyItemMillis[pool];
+            blockedMillis[pool] += other.blockedMillis[pool];
+            heldOrders[pool] += other.heldOrders[pool];
+            peakInUse[pool] = Math.max(peakInUse[pool], other.peakInUse[pool]);
+        }
+        firstStartMillis = Math.min(firstStartMillis, other.firstStartMillis);
+        lastDoneMillis = Math.max(lastDoneMillis, other.lastDoneMillis);
+    }
+
+    /** Save the stats which are not rebuilt from completed and in-flight orders on resume, to a checkpoint. */
+    void saveTo(SimulationCheckpointer.Checkpoint checkpoint) {
+        checkpoint.poolBlockedMillis = blockedMillis.clone();
+        checkpoint.poolHeldOrders = heldOrders.clone();
+        checkpoint.poolPeakInUse = peakInUse.clone();
+    }
+
+    /** Restore the stats saved to a checkpoint, after its completed and in-flight orders are restored. */
+    void restoreFrom(SimulationCheckpointer.Checkpoint checkpoint) {
+        Preconditions.checkState(checkpoint.poolBlockedMillis.length == names.length,
+                "Checkpoint was taken with " + checkpoint.poolBlockedMillis.length + " station pools, but there are "
+                        + names.length);
+        for (int pool = 0; pool < names.length; pool++) {
+            blockedMillis[pool] = checkpoint.poolBlockedMillis[pool];
+            heldOrders[pool] = checkpoint.poolHeldOrders[pool];
+            peakInUse[pool] = Math.max(peakInUse[pool], checkpoint.poolPeakInUse[pool]);
+        }
+    }
+
+    public String getPoolName(int pool) {
+        return names[pool];
+    }
+
+    /** Get stats of each pool, the whole kitchen first, then stations by name. */
+    public List<PoolStats> getStats() {
+        long spanMillis = lastDoneMillis > firstStartMillis ? lastDoneMillis - firstStartMillis : 0;
+        List<PoolStats> stats = new ArrayList<>();
+        for (int pool = 0; pool < names.length; pool++) {
+            double utilization = capacities[pool] > 0 && spanMillis > 0
+                    ? busyItemMillis[pool] / ((double) capacities[pool] * spanMillis) : Double.NaN;
+            stats.add(new PoolStats(names[pool], capacities[pool], busyItemMillis[pool], blockedMillis[pool],
+                    heldOrders[pool], peakInUse[pool], utilization));
+        }
+        return Collections.unmodifiableList(stats);
+    }
+
+    /** Binary min heap of longs, without boxing. */
+    private static class LongMinHeap {
+        private long[] values = new long[16];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        long peek() {
+            return values[0];
+        }
+
+        void push(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            int i = size++;
+            while (i > 0 && values[(i - 1) / 2] > value) {
+                values[i] = values[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            values[i] = value;
+        }
+
+        long pop() {
+            long top = values[0];
+            long last = values[--size];
+            int i = 0;
+            while (2 * i + 1 < size) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && values[child + 1] < values[child]) {
+                    child++;
+                }
+                if (values[child] >= last) {
+                    break;
+                }
+                values[i] = values[child];
+                i = child;
+            }
+            values[i] = last;
+            return top;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package com.marcop.foodsystem.snapshot;
+
+import com.google.common.base.Preconditions;
+import com.marcop.foodsystem.model.OrderState;
+import com.marcop.foodsystem.model.RejectionReason;
+import com.marcop.foodsystem.simulation.QueueingMetrics;
+import com.marcop.foodsystem.simulation.SimulationReport;
+import com.marcop.foodsystem.store.CompletedOrderStore;
+import com.marcop.foodsystem.store.OrderRejections;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The stats of one or more runs of a kitchen, as shown on the stats page: distributions, revenue, order states over
+ * time, rejections and queueing metrics. Everything is a count or a sum, so snapshots of separate runs (e.g. each
+ * day) merge into the stats of all of them, without re-reading or re-simulating the orders.
+ *
+ * Snapshots are written as gzipped binary: a header, then each map as variable length, delta encoded keys and values.
+ * Enum values are written by name, so snapshots stay readable when enums gain values. Per run extras (station and
+ * scheduling stats, admission control) are not kept.
+ */
+public class StatsSnapshot {
+
+    public static final String FILE_EXTENSION = ".snapshot";
+    public static final String FILE_NAME = "snapshot/stats" + FILE_EXTENSION;
+    private static final int SNAPSHOT_MAGIC = 0x534e4150;
+    private static final int SNAPSHOT_VERSION = 2;
+    private static final OrderState[] STATES = OrderState.values();
+
+    private final String kitchenName;
+    private final int maxConcurrentItems;
+    // Number of runs merged into the snapshot.
+    private int runCount;
+    private final SortedMap<Integer, Integer> priceDistribution;
+    private final SortedMap<Integer, Integer> pendingDurationDistribution;
+    // Transitions into each state (by ordinal) by time millis.
+    private final SortedMap<Long, int[]> orderStateCountsByTime;
+    // Revenue in cents, as long sums, since merged runs soon exceed an int.
+    private final SortedMap<String, Long> revenueByItem;
+    private final SortedMap<String, Long> revenueByService;
+    private long totalRevenue;
+    private final OrderRejections rejections;
+    private final QueueingMetrics queueingMetrics;
+
+    private StatsSnapshot(String kitchenName, int maxConcurrentItems, int runCount, QueueingMetrics queueingMetrics) {
+        this.kitchenName = kitchenName;
+        this.maxConcurrentItems = maxConcurrentItems;
+        this.runCount = runCount;
+        this.priceDistribution = new TreeMap<>();
+        this.pendingDurationDistribution = new TreeMap<>();
+        this.orderStateCountsByTime = new TreeMap<>();
+        this.revenueByItem = new TreeMap<>();
+        this.revenueByService = new TreeMap<>();
+        this.rejections = new OrderRejections();
+        this.queueingMetrics = queueingMetrics;
+    }
+
+    /** Take a snapshot of the stats of a run, from its completed orders, rejections and queueing metrics. */
+    public static StatsSnapshot of(String kitchenName, int maxConcurrentItems, CompletedOrderStore completedOrders,
+                                   OrderRejections rejections, QueueingMetrics queueingMetrics) {
+        StatsSnapshot snapshot = new StatsSnapshot(kitchenName, maxConcurrentItems, 1,
+                new QueueingMetrics(maxConcurrentItems));
+        snapshot.priceDistribution.putAll(completedOrders.getPriceDistribution());
+        snapshot.pendingDurationDistribution.putAll(completedOrders.getPendingDurationDistribution());
+        for (Map.Entry<Timestamp, Map<OrderState, Integer>> entry
+                : completedOrders.getOrderStateCountsByTime().entrySet()) {
+            int[] counts = new int[STATES.length];
+            for (Map.Entry<OrderState, Integer> stateCount : entry.getValue().entrySet()) {
+                counts[stateCount.getKey().ordinal()] = stateCount.getValue();
+            }
+            snapshot.orderStateCountsByTime.put(entry.getKey().getTime(), counts);
+        }
+        snapshot.revenueByItem.putAll(completedOrders.getRevenueByItem());
+        snapshot.revenueByService.putAll(completedOrders.getRevenueByService());
+        snapshot.totalRevenue = completedOrders.getTotalRevenue();
+        addRejections(snapshot.rejections, rejections);
+        // Copied, so the snapshot does not change with the run's metrics.
+        snapshot.queueingMetrics.merge(queueingMetrics);
+        return snapshot;
+    }
+
+    /**
+     * Add the stats of another snapshot of the same kitchen. Counts which overflow an int, and revenue which
+     * overflows a long, fail rather than wrap.
+     */
+    public void merge(StatsSnapshot other) {
+        Preconditions.checkArgument(kitchenName.equals(other.kitchenName)
+                        && maxConcurrentItems == other.maxConcurrentItems,
+                "Cannot merge snapshots of kitchen %s (max %s) and %s (max %s).", kitchenName, maxConcurrentItems,
+                other.kitchenName, other.maxConcurrentItems);
+        runCount += other.runCount;
+        mergeCounts(priceDistribution, other.priceDistribution);
+        mergeCounts(pendingDurationDistribution, other.pendingDurationDistribution);
+        for (Map.Entry<Long, int[]> entry : other.orderStateCountsByTime.entrySet()) {
+            int[] counts = orderStateCountsByTime.computeIfAbsent(entry.getKey(), time -> new int[STATES.length]);
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = Math.addExact(counts[i], entry.getValue()[i]);
+            }
+        }
+        mergeSums(revenueByItem, other.revenueByItem);
+        mergeSums(revenueByService, other.revenueByService);
+        totalRevenue = Math.addExact(totalRevenue, other.totalRevenue);
+        addRejections(rejections, other.rejections);
+        queueingMetrics.merge(other.queueingMetrics);
+    }
+
+    private static void addRejections(OrderRejections rejections, OrderRejections others) {
+        for (Map.Entry<RejectionReason, Long> entry : others.getCountsByReason().entrySet()) {
+            rejections.addAll(entry.getKey(), entry.getValue(), others.getExamples(entry.getKey()));
+        }
+    }
+
+    private static <K> void mergeCounts(Map<K, Integer> counts, Map<K, Integer> others) {
+        for (Map.Entry<K, Integer> entry : others.entrySet()) {
+            counts.merge(entry.getKey(), entry.getValue(), Math::addExact);
+        }
+    }
+
+    private static void mergeSums(Map<String, Long> sums, Map<String, Long> others) {
+        for (Map.Entry<String, Long> entry : others.entrySet()) {
+            sums.merge(entry.getKey(), entry.getValue(), Math::addExact);
+        }
+    }
+
+    public String getKitchenName() {
+        return kitchenName;
+    }
+
+    public int getMaxConcurrentItems() {
+        return maxConcurrentItems;
+    }
+
+    public int getRunCount() {
+        return runCount;
+    }
+
+    public SortedMap<Integer, Integer> getPriceDistribution() {
+        return priceDistribution;
+    }
+
+    public SortedMap<Integer, Integer> getPendingDurationDistribution() {
+        return pendingDurationDistribution;
+    }
+
+    /** Get the number of order transitions into each state, by time, as OrderStore does. */
+    public Map<Timestamp, Map<OrderState, Integer>> getOrderStateCountsByTime() {
+        Map<Timestamp, Map<OrderState, Integer>> orderStateCounts = new TreeMap<>();
+        for (Map.Entry<Long, int[]> entry : orderStateCountsByTime.entrySet()) {
+            Map<OrderState, Integer> stateCounts = new EnumMap<>(OrderState.class);
+            for (OrderState state : STATES) {
+                if (entry.getValue()[state.ordinal()] > 0) {
+                    stateCounts.put(state, entry.getValue()[state.ordinal()]);
+                }
+            }
+            orderStateCounts.put(new Timestamp(entry.getKey()), stateCounts);
+        }
+        return orderStateCounts;
+    }
+
+    public Map<String, Long> getRevenueByItem() {
+        return revenueByItem;
+    }
+
+    public Map<String, Long> getRevenueByService() {
+        return revenueByService;
+    }
+
+    public long getTotalRevenue() {
+        return totalRevenue;
+    }
+
+    public OrderRejections getRejections() {
+        return rejections;
+    }
+
+    /** Get a report of the snapshot's queueing metrics, for the stats page. */
+    public SimulationReport getSimulationReport() {
+        SimulationReport simulationReport = new SimulationReport();
+        simulationReport.setQueueingMetrics(queueingMetrics);
+        return simulationReport;
+    }
+
+    /** Write the snapshot, gzipped. Does not close the stream. */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(outputStream);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(gzip));
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(SNAPSHOT_VERSION);
+        out.writeUTF(kitchenName);
+        out.writeInt(maxConcurrentItems);
+        out.writeInt(runCount);
+        writeDistribution(out, priceDistribution);
+        writeDistribution(out, pendingDurationDistribution);
+        writeVarLong(out, STATES.length);
+        for (OrderState state : STATES) {
+            out.writeUTF(state.name());
+        }
+        writeVarLong(out, orderStateCountsByTime.size());
+        long previousMillis = 0;
+        for (Map.Entry<Long, int[]> entry : orderStateCountsByTime.entrySet()) {
+            writeVarLong(out, entry.getKey() - previousMillis);
+            previousMillis = entry.getKey();
+            for (int count : entry.getValue()) {
+                writeVarLong(out, count);
+            }
+        }
+        writeSums(out, revenueByItem);
+        writeSums(out, revenueByService);
+        out.writeLong(totalRevenue);
+        Map<RejectionReason, Long> rejectionCounts = rejections.getCountsByReason();
+        writeVarLong(out, rejectionCounts.size());
+        for (Map.Entry<RejectionReason, Long> entry : rejectionCounts.entrySet()) {
+            out.writeUTF(entry.getKey().name());
+            writeVarLong(out, entry.getValue());
+            List<String> examples = rejections.getExamples(entry.getKey());
+            writeVarLong(out, examples.size());
+            for (String example : examples) {
+                out.writeUTF(example);
+            }
+        }
+        queueingMetrics.writeTo(out);
+        out.flush();
+        gzip.finish();
+    }
+
+    /** Read a snapshot written by writeTo. */
+    public static StatsSnapshot readFrom(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(inputStream)));
+        Preconditions.checkArgument(in.readInt() == SNAPSHOT_MAGIC, "Not a stats snapshot.");
+        int version = in.readInt();
+        Preconditions.checkArgument(version == SNAPSHOT_VERSION, "Unsupported stats snapshot version: " + version);
+        String kitchenName = in.readUTF();
+        int maxConcurrentItems = in.readInt();
+        int runCount = in.readInt();
+        SortedMap<Integer, Integer> priceDistribution = readDistribution(in);
+        SortedMap<Integer, Integer> pendingDurationDistribution = readDistribution(in);
+        OrderState[] states = new OrderState[(int) readVarLong(in)];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = OrderState.valueOf(in.readUTF());
+        }
+        SortedMap<Long, int[]> orderStateCountsByTime = new TreeMap<>();
+        long timeCount = readVarLong(in);
+        long timeMillis = 0;
+        for (long t = 0; t < timeCount; t++) {
+            timeMillis += readVarLong(in);
+            int[] counts = new int[STATES.length];
+            for (OrderState state : states) {
+                counts[state.ordinal()] = (int) readVarLong(in);
+            }
+            orderStateCountsByTime.put(timeMillis, counts);
+        }
+        SortedMap<String, Long> revenueByItem = readSums(in);
+        SortedMap<String, Long> revenueByService = readSums(in);
+        long totalRevenue = in.readLong();
+        OrderRejections rejections = new OrderRejections();
+        for (long r = readVarLong(in); r > 0; r--) {
+            RejectionReason reason = RejectionReason.valueOf(in.readUTF());
+            long count = readVarLong(in);
+            List<String> examples = new ArrayList<>();
+            for (long e = readVarLong(in); e > 0; e--) {
+                examples.add(in.readUTF());
+            }
+            rejections.addAll(reason, count, examples);
+        }
+
+        StatsSnapshot snapshot = new StatsSnapshot(kitchenName, maxConcurrentItems, runCount,
+                QueueingMetrics.readFrom(in));
+        snapshot.priceDistribution.putAll(priceDistribution);
+        snapshot.pendingDurationDistribution.putAll(pendingDurationDistribution);
+        snapshot.orderStateCountsByTime.putAll(orderStateCountsByTime);
+        snapshot.revenueByItem.putAll(revenueByItem);
+        snapshot.revenueByService.putAll(revenueByService);
+        snapshot.totalRevenue = totalRevenue;
+        addRejections(snapshot.rejections, rejections);
+        return snapshot;
+    }
+
+    /** Write a distribution, with keys delta encoded since they are sorted. */
+    private static void writeDistribution(DataOutputStream out, SortedMap<Integer, Integer> distribution)
+            throws IOException {
+        writeVarLong(out, distribution.size());
+        long previousKey = 0;
+        for (Map.Entry<Integer, Integer> entry : distribution.entrySet()) {
+            writeVarLong(out, zigZag(entry.getKey() - previousKey));
+            previousKey = entry.getKey();
+            writeVarLong(out, entry.getValue());
+        }
+    }
+
+    private static SortedMap<Integer, Integer> readDistribution(DataInputStream in) throws IOException {
+        SortedMap<Integer, Integer> distribution = new TreeMap<>();
+        long key = 0;
+        for (long n = readVarLong(in); n > 0; n--) {
+            key += unZigZag(readVarLong(in));
+            distribution.put((int) key, (int) readVarLong(in));
+        }
+        return distribution;
+    }
+
+    private static void writeSums(DataOutputStream out, SortedMap<String, Long> sums) throws IOException {
+        writeVarLong(out, sums.size());
+        for (Map.Entry<String, Long> entry : sums.entrySet()) {
+            out.writeUTF(entry.getKey());
+            writeVarLong(out, zigZag(entry.getValue()));
+        }
+    }
+
+    private static SortedMap<String, Long> readSums(DataInputStream in) throws IOException {
+        SortedMap<String, Long> sums = new TreeMap<>();
+        for (long n = readVarLong(in); n > 0; n--) {
+            sums.put(in.readUTF(), unZigZag(readVarLong(in)));
+        }
+        return sums;
+    }
+
+    /** Write a non negative value in 7 bit groups, low first, with the high bit set on all but the last. */
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    /** Map signed values to non negative ones, small magnitudes to small values. */
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
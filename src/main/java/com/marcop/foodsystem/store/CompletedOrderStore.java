@@ -0,0 +1,84 @@
+package com.marcop.foodsystem.store;
+
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderState;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Data access layer for orders which are done with: orders are only added and queried, never submitted, dequeued
+ * or removed. Simulators keep completed orders in one, and stats, charts and the server read from it.
+ */
+public interface CompletedOrderStore {
+    // Add a new order to the store. Returns if order was successfully added to the store.
+    // An order whose ID is already in the store is not added.
+    boolean addOrder(Order order);
+
+    // Get an order by ID, or null if it is not in the store.
+    Order getOrder(long orderId);
+
+    // Get a version number, which changes whenever orders are added to or removed from the store.
+    long getVersion();
+
+    // Get number of orders in store.
+    int getCurrentNumOrders();
+
+    // Get number of items in store orders
+    int getCurrentNumItems();
+
+    // Get Item frequency count
+    Map<String, Integer> getItemFrequencyCount();
+
+    // Get number of orders by price (cents), ascending
+    SortedMap<Integer, Integer> getPriceDistribution();
+
+    // Get number of started orders by pending time (minutes), ascending
+    SortedMap<Integer, Integer> getPendingDurationDistribution();
+
+    // Get sorted order state counts by time
+    Map<Timestamp, Map<OrderState, Integer>> getOrderStateCountsByTime();
+
+    // Get order and item state stats, and the stats derived from orders, as they were at a past time (inclusive),
+    // or now if null. Rebuilt by folding over the store's history of state transitions, which must be kept
+    // (see OrderIndex.EVENT_LOG).
+    OrderStateProjection getOrderStateProjection(Timestamp asOf);
+
+    // Replay the store's history of order and item state transitions at or before a time (or all, if null),
+    // in the order they were recorded. The history must be kept (see OrderIndex.EVENT_LOG).
+    void replayEvents(Timestamp asOf, OrderEventLog.Visitor visitor);
+
+    // Get revenue (cents) by item table
+    Map<String, Long> getRevenueByItem();
+
+    // Get revenue (cents) by service table
+    Map<String, Long> getRevenueByService();
+
+    // Get total revenue (cents).
+    long getTotalRevenue();
+
+    // Get orders matching all criteria of the query, in no particular order.
+    // Uses the smallest declared secondary index which applies to the query, so lookups are proportional to that
+    // index entry rather than to the whole store.
+    List<Order> findOrders(OrderQuery query);
+
+    // Range queries. Each returns at most limit orders, and a cursor for the next page.
+    // Pass a null cursor to get the first page. A null from/to leaves that end of the window unbounded.
+
+    // Get orders with orderedAt in [from, to), by orderedAt ascending.
+    OrderPage getOrdersByOrderedAt(Timestamp from, Timestamp to, OrderCursor cursor, int limit);
+
+    // Get orders for a service with orderedAt in [from, to), by orderedAt ascending.
+    OrderPage getOrdersByService(String service, Timestamp from, Timestamp to, OrderCursor cursor, int limit);
+
+    // Get completed orders with completedAt in [from, to), by completedAt ascending.
+    OrderPage getOrdersByCompletedAt(Timestamp from, Timestamp to, OrderCursor cursor, int limit);
+
+    // Get orders by total price (cents), highest first.
+    OrderPage getTopOrdersByPrice(OrderCursor cursor, int limit);
+
+    // Get started orders by pending time (minutes), longest first.
+    OrderPage getTopOrdersByPendingDuration(OrderCursor cursor, int limit);
+}
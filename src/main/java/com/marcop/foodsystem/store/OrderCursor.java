@@ -0,0 +1,27 @@
+package com.marcop.foodsystem.store;
+
+import com.marcop.foodsystem.model.Order;
+
+/**
+ * Opaque position within an ordered OrderStore index, used to fetch the next page of a range query.
+ * A cursor points at the last order returned, so it stays valid if orders are added or removed between pages.
+ */
+public class OrderCursor {
+    // Index key (e.g. timestamp, price) of the last order returned.
+    private final Comparable<?> key;
+    // Last order returned. Orders sharing the same key are ordered by Order.compareTo.
+    private final Order order;
+
+    OrderCursor(Comparable<?> key, Order order) {
+        this.key = key;
+        this.order = order;
+    }
+
+    Comparable<?> getKey() {
+        return key;
+    }
+
+    Order getOrder() {
+        return order;
+    }
+}
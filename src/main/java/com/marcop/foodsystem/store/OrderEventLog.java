@@ -0,0 +1,95 @@
+package com.marcop.foodsystem.store;
+
+import com.marcop.foodsystem.model.ItemState;
+import com.marcop.foodsystem.model.OrderState;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only history of order and item state transitions.
+ *
+ * Events are fixed width records of 3 longs (24 bytes), in primitive segments, so history costs no objects per
+ * transition. A record holds: the time of the transition (epoch millis), the order ID, and a packed word of
+ * state ordinal (bits 0-7), item event flag (bit 8), and item index, or for order events the order's number of
+ * items (bits 16-47).
+ */
+public class OrderEventLog {
+
+    private static final int SEGMENT_EVENTS = 1 << 15;
+    private static final int EVENT_LONGS = 3;
+    private static final long ITEM_EVENT_FLAG = 1L << 8;
+
+    // Visitor for replaying events, in the order they were recorded.
+    public interface Visitor {
+        // An order transitioned to a state. numItems is the order's number of items.
+        void onOrderEvent(long timeMillis, long orderId, int numItems, OrderState state);
+
+        // An order's item (by index in the order) transitioned to a state.
+        void onItemEvent(long timeMillis, long orderId, int itemIndex, ItemState state);
+    }
+
+    private final List<long[]> segments;
+    private long size;
+
+    public OrderEventLog() {
+        this.segments = new ArrayList<>();
+    }
+
+    /** Record an order state transition. */
+    public void appendOrderEvent(long timeMillis, long orderId, int numItems, OrderState state) {
+        append(timeMillis, orderId, ((long) numItems << 16) | state.ordinal());
+    }
+
+    /** Record an item state transition. */
+    public void appendItemEvent(long timeMillis, long orderId, int itemIndex, ItemState state) {
+        append(timeMillis, orderId, ((long) itemIndex << 16) | ITEM_EVENT_FLAG | state.ordinal());
+    }
+
+    private void append(long timeMillis, long orderId, long packed) {
+        int offset = (int) (size % SEGMENT_EVENTS) * EVENT_LONGS;
+        if (offset == 0) {
+            segments.add(new long[SEGMENT_EVENTS * EVENT_LONGS]);
+        }
+        long[] segment = segments.get(segments.size() - 1);
+        segment[offset] = timeMillis;
+        segment[offset + 1] = orderId;
+        segment[offset + 2] = packed;
+        size++;
+    }
+
+    /** Get the number of events recorded. */
+    public long size() {
+        return size;
+    }
+
+    /** Replay all events, in the order they were recorded. */
+    public void replay(Visitor visitor) {
+        replay(Long.MAX_VALUE, visitor);
+    }
+
+    /** Replay events which happened at or before a time, in the order they were recorded. */
+    public void replay(long asOfMillis, Visitor visitor) {
+        OrderState[] orderStates = OrderState.values();
+        ItemState[] itemStates = ItemState.values();
+        long remaining = size;
+        for (long[] segment : segments) {
+            int events = (int) Math.min(remaining, SEGMENT_EVENTS);
+            for (int offset = 0; offset < events * EVENT_LONGS; offset += EVENT_LONGS) {
+                long timeMillis = segment[offset];
+                if (timeMillis > asOfMillis) {
+                    continue;
+                }
+                long packed = segment[offset + 2];
+                int stateOrdinal = (int) (packed & 0xff);
+                int index = (int) (packed >>> 16);
+                if ((packed & ITEM_EVENT_FLAG) != 0) {
+                    visitor.onItemEvent(timeMillis, segment[offset + 1], index, itemStates[stateOrdinal]);
+                } else {
+                    visitor.onOrderEvent(timeMillis, segment[offset + 1], index, orderStates[stateOrdinal]);
+                }
+            }
+            remaining -= events;
+        }
+    }
+}
@@ -1,36 +1,75 @@
 package com.marcop.foodsystem.store;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.TreeMultimap;
 import com.marcop.foodsystem.model.*;
 
 import java.sql.Timestamp;
 import java.util.*;
+import java.util.function.Predicate;
 
 /**
  * In-memory implementation of an OrderStore.
+ * Besides the primary index by orderedAt, ordered indexes by completedAt, price and pending duration
+ * are kept up to date on every add and removal, so that range queries can page through them without copying.
+ * Secondary indexes (see OrderIndex) are only maintained if declared when the store is created. So is the history of
+ * state transitions (OrderIndex.EVENT_LOG), which stats as of a past time are rebuilt from. Without it, state counts
+ * by time are computed from the orders in the store.
  */
 public class OrderInMemoryStore implements OrderStore {
 
     private static final int DEFAULT_MAX_ALLOWED_ITEMS = Integer.MAX_VALUE;
 
     private final int maxAllowedItems;
+    private final Set<OrderIndex> indexes;
     private int currentNumOrders;
     private int currentNumItems;
+    private Map<Long, Order> ordersById;
     private TreeMultimap<Timestamp, Order> ordersByTime;
-    private Map<Timestamp, Map<OrderState, Integer>> orderStateCountsByTime;
+    private Map<String, TreeMultimap<Timestamp, Order>> ordersByServiceAndTime;
+    private TreeMultimap<Timestamp, Order> ordersByCompletedAt;
+    private TreeMultimap<Integer, Order> ordersByPrice;
+    private TreeMultimap<Integer, Order> ordersByPendingDuration;
+    private Map<String, Set<Order>> ordersByItem;
+    private Map<Integer, Set<Order>> ordersByPriceBucket;
+    // History of state transitions, and the stats folded from it, if declared.
+    private OrderEventLog eventLog;
+    private OrderStateProjection currentStats;
     private Timestamp firstModifiedAt;
     private Timestamp lastModifiedAt;
+    private long version;
 
-    public OrderInMemoryStore(int maxAllowedItems) {
+    public OrderInMemoryStore(int maxAllowedItems, Set<OrderIndex> indexes) {
         this.maxAllowedItems = maxAllowedItems;
+        this.indexes = indexes.isEmpty() ? EnumSet.noneOf(OrderIndex.class) : EnumSet.copyOf(indexes);
         currentNumOrders = 0;
         currentNumItems = 0;
+        this.ordersById = new HashMap<>();
         this.ordersByTime = TreeMultimap.create();
-        this.orderStateCountsByTime = new TreeMap<>();
+        this.ordersByServiceAndTime = new HashMap<>();
+        this.ordersByCompletedAt = TreeMultimap.create();
+        this.ordersByPrice = TreeMultimap.create();
+        this.ordersByPendingDuration = TreeMultimap.create();
+        this.ordersByItem = new HashMap<>();
+        this.ordersByPriceBucket = new HashMap<>();
+        if (this.indexes.contains(OrderIndex.EVENT_LOG)) {
+            this.eventLog = new OrderEventLog();
+            this.currentStats = new OrderStateProjection();
+        }
+    }
+
+    // No secondary indexes.
+    public OrderInMemoryStore(int maxAllowedItems) {
+        this(maxAllowedItems, EnumSet.noneOf(OrderIndex.class));
     }
 
     // Use default max items allowed.
+    public OrderInMemoryStore(Set<OrderIndex> indexes) {
+        this(DEFAULT_MAX_ALLOWED_ITEMS, indexes);
+    }
+
+    // Use default max items allowed, and no secondary indexes.
     public OrderInMemoryStore() {
         this(DEFAULT_MAX_ALLOWED_ITEMS);
     }
@@ -38,58 +77,63 @@ public class OrderInMemoryStore implements OrderStore {
     @Override
     public boolean submitOrder(Order order, Timestamp submitTime) {
         int numItems = order.getOrderItems().size();
-        if (numItems > maxAllowedItems - currentNumItems || submitTime.before(order.getOrderedAt())) {
+        if (numItems > maxAllowedItems - currentNumItems || submitTime.before(order.getOrderedAt())
+                || ordersById.containsKey(order.getId())) {
             return false;
         }
         order.setProcessingStartedAt(submitTime);
         order.updateState(OrderState.PROCESSING);
-        int sizeBeforePut = ordersByTime.size();
-        ordersByTime.put(order.getOrderedAt(), order);
-        if (ordersByTime.size() > sizeBeforePut) {
-            currentNumOrders++;
-            currentNumItems += numItems;
+        for (OrderItem item : order.getOrderItems()) {
+            item.updateState(ItemState.IN_PROCESS);
+            item.setProcessingStartedAt(submitTime);
         }
+        indexOrder(order);
+        version++;
+        currentNumOrders++;
+        currentNumItems += numItems;
         updateLastModifiedAt(submitTime);
-        incrementStateCounters(orderStateCountsByTime, order.getOrderedAt(), OrderState.CREATED);
-        incrementStateCounters(orderStateCountsByTime, submitTime, OrderState.PROCESSING);
+        recordOrderEvent(order, order.getOrderedAt(), OrderState.CREATED);
+        recordOrderEvent(order, submitTime, OrderState.PROCESSING);
+        recordItemEvents(order, submitTime, ItemState.IN_PROCESS);
         return true;
     }
 
     @Override
     public boolean addOrder(Order order) {
         int numItems = order.getOrderItems().size();
-        if (numItems > maxAllowedItems - currentNumItems) {
+        if (numItems > maxAllowedItems - currentNumItems || ordersById.containsKey(order.getId())) {
             return false;
         }
-        int sizeBeforePut = ordersByTime.size();
-        ordersByTime.put(order.getOrderedAt(), order);
-        if (ordersByTime.size() > sizeBeforePut) {
-            currentNumOrders++;
-            currentNumItems += numItems;
-        }
+        indexOrder(order);
+        version++;
+        currentNumOrders++;
+        currentNumItems += numItems;
         // Since addOrder can be used generically for different order states, different timestamp updates will result.
         switch (order.getState()) {
             case CREATED:
                 updateFirstModifiedAt(order.getOrderedAt());
-                incrementStateCounters(orderStateCountsByTime, order.getOrderedAt(), OrderState.CREATED);
+                recordOrderEvent(order, order.getOrderedAt(), OrderState.CREATED);
                 break;
             case PROCESSING:
                 updateLastModifiedAt(order.getProcessingStartedAt());
-                incrementStateCounters(orderStateCountsByTime, order.getOrderedAt(), OrderState.CREATED);
-                incrementStateCounters(orderStateCountsByTime, order.getProcessingStartedAt(), OrderState.PROCESSING);
+                recordOrderEvent(order, order.getOrderedAt(), OrderState.CREATED);
+                recordOrderEvent(order, order.getProcessingStartedAt(), OrderState.PROCESSING);
+                recordItemEvents(order, order.getProcessingStartedAt(), ItemState.IN_PROCESS);
                 break;
             case COMPLETE:
                 updateLastModifiedAt(order.getCompletedAt());
-                incrementStateCounters(orderStateCountsByTime, order.getOrderedAt(), OrderState.CREATED);
-                incrementStateCounters(orderStateCountsByTime, order.getProcessingStartedAt(), OrderState.PROCESSING);
-                incrementStateCounters(orderStateCountsByTime, order.getCompletedAt(), OrderState.COMPLETE);
+                recordOrderEvent(order, order.getOrderedAt(), OrderState.CREATED);
+                recordOrderEvent(order, order.getProcessingStartedAt(), OrderState.PROCESSING);
+                recordItemEvents(order, order.getProcessingStartedAt(), ItemState.IN_PROCESS);
+                recordOrderEvent(order, order.getCompletedAt(), OrderState.COMPLETE);
+                recordItemEvents(order, order.getCompletedAt(), ItemState.COMPLETE);
                 break;
             case REJECTED:
                 Timestamp orderedAt = order.getOrderedAt();
                 updateFirstModifiedAt(orderedAt);
                 updateLastModifiedAt(orderedAt);
-                incrementStateCounters(orderStateCountsByTime, order.getOrderedAt(), OrderState.CREATED);
-                incrementStateCounters(orderStateCountsByTime, order.getOrderedAt(), OrderState.REJECTED);
+                recordOrderEvent(order, orderedAt, OrderState.CREATED);
+                recordOrderEvent(order, orderedAt, OrderState.REJECTED);
                 break;
             default:
                 break;
@@ -97,6 +141,91 @@ public class OrderInMemoryStore implements OrderStore {
         return true;
     }
 
+    /** Add order to all indexes. */
+    private void indexOrder(Order order) {
+        ordersById.put(order.getId(), order);
+        ordersByTime.put(order.getOrderedAt(), order);
+        if (indexes.contains(OrderIndex.SERVICE)) {
+            TreeMultimap<Timestamp, Order> serviceOrders = ordersByServiceAndTime.get(order.getService());
+            if (serviceOrders == null) {
+                serviceOrders = TreeMultimap.create();
+                ordersByServiceAndTime.put(order.getService(), serviceOrders);
+            }
+            serviceOrders.put(order.getOrderedAt(), order);
+        }
+        if (indexes.contains(OrderIndex.ITEM)) {
+            for (OrderItem item : order.getOrderItems()) {
+                Set<Order> itemOrders = ordersByItem.get(item.getName());
+                if (itemOrders == null) {
+                    itemOrders = new HashSet<>();
+                    ordersByItem.put(item.getName(), itemOrders);
+                }
+                itemOrders.add(order);
+            }
+        }
+        if (indexes.contains(OrderIndex.PRICE_BUCKET)) {
+            int priceBucket = OrderQuery.getPriceBucket(order.getTotalPriceCents());
+            Set<Order> bucketOrders = ordersByPriceBucket.get(priceBucket);
+            if (bucketOrders == null) {
+                bucketOrders = new HashSet<>();
+                ordersByPriceBucket.put(priceBucket, bucketOrders);
+            }
+            bucketOrders.add(order);
+        }
+        ordersByPrice.put(order.getTotalPriceCents(), order);
+        if (order.getProcessingStartedAt() != null) {
+            ordersByPendingDuration.put(getPendingTimeMinutes(order), order);
+        }
+        if (order.getCompletedAt() != null) {
+            ordersByCompletedAt.put(order.getCompletedAt(), order);
+        }
+    }
+
+    /** Remove order from all indexes. Must be called before any indexed field of the order is modified. */
+    private void unindexOrder(Order order) {
+        ordersById.remove(order.getId());
+        ordersByTime.remove(order.getOrderedAt(), order);
+        TreeMultimap<Timestamp, Order> serviceOrders = ordersByServiceAndTime.get(order.getService());
+        if (serviceOrders != null) {
+            serviceOrders.remove(order.getOrderedAt(), order);
+            if (serviceOrders.isEmpty()) {
+                ordersByServiceAndTime.remove(order.getService());
+            }
+        }
+        if (indexes.contains(OrderIndex.ITEM)) {
+            for (OrderItem item : order.getOrderItems()) {
+                removeFromIndex(ordersByItem, item.getName(), order);
+            }
+        }
+        if (indexes.contains(OrderIndex.PRICE_BUCKET)) {
+            removeFromIndex(ordersByPriceBucket, OrderQuery.getPriceBucket(order.getTotalPriceCents()), order);
+        }
+        ordersByPrice.remove(order.getTotalPriceCents(), order);
+        if (order.getProcessingStartedAt() != null) {
+            ordersByPendingDuration.remove(getPendingTimeMinutes(order), order);
+        }
+        if (order.getCompletedAt() != null) {
+            ordersByCompletedAt.remove(order.getCompletedAt(), order);
+        }
+    }
+
+    /** Remove an order from a hash index entry, and drop the entry once it is empty. */
+    private static <K> void removeFromIndex(Map<K, Set<Order>> index, K key, Order order) {
+        Set<Order> orders = index.get(key);
+        if (orders != null) {
+            orders.remove(order);
+            if (orders.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    /** Get time (minutes) between the order being placed and processing starting. */
+    private static int getPendingTimeMinutes(Order order) {
+        long diff = order.getProcessingStartedAt().getTime() - order.getOrderedAt().getTime();
+        return (int) (diff / (60 * 1000));
+    }
+
     /** Update firstModifiedAt if the timestamp is before this.firstModifiedAt */
     private void updateFirstModifiedAt(Timestamp timestamp) {
         if (firstModifiedAt == null || timestamp.before(firstModifiedAt)) {
@@ -114,53 +243,70 @@ public class OrderInMemoryStore implements OrderStore {
     }
 
     @Override
-    public Order getAndDequeueOrder(OrderProcessingStrategy strategy) {
-        // Currently there is only one order processing strategy.
+    public Order peekOrder() {
         if (ordersByTime.isEmpty()) {
             return null;
         }
         Timestamp timestampKey = ordersByTime.keySet().first();
-        Order order = ordersByTime.get(timestampKey).first();
-        ordersByTime.remove(timestampKey, order);
+        return ordersByTime.get(timestampKey).first();
+    }
+
+    @Override
+    public Order getAndDequeueOrder(OrderProcessingStrategy strategy) {
+        // Currently there is only one order processing strategy.
+        Order order = peekOrder();
+        return order == null ? null : removeOrder(order.getId());
+    }
+
+    @Override
+    public Order getOrder(long orderId) {
+        return ordersById.get(orderId);
+    }
+
+    @Override
+    public Order removeOrder(long orderId) {
+        Order order = ordersById.get(orderId);
+        if (order == null) {
+            return null;
+        }
+        unindexOrder(order);
+        version++;
         currentNumOrders--;
-        currentNumItems-=order.getOrderItemsSize();
+        currentNumItems -= order.getOrderItemsSize();
         return order;
     }
 
     @Override
     public List<Order> clearFinishedOrders(Timestamp queryTime) {
-        TreeMultimap<Timestamp, Order> completedOrders = TreeMultimap.create();
-        for (Map.Entry<Timestamp, Order> orderEntry : ordersByTime.entries()) {
-            Order order = orderEntry.getValue();
-            Timestamp doneTime = null;
-            if (order.getProcessingStartedAt() != null) {
-                doneTime = new Timestamp(
-                        order.getProcessingStartedAt().getTime() + (order.getTotalCookTimeSeconds() * 1000L));
-
-                if (!doneTime.after(queryTime)) {
-                    // If order is complete, add finish time to the order.
-                    Timestamp orderSubmitTime = orderEntry.getKey();
-                    NavigableSet<Order> orders = ordersByTime.get(orderSubmitTime);
-                    for (Order orderToUpdate : orders) {
-                        if (orderToUpdate.equals(order)) {
-                            // MultiMap can have multiple orders at the same timestamp.  Only update the correct order.
-                            order.setCompletedAt(doneTime);
-                            order.updateState(OrderState.COMPLETE);
-                            completedOrders.put(orderSubmitTime, order);
-                            // update store status counters
-                            currentNumOrders--;
-                            currentNumItems -= order.getOrderItemsSize();
-                            updateLastModifiedAt(doneTime);
-                        }
-                    }
-                }
+        List<Order> completedOrders = new ArrayList<>();
+        for (Order order : ordersByTime.values()) {
+            if (order.getProcessingStartedAt() != null && !getDoneTime(order).after(queryTime)) {
+                completedOrders.add(order);
             }
         }
-        for (Map.Entry<Timestamp, Order> orderEntry : completedOrders.entries()) {
-            // remove complete orders from this store.
-            ordersByTime.remove(orderEntry.getKey(), orderEntry.getValue());
+        for (Order completedOrder : completedOrders) {
+            // remove complete orders from this store, then add finish time to the order.
+            removeOrder(completedOrder.getId());
+            Timestamp doneTime = getDoneTime(completedOrder);
+            completedOrder.setCompletedAt(doneTime);
+            completedOrder.updateState(OrderState.COMPLETE);
+            for (OrderItem item : completedOrder.getOrderItems()) {
+                item.updateState(ItemState.COMPLETE);
+                item.setCompletedAt(doneTime);
+            }
+            updateLastModifiedAt(doneTime);
         }
-        return new ArrayList<>(completedOrders.values());
+        return completedOrders;
+    }
+
+    /** Get the time an order in processing will be done, based on its start time and cook time. */
+    private static Timestamp getDoneTime(Order order) {
+        return new Timestamp(order.getProcessingStartedAt().getTime() + (order.getTotalCookTimeSeconds() * 1000L));
+    }
+
+    @Override
+    public long getVersion() {
+        return version;
     }
 
     @Override
@@ -196,62 +342,107 @@ public class OrderInMemoryStore implements OrderStore {
 
     @Override
     public TreeMultimap<Integer, Order> getOrdersByPrice() {
-        TreeMultimap<Integer, Order> ordersByPrice = TreeMultimap.create();
-        for (Order order : ordersByTime.values()) {
-            ordersByPrice.put(order.getTotalPriceCents(), order);
-        }
-        return ordersByPrice;
+        return TreeMultimap.create(ordersByPrice);
     }
 
     @Override
     public TreeMultimap<Integer, Order> getOrdersByPendingDuration() {
-        TreeMultimap<Integer, Order> ordersByPendingDuration = TreeMultimap.create();
-        for (Order order : ordersByTime.values()) {
-            if (order.getState() != OrderState.COMPLETE && order.getState() != OrderState.PROCESSING) {
-                // skip orders not relevant.
-                continue;
-            }
+        // Only orders which have started processing are indexed by pending duration.
+        return TreeMultimap.create(ordersByPendingDuration);
+    }
 
-            long milliseconds1 = order.getOrderedAt().getTime();
-            long milliseconds2 = order.getProcessingStartedAt().getTime();
-            long diff = milliseconds2 - milliseconds1;
-            int pendingTimeMinutes = (int) (diff / (60 * 1000));
+    @Override
+    public SortedMap<Integer, Integer> getPriceDistribution() {
+        return getDistribution(ordersByPrice);
+    }
 
-            ordersByPendingDuration.put(pendingTimeMinutes, order);
+    @Override
+    public SortedMap<Integer, Integer> getPendingDurationDistribution() {
+        return getDistribution(ordersByPendingDuration);
+    }
+
+    /** Count orders per key of an index. Proportional to the number of distinct keys, not orders. */
+    private static SortedMap<Integer, Integer> getDistribution(TreeMultimap<Integer, Order> index) {
+        SortedMap<Integer, Integer> distribution = new TreeMap<>();
+        for (Map.Entry<Integer, Collection<Order>> entry : index.asMap().entrySet()) {
+            distribution.put(entry.getKey(), entry.getValue().size());
         }
-        return ordersByPendingDuration;
+        return distribution;
     }
 
     @Override
     public Map<Timestamp, Map<OrderState, Integer>> getOrderStateCountsByTime() {
-        return orderStateCountsByTime;
+        if (currentStats != null) {
+            return currentStats.getOrderStateCountsByTime();
+        }
+        // Without history, count the transitions of the orders in the store, from their timestamps.
+        OrderStateProjection stats = new OrderStateProjection();
+        for (Order order : ordersByTime.values()) {
+            stats.onOrderEvent(order.getOrderedAt().getTime(), order.getId(), order.getOrderItemsSize(),
+                    OrderState.CREATED);
+            if (order.getState() == OrderState.REJECTED) {
+                stats.onOrderEvent(order.getOrderedAt().getTime(), order.getId(), order.getOrderItemsSize(),
+                        OrderState.REJECTED);
+            }
+            if (order.getProcessingStartedAt() != null) {
+                stats.onOrderEvent(order.getProcessingStartedAt().getTime(), order.getId(),
+                        order.getOrderItemsSize(), OrderState.PROCESSING);
+            }
+            if (order.getCompletedAt() != null) {
+                stats.onOrderEvent(order.getCompletedAt().getTime(), order.getId(), order.getOrderItemsSize(),
+                        OrderState.COMPLETE);
+            }
+        }
+        return stats.getOrderStateCountsByTime();
     }
 
-    /** Increment state counts at a given timestamp in a Map <Timestamp, Map<OrderState, Integer>> */
-    private void incrementStateCounters(Map<Timestamp, Map<OrderState, Integer>> orderStateCountsByTime,
-                                        Timestamp timestamp, OrderState orderState) {
-        if (orderStateCountsByTime.containsKey(timestamp)) {
-            Map<OrderState, Integer> stateCounts = orderStateCountsByTime.get(timestamp);
-            if (stateCounts.containsKey(orderState)) {
-                stateCounts.put(orderState, stateCounts.get(orderState) + 1);
-            } else {
-                stateCounts.put(orderState, 1);
-            }
-        } else {
-            Map<OrderState, Integer> stateCounts = new HashMap<>();
-            stateCounts.put(orderState, 1);
-            orderStateCountsByTime.put(timestamp, stateCounts);
+    @Override
+    public OrderStateProjection getOrderStateProjection(Timestamp asOf) {
+        OrderStateProjection projection = new OrderStateProjection(this::getOrder);
+        replayEvents(asOf, projection);
+        return projection;
+    }
+
+    @Override
+    public void replayEvents(Timestamp asOf, OrderEventLog.Visitor visitor) {
+        Preconditions.checkState(eventLog != null, "Store has no history. Declare OrderIndex.EVENT_LOG.");
+        eventLog.replay(asOf == null ? Long.MAX_VALUE : asOf.getTime(), visitor);
+    }
+
+    /** Record an order state transition in the event log, and fold it into the current stats, if declared. */
+    private void recordOrderEvent(Order order, Timestamp timestamp, OrderState state) {
+        if (eventLog == null) {
+            return;
+        }
+        eventLog.appendOrderEvent(timestamp.getTime(), order.getId(), order.getOrderItemsSize(), state);
+        currentStats.onOrderEvent(timestamp.getTime(), order.getId(), order.getOrderItemsSize(), state);
+    }
+
+    /**
+     * Record a state transition of every item of an order, at the time the item recorded for it, or at the order's
+     * time if the item has none (items simulated whole order at a time).
+     */
+    private void recordItemEvents(Order order, Timestamp timestamp, ItemState state) {
+        if (eventLog == null) {
+            return;
+        }
+        for (int itemIndex = 0; itemIndex < order.getOrderItemsSize(); itemIndex++) {
+            OrderItem item = order.getOrderItems().get(itemIndex);
+            Timestamp itemTime = state == ItemState.IN_PROCESS ? item.getProcessingStartedAt() : item.getCompletedAt();
+            long timeMillis = itemTime != null ? itemTime.getTime() : timestamp.getTime();
+            eventLog.appendItemEvent(timeMillis, order.getId(), itemIndex, state);
+            currentStats.onItemEvent(timeMillis, order.getId(), itemIndex, state);
         }
     }
 
     @Override
-    public Map<String, Integer> getRevenueByItem() {
-        Map<String, Integer> revenueByItem = new HashMap<>();
+    public Map<String, Long> getRevenueByItem() {
+        Map<String, Long> revenueByItem = new HashMap<>();
         for (Order order : ordersByTime.values()) {
             for (OrderItem item : order.getOrderItems()) {
                 String itemName = item.getName();
                 if (!revenueByItem.containsKey(itemName)) {
-                    revenueByItem.put(itemName, item.getPriceCents());
+                    revenueByItem.put(itemName, (long) item.getPriceCents());
                 } else {
                     revenueByItem.put(itemName, revenueByItem.get(itemName) + item.getPriceCents());
                 }
@@ -261,12 +452,12 @@ public class OrderInMemoryStore implements OrderStore {
     }
 
     @Override
-    public Map<String, Integer> getRevenueByService() {
-        Map<String, Integer> revenueByService = new HashMap<>();
+    public Map<String, Long> getRevenueByService() {
+        Map<String, Long> revenueByService = new HashMap<>();
         for (Order order : ordersByTime.values()) {
             String serviceName = order.getService();
             if (!revenueByService.containsKey(serviceName)) {
-                revenueByService.put(serviceName, order.getTotalPriceCents());
+                revenueByService.put(serviceName, (long) order.getTotalPriceCents());
             } else {
                 revenueByService.put(serviceName, revenueByService.get(serviceName) + order.getTotalPriceCents());
             }
@@ -275,11 +466,129 @@ public class OrderInMemoryStore implements OrderStore {
     }
 
     @Override
-    public int getTotalRevenue() {
-        int totalRevenue = 0;
+    public long getTotalRevenue() {
+        long totalRevenue = 0;
         for (Order order : ordersByTime.values()) {
-            totalRevenue =  totalRevenue + order.getTotalPriceCents();
+            totalRevenue += order.getTotalPriceCents();
         }
         return totalRevenue;
     }
+
+    @Override
+    public List<Order> findOrders(OrderQuery query) {
+        // Start from the smallest candidate set out of the declared indexes which apply to the query.
+        Collection<Order> candidates = ordersByTime.values();
+        if (query.getService() != null && indexes.contains(OrderIndex.SERVICE)) {
+            TreeMultimap<Timestamp, Order> serviceOrders = ordersByServiceAndTime.get(query.getService());
+            candidates = smallest(candidates,
+                    serviceOrders == null ? Collections.<Order>emptySet() : serviceOrders.values());
+        }
+        if (query.getItem() != null && indexes.contains(OrderIndex.ITEM)) {
+            candidates = smallest(candidates, ordersByItem.get(query.getItem()));
+        }
+        if (query.getPriceBucket() != null && indexes.contains(OrderIndex.PRICE_BUCKET)) {
+            candidates = smallest(candidates, ordersByPriceBucket.get(query.getPriceBucket()));
+        }
+        List<Order> orders = new ArrayList<>();
+        for (Order order : candidates) {
+            if (query.matches(order)) {
+                orders.add(order);
+            }
+        }
+        return orders;
+    }
+
+    /** Get the smaller of two candidate sets. A null index entry means no orders match. */
+    private static Collection<Order> smallest(Collection<Order> candidates, Collection<Order> indexEntry) {
+        if (indexEntry == null) {
+            return Collections.emptySet();
+        }
+        return indexEntry.size() < candidates.size() ? indexEntry : candidates;
+    }
+
+    @Override
+    public OrderPage getOrdersByOrderedAt(Timestamp from, Timestamp to, OrderCursor cursor, int limit) {
+        return getPage(ordersByTime, window(ordersByTime.keySet(), from, to), false, null, cursor, limit);
+    }
+
+    @Override
+    public OrderPage getOrdersByService(final String service, Timestamp from, Timestamp to,
+                                        OrderCursor cursor, int limit) {
+        if (!indexes.contains(OrderIndex.SERVICE)) {
+            // Without the service index, walk the orderedAt index and skip other services.
+            return getPage(ordersByTime, window(ordersByTime.keySet(), from, to), false,
+                    order -> service.equals(order.getService()), cursor, limit);
+        }
+        TreeMultimap<Timestamp, Order> serviceOrders = ordersByServiceAndTime.get(service);
+        if (serviceOrders == null) {
+            return new OrderPage(new ArrayList<Order>(), null);
+        }
+        return getPage(serviceOrders, window(serviceOrders.keySet(), from, to), false, null, cursor, limit);
+    }
+
+    @Override
+    public OrderPage getOrdersByCompletedAt(Timestamp from, Timestamp to, OrderCursor cursor, int limit) {
+        return getPage(ordersByCompletedAt, window(ordersByCompletedAt.keySet(), from, to), false, null, cursor, limit);
+    }
+
+    @Override
+    public OrderPage getTopOrdersByPrice(OrderCursor cursor, int limit) {
+        return getPage(ordersByPrice, ordersByPrice.keySet().descendingSet(), true, null, cursor, limit);
+    }
+
+    @Override
+    public OrderPage getTopOrdersByPendingDuration(OrderCursor cursor, int limit) {
+        return getPage(
+                ordersByPendingDuration, ordersByPendingDuration.keySet().descendingSet(), true, null, cursor, limit);
+    }
+
+    /** Restrict a set of timestamp keys to [from, to). Null bounds are unbounded. */
+    private static NavigableSet<Timestamp> window(NavigableSet<Timestamp> keys, Timestamp from, Timestamp to) {
+        if (from != null) {
+            keys = keys.tailSet(from, true);
+        }
+        if (to != null) {
+            keys = keys.headSet(to, false);
+        }
+        return keys;
+    }
+
+    /**
+     * Walk an index from the cursor position, and collect up to limit orders.
+     * keys is a (possibly descending, or windowed) view of the index key set, and descending must match its direction.
+     * If filter is set, only matching orders are returned. Nothing is copied other than the orders returned.
+     */
+    @SuppressWarnings("unchecked")
+    private static <K extends Comparable<? super K>> OrderPage getPage(TreeMultimap<K, Order> index,
+                                                                       NavigableSet<K> keys,
+                                                                       boolean descending,
+                                                                       Predicate<Order> filter,
+                                                                       OrderCursor cursor,
+                                                                       int limit) {
+        Preconditions.checkArgument(limit > 0, "Page limit must be greater than 0.");
+        K cursorKey = cursor == null ? null : (K) cursor.getKey();
+        if (cursorKey != null) {
+            keys = keys.tailSet(cursorKey, true);
+        }
+        List<Order> orders = new ArrayList<>(limit);
+        K lastKey = null;
+        for (K key : keys) {
+            NavigableSet<Order> ordersAtKey = descending ? index.get(key).descendingSet() : index.get(key);
+            if (cursorKey != null && key.compareTo(cursorKey) == 0) {
+                // Skip orders already returned at the cursor's key.
+                ordersAtKey = ordersAtKey.tailSet(cursor.getOrder(), false);
+            }
+            for (Order order : ordersAtKey) {
+                if (filter != null && !filter.test(order)) {
+                    continue;
+                }
+                if (orders.size() == limit) {
+                    return new OrderPage(orders, new OrderCursor(lastKey, orders.get(limit - 1)));
+                }
+                orders.add(order);
+                lastKey = key;
+            }
+        }
+        return new OrderPage(orders, null);
+    }
 }
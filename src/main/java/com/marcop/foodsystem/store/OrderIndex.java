@@ -0,0 +1,17 @@
+package com.marcop.foodsystem.store;
+
+/**
+ * Optional secondary indexes which can be declared when an OrderStore is created.
+ * Declared indexes are kept up to date as orders are added, submitted, dequeued and cleared.
+ */
+public enum OrderIndex {
+    // Orders by service, ordered by orderedAt.
+    SERVICE,
+    // Orders by the names of the menu items they contain.
+    ITEM,
+    // Orders by total price bucket (see OrderQuery.getPriceBucket).
+    PRICE_BUCKET,
+    // History of order and item state transitions by time (see OrderEventLog), for stats as of a past time and
+    // replaying events. Without it, a store keeps no history, e.g. for short lived or transient stores.
+    EVENT_LOG
+}
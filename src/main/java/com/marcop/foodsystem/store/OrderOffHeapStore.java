@@ -0,0 +1,832 @@
+package com.marcop.foodsystem.store;
+
+import com.google.common.base.Preconditions;
+import com.marcop.foodsystem.model.ItemState;
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderState;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Append-only CompletedOrderStore, which keeps orders outside the Java heap, for very large runs of completed orders.
+ *
+ * Orders are written as binary records (see OrderRecordView) into chunks of direct memory, or of a memory-mapped
+ * file. Stats scan the records in place through a flyweight view, and only orders returned to the caller are copied
+ * back into Order objects. Customer names are stored in the records, and services and item names are dictionary
+ * encoded. The ID index and the page indexes are also off heap, so the heap only holds the dictionary, which is
+ * bounded by the kitchen's menus, and GC time does not grow with the number of orders.
+ *
+ * Page indexes are sorted record offsets, built when first queried, and brought up to date on each query after
+ * orders are added. So a page costs O(log^2 n + limit), rather than a scan of every order.
+ *
+ * The history of state transitions is not kept separately, since each record holds all of its order's and its
+ * items' transition times. Events are replayed from the records instead.
+ *
+ * Close the store to release its memory, rather than waiting for the GC to release it. The store cannot be used
+ * after it is closed.
+ */
+public class OrderOffHeapStore implements CompletedOrderStore, Closeable {
+
+    private static final int CHUNK_BYTES = 64 * 1024 * 1024;
+    // Releases a direct or mapped buffer now, or is null if the JVM does not allow it.
+    private static final Consumer<ByteBuffer> BUFFER_CLEANER = bufferCleaner();
+
+    private final FileChannel file;
+    private final List<ByteBuffer> chunks;
+    // Number of bytes used in each chunk. Records never span chunks, so a chunk may end with unused space.
+    private final List<Integer> chunkEnds;
+    private final Map<String, Integer> dictionaryCodes;
+    private final List<String> dictionary;
+    private final IdIndex idIndex;
+    private final PageIndex ordersByOrderedAt;
+    private final PageIndex ordersByCompletedAt;
+    private final PageIndex ordersByPrice;
+    private final PageIndex ordersByPendingDuration;
+    // Orders by service code, then orderedAt. Services come from the kitchen's menus, so there are few.
+    private final Map<Integer, PageIndex> ordersByServiceAndOrderedAt;
+    private int currentNumOrders;
+    private int currentNumItems;
+    private long version;
+    private boolean closed;
+
+    // Keep records in direct memory.
+    public OrderOffHeapStore() {
+        this((FileChannel) null);
+    }
+
+    // Keep records in a memory-mapped file, which is replaced if it exists.
+    public OrderOffHeapStore(Path path) throws IOException {
+        this(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE));
+    }
+
+    private OrderOffHeapStore(FileChannel file) {
+        this.file = file;
+        this.chunks = new ArrayList<>();
+        this.chunkEnds = new ArrayList<>();
+        this.dictionaryCodes = new HashMap<>();
+        this.dictionary = new ArrayList<>();
+        this.idIndex = new IdIndex();
+        this.ordersByOrderedAt = new PageIndex(OrderRecordView::getOrderedAtMillis, true, view -> true);
+        this.ordersByCompletedAt = new PageIndex(OrderRecordView::getCompletedAtMillis, true,
+                view -> view.getCompletedAtMillis() != OrderRecordView.NO_TIME);
+        this.ordersByPrice = new PageIndex(OrderRecordView::getTotalPriceCents, false, view -> true);
+        this.ordersByPendingDuration = new PageIndex(OrderOffHeapStore::getPendingTimeMinutes, false,
+                view -> view.getProcessingStartedAtMillis() != OrderRecordView.NO_TIME);
+        this.ordersByServiceAndOrderedAt = new HashMap<>();
+    }
+
+    /** Release the store's memory, and close the memory-mapped file, if there is one. */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (ByteBuffer chunk : chunks) {
+            free(chunk);
+        }
+        chunks.clear();
+        idIndex.free();
+        ordersByOrderedAt.free();
+        ordersByCompletedAt.free();
+        ordersByPrice.free();
+        ordersByPendingDuration.free();
+        for (PageIndex serviceIndex : ordersByServiceAndOrderedAt.values()) {
+            serviceIndex.free();
+        }
+        if (file != null) {
+            file.close();
+        }
+    }
+
+    private void checkOpen() {
+        Preconditions.checkState(!closed, "Order store is closed.");
+    }
+
+    @Override
+    public boolean addOrder(Order order) {
+        checkOpen();
+        byte[] name = order.getName().getBytes(StandardCharsets.UTF_8);
+        int recordBytes = OrderRecordView.getRecordBytes(order.getOrderItemsSize(), name.length);
+        Preconditions.checkArgument(recordBytes <= CHUNK_BYTES, "Order is too large.");
+        if (chunks.isEmpty() || chunkEnds.get(chunks.size() - 1) + recordBytes > CHUNK_BYTES) {
+            chunks.add(allocateChunk(chunks.size()));
+            chunkEnds.add(0);
+        }
+        int lastChunk = chunks.size() - 1;
+        int chunkPosition = chunkEnds.get(lastChunk);
+        long recordOffset = (long) lastChunk * CHUNK_BYTES + chunkPosition;
+        if (!idIndex.putIfAbsent(order.getId(), recordOffset)) {
+            return false;
+        }
+        int[] itemNameCodes = new int[order.getOrderItemsSize()];
+        for (int i = 0; i < itemNameCodes.length; i++) {
+            itemNameCodes[i] = encode(order.getOrderItems().get(i).getName());
+        }
+        OrderRecordView.write(chunks.get(lastChunk), chunkPosition, order, name, encode(order.getService()),
+                itemNameCodes);
+        chunkEnds.set(lastChunk, chunkPosition + recordBytes);
+        currentNumOrders++;
+        currentNumItems += order.getOrderItemsSize();
+        version++;
+        return true;
+    }
+
+    private ByteBuffer allocateChunk(int chunkIndex) {
+        ByteBuffer chunk;
+        if (file == null) {
+            chunk = ByteBuffer.allocateDirect(CHUNK_BYTES);
+        } else {
+            try {
+                chunk = file.map(FileChannel.MapMode.READ_WRITE, (long) chunkIndex * CHUNK_BYTES, CHUNK_BYTES);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to map order store file.", e);
+            }
+        }
+        return chunk.order(ByteOrder.nativeOrder());
+    }
+
+    private int encode(String value) {
+        Integer code = dictionaryCodes.get(value);
+        if (code == null) {
+            code = dictionary.size();
+            dictionary.add(value);
+            dictionaryCodes.put(value, code);
+        }
+        return code;
+    }
+
+    /** Point a view at the record at an offset in the store. */
+    private void moveTo(OrderRecordView view, long recordOffset) {
+        view.moveTo(chunks.get((int) (recordOffset / CHUNK_BYTES)), (int) (recordOffset % CHUNK_BYTES));
+    }
+
+    /** Get the offset the next record will be written at, or past, if it starts a new chunk. */
+    private long getEndOffset() {
+        return chunks.isEmpty() ? 0 : (long) (chunks.size() - 1) * CHUNK_BYTES + chunkEnds.get(chunks.size() - 1);
+    }
+
+    /** Callback for a scan of records, given each record's offset in the store. */
+    private interface RecordVisitor {
+        void visit(long recordOffset, OrderRecordView view);
+    }
+
+    /**
+     * Visit every record from an offset to the end, in the order they were added. The view is only valid during
+     * the callback.
+     */
+    private void forEachRecord(long fromOffset, RecordVisitor visitor) {
+        checkOpen();
+        OrderRecordView view = new OrderRecordView(dictionary);
+        int chunkIndex = (int) (fromOffset / CHUNK_BYTES);
+        int offset = (int) (fromOffset % CHUNK_BYTES);
+        while (chunkIndex < chunks.size()) {
+            if (offset >= chunkEnds.get(chunkIndex)) {
+                chunkIndex++;
+                offset = 0;
+                continue;
+            }
+            view.moveTo(chunks.get(chunkIndex), offset);
+            int recordBytes = view.getRecordBytes();
+            visitor.visit((long) chunkIndex * CHUNK_BYTES + offset, view);
+            offset += recordBytes;
+        }
+    }
+
+    /**
+     * Visit every order, in the order they were added. The view is only valid during the callback.
+     */
+    public void forEachOrder(Consumer<OrderRecordView> visitor) {
+        forEachRecord(0, (recordOffset, view) -> visitor.accept(view));
+    }
+
+    @Override
+    public Order getOrder(long orderId) {
+        checkOpen();
+        long recordOffset = idIndex.get(orderId);
+        if (recordOffset < 0) {
+            return null;
+        }
+        OrderRecordView view = new OrderRecordView(dictionary);
+        moveTo(view, recordOffset);
+        return view.toOrder();
+    }
+
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public int getCurrentNumOrders() {
+        return currentNumOrders;
+    }
+
+    @Override
+    public int getCurrentNumItems() {
+        return currentNumItems;
+    }
+
+    @Override
+    public Map<String, Integer> getItemFrequencyCount() {
+        int[] countsByCode = new int[dictionary.size()];
+        boolean[] seen = new boolean[dictionary.size()];
+        forEachOrder(view -> {
+            for (int i = 0; i < view.getItemCount(); i++) {
+                countsByCode[view.getItemNameCode(i)]++;
+                seen[view.getItemNameCode(i)] = true;
+            }
+        });
+        Map<String, Integer> counts = new HashMap<>();
+        for (int code = 0; code < countsByCode.length; code++) {
+            if (seen[code]) {
+                counts.put(dictionary.get(code), countsByCode[code]);
+            }
+        }
+        return counts;
+    }
+
+    /** Turn sums by dictionary code into sums by string, for the codes seen. */
+    private Map<String, Long> decode(long[] sumsByCode, boolean[] seen) {
+        Map<String, Long> sums = new HashMap<>();
+        for (int code = 0; code < sumsByCode.length; code++) {
+            if (seen[code]) {
+                sums.put(dictionary.get(code), sumsByCode[code]);
+            }
+        }
+        return sums;
+    }
+
+    @Override
+    public SortedMap<Integer, Integer> getPriceDistribution() {
+        SortedMap<Integer, Integer> distribution = new TreeMap<>();
+        forEachOrder(view -> distribution.merge(view.getTotalPriceCents(), 1, Integer::sum));
+        return distribution;
+    }
+
+    @Override
+    public SortedMap<Integer, Integer> getPendingDurationDistribution() {
+        SortedMap<Integer, Integer> distribution = new TreeMap<>();
+        forEachOrder(view -> {
+            if (view.getProcessingStartedAtMillis() != OrderRecordView.NO_TIME) {
+                distribution.merge(getPendingTimeMinutes(view), 1, Integer::sum);
+            }
+        });
+        return distribution;
+    }
+
+    /** Get time (minutes) between the order being placed and processing starting. */
+    private static int getPendingTimeMinutes(OrderRecordView view) {
+        return (int) ((view.getProcessingStartedAtMillis() - view.getOrderedAtMillis()) / (60 * 1000));
+    }
+
+    @Override
+    public Map<Timestamp, Map<OrderState, Integer>> getOrderStateCountsByTime() {
+        OrderStateProjection projection = new OrderStateProjection();
+        replayEvents(null, projection);
+        return projection.getOrderStateCountsByTime();
+    }
+
+    @Override
+    public OrderStateProjection getOrderStateProjection(Timestamp asOf) {
+        // Orders are looked up (and copied to the heap) one at a time, for the stats derived from them.
+        OrderStateProjection projection = new OrderStateProjection(this::getOrder);
+        replayEvents(asOf, projection);
+        return projection;
+    }
+
+    @Override
+    public void replayEvents(Timestamp asOf, OrderEventLog.Visitor visitor) {
+        // The same events an OrderInMemoryStore records when an order is added in its current state. Items are
+        // replayed at their own times, or at their order's if those were not recorded.
+        long asOfMillis = asOf == null ? Long.MAX_VALUE : asOf.getTime();
+        forEachOrder(view -> {
+            long orderId = view.getId();
+            int itemCount = view.getItemCount();
+            long orderedAt = view.getOrderedAtMillis();
+            if (orderedAt <= asOfMillis) {
+                visitor.onOrderEvent(orderedAt, orderId, itemCount, OrderState.CREATED);
+            }
+            switch (view.getState()) {
+                case REJECTED:
+                    if (orderedAt <= asOfMillis) {
+                        visitor.onOrderEvent(orderedAt, orderId, itemCount, OrderState.REJECTED);
+                    }
+                    break;
+                case PROCESSING:
+                case COMPLETE:
+                    long startedAt = view.getProcessingStartedAtMillis();
+                    if (startedAt <= asOfMillis) {
+                        visitor.onOrderEvent(startedAt, orderId, itemCount, OrderState.PROCESSING);
+                    }
+                    for (int i = 0; i < itemCount; i++) {
+                        long itemStartedAt = orElse(view.getItemProcessingStartedAtMillis(i), startedAt);
+                        if (itemStartedAt <= asOfMillis) {
+                            visitor.onItemEvent(itemStartedAt, orderId, i, ItemState.IN_PROCESS);
+                        }
+                    }
+                    if (view.getState() != OrderState.COMPLETE) {
+                        break;
+                    }
+                    long completedAt = view.getCompletedAtMillis();
+                    if (completedAt <= asOfMillis) {
+                        visitor.onOrderEvent(completedAt, orderId, itemCount, OrderState.COMPLETE);
+                    }
+                    for (int i = 0; i < itemCount; i++) {
+                        long itemCompletedAt = orElse(view.getItemCompletedAtMillis(i), completedAt);
+                        if (itemCompletedAt <= asOfMillis) {
+                            visitor.onItemEvent(itemCompletedAt, orderId, i, ItemState.COMPLETE);
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        });
+    }
+
+    private static long orElse(long millis, long defaultMillis) {
+        return millis == OrderRecordView.NO_TIME ? defaultMillis : millis;
+    }
+
+    @Override
+    public Map<String, Long> getRevenueByItem() {
+        long[] revenueByCode = new long[dictionary.size()];
+        boolean[] seen = new boolean[dictionary.size()];
+        forEachOrder(view -> {
+            for (int i = 0; i < view.getItemCount(); i++) {
+                revenueByCode[view.getItemNameCode(i)] += view.getItemPriceCents(i);
+                seen[view.getItemNameCode(i)] = true;
+            }
+        });
+        return decode(revenueByCode, seen);
+    }
+
+    @Override
+    public Map<String, Long> getRevenueByService() {
+        long[] revenueByCode = new long[dictionary.size()];
+        boolean[] seen = new boolean[dictionary.size()];
+        forEachOrder(view -> {
+            revenueByCode[view.getServiceCode()] += view.getTotalPriceCents();
+            seen[view.getServiceCode()] = true;
+        });
+        return decode(revenueByCode, seen);
+    }
+
+    @Override
+    public long getTotalRevenue() {
+        long[] totalRevenue = new long[1];
+        forEachOrder(view -> totalRevenue[0] += view.getTotalPriceCents());
+        return totalRevenue[0];
+    }
+
+    @Override
+    public List<Order> findOrders(OrderQuery query) {
+        Integer serviceCode = query.getService() == null ? null : dictionaryCodes.get(query.getService());
+        Integer itemCode = query.getItem() == null ? null : dictionaryCodes.get(query.getItem());
+        List<Order> orders = new ArrayList<>();
+        if ((query.getService() != null && serviceCode == null) || (query.getItem() != null && itemCode == null)) {
+            return orders;
+        }
+        forEachOrder(view -> {
+            if (serviceCode != null && view.getServiceCode() != serviceCode) {
+                return;
+            }
+            if (query.getPriceBucket() != null
+                    && OrderQuery.getPriceBucket(view.getTotalPriceCents()) != query.getPriceBucket()) {
+                return;
+            }
+            if (query.getState() != null && view.getState() != query.getState()) {
+                return;
+            }
+            if (itemCode != null && !containsItem(view, itemCode)) {
+                return;
+            }
+            orders.add(view.toOrder());
+        });
+        return orders;
+    }
+
+    private static boolean containsItem(OrderRecordView view, int itemCode) {
+        for (int i = 0; i < view.getItemCount(); i++) {
+            if (view.getItemNameCode(i) == itemCode) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public OrderPage getOrdersByOrderedAt(Timestamp from, Timestamp to, OrderCursor cursor, int limit) {
+        return ordersByOrderedAt.getPage(from, to, false, cursor, limit);
+    }
+
+    @Override
+    public OrderPage getOrdersByService(String service, Timestamp from, Timestamp to, OrderCursor cursor, int limit) {
+        Integer serviceCode = dictionaryCodes.get(service);
+        if (serviceCode == null) {
+            Preconditions.checkArgument(limit > 0, "Page limit must be greater than 0.");
+            return new OrderPage(new ArrayList<Order>(), null);
+        }
+        PageIndex serviceIndex = ordersByServiceAndOrderedAt.computeIfAbsent(serviceCode, code ->
+                new PageIndex(OrderRecordView::getOrderedAtMillis, true, view -> view.getServiceCode() == code));
+        return serviceIndex.getPage(from, to, false, cursor, limit);
+    }
+
+    @Override
+    public OrderPage getOrdersByCompletedAt(Timestamp from, Timestamp to, OrderCursor cursor, int limit) {
+        return ordersByCompletedAt.getPage(from, to, false, cursor, limit);
+    }
+
+    @Override
+    public OrderPage getTopOrdersByPrice(OrderCursor cursor, int limit) {
+        return ordersByPrice.getPage(null, null, true, cursor, limit);
+    }
+
+    @Override
+    public OrderPage getTopOrdersByPendingDuration(OrderCursor cursor, int limit) {
+        return ordersByPendingDuration.getPage(null, null, true, cursor, limit);
+    }
+
+    private static long toKey(Comparable<?> cursorKey) {
+        return cursorKey instanceof Timestamp ? ((Timestamp) cursorKey).getTime() : ((Integer) cursorKey).longValue();
+    }
+
+    /**
+     * Offsets of the records which have a key, sorted by key and then Order.compareTo, the same order as
+     * OrderInMemoryStore pages (descending pages walk it backwards). Kept as sorted runs in direct memory.
+     *
+     * Brought up to date when queried: records added since are sorted into a new run, and the newest runs are
+     * merged while the newest is at least half as large as the one before it. So there are O(log n) runs, each
+     * record is merged O(log n) times, and a page binary searches each run, then merges the runs.
+     */
+    private class PageIndex {
+        private final ToLongFunction<OrderRecordView> keyFunction;
+        private final boolean timeKey;
+        private final Predicate<OrderRecordView> indexed;
+        private final List<LongArray> runs = new ArrayList<>();
+        // Views for comparing two records while sorting and searching.
+        private final OrderRecordView a = new OrderRecordView(dictionary);
+        private final OrderRecordView b = new OrderRecordView(dictionary);
+        // Offset of the first record not yet in a run.
+        private long indexedUntil;
+
+        // Keys are timestamps (millis) if timeKey, otherwise ints. Only records which pass indexed are in the index.
+        PageIndex(ToLongFunction<OrderRecordView> keyFunction, boolean timeKey, Predicate<OrderRecordView> indexed) {
+            this.keyFunction = keyFunction;
+            this.timeKey = timeKey;
+            this.indexed = indexed;
+        }
+
+        void free() {
+            for (LongArray run : runs) {
+                run.free();
+            }
+            runs.clear();
+        }
+
+        /** Compare two records in index order. */
+        private int compare(long offsetA, long offsetB) {
+            moveTo(a, offsetA);
+            moveTo(b, offsetB);
+            int keyCompare = Long.compare(keyFunction.applyAsLong(a), keyFunction.applyAsLong(b));
+            return keyCompare != 0 ? keyCompare : a.compareTo(b);
+        }
+
+        /** Compare a record with a cursor position, in index order. */
+        private int compareToCursor(long recordOffset, long cursorKey, Order cursorOrder) {
+            moveTo(a, recordOffset);
+            int keyCompare = Long.compare(keyFunction.applyAsLong(a), cursorKey);
+            return keyCompare != 0 ? keyCompare : a.compareTo(cursorOrder);
+        }
+
+        private long keyOf(long recordOffset) {
+            moveTo(a, recordOffset);
+            return keyFunction.applyAsLong(a);
+        }
+
+        /** Sort records added since the last query into a new run, and merge runs. */
+        private void update() {
+            long endOffset = getEndOffset();
+            if (indexedUntil == endOffset) {
+                return;
+            }
+            long[] count = new long[1];
+            forEachRecord(indexedUntil, (recordOffset, view) -> {
+                if (indexed.test(view)) {
+                    count[0]++;
+                }
+            });
+            if (count[0] > 0) {
+                LongArray run = new LongArray(count[0]);
+                long[] next = new long[1];
+                forEachRecord(indexedUntil, (recordOffset, view) -> {
+                    if (indexed.test(view)) {
+                        run.set(next[0]++, recordOffset);
+                    }
+                });
+                runs.add(sort(run));
+                while (runs.size() > 1
+                        && runs.get(runs.size() - 1).size() * 2 >= runs.get(runs.size() - 2).size()) {
+                    LongArray newer = runs.remove(runs.size() - 1);
+                    LongArray older = runs.remove(runs.size() - 1);
+                    LongArray merged = new LongArray(older.size() + newer.size());
+                    merge(older, 0, older.size(), newer, 0, newer.size(), merged, 0);
+                    older.free();
+                    newer.free();
+                    runs.add(merged);
+                }
+            }
+            indexedUntil = endOffset;
+        }
+
+        /** Merge sort a run, bottom up. Returns the sorted run, and frees the other. */
+        private LongArray sort(LongArray run) {
+            long size = run.size();
+            LongArray from = run;
+            LongArray to = new LongArray(size);
+            for (long width = 1; width < size; width *= 2) {
+                for (long low = 0; low < size; low += 2 * width) {
+                    long middle = Math.min(low + width, size);
+                    long high = Math.min(low + 2 * width, size);
+                    merge(from, low, middle, from, middle, high, to, low);
+                }
+                LongArray swap = from;
+                from = to;
+                to = swap;
+            }
+            to.free();
+            return from;
+        }
+
+        /** Merge two sorted ranges into another array, keeping records from the first range first on ties. */
+        private void merge(LongArray left, long leftFrom, long leftTo, LongArray right, long rightFrom, long rightTo,
+                           LongArray out, long outFrom) {
+            long i = leftFrom;
+            long j = rightFrom;
+            long k = outFrom;
+            while (i < leftTo && j < rightTo) {
+                if (compare(left.get(i), right.get(j)) <= 0) {
+                    out.set(k++, left.get(i++));
+                } else {
+                    out.set(k++, right.get(j++));
+                }
+            }
+            while (i < leftTo) {
+                out.set(k++, left.get(i++));
+            }
+            while (j < rightTo) {
+                out.set(k++, right.get(j++));
+            }
+        }
+
+        /** Find the first position in a run whose record is not before a bound. */
+        private long search(LongArray run, LongPredicate isBefore) {
+            long low = 0;
+            long high = run.size();
+            while (low < high) {
+                long middle = (low + high) >>> 1;
+                if (isBefore.test(run.get(middle))) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Get the first limit orders after the cursor, with keys in [from, to) if set, ascending or descending.
+         */
+        OrderPage getPage(Timestamp from, Timestamp to, boolean descending, OrderCursor cursor, int limit) {
+            Preconditions.checkArgument(limit > 0, "Page limit must be greater than 0.");
+            checkOpen();
+            update();
+            long fromKey = from == null ? Long.MIN_VALUE : from.getTime();
+            long toKey = to == null ? Long.MAX_VALUE : to.getTime();
+            long cursorKey = cursor == null ? 0 : toKey(cursor.getKey());
+            // Next position in each run. Descending pages walk each run backwards, from the position before the end.
+            long[] positions = new long[runs.size()];
+            for (int r = 0; r < runs.size(); r++) {
+                LongArray run = runs.get(r);
+                if (!descending) {
+                    long start = search(run, offset -> keyOf(offset) < fromKey);
+                    if (cursor != null) {
+                        start = Math.max(start,
+                                search(run, offset -> compareToCursor(offset, cursorKey, cursor.getOrder()) <= 0));
+                    }
+                    positions[r] = start;
+                } else {
+                    long end = search(run, offset -> keyOf(offset) < toKey);
+                    if (cursor != null) {
+                        end = Math.min(end,
+                                search(run, offset -> compareToCursor(offset, cursorKey, cursor.getOrder()) < 0));
+                    }
+                    positions[r] = end - 1;
+                }
+            }
+            OrderRecordView view = new OrderRecordView(dictionary);
+            List<Order> orders = new ArrayList<>(limit);
+            long lastKey = 0;
+            while (true) {
+                // Take the next record out of all runs.
+                int next = -1;
+                for (int r = 0; r < runs.size(); r++) {
+                    if (positions[r] < 0 || positions[r] >= runs.get(r).size()) {
+                        continue;
+                    }
+                    if (next < 0) {
+                        next = r;
+                        continue;
+                    }
+                    int compare = compare(runs.get(r).get(positions[r]), runs.get(next).get(positions[next]));
+                    if (descending ? compare > 0 : compare < 0) {
+                        next = r;
+                    }
+                }
+                if (next < 0) {
+                    break;
+                }
+                moveTo(view, runs.get(next).get(positions[next]));
+                positions[next] += descending ? -1 : 1;
+                long key = keyFunction.applyAsLong(view);
+                if (descending ? key < fromKey : key >= toKey) {
+                    break;
+                }
+                if (orders.size() == limit) {
+                    Comparable<?> cursorKeyObject = timeKey ? new Timestamp(lastKey) : Integer.valueOf((int) lastKey);
+                    return new OrderPage(orders, new OrderCursor(cursorKeyObject, orders.get(limit - 1)));
+                }
+                orders.add(view.toOrder());
+                lastKey = key;
+            }
+            return new OrderPage(orders, null);
+        }
+    }
+
+    /**
+     * Fixed size array of longs in direct memory, in segments, so it can hold more than a ByteBuffer can.
+     */
+    private static class LongArray {
+        private static final int SEGMENT_SHIFT = 24;
+        private static final long SEGMENT_LONGS = 1L << SEGMENT_SHIFT;
+
+        private final ByteBuffer[] segments;
+        private final long size;
+
+        LongArray(long size) {
+            this.size = size;
+            int numSegments = (int) ((size + SEGMENT_LONGS - 1) / SEGMENT_LONGS);
+            this.segments = new ByteBuffer[numSegments];
+            for (int i = 0; i < numSegments; i++) {
+                long segmentLongs = Math.min(SEGMENT_LONGS, size - i * SEGMENT_LONGS);
+                segments[i] = ByteBuffer.allocateDirect((int) segmentLongs * Long.BYTES).order(ByteOrder.nativeOrder());
+            }
+        }
+
+        long size() {
+            return size;
+        }
+
+        long get(long index) {
+            return segments[(int) (index >>> SEGMENT_SHIFT)].getLong((int) (index & (SEGMENT_LONGS - 1)) * Long.BYTES);
+        }
+
+        void set(long index, long value) {
+            segments[(int) (index >>> SEGMENT_SHIFT)].putLong((int) (index & (SEGMENT_LONGS - 1)) * Long.BYTES, value);
+        }
+
+        void free() {
+            for (ByteBuffer segment : segments) {
+                OrderOffHeapStore.free(segment);
+            }
+        }
+    }
+
+    /**
+     * Open addressing hash table from order ID to record offset, in direct memory.
+     * Each slot is two longs: the ID, and the record offset plus one (so zero marks an empty slot).
+     */
+    private static class IdIndex {
+        private static final long INITIAL_SLOTS = 1 << 16;
+
+        private LongArray table;
+        private long slots;
+        private long size;
+
+        IdIndex() {
+            slots = INITIAL_SLOTS;
+            table = new LongArray(slots * 2);
+        }
+
+        /** Add an ID, unless it is already present. Returns if it was added. */
+        boolean putIfAbsent(long id, long recordOffset) {
+            if (size * 2 >= slots) {
+                grow();
+            }
+            long slot = findSlot(id);
+            if (table.get(slot * 2 + 1) != 0) {
+                return false;
+            }
+            set(slot, id, recordOffset + 1);
+            size++;
+            return true;
+        }
+
+        /** Get the record offset for an ID, or -1 if it is not present. */
+        long get(long id) {
+            return table.get(findSlot(id) * 2 + 1) - 1;
+        }
+
+        /** Find the slot holding an ID, or the empty slot where it would go. */
+        private long findSlot(long id) {
+            long slot = mix(id) & (slots - 1);
+            while (table.get(slot * 2 + 1) != 0 && table.get(slot * 2) != id) {
+                slot = (slot + 1) & (slots - 1);
+            }
+            return slot;
+        }
+
+        private void grow() {
+            LongArray oldTable = table;
+            long oldSlots = slots;
+            slots *= 2;
+            table = new LongArray(slots * 2);
+            for (long slot = 0; slot < oldSlots; slot++) {
+                if (oldTable.get(slot * 2 + 1) != 0) {
+                    set(findSlot(oldTable.get(slot * 2)), oldTable.get(slot * 2), oldTable.get(slot * 2 + 1));
+                }
+            }
+            oldTable.free();
+        }
+
+        private void set(long slot, long id, long value) {
+            table.set(slot * 2, id);
+            table.set(slot * 2 + 1, value);
+        }
+
+        void free() {
+            table.free();
+        }
+
+        private static long mix(long id) {
+            id ^= id >>> 33;
+            id *= 0xff51afd7ed558ccdL;
+            id ^= id >>> 33;
+            return id;
+        }
+    }
+
+    /**
+     * Find a way to release direct buffers with Unsafe.invokeCleaner, or return null to leave them to the GC.
+     */
+    private static Consumer<ByteBuffer> bufferCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            return buffer -> invoke(invokeCleaner, unsafe, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static void invoke(Method method, Object target, Object... args) {
+        try {
+            method.invoke(target, args);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Left to the GC.
+        }
+    }
+
+    /** Release a direct or mapped buffer now, rather than when it is garbage collected. It must not be used after. */
+    private static void free(ByteBuffer buffer) {
+        if (BUFFER_CLEANER != null && buffer.isDirect()) {
+            BUFFER_CLEANER.accept(buffer);
+        }
+    }
+}
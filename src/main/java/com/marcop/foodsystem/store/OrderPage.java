@@ -0,0 +1,34 @@
+package com.marcop.foodsystem.store;
+
+import com.marcop.foodsystem.model.Order;
+
+import java.util.List;
+
+/**
+ * A single page of orders returned by an OrderStore range query.
+ */
+public class OrderPage {
+    private final List<Order> orders;
+    // Cursor to pass to the next query, or null if there are no more orders in the range.
+    private final OrderCursor nextCursor;
+
+    public OrderPage(List<Order> orders, OrderCursor nextCursor) {
+        this.orders = orders;
+        this.nextCursor = nextCursor;
+    }
+
+    /** Get orders in this page. */
+    public List<Order> getOrders() {
+        return orders;
+    }
+
+    /** Get cursor for the next page, or null if this is the last page. */
+    public OrderCursor getNextCursor() {
+        return nextCursor;
+    }
+
+    /** Check if there are more orders after this page. */
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,155 @@
+package com.marcop.foodsystem.store;
+
+import com.google.common.base.Preconditions;
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderProcessingStrategy;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * OrderQueue for pending orders, which is fast for orders added in (or nearly in) orderedAt order.
+ *
+ * Orders are dequeued in the same order as from an OrderInMemoryStore: by orderedAt, then by Order's natural
+ * order. Orders added in that order are appended to an array, and dequeued from its head, both in O(1). An order
+ * which belongs at most window places before the end of the array is shifted into place. Only orders further out of
+ * order fall back to a tree, and are merged with the array as they are dequeued. So sorted input, as input files
+ * (and OrderReader's merge of shards) almost always are, never touches a tree.
+ *
+ * Orders can also be looked up and removed by ID. Removal by ID shifts the array, so is O(n).
+ */
+public class OrderPendingQueue implements OrderQueue {
+
+    public static final int DEFAULT_WINDOW = 64;
+    // Same order as a TreeMultimap of orders by orderedAt.
+    static final Comparator<Order> QUEUE_ORDER =
+            Comparator.comparing(Order::getOrderedAt).thenComparing(Comparator.naturalOrder());
+
+    private final int window;
+    private final Map<Long, Order> ordersById;
+    // Queued orders in [head, tail), sorted. Space before head is reclaimed when the array grows.
+    private Order[] orders;
+    private int head;
+    private int tail;
+    // Orders added too far out of order for the array, sorted.
+    private final TreeSet<Order> outOfOrder;
+    private int currentNumItems;
+    private long fallbackCount;
+
+    public OrderPendingQueue(int window) {
+        Preconditions.checkArgument(window >= 0, "Window must not be negative.");
+        this.window = window;
+        this.ordersById = new HashMap<>();
+        this.orders = new Order[16];
+        this.outOfOrder = new TreeSet<>(QUEUE_ORDER);
+    }
+
+    public OrderPendingQueue() {
+        this(DEFAULT_WINDOW);
+    }
+
+    @Override
+    public boolean addOrder(Order order) {
+        if (ordersById.putIfAbsent(order.getId(), order) != null) {
+            return false;
+        }
+        if (head == tail || QUEUE_ORDER.compare(order, orders[tail - 1]) >= 0) {
+            // In order.
+            ensureCapacity();
+            orders[tail++] = order;
+        } else if (tail - head <= window || QUEUE_ORDER.compare(order, orders[tail - window - 1]) >= 0) {
+            // Nearly in order, so shift the orders after it along.
+            ensureCapacity();
+            int index = Arrays.binarySearch(orders, Math.max(head, tail - window), tail, order, QUEUE_ORDER);
+            // Orders are distinct, so it is never found.
+            int insertAt = -index - 1;
+            System.arraycopy(orders, insertAt, orders, insertAt + 1, tail - insertAt);
+            orders[insertAt] = order;
+            tail++;
+        } else {
+            outOfOrder.add(order);
+            fallbackCount++;
+        }
+        currentNumItems += order.getOrderItemsSize();
+        return true;
+    }
+
+    /** Make room for one more order at the tail, moving the queue to the start, or into a larger array. */
+    private void ensureCapacity() {
+        if (tail < orders.length) {
+            return;
+        }
+        int size = tail - head;
+        if (size < orders.length / 2) {
+            System.arraycopy(orders, head, orders, 0, size);
+            Arrays.fill(orders, size, tail, null);
+        } else {
+            orders = Arrays.copyOfRange(orders, head, head + orders.length * 2);
+        }
+        head = 0;
+        tail = size;
+    }
+
+    @Override
+    public Order peekOrder() {
+        if (outOfOrder.isEmpty() || (head < tail && QUEUE_ORDER.compare(orders[head], outOfOrder.first()) < 0)) {
+            return head == tail ? null : orders[head];
+        }
+        return outOfOrder.first();
+    }
+
+    @Override
+    public Order getAndDequeueOrder(OrderProcessingStrategy strategy) {
+        // Currently there is only one order processing strategy.
+        Order order = peekOrder();
+        if (order == null) {
+            return null;
+        }
+        if (head < tail && orders[head] == order) {
+            orders[head++] = null;
+        } else {
+            outOfOrder.pollFirst();
+        }
+        ordersById.remove(order.getId());
+        currentNumItems -= order.getOrderItemsSize();
+        return order;
+    }
+
+    /** Get a queued order by ID, or null if it is not queued. */
+    public Order getOrder(long orderId) {
+        return ordersById.get(orderId);
+    }
+
+    /** Remove a queued order by ID and return it, or null if it is not queued. */
+    public Order removeOrder(long orderId) {
+        Order order = ordersById.remove(orderId);
+        if (order == null) {
+            return null;
+        }
+        if (!outOfOrder.remove(order)) {
+            int index = Arrays.binarySearch(orders, head, tail, order, QUEUE_ORDER);
+            System.arraycopy(orders, index + 1, orders, index, tail - index - 1);
+            orders[--tail] = null;
+        }
+        currentNumItems -= order.getOrderItemsSize();
+        return order;
+    }
+
+    /** Get the number of orders added too far out of order for the array, which were kept in the tree instead. */
+    public long getFallbackCount() {
+        return fallbackCount;
+    }
+
+    @Override
+    public int getCurrentNumOrders() {
+        return ordersById.size();
+    }
+
+    /** Get the number of items of the queued orders. */
+    public int getCurrentNumItems() {
+        return currentNumItems;
+    }
+}
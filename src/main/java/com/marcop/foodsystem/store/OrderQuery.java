@@ -0,0 +1,89 @@
+package com.marcop.foodsystem.store;
+
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+import com.marcop.foodsystem.model.OrderState;
+
+/**
+ * Criteria for looking up orders in an OrderStore. Unset criteria match every order.
+ * E.g. all completed orders for service X containing item Y:
+ *     new OrderQuery().withState(OrderState.COMPLETE).withService("X").withItem("Y")
+ */
+public class OrderQuery {
+
+    // Width (cents) of the price buckets used by the PRICE_BUCKET index.
+    public static final int PRICE_BUCKET_WIDTH_CENTS = 1000;
+
+    private String service;
+    private String item;
+    private Integer priceBucket;
+    private OrderState state;
+
+    /** Only match orders from this service. */
+    public OrderQuery withService(String service) {
+        this.service = service;
+        return this;
+    }
+
+    /** Only match orders containing this menu item. */
+    public OrderQuery withItem(String item) {
+        this.item = item;
+        return this;
+    }
+
+    /** Only match orders whose total price falls in this bucket. */
+    public OrderQuery withPriceBucket(int priceBucket) {
+        this.priceBucket = priceBucket;
+        return this;
+    }
+
+    /** Only match orders in this state. */
+    public OrderQuery withState(OrderState state) {
+        this.state = state;
+        return this;
+    }
+
+    public String getService() {
+        return service;
+    }
+
+    public String getItem() {
+        return item;
+    }
+
+    public Integer getPriceBucket() {
+        return priceBucket;
+    }
+
+    public OrderState getState() {
+        return state;
+    }
+
+    /** Get the price bucket for a total price (cents). */
+    public static int getPriceBucket(int priceCents) {
+        return priceCents / PRICE_BUCKET_WIDTH_CENTS;
+    }
+
+    /** Check if an order meets all criteria. */
+    public boolean matches(Order order) {
+        if (service != null && !service.equals(order.getService())) {
+            return false;
+        }
+        if (priceBucket != null && getPriceBucket(order.getTotalPriceCents()) != priceBucket) {
+            return false;
+        }
+        if (state != null && order.getState() != state) {
+            return false;
+        }
+        return item == null || containsItem(order, item);
+    }
+
+    private static boolean containsItem(Order order, String itemName) {
+        for (OrderItem orderItem : order.getOrderItems()) {
+            if (itemName.equals(orderItem.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,23 @@
+package com.marcop.foodsystem.store;
+
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderProcessingStrategy;
+
+/**
+ * Queue of pending orders, which simulators dequeue from: orders are only added, peeked at and dequeued, by
+ * orderedAt, then by Order's natural order.
+ */
+public interface OrderQueue {
+    // Add a new order to the queue. Returns if order was successfully added to the queue.
+    // An order whose ID is already queued is not added.
+    boolean addOrder(Order order);
+
+    // Get the order which would be dequeued next, without dequeuing it, or null if the queue is empty.
+    Order peekOrder();
+
+    // Remove the next order from the queue and return it, or null if the queue is empty.
+    Order getAndDequeueOrder(OrderProcessingStrategy strategy);
+
+    // Get number of orders in queue.
+    int getCurrentNumOrders();
+}
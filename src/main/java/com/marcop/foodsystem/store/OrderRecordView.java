@@ -0,0 +1,249 @@
+package com.marcop.foodsystem.store;
+
+import com.marcop.foodsystem.model.ItemState;
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+import com.marcop.foodsystem.model.OrderState;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Flyweight view of an order record in an OrderOffHeapStore.
+ * A scan moves one view between records, so a view must not be kept after the scan callback returns.
+ * Use toOrder to copy the record into an Order.
+ *
+ * Record layout (bytes): id (8), orderedAt millis (8), processingStartedAt millis (8), completedAt millis (8),
+ * total price cents (4), total cook time seconds (4), name length (4), service code (4), number of items (4),
+ * state (4), then per item: name code (4), price cents (4), cook time seconds (4), state (4),
+ * processingStartedAt millis (8), completedAt millis (8), then the name as UTF-8, padded to a multiple of 8 bytes.
+ * Unset timestamps are stored as NO_TIME. Customer names are stored inline, since there are about as many as orders.
+ * Services and item names come from the kitchen's menus, so are stored as codes into the store's dictionary.
+ */
+public class OrderRecordView {
+
+    static final int HEADER_BYTES = 56;
+    static final int ITEM_BYTES = 32;
+    static final long NO_TIME = Long.MIN_VALUE;
+
+    static final int ID = 0;
+    static final int ORDERED_AT = 8;
+    static final int PROCESSING_STARTED_AT = 16;
+    static final int COMPLETED_AT = 24;
+    static final int TOTAL_PRICE_CENTS = 32;
+    static final int TOTAL_COOK_TIME_SECONDS = 36;
+    static final int NAME_BYTES = 40;
+    static final int SERVICE = 44;
+    static final int ITEM_COUNT = 48;
+    static final int STATE = 52;
+    static final int ITEM_NAME = 0;
+    static final int ITEM_PRICE_CENTS = 4;
+    static final int ITEM_COOK_TIME_SECONDS = 8;
+    static final int ITEM_STATE = 12;
+    static final int ITEM_PROCESSING_STARTED_AT = 16;
+    static final int ITEM_COMPLETED_AT = 24;
+
+    private static final OrderState[] ORDER_STATES = OrderState.values();
+    private static final ItemState[] ITEM_STATES = ItemState.values();
+
+    private final List<String> dictionary;
+    private ByteBuffer buffer;
+    private int offset;
+
+    OrderRecordView(List<String> dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /** Point the view at the record at an offset in a buffer. */
+    void moveTo(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+    }
+
+    /** Get the size of a record with a number of items, and a name of a number of bytes. */
+    static int getRecordBytes(int itemCount, int nameBytes) {
+        return (HEADER_BYTES + itemCount * ITEM_BYTES + nameBytes + 7) & ~7;
+    }
+
+    /** Write an order as a record at an offset in a buffer, using codes from the store's dictionary. */
+    static void write(ByteBuffer buffer, int offset, Order order, byte[] name, int serviceCode, int[] itemNameCodes) {
+        buffer.putLong(offset + ID, order.getId());
+        buffer.putLong(offset + ORDERED_AT, order.getOrderedAt().getTime());
+        buffer.putLong(offset + PROCESSING_STARTED_AT, toMillis(order.getProcessingStartedAt()));
+        buffer.putLong(offset + COMPLETED_AT, toMillis(order.getCompletedAt()));
+        buffer.putInt(offset + TOTAL_PRICE_CENTS, order.getTotalPriceCents());
+        buffer.putInt(offset + TOTAL_COOK_TIME_SECONDS, order.getTotalCookTimeSeconds());
+        buffer.putInt(offset + NAME_BYTES, name.length);
+        buffer.putInt(offset + SERVICE, serviceCode);
+        buffer.putInt(offset + ITEM_COUNT, order.getOrderItemsSize());
+        buffer.putInt(offset + STATE, order.getState().ordinal());
+        int itemOffset = offset + HEADER_BYTES;
+        for (int i = 0; i < order.getOrderItemsSize(); i++) {
+            OrderItem item = order.getOrderItems().get(i);
+            buffer.putInt(itemOffset + ITEM_NAME, itemNameCodes[i]);
+            buffer.putInt(itemOffset + ITEM_PRICE_CENTS, item.getPriceCents());
+            buffer.putInt(itemOffset + ITEM_COOK_TIME_SECONDS, item.getCookTimeSeconds());
+            buffer.putInt(itemOffset + ITEM_STATE, item.getState().ordinal());
+            buffer.putLong(itemOffset + ITEM_PROCESSING_STARTED_AT, toMillis(item.getProcessingStartedAt()));
+            buffer.putLong(itemOffset + ITEM_COMPLETED_AT, toMillis(item.getCompletedAt()));
+            itemOffset += ITEM_BYTES;
+        }
+        for (byte b : name) {
+            buffer.put(itemOffset++, b);
+        }
+    }
+
+    private static long toMillis(Timestamp timestamp) {
+        return timestamp == null ? NO_TIME : timestamp.getTime();
+    }
+
+    private static Timestamp toTimestamp(long millis) {
+        return millis == NO_TIME ? null : new Timestamp(millis);
+    }
+
+    public long getId() {
+        return buffer.getLong(offset + ID);
+    }
+
+    public long getOrderedAtMillis() {
+        return buffer.getLong(offset + ORDERED_AT);
+    }
+
+    /** Get processingStartedAt millis, or NO_TIME if processing has not started. */
+    public long getProcessingStartedAtMillis() {
+        return buffer.getLong(offset + PROCESSING_STARTED_AT);
+    }
+
+    /** Get completedAt millis, or NO_TIME if not completed. */
+    public long getCompletedAtMillis() {
+        return buffer.getLong(offset + COMPLETED_AT);
+    }
+
+    public int getTotalPriceCents() {
+        return buffer.getInt(offset + TOTAL_PRICE_CENTS);
+    }
+
+    public int getTotalCookTimeSeconds() {
+        return buffer.getInt(offset + TOTAL_COOK_TIME_SECONDS);
+    }
+
+    public String getName() {
+        byte[] name = new byte[buffer.getInt(offset + NAME_BYTES)];
+        int nameOffset = itemOffset(getItemCount());
+        for (int i = 0; i < name.length; i++) {
+            name[i] = buffer.get(nameOffset + i);
+        }
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    public String getService() {
+        return dictionary.get(getServiceCode());
+    }
+
+    int getServiceCode() {
+        return buffer.getInt(offset + SERVICE);
+    }
+
+    public OrderState getState() {
+        return ORDER_STATES[buffer.getInt(offset + STATE)];
+    }
+
+    public int getItemCount() {
+        return buffer.getInt(offset + ITEM_COUNT);
+    }
+
+    public String getItemName(int itemIndex) {
+        return dictionary.get(getItemNameCode(itemIndex));
+    }
+
+    int getItemNameCode(int itemIndex) {
+        return buffer.getInt(itemOffset(itemIndex) + ITEM_NAME);
+    }
+
+    public int getItemPriceCents(int itemIndex) {
+        return buffer.getInt(itemOffset(itemIndex) + ITEM_PRICE_CENTS);
+    }
+
+    public int getItemCookTimeSeconds(int itemIndex) {
+        return buffer.getInt(itemOffset(itemIndex) + ITEM_COOK_TIME_SECONDS);
+    }
+
+    public ItemState getItemState(int itemIndex) {
+        return ITEM_STATES[buffer.getInt(itemOffset(itemIndex) + ITEM_STATE)];
+    }
+
+    /** Get the item's processingStartedAt millis, or NO_TIME if it was not recorded. */
+    public long getItemProcessingStartedAtMillis(int itemIndex) {
+        return buffer.getLong(itemOffset(itemIndex) + ITEM_PROCESSING_STARTED_AT);
+    }
+
+    /** Get the item's completedAt millis, or NO_TIME if it was not recorded. */
+    public long getItemCompletedAtMillis(int itemIndex) {
+        return buffer.getLong(itemOffset(itemIndex) + ITEM_COMPLETED_AT);
+    }
+
+    private int itemOffset(int itemIndex) {
+        return offset + HEADER_BYTES + itemIndex * ITEM_BYTES;
+    }
+
+    /** Get the size of this record. */
+    int getRecordBytes() {
+        return getRecordBytes(getItemCount(), buffer.getInt(offset + NAME_BYTES));
+    }
+
+    /** Compare this record's order with another's, as Order.compareTo would. */
+    int compareTo(OrderRecordView other) {
+        int orderedAtCompare = Long.compare(other.getOrderedAtMillis(), getOrderedAtMillis());
+        if (orderedAtCompare != 0) {
+            return orderedAtCompare;
+        }
+        int nameCompare = other.getName().compareTo(getName());
+        if (nameCompare != 0) {
+            return nameCompare;
+        }
+        int serviceCompare = other.getService().compareTo(getService());
+        if (serviceCompare != 0) {
+            return serviceCompare;
+        }
+        return Long.compare(getId(), other.getId());
+    }
+
+    /** Compare this record's order with an order, as Order.compareTo would. */
+    int compareTo(Order other) {
+        int orderedAtCompare = Long.compare(other.getOrderedAt().getTime(), getOrderedAtMillis());
+        if (orderedAtCompare != 0) {
+            return orderedAtCompare;
+        }
+        int nameCompare = other.getName().compareTo(getName());
+        if (nameCompare != 0) {
+            return nameCompare;
+        }
+        int serviceCompare = other.getService().compareTo(getService());
+        if (serviceCompare != 0) {
+            return serviceCompare;
+        }
+        return Long.compare(getId(), other.getId());
+    }
+
+    /** Copy this record into a new Order. */
+    public Order toOrder() {
+        List<OrderItem> items = new ArrayList<>(getItemCount());
+        for (int i = 0; i < getItemCount(); i++) {
+            OrderItem item = new OrderItem(getItemName(i), getItemPriceCents(i));
+            item.setCookTimeSeconds(getItemCookTimeSeconds(i));
+            item.updateState(getItemState(i));
+            item.setProcessingStartedAt(toTimestamp(getItemProcessingStartedAtMillis(i)));
+            item.setCompletedAt(toTimestamp(getItemCompletedAtMillis(i)));
+            items.add(item);
+        }
+        Order order = new Order(getId(), new Timestamp(getOrderedAtMillis()), getName(), getService(), items);
+        order.setProcessingStartedAt(toTimestamp(getProcessingStartedAtMillis()));
+        order.setCompletedAt(toTimestamp(getCompletedAtMillis()));
+        order.setTotalCookTimeSeconds(getTotalCookTimeSeconds());
+        order.updateState(getState());
+        return order;
+    }
+}
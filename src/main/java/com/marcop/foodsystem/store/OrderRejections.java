@@ -0,0 +1,122 @@
+package com.marcop.foodsystem.store;
+
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.RejectionReason;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+/**
+ * Counts rejected orders by reason, rather than keeping the orders.
+ * Only the first few rejections of each reason are kept, as example descriptions, and a summary is logged at most
+ * once per log interval. So a dirty input costs a few counters, not a log line and an order on the heap per
+ * rejection.
+ *
+ * Thread safe, so orders can be rejected from parallel validation.
+ */
+public class OrderRejections {
+
+    public static final int DEFAULT_MAX_EXAMPLES_PER_REASON = 5;
+    public static final long DEFAULT_LOG_INTERVAL_MILLIS = 10000;
+    private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+    private static final RejectionReason[] REASONS = RejectionReason.values();
+
+    private final int maxExamplesPerReason;
+    private final long logIntervalMillis;
+    private final AtomicLongArray countsByReason;
+    private final List<List<String>> examplesByReason;
+    private final AtomicLong lastLogMillis;
+
+    public OrderRejections(int maxExamplesPerReason, long logIntervalMillis) {
+        this.maxExamplesPerReason = maxExamplesPerReason;
+        this.logIntervalMillis = logIntervalMillis;
+        this.countsByReason = new AtomicLongArray(REASONS.length);
+        this.examplesByReason = new ArrayList<>(REASONS.length);
+        for (int i = 0; i < REASONS.length; i++) {
+            examplesByReason.add(new ArrayList<>(maxExamplesPerReason));
+        }
+        this.lastLogMillis = new AtomicLong();
+    }
+
+    public OrderRejections() {
+        this(DEFAULT_MAX_EXAMPLES_PER_REASON, DEFAULT_LOG_INTERVAL_MILLIS);
+    }
+
+    /** Count a rejected order. Detail describes the problem, e.g. the unknown item name. */
+    public void reject(Order order, RejectionReason reason, String detail) {
+        long count = countsByReason.incrementAndGet(reason.ordinal());
+        if (count <= maxExamplesPerReason) {
+            List<String> examples = examplesByReason.get(reason.ordinal());
+            synchronized (examples) {
+                examples.add(describe(order, detail));
+            }
+        }
+        long now = System.currentTimeMillis();
+        long last = lastLogMillis.get();
+        if (now - last >= logIntervalMillis && lastLogMillis.compareAndSet(last, now)) {
+            logSummary();
+        }
+    }
+
+    /** Count rejections made elsewhere, e.g. in another run, keeping their examples up to the maximum. */
+    public void addAll(RejectionReason reason, long count, List<String> examples) {
+        countsByReason.addAndGet(reason.ordinal(), count);
+        List<String> reasonExamples = examplesByReason.get(reason.ordinal());
+        synchronized (reasonExamples) {
+            for (String example : examples) {
+                if (reasonExamples.size() < maxExamplesPerReason) {
+                    reasonExamples.add(example);
+                }
+            }
+        }
+    }
+
+    private static String describe(Order order, String detail) {
+        return String.format("Order %s (%s, %s, ordered at %s): %s.",
+                order.getId(), order.getName(), order.getService(), order.getOrderedAt(), detail);
+    }
+
+    /** Log the number of rejections so far, by reason. */
+    public void logSummary() {
+        LOGGER.warning(String.format("%s orders rejected so far: %s.", getTotal(), getCountsByReason()));
+    }
+
+    /** Get the number of rejected orders. Only increases, so it also serves as a version. */
+    public long getTotal() {
+        long total = 0;
+        for (int i = 0; i < REASONS.length; i++) {
+            total += countsByReason.get(i);
+        }
+        return total;
+    }
+
+    public long getCount(RejectionReason reason) {
+        return countsByReason.get(reason.ordinal());
+    }
+
+    /** Get the number of rejected orders by reason, for reasons with at least one rejection. */
+    public Map<RejectionReason, Long> getCountsByReason() {
+        Map<RejectionReason, Long> countsByReason = new EnumMap<>(RejectionReason.class);
+        for (RejectionReason reason : REASONS) {
+            long count = getCount(reason);
+            if (count > 0) {
+                countsByReason.put(reason, count);
+            }
+        }
+        return countsByReason;
+    }
+
+    /** Get descriptions of the first rejected orders for a reason. */
+    public List<String> getExamples(RejectionReason reason) {
+        List<String> examples = examplesByReason.get(reason.ordinal());
+        synchronized (examples) {
+            return Collections.unmodifiableList(new ArrayList<>(examples));
+        }
+    }
+}
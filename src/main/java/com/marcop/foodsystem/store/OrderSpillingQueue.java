@@ -0,0 +1,312 @@
+package com.marcop.foodsystem.store;
+
+import com.google.common.base.Preconditions;
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+import com.marcop.foodsystem.model.OrderProcessingStrategy;
+import com.marcop.foodsystem.model.OrderState;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * OrderQueue for pending orders, which holds more orders than fit in the heap by spilling them to disk.
+ *
+ * Orders are queued in an OrderPendingQueue until it holds maxOrdersInMemory orders. Then it is drained, in order,
+ * to a new run file: a sorted run of binary records, written sequentially. Orders are dequeued by a k-way merge of
+ * the runs and the orders still in memory, by the same order as an OrderInMemoryStore. Each run is read
+ * sequentially through a buffer, with only its next order on the heap, and deleted once it is read. So the heap
+ * holds at most maxOrdersInMemory orders, and one order and one buffer per run.
+ *
+ * Record layout: id (8), orderedAt millis (8), name length (4), name as UTF-8, service code (4), total cook time
+ * seconds (4), number of items (4), then per item: name code (4), price cents (4), cook time seconds (4), station
+ * code (4, or -1). Customer names are stored inline, since there are about as many as orders. Services, item names
+ * and stations come from the kitchen's menus, so are stored as codes into a dictionary on the heap. Only pending
+ * (CREATED) orders are queued, so progress is not stored, and orders read back from a run are new Order objects
+ * with the same ID.
+ *
+ * An order whose ID is queued in memory is not added. An order queued again after it was spilled is only found as
+ * runs are merged, where it sorts next to itself (the queue order ends with the ID), so it is dropped then, and
+ * counted until it is. Close the queue to delete any runs not yet read.
+ */
+public class OrderSpillingQueue implements OrderQueue, Closeable {
+
+    public static final int DEFAULT_MAX_ORDERS_IN_MEMORY = 1 << 20;
+    private static final int IO_BUFFER_BYTES = 64 * 1024;
+    private static final int NO_STATION = -1;
+
+    private final Path directory;
+    private final int maxOrdersInMemory;
+    private final OrderPendingQueue memory;
+    private final Map<String, Integer> dictionaryCodes;
+    private final List<String> dictionary;
+    // Runs written before the merge started, then the runs being merged, by their next order.
+    private final List<Path> runFiles;
+    private final PriorityQueue<RunReader> runs;
+    private boolean merging;
+    private int runCount;
+    private long spilledOrderCount;
+    private int currentNumOrders;
+    private int currentNumItems;
+    // Last order dequeued, to drop duplicates of it.
+    private Order lastDequeued;
+
+    // Write runs to a new temporary directory in a parent directory.
+    public OrderSpillingQueue(Path parentDirectory, int maxOrdersInMemory) throws IOException {
+        Preconditions.checkArgument(maxOrdersInMemory > 0, "Maximum orders in memory must be greater than 0.");
+        this.directory = Files.createTempDirectory(parentDirectory, "pending-runs");
+        this.maxOrdersInMemory = maxOrdersInMemory;
+        this.memory = new OrderPendingQueue();
+        this.dictionaryCodes = new HashMap<>();
+        this.dictionary = new ArrayList<>();
+        this.runFiles = new ArrayList<>();
+        this.runs = new PriorityQueue<>(Comparator.comparing((RunReader run) -> run.next,
+                OrderPendingQueue.QUEUE_ORDER));
+    }
+
+    // Write runs to a new directory in the default temporary directory.
+    public OrderSpillingQueue(int maxOrdersInMemory) throws IOException {
+        this(Paths.get(System.getProperty("java.io.tmpdir")), maxOrdersInMemory);
+    }
+
+    @Override
+    public boolean addOrder(Order order) {
+        Preconditions.checkArgument(order.getState() == OrderState.CREATED, "Only pending orders can be queued.");
+        if (!memory.addOrder(order)) {
+            return false;
+        }
+        currentNumOrders++;
+        currentNumItems += order.getOrderItemsSize();
+        if (memory.getCurrentNumOrders() > maxOrdersInMemory) {
+            spill();
+        }
+        return true;
+    }
+
+    /** Drain the orders in memory to a new run. Once merging, the run joins the merge. */
+    private void spill() {
+        Path runFile = directory.resolve("run-" + runCount++ + ".bin");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(runFile), IO_BUFFER_BYTES))) {
+            out.writeInt(memory.getCurrentNumOrders());
+            for (Order order = memory.getAndDequeueOrder(null); order != null;
+                    order = memory.getAndDequeueOrder(null)) {
+                writeOrder(out, order);
+                spilledOrderCount++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write pending run " + runFile + ".", e);
+        }
+        if (merging) {
+            openRun(runFile);
+        } else {
+            runFiles.add(runFile);
+        }
+    }
+
+    private void writeOrder(DataOutputStream out, Order order) throws IOException {
+        out.writeLong(order.getId());
+        out.writeLong(order.getOrderedAt().getTime());
+        byte[] name = order.getName().getBytes(StandardCharsets.UTF_8);
+        out.writeInt(name.length);
+        out.write(name);
+        out.writeInt(code(order.getService()));
+        out.writeInt(order.getTotalCookTimeSeconds());
+        out.writeInt(order.getOrderItemsSize());
+        for (OrderItem item : order.getOrderItems()) {
+            out.writeInt(code(item.getName()));
+            out.writeInt(item.getPriceCents());
+            out.writeInt(item.getCookTimeSeconds());
+            out.writeInt(item.getStation() == null ? NO_STATION : code(item.getStation()));
+        }
+    }
+
+    private Order readOrder(DataInputStream in) throws IOException {
+        long id = in.readLong();
+        Timestamp orderedAt = new Timestamp(in.readLong());
+        byte[] nameBytes = new byte[in.readInt()];
+        in.readFully(nameBytes);
+        String name = new String(nameBytes, StandardCharsets.UTF_8);
+        String service = dictionary.get(in.readInt());
+        int totalCookTimeSeconds = in.readInt();
+        int itemCount = in.readInt();
+        List<OrderItem> items = new ArrayList<>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            String itemName = dictionary.get(in.readInt());
+            OrderItem item = new OrderItem(itemName, in.readInt());
+            item.setCookTimeSeconds(in.readInt());
+            int stationCode = in.readInt();
+            if (stationCode != NO_STATION) {
+                item.setStation(dictionary.get(stationCode));
+            }
+            items.add(item);
+        }
+        Order order = new Order(id, orderedAt, name, service, items);
+        order.setTotalCookTimeSeconds(totalCookTimeSeconds);
+        return order;
+    }
+
+    /** Get the dictionary code of a string, adding it if it is new. */
+    private int code(String value) {
+        Integer code = dictionaryCodes.get(value);
+        if (code == null) {
+            code = dictionary.size();
+            dictionaryCodes.put(value, code);
+            dictionary.add(value);
+        }
+        return code;
+    }
+
+    private void openRun(Path runFile) {
+        RunReader run = new RunReader(runFile);
+        if (run.next != null) {
+            runs.add(run);
+        }
+    }
+
+    @Override
+    public Order peekOrder() {
+        if (!merging) {
+            merging = true;
+            for (Path runFile : runFiles) {
+                openRun(runFile);
+            }
+            runFiles.clear();
+        }
+        Order head = head();
+        // An order queued again after it was spilled sorts next to itself, so is dropped here.
+        while (head != null && lastDequeued != null && head.getId() == lastDequeued.getId()) {
+            removeHead(head);
+            currentNumOrders--;
+            currentNumItems -= head.getOrderItemsSize();
+            head = head();
+        }
+        return head;
+    }
+
+    @Override
+    public Order getAndDequeueOrder(OrderProcessingStrategy strategy) {
+        // Currently there is only one order processing strategy.
+        Order order = peekOrder();
+        if (order == null) {
+            return null;
+        }
+        removeHead(order);
+        currentNumOrders--;
+        currentNumItems -= order.getOrderItemsSize();
+        lastDequeued = order;
+        return order;
+    }
+
+    /** Get the first order of the runs and the orders in memory, or null if there are none. */
+    private Order head() {
+        Order inMemory = memory.peekOrder();
+        RunReader run = runs.peek();
+        if (run == null || (inMemory != null && OrderPendingQueue.QUEUE_ORDER.compare(inMemory, run.next) < 0)) {
+            return inMemory;
+        }
+        return run.next;
+    }
+
+    /** Remove the head order from memory, or from its run. */
+    private void removeHead(Order head) {
+        if (head == memory.peekOrder()) {
+            memory.getAndDequeueOrder(null);
+        } else {
+            RunReader run = runs.poll();
+            run.advance();
+            if (run.next != null) {
+                runs.add(run);
+            }
+        }
+    }
+
+    /** Get the number of runs written to disk. */
+    public int getRunCount() {
+        return runCount;
+    }
+
+    /** Get the number of orders written to disk. */
+    public long getSpilledOrderCount() {
+        return spilledOrderCount;
+    }
+
+    /** Delete any runs not yet read, and the run directory. */
+    @Override
+    public void close() throws IOException {
+        for (RunReader run : runs) {
+            run.close();
+        }
+        runs.clear();
+        for (Path runFile : runFiles) {
+            Files.deleteIfExists(runFile);
+        }
+        runFiles.clear();
+        Files.deleteIfExists(directory);
+    }
+
+    @Override
+    public int getCurrentNumOrders() {
+        return currentNumOrders;
+    }
+
+    /** Get the number of items of the queued orders. */
+    public int getCurrentNumItems() {
+        return currentNumItems;
+    }
+
+    /** Sequential reader of a run, holding its next order. The run is deleted once read. */
+    private class RunReader {
+        private final Path file;
+        private final DataInputStream in;
+        private int remaining;
+        // Next order in the run, or null once it is read.
+        private Order next;
+
+        RunReader(Path file) {
+            this.file = file;
+            try {
+                this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), IO_BUFFER_BYTES));
+                this.remaining = in.readInt();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open pending run " + file + ".", e);
+            }
+            advance();
+        }
+
+        void advance() {
+            try {
+                if (remaining == 0) {
+                    next = null;
+                    close();
+                    return;
+                }
+                remaining--;
+                next = readOrder(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read pending run " + file + ".", e);
+            }
+        }
+
+        void close() throws IOException {
+            in.close();
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.marcop.foodsystem.store;
+
+import com.google.common.base.Preconditions;
+import com.marcop.foodsystem.model.ItemState;
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+import com.marcop.foodsystem.model.OrderState;
+
+import java.sql.Timestamp;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.LongFunction;
+
+/**
+ * Order state stats, built by folding over an OrderEventLog.
+ * A store keeps one up to date as events are recorded. Stats for a past time are rebuilt by replaying the log
+ * up to that time into a new projection.
+ *
+ * Orders move CREATED -> PROCESSING -> COMPLETE, or CREATED -> REJECTED, and items PENDING -> IN_PROCESS -> COMPLETE.
+ * So the number in each state is the number of transitions into it, less the transitions out of it.
+ *
+ * With an order lookup (by ID), the stats derived from orders are projected too: revenue and price distribution of
+ * the orders completed by then, and pending duration distribution of the orders started by then. Events of orders
+ * which the lookup no longer finds only count towards state counts.
+ */
+public class OrderStateProjection implements OrderEventLog.Visitor {
+
+    private final Map<Timestamp, Map<OrderState, Integer>> orderStateCountsByTime;
+    private final int[] orderTransitions;
+    private final int[] itemTransitions;
+    private int itemsCreated;
+    private int itemsRejected;
+    // Optional, to project stats derived from orders.
+    private final LongFunction<Order> orderLookup;
+    private final Map<String, Long> revenueByItem;
+    private final Map<String, Long> revenueByService;
+    private long totalRevenue;
+    private final SortedMap<Integer, Integer> priceDistribution;
+    private final SortedMap<Integer, Integer> pendingDurationDistribution;
+
+    public OrderStateProjection(LongFunction<Order> orderLookup) {
+        this.orderStateCountsByTime = new TreeMap<>();
+        this.orderTransitions = new int[OrderState.values().length];
+        this.itemTransitions = new int[ItemState.values().length];
+        this.orderLookup = orderLookup;
+        this.revenueByItem = new HashMap<>();
+        this.revenueByService = new HashMap<>();
+        this.priceDistribution = new TreeMap<>();
+        this.pendingDurationDistribution = new TreeMap<>();
+    }
+
+    // State counts only.
+    public OrderStateProjection() {
+        this(null);
+    }
+
+    @Override
+    public void onOrderEvent(long timeMillis, long orderId, int numItems, OrderState state) {
+        Timestamp timestamp = new Timestamp(timeMillis);
+        Map<OrderState, Integer> stateCounts = orderStateCountsByTime.get(timestamp);
+        if (stateCounts == null) {
+            stateCounts = new HashMap<>();
+            orderStateCountsByTime.put(timestamp, stateCounts);
+        }
+        stateCounts.merge(state, 1, Integer::sum);
+        orderTransitions[state.ordinal()]++;
+        if (state == OrderState.CREATED) {
+            itemsCreated += numItems;
+        } else if (state == OrderState.REJECTED) {
+            itemsRejected += numItems;
+        }
+        Order order = orderLookup == null ? null : orderLookup.apply(orderId);
+        if (order == null) {
+            return;
+        }
+        if (state == OrderState.PROCESSING) {
+            int pendingMinutes = (int) ((timeMillis - order.getOrderedAt().getTime()) / (60 * 1000));
+            pendingDurationDistribution.merge(pendingMinutes, 1, Integer::sum);
+        } else if (state == OrderState.COMPLETE) {
+            totalRevenue += order.getTotalPriceCents();
+            revenueByService.merge(order.getService(), (long) order.getTotalPriceCents(), Long::sum);
+            for (OrderItem item : order.getOrderItems()) {
+                revenueByItem.merge(item.getName(), (long) item.getPriceCents(), Long::sum);
+            }
+            priceDistribution.merge(order.getTotalPriceCents(), 1, Integer::sum);
+        }
+    }
+
+    @Override
+    public void onItemEvent(long timeMillis, long orderId, int itemIndex, ItemState state) {
+        itemTransitions[state.ordinal()]++;
+    }
+
+    /** Get the number of order transitions into each state, by time. */
+    public Map<Timestamp, Map<OrderState, Integer>> getOrderStateCountsByTime() {
+        return orderStateCountsByTime;
+    }
+
+    /** Get the number of orders in each state. */
+    public Map<OrderState, Integer> getOrderCountsByState() {
+        Map<OrderState, Integer> counts = new EnumMap<>(OrderState.class);
+        counts.put(OrderState.CREATED, transitions(OrderState.CREATED)
+                - transitions(OrderState.PROCESSING) - transitions(OrderState.REJECTED));
+        counts.put(OrderState.PROCESSING, transitions(OrderState.PROCESSING) - transitions(OrderState.COMPLETE));
+        counts.put(OrderState.COMPLETE, transitions(OrderState.COMPLETE));
+        counts.put(OrderState.REJECTED, transitions(OrderState.REJECTED));
+        return counts;
+    }
+
+    /** Get the number of items in each state. */
+    public Map<ItemState, Integer> getItemCountsByState() {
+        Map<ItemState, Integer> counts = new EnumMap<>(ItemState.class);
+        counts.put(ItemState.PENDING, itemsCreated - itemsRejected - itemTransitions[ItemState.IN_PROCESS.ordinal()]);
+        counts.put(ItemState.IN_PROCESS,
+                itemTransitions[ItemState.IN_PROCESS.ordinal()] - itemTransitions[ItemState.COMPLETE.ordinal()]);
+        counts.put(ItemState.COMPLETE, itemTransitions[ItemState.COMPLETE.ordinal()]);
+        return counts;
+    }
+
+    /** Get revenue (cents) of the orders completed, by item. Needs an order lookup. */
+    public Map<String, Long> getRevenueByItem() {
+        checkDerived();
+        return revenueByItem;
+    }
+
+    /** Get revenue (cents) of the orders completed, by service. Needs an order lookup. */
+    public Map<String, Long> getRevenueByService() {
+        checkDerived();
+        return revenueByService;
+    }
+
+    /** Get total revenue (cents) of the orders completed. Needs an order lookup. */
+    public long getTotalRevenue() {
+        checkDerived();
+        return totalRevenue;
+    }
+
+    /** Get number of orders completed by price (cents), ascending. Needs an order lookup. */
+    public SortedMap<Integer, Integer> getPriceDistribution() {
+        checkDerived();
+        return priceDistribution;
+    }
+
+    /** Get number of orders started by pending time (minutes), ascending. Needs an order lookup. */
+    public SortedMap<Integer, Integer> getPendingDurationDistribution() {
+        checkDerived();
+        return pendingDurationDistribution;
+    }
+
+    private void checkDerived() {
+        Preconditions.checkState(orderLookup != null, "Stats derived from orders need an order lookup.");
+    }
+
+    private int transitions(OrderState state) {
+        return orderTransitions[state.ordinal()];
+    }
+}
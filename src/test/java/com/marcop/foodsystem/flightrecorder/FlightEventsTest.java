@@ -0,0 +1,132 @@
+package com.marcop.foodsystem.flightrecorder;
+
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+import com.marcop.foodsystem.model.OrderProcessingStrategy;
+import com.marcop.foodsystem.simulation.KitchenSimulator;
+import com.marcop.foodsystem.store.OrderInMemoryStore;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit test for FlightEvents. Events should be recorded for a simulation only when enabled.
+ */
+public class FlightEventsTest extends TestCase {
+
+    private static final long START = Timestamp.valueOf("2019-01-01 12:00:00").getTime();
+
+    @Override
+    protected void tearDown() {
+        FlightEvents.setEnabled(false);
+    }
+
+    /** Simulate two one item orders, a minute apart, in a one item kitchen, so the second waits for the first. */
+    private static List<Order> simulate() {
+        List<Order> orders = new ArrayList<>();
+        OrderInMemoryStore pendingOrders = new OrderInMemoryStore();
+        for (int i = 0; i < 2; i++) {
+            List<OrderItem> items = new ArrayList<>();
+            items.add(new OrderItem("steak", 1000));
+            Order order = new Order(new Timestamp(START + i * 60000L), "name", "Eat In", items);
+            order.setTotalCookTimeSeconds(300);
+            pendingOrders.addOrder(order);
+            orders.add(order);
+        }
+        new KitchenSimulator(pendingOrders, new OrderInMemoryStore(1), new OrderInMemoryStore(),
+                OrderProcessingStrategy.FIRST_COME_FIRST_SERVE).run();
+        return orders;
+    }
+
+    private static long pendingMillis(Order order) {
+        return order.getProcessingStartedAt().getTime() - order.getOrderedAt().getTime();
+    }
+
+    private static List<RecordedEvent> record(Runnable runnable) throws IOException {
+        Path file = Files.createTempFile("flight-events-test", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(OrderSubmittedEvent.class);
+            recording.enable(OrderCompletedEvent.class);
+            recording.enable(ClearFinishedOrdersEvent.class);
+            recording.enable(ProcessorPhaseEvent.class);
+            recording.start();
+            runnable.run();
+            recording.stop();
+            recording.dump(file);
+            List<RecordedEvent> events = new ArrayList<>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                if (event.getEventType().getName().startsWith("com.marcop.foodsystem.")) {
+                    events.add(event);
+                }
+            }
+            return events;
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static List<RecordedEvent> ofType(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> ofType = new ArrayList<>();
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals("com.marcop.foodsystem." + name)) {
+                ofType.add(event);
+            }
+        }
+        return ofType;
+    }
+
+    /**
+     * Test that submitted and completed orders, with their pending and cook durations, and clearFinishedOrders
+     * calls are recorded.
+     */
+    public void testEnabled() throws IOException {
+        FlightEvents.setEnabled(true);
+        List<Order> orders = new ArrayList<>();
+        List<RecordedEvent> events = record(() -> {
+            ProcessorPhaseEvent phase = FlightEvents.beginPhase("simulate", "kitchen");
+            orders.addAll(simulate());
+            FlightEvents.endPhase(phase);
+        });
+        assertTrue(pendingMillis(orders.get(1)) > 0);
+
+        List<RecordedEvent> submitted = ofType(events, "OrderSubmitted");
+        assertEquals(2, submitted.size());
+        assertEquals(0, submitted.get(0).getDuration("pendingMillis").toMillis());
+        assertEquals(pendingMillis(orders.get(1)), submitted.get(1).getDuration("pendingMillis").toMillis());
+        List<RecordedEvent> completed = ofType(events, "OrderCompleted");
+        assertEquals(2, completed.size());
+        assertEquals(orders.get(1).getId(), completed.get(1).getLong("orderId"));
+        assertEquals(pendingMillis(orders.get(1)), completed.get(1).getDuration("pendingMillis").toMillis());
+        assertEquals(300000, completed.get(1).getDuration("cookMillis").toMillis());
+        List<RecordedEvent> clears = ofType(events, "ClearFinishedOrders");
+        assertFalse(clears.isEmpty());
+        int cleared = 0;
+        for (RecordedEvent clear : clears) {
+            assertEquals(1, clear.getInt("scannedOrders"));
+            cleared += clear.getInt("clearedOrders");
+        }
+        assertEquals(2, cleared);
+        List<RecordedEvent> phases = ofType(events, "ProcessorPhase");
+        assertEquals(1, phases.size());
+        assertEquals("simulate", phases.get(0).getString("phase"));
+    }
+
+    /**
+     * Test that nothing is recorded while disabled, even with a recording running.
+     */
+    public void testDisabled() throws IOException {
+        List<RecordedEvent> events = record(() -> {
+            FlightEvents.endPhase(FlightEvents.beginPhase("simulate", "kitchen"));
+            simulate();
+        });
+        assertTrue(events.isEmpty());
+    }
+}
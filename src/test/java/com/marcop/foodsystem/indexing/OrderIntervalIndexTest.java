@@ -0,0 +1,143 @@
+package com.marcop.foodsystem.indexing;
+
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+import junit.framework.TestCase;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Unit test for OrderIntervalIndex. Queries should match scanning every order.
+ */
+public class OrderIntervalIndexTest extends TestCase {
+
+    private static final long START = Timestamp.valueOf("2019-01-01 12:00:00").getTime();
+
+    private static Order completedOrder(long orderedMillis, long startedMillis, long completedMillis, int itemCount) {
+        List<OrderItem> items = new ArrayList<>();
+        for (int i = 0; i < itemCount; i++) {
+            items.add(new OrderItem("item", 100));
+        }
+        Order order = new Order(new Timestamp(orderedMillis), "name", "service", items);
+        order.setProcessingStartedAt(new Timestamp(startedMillis));
+        order.setCompletedAt(new Timestamp(completedMillis));
+        return order;
+    }
+
+    private static long[] interval(OrderIntervalIndex.Phase phase, Order order) {
+        return phase == OrderIntervalIndex.Phase.PENDING
+                ? new long[] {order.getOrderedAt().getTime(), order.getProcessingStartedAt().getTime()}
+                : new long[] {order.getProcessingStartedAt().getTime(), order.getCompletedAt().getTime()};
+    }
+
+    /**
+     * Test point and window queries against a scan, for random orders, with many which were never pending.
+     */
+    public void testQueries() {
+        Random random = new Random(5);
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            long ordered = START + random.nextInt(240) * 60000L;
+            long started = ordered + (random.nextBoolean() ? 0 : random.nextInt(30) * 60000L);
+            orders.add(completedOrder(ordered, started, started + (1 + random.nextInt(20)) * 60000L,
+                    1 + random.nextInt(4)));
+        }
+        OrderIntervalIndex index = new OrderIntervalIndex(orders);
+
+        for (int q = 0; q < 200; q++) {
+            long from = START - 600000L + random.nextInt(300) * 60000L + random.nextInt(2) * 30000L;
+            long to = from + (1 + random.nextInt(60)) * 60000L;
+            for (OrderIntervalIndex.Phase phase : OrderIntervalIndex.Phase.values()) {
+                List<Long> expectedAt = new ArrayList<>();
+                List<Long> expectedDuring = new ArrayList<>();
+                long expectedItemsAt = 0;
+                for (Order order : orders) {
+                    long[] interval = interval(phase, order);
+                    if (interval[0] <= from && from < interval[1]) {
+                        expectedAt.add(order.getId());
+                        expectedItemsAt += order.getOrderItemsSize();
+                    }
+                    // Orders which were never pending have an empty interval, which overlaps no window.
+                    if (interval[0] < interval[1] && interval[0] < to && from < interval[1]) {
+                        expectedDuring.add(order.getId());
+                    }
+                }
+                assertEquals(expectedAt.size(), index.countAt(phase, new Timestamp(from)));
+                assertEquals(expectedItemsAt, index.countItemsAt(phase, new Timestamp(from)));
+                assertEquals(expectedDuring.size(), index.countDuring(phase, new Timestamp(from), new Timestamp(to)));
+                assertEquals(expectedAt, sorted(index.getOrderIdsAt(phase, new Timestamp(from))));
+                assertEquals(expectedDuring,
+                        sorted(index.getOrderIdsDuring(phase, new Timestamp(from), new Timestamp(to))));
+            }
+        }
+        assertTrue(index.size(OrderIntervalIndex.Phase.PENDING) < orders.size());
+        assertEquals(orders.size(), index.size(OrderIntervalIndex.Phase.PROCESSING));
+    }
+
+    /**
+     * Test that intervals are half open: an order is in process at its start, but not at its completion.
+     */
+    public void testCountAt_HalfOpen() {
+        Order order = completedOrder(START, START + 60000L, START + 120000L, 2);
+        OrderIntervalIndex index = new OrderIntervalIndex(Arrays.asList(order));
+        assertEquals(1, index.countAt(OrderIntervalIndex.Phase.PENDING, new Timestamp(START)));
+        assertEquals(0, index.countAt(OrderIntervalIndex.Phase.PENDING, new Timestamp(START + 60000L)));
+        assertEquals(1, index.countAt(OrderIntervalIndex.Phase.PROCESSING, new Timestamp(START + 60000L)));
+        assertEquals(0, index.countAt(OrderIntervalIndex.Phase.PROCESSING, new Timestamp(START + 120000L)));
+        assertEquals(0, index.countDuring(OrderIntervalIndex.Phase.PROCESSING, new Timestamp(START),
+                new Timestamp(START + 60000L)));
+    }
+
+    /**
+     * Test that a builder added to as orders complete gives the same answers as an index of all the orders, and
+     * that an index already built, or to be built lazily, is not changed by later adds.
+     */
+    public void testBuilder() {
+        Random random = new Random(7);
+        List<Order> orders = new ArrayList<>();
+        OrderIntervalIndex.Builder builder = OrderIntervalIndex.builder();
+        OrderIntervalIndex early = null;
+        Supplier<OrderIntervalIndex> lazy = null;
+        // More orders than the builder's initial capacity, so its columns grow.
+        for (int i = 0; i < 3000; i++) {
+            long ordered = START + random.nextInt(600) * 60000L;
+            long started = ordered + random.nextInt(20) * 60000L;
+            Order order = completedOrder(ordered, started, started + (1 + random.nextInt(20)) * 60000L, 1);
+            orders.add(order);
+            builder.add(order);
+            if (i == 99) {
+                early = builder.build();
+            }
+            if (i == 999) {
+                lazy = builder.buildLazily();
+            }
+        }
+        assertEquals(orders.size(), builder.size());
+        OrderIntervalIndex built = builder.build();
+        OrderIntervalIndex expected = new OrderIntervalIndex(orders);
+        for (long at = START; at < START + 660 * 60000L; at += 7 * 60000L) {
+            for (OrderIntervalIndex.Phase phase : OrderIntervalIndex.Phase.values()) {
+                assertEquals(expected.countAt(phase, new Timestamp(at)), built.countAt(phase, new Timestamp(at)));
+                assertEquals(sorted(expected.getOrderIdsAt(phase, new Timestamp(at))),
+                        sorted(built.getOrderIdsAt(phase, new Timestamp(at))));
+            }
+        }
+        assertEquals(100, early.size(OrderIntervalIndex.Phase.PROCESSING));
+        assertEquals(1000, lazy.get().size(OrderIntervalIndex.Phase.PROCESSING));
+        assertSame(lazy.get(), lazy.get());
+    }
+
+    private static List<Long> sorted(long[] ids) {
+        List<Long> list = new ArrayList<>();
+        for (long id : ids) {
+            list.add(id);
+        }
+        list.sort(null);
+        return list;
+    }
+}
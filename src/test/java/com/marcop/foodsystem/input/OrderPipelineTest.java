@@ -0,0 +1,109 @@
+package com.marcop.foodsystem.input;
+
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+import junit.framework.TestCase;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit test for OrderPipeline.
+ */
+public class OrderPipelineTest extends TestCase {
+
+    private static List<Order> orders(int count) {
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            List<OrderItem> items = new ArrayList<>();
+            items.add(new OrderItem("item", 100));
+            orders.add(new Order(new Timestamp(i * 1000L), "name", "service", items));
+        }
+        return orders;
+    }
+
+    /**
+     * Test that every order is processed, and the sink sees orders in source order, on the calling thread.
+     */
+    public void testRun_SinkInSourceOrder() {
+        List<Order> orders = orders(10000);
+        List<Order> sunk = new ArrayList<>();
+        Thread caller = Thread.currentThread();
+        new OrderPipeline(4, 64).run(
+                orders.iterator(),
+                order -> order.setTotalCookTimeSeconds(60),
+                order -> {
+                    assertSame(caller, Thread.currentThread());
+                    assertEquals(60, order.getTotalCookTimeSeconds());
+                    sunk.add(order);
+                });
+        assertEquals(orders, sunk);
+    }
+
+    /**
+     * Test that a failure in a worker is passed to the caller.
+     */
+    public void testRun_StageFailure() {
+        try {
+            new OrderPipeline(4, 64).run(
+                    orders(1000).iterator(),
+                    order -> {
+                        if (order.getOrderedAt().getTime() == 500 * 1000L) {
+                            throw new IllegalStateException("Bad order.");
+                        }
+                    },
+                    order -> { });
+            fail("Stage failure should be thrown.");
+        } catch (IllegalStateException e) {
+            assertEquals("Bad order.", e.getMessage());
+        }
+    }
+
+    /**
+     * Test that a failure in the sink, while the feeder is blocked on a full queue, is passed to the caller, and
+     * stops the feeder.
+     */
+    public void testRun_SinkFailureWithFullQueue() throws InterruptedException {
+        List<RuntimeException> thrown = new ArrayList<>();
+        Thread caller = new Thread(() -> {
+            try {
+                new OrderPipeline(2, 1).run(
+                        orders(1000).iterator(),
+                        order -> { },
+                        order -> {
+                            try {
+                                // Let the feeder fill the queue and block.
+                                Thread.sleep(200);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            throw new IllegalStateException("Bad sink.");
+                        });
+            } catch (RuntimeException e) {
+                thrown.add(e);
+            }
+        });
+        caller.start();
+        caller.join(10000);
+        assertFalse("Pipeline should return after a sink failure.", caller.isAlive());
+        assertEquals(1, thrown.size());
+        assertEquals("Bad sink.", thrown.get(0).getMessage());
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (feederAlive() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse("Feeder should stop after a sink failure.", feederAlive());
+    }
+
+    private static boolean feederAlive() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("order-pipeline-feeder")) {
+                assertTrue(thread.isDaemon());
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,210 @@
+package com.marcop.foodsystem.input;
+
+import com.marcop.foodsystem.model.Order;
+import junit.framework.TestCase;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+
+import org.xerial.snappy.SnappyFramedOutputStream;
+import org.xerial.snappy.SnappyOutputStream;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Unit test for OrderReader, against the local filesystem.
+ */
+public class OrderReaderTest extends TestCase {
+
+    private File inputDir;
+
+    @Override
+    protected void setUp() throws IOException {
+        inputDir = Files.createTempDirectory("orders").toFile();
+        writeShard("orders-00.json", "12:00:00", "12:30:00");
+        writeShard("orders-01.json", "12:10:00", "12:30:00", "12:40:00");
+        writeShard("orders-02.json", "11:50:00");
+        Files.write(new File(inputDir, "_SUCCESS").toPath(), new byte[0]);
+    }
+
+    @Override
+    protected void tearDown() {
+        for (File file : inputDir.listFiles()) {
+            file.delete();
+        }
+        inputDir.delete();
+    }
+
+    static String orderJson(String orderedAt, String name) {
+        return "{\"ordered_at\":\"2019-01-01T" + orderedAt + "\",\"name\":\"" + name + "\",\"service\":\"s1\","
+                + "\"items\":[{\"name\":\"Best Lasagna\",\"quantity\":1,\"price_per_unit\":1000}]}";
+    }
+
+    private void writeShard(String fileName, String... orderedAts) throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < orderedAts.length; i++) {
+            json.append(i > 0 ? "," : "").append(orderJson(orderedAts[i], fileName));
+        }
+        json.append("]");
+        Files.write(new File(inputDir, fileName).toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Test reading a directory of shards, merged by orderedAt.
+     */
+    public void testRead_Directory() throws IOException {
+        List<Order> orders = new OrderReader(new Configuration(), 2).read(new Path(inputDir.getPath()));
+        assertEquals(6, orders.size());
+        Set<Long> orderIds = new HashSet<>();
+        for (int i = 0; i < orders.size(); i++) {
+            orderIds.add(orders.get(i).getId());
+            if (i > 0) {
+                assertFalse(orders.get(i).getOrderedAt().before(orders.get(i - 1).getOrderedAt()));
+            }
+        }
+        assertEquals(6, orderIds.size());
+        // Orders with the same orderedAt are taken from the earlier shard first.
+        assertEquals("orders-00.json", orders.get(3).getName());
+        assertEquals("orders-01.json", orders.get(4).getName());
+    }
+
+    /**
+     * Test reading a glob of shards.
+     */
+    public void testRead_Glob() throws IOException {
+        List<Order> orders = new OrderReader(new Configuration(), 2)
+                .read(new Path(inputDir.getPath(), "orders-0[01].json"));
+        assertEquals(5, orders.size());
+        assertEquals("2019-01-01 12:00:00.0", orders.get(0).getOrderedAt().toString());
+    }
+
+    /**
+     * Test reading gzip and snappy compressed shards, detected by magic bytes rather than extension.
+     */
+    public void testRead_Compressed() throws IOException {
+        byte[] json = ("[" + orderJson("12:00:00", "gzip") + "]").getBytes(StandardCharsets.UTF_8);
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(new File(inputDir, "compressed-0")))) {
+            out.write(json);
+        }
+        json = ("[" + orderJson("11:00:00", "snappy") + "]").getBytes(StandardCharsets.UTF_8);
+        try (OutputStream out = new SnappyOutputStream(new FileOutputStream(new File(inputDir, "compressed-1")))) {
+            out.write(json);
+        }
+        json = ("[" + orderJson("10:00:00", "framed") + "]").getBytes(StandardCharsets.UTF_8);
+        try (OutputStream out =
+                     new SnappyFramedOutputStream(new FileOutputStream(new File(inputDir, "compressed-2")))) {
+            out.write(json);
+        }
+        List<Order> orders = new OrderReader(new Configuration(), 2).read(new Path(inputDir.getPath(), "compressed-*"));
+        assertEquals(3, orders.size());
+        assertEquals("framed", orders.get(0).getName());
+        assertEquals("snappy", orders.get(1).getName());
+        assertEquals("gzip", orders.get(2).getName());
+    }
+
+    /**
+     * Test that string paths of a single local file (read with the JDK alone) and of a directory
+     * (read through Hadoop) give the same orders as Hadoop paths, in the same ID order.
+     */
+    public void testRead_StringPath() throws IOException {
+        byte[] json = ("[" + orderJson("12:00:00", "gzip") + "]").getBytes(StandardCharsets.UTF_8);
+        File gzipFile = new File(inputDir, "orders.gz");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gzipFile))) {
+            out.write(json);
+        }
+        File jsonFile = new File(inputDir, "orders-01.json");
+        OrderReader reader = new OrderReader(2);
+        for (File file : new File[] {gzipFile, jsonFile}) {
+            List<Order> expected = new OrderReader(new Configuration(), 2).read(new Path(file.getPath()));
+            List<Order> actual = reader.read(file.getPath());
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                // Each read reserves its own IDs, so only the offsets within a read match.
+                assertEquals(expected.get(i).getId() - expected.get(0).getId(),
+                        actual.get(i).getId() - actual.get(0).getId());
+                assertEquals(expected.get(i).getOrderedAt(), actual.get(i).getOrderedAt());
+                assertEquals(expected.get(i).getName(), actual.get(i).getName());
+            }
+        }
+        assertEquals(7, reader.read(inputDir.getPath()).size());
+    }
+
+    /**
+     * Test that streaming a directory of sorted shards, or a single file, gives the same orders as reading them.
+     */
+    public void testStream_SameAsRead() throws IOException {
+        OrderReader reader = new OrderReader(2);
+        for (String inputPath : new String[] {inputDir.getPath(), new File(inputDir, "orders-01.json").getPath()}) {
+            List<Order> expected = reader.read(inputPath);
+            List<Order> actual = new ArrayList<>();
+            try (OrderReader.OrderStream stream = reader.stream(inputPath)) {
+                while (stream.hasNext()) {
+                    actual.add(stream.next());
+                }
+            }
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                // Each read reserves its own IDs, so only the offsets within a read match.
+                assertEquals(expected.get(i).getId() - expected.get(0).getId(),
+                        actual.get(i).getId() - actual.get(0).getId());
+                assertEquals(expected.get(i).getOrderedAt(), actual.get(i).getOrderedAt());
+                assertEquals(expected.get(i).getName(), actual.get(i).getName());
+            }
+        }
+    }
+
+    /**
+     * Test that reads, streams and orders created without an ID never share an ID.
+     */
+    public void testRead_UniqueIdsAcrossReads() throws IOException {
+        OrderReader reader = new OrderReader(2);
+        List<Order> orders = new ArrayList<>(reader.read(inputDir.getPath()));
+        orders.addAll(reader.read(new File(inputDir, "orders-01.json").getPath()));
+        try (OrderReader.OrderStream stream = reader.stream(inputDir.getPath())) {
+            while (stream.hasNext()) {
+                orders.add(stream.next());
+            }
+        }
+        orders.add(new Order(orders.get(0).getOrderedAt(), "name", "service", new ArrayList<>()));
+        Set<Long> orderIds = new HashSet<>();
+        for (Order order : orders) {
+            orderIds.add(order.getId());
+        }
+        assertEquals(orders.size(), orderIds.size());
+    }
+
+    /**
+     * Test that a shard which is not a JSON array fails with a clear error.
+     */
+    public void testStream_NotArray() throws IOException {
+        Files.write(new File(inputDir, "orders-03.json").toPath(),
+                orderJson("12:00:00", "object").getBytes(StandardCharsets.UTF_8));
+        try {
+            new OrderReader(2).stream(inputDir.getPath()).close();
+            fail("Expected a shard which is not an array to fail.");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Expected a JSON array of orders"));
+        }
+    }
+
+    /**
+     * Test that a missing input fails with a clear error.
+     */
+    public void testRead_Missing() {
+        try {
+            new OrderReader(new Configuration(), 2).read(new Path(inputDir.getPath(), "missing-*.json"));
+            fail("Expected missing input to fail.");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("No order input found"));
+        }
+    }
+}
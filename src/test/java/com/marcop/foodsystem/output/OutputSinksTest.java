@@ -0,0 +1,23 @@
+package com.marcop.foodsystem.output;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.nio.file.Paths;
+
+/**
+ * Unit test for OutputSinks.
+ */
+public class OutputSinksTest extends TestCase {
+
+    /**
+     * Test that local paths, and absolute and relative file: URIs, open local sinks at the same paths.
+     */
+    public void testOpen_Local() {
+        assertEquals(Paths.get("out", "stats.csv").toString(), OutputSinks.open("out").describe("stats.csv"));
+        assertEquals(Paths.get("out", "stats.csv").toString(), OutputSinks.open("file:out").describe("stats.csv"));
+        File absolute = new File("out").getAbsoluteFile();
+        assertEquals(new File(absolute, "stats.csv").getPath(),
+                OutputSinks.open(absolute.toURI().toString()).describe("stats.csv"));
+    }
+}
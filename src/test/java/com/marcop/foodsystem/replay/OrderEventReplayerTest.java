@@ -0,0 +1,66 @@
+package com.marcop.foodsystem.replay;
+
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+import com.marcop.foodsystem.model.OrderState;
+import com.marcop.foodsystem.store.OrderInMemoryStore;
+import com.marcop.foodsystem.store.OrderIndex;
+import com.marcop.foodsystem.store.OrderStore;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Unit test for OrderEventReplayer.
+ */
+public class OrderEventReplayerTest extends TestCase {
+
+    private static final long START = Timestamp.valueOf("2019-01-01 12:00:00").getTime();
+
+    /** Add a completed order, which completes out of order with respect to when it was ordered. */
+    private static void addCompletedOrder(OrderStore store, int minute, int cookMinutes) {
+        List<OrderItem> items = new ArrayList<>();
+        items.add(new OrderItem("item", 100));
+        Order order = new Order(new Timestamp(START + minute * 60000L), "name", "service", items);
+        order.setProcessingStartedAt(order.getOrderedAt());
+        order.setCompletedAt(new Timestamp(order.getOrderedAt().getTime() + cookMinutes * 60000L));
+        order.updateState(OrderState.COMPLETE);
+        store.addOrder(order);
+    }
+
+    /**
+     * Test that events are written in time order, and paced by the speedup.
+     */
+    public void testReplay_TimeOrderAndPacing() throws IOException {
+        OrderStore store = new OrderInMemoryStore(EnumSet.of(OrderIndex.EVENT_LOG));
+        addCompletedOrder(store, 0, 10);
+        addCompletedOrder(store, 1, 2);
+        addCompletedOrder(store, 5, 1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // 10 simulated minutes in 100 milliseconds.
+        OrderEventReplayer replayer = new OrderEventReplayer(6000);
+        long startNanos = System.nanoTime();
+        replayer.replay(store, out);
+        assertTrue(System.nanoTime() - startNanos >= 100_000_000L);
+
+        String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertEquals(9, lines.length);
+        assertEquals(9, replayer.getEventCount());
+        assertTrue(lines[0].startsWith("{\"time\":" + START + ","));
+        assertTrue(lines[0].endsWith("\"state\":\"CREATED\",\"items\":1}"));
+        assertTrue(lines[1].contains("\"state\":\"PROCESSING\""));
+        assertTrue(lines[8].startsWith("{\"time\":" + (START + 10 * 60000L) + ","));
+        long previousTime = 0;
+        for (String line : lines) {
+            long time = Long.parseLong(line.substring("{\"time\":".length(), line.indexOf(',')));
+            assertTrue(time >= previousTime);
+            previousTime = time;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.marcop.foodsystem.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+import com.marcop.foodsystem.model.OrderState;
+import com.marcop.foodsystem.store.OrderInMemoryStore;
+import com.marcop.foodsystem.store.OrderRejections;
+import com.marcop.foodsystem.store.OrderStore;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit test for StatsServer, against localhost.
+ */
+public class StatsServerTest extends TestCase {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private OrderStore completedOrders;
+    private StatsServer statsServer;
+
+    @Override
+    protected void setUp() throws IOException {
+        completedOrders = new OrderInMemoryStore();
+        // Added before the server starts, so counted from the store.
+        addCompletedOrder("service1", 1000);
+        statsServer = new StatsServer(0, completedOrders, new OrderRejections(), 0);
+        statsServer.start();
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        statsServer.stop();
+    }
+
+    private void addCompletedOrder(String service, int priceCents) {
+        List<OrderItem> items = new ArrayList<>();
+        items.add(new OrderItem("item", priceCents));
+        Order order = new Order(Timestamp.valueOf("2019-01-01 12:00:00"), "name", service, items);
+        order.setProcessingStartedAt(Timestamp.valueOf("2019-01-01 12:05:00"));
+        order.setCompletedAt(Timestamp.valueOf("2019-01-01 12:10:00"));
+        order.updateState(OrderState.COMPLETE);
+        completedOrders.addOrder(order);
+        if (statsServer != null) {
+            statsServer.recordCompleted(order);
+        }
+    }
+
+    private HttpURLConnection get(String path, String etag) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection)
+                new URL("http://localhost:" + statsServer.getPort() + path).openConnection();
+        if (etag != null) {
+            connection.setRequestProperty("If-None-Match", etag);
+        }
+        return connection;
+    }
+
+    private static Map<?, ?> readJson(HttpURLConnection connection) throws IOException {
+        try (InputStream in = connection.getInputStream()) {
+            return OBJECT_MAPPER.readValue(in, Map.class);
+        }
+    }
+
+    /**
+     * Test that stats are served, and only change once the snapshot is refreshed.
+     */
+    public void testGet_RevenueByService() throws IOException {
+        HttpURLConnection connection = get("/stats/revenue/service", null);
+        assertEquals(200, connection.getResponseCode());
+        assertEquals(1000, readJson(connection).get("service1"));
+
+        addCompletedOrder("service2", 500);
+        assertNull(readJson(get("/stats/revenue/service", null)).get("service2"));
+        statsServer.refresh();
+        assertEquals(500, readJson(get("/stats/revenue/service", null)).get("service2"));
+        assertEquals(2, readJson(get("/stats", null)).get("completedOrders"));
+
+        assertEquals(404, get("/stats/unknown", null).getResponseCode());
+    }
+
+    /**
+     * Test that a poll with the current ETag is not modified, until the store version changes.
+     */
+    public void testGet_NotModified() throws IOException {
+        String etag = get("/stats/timeline", null).getHeaderField("ETag");
+        assertEquals(304, get("/stats/timeline", etag).getResponseCode());
+        statsServer.refresh();
+        assertEquals(304, get("/stats/timeline", etag).getResponseCode());
+
+        addCompletedOrder("service1", 500);
+        statsServer.refresh();
+        assertEquals(200, get("/stats/timeline", etag).getResponseCode());
+    }
+
+    /**
+     * Test that the timeline counts transitions into each state as of the snapshot, not as of the request.
+     */
+    public void testGet_Timeline() throws IOException {
+        String completedAt = String.valueOf(Timestamp.valueOf("2019-01-01 12:10:00").getTime());
+        addCompletedOrder("service1", 500);
+        Map<?, ?> timeline = readJson(get("/stats/timeline", null));
+        assertEquals(3, timeline.size());
+        assertEquals(1, ((Map<?, ?>) timeline.get(completedAt)).get("COMPLETE"));
+
+        statsServer.refresh();
+        timeline = readJson(get("/stats/timeline", null));
+        assertEquals(2, ((Map<?, ?>) timeline.get(completedAt)).get("COMPLETE"));
+    }
+
+    /**
+     * Test that the orders pending and in process at a time are served from the interval index.
+     */
+    public void testGet_State() throws IOException {
+        // The order was pending from 12:00 until 12:05, then in process until 12:10.
+        long at = Timestamp.valueOf("2019-01-01 12:07:00").getTime();
+        Map<?, ?> state = readJson(get("/stats/state?at=" + at + "&ids=true", null));
+        assertEquals(0, state.get("pending"));
+        assertEquals(1, state.get("processing"));
+        assertEquals(1, state.get("processingItems"));
+        assertEquals(1, ((List<?>) state.get("processingOrderIds")).size());
+
+        long from = Timestamp.valueOf("2019-01-01 12:04:00").getTime();
+        state = readJson(get("/stats/state?from=" + from + "&to=" + at, null));
+        assertEquals(1, state.get("pending"));
+        assertEquals(1, state.get("processing"));
+
+        assertEquals(400, get("/stats/state", null).getResponseCode());
+    }
+}
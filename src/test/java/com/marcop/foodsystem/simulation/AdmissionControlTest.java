@@ -0,0 +1,106 @@
+package com.marcop.foodsystem.simulation;
+
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+import com.marcop.foodsystem.model.OrderProcessingStrategy;
+import com.marcop.foodsystem.model.OrderState;
+import com.marcop.foodsystem.model.RejectionReason;
+import com.marcop.foodsystem.model.SheddingPolicy;
+import com.marcop.foodsystem.store.OrderInMemoryStore;
+import com.marcop.foodsystem.store.OrderRejections;
+import com.marcop.foodsystem.store.OrderStore;
+import junit.framework.TestCase;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit test for AdmissionControl, on its own and in a KitchenSimulator.
+ */
+public class AdmissionControlTest extends TestCase {
+
+    private static final long START = Timestamp.valueOf("2019-01-01 12:00:00").getTime();
+
+    private static Order order(int minute, int itemCount, int cookMinutes) {
+        List<OrderItem> items = new ArrayList<>();
+        for (int i = 0; i < itemCount; i++) {
+            OrderItem item = new OrderItem("item", 100);
+            item.setCookTimeSeconds(cookMinutes * 60);
+            items.add(item);
+        }
+        Order order = new Order(new Timestamp(START + minute * 60000L), "name", "service", items);
+        order.setTotalCookTimeSeconds(cookMinutes * 60);
+        return order;
+    }
+
+    /**
+     * Test that each policy sheds its order once the queue is over its maximum depth.
+     */
+    public void testOffer_MaxPendingOrders() {
+        for (SheddingPolicy policy : SheddingPolicy.values()) {
+            OrderRejections rejections = new OrderRejections();
+            AdmissionControl admissionControl = new AdmissionControl(2, 0, policy, rejections);
+            Order first = order(0, 1, 10);
+            Order large = order(1, 3, 10);
+            Order last = order(2, 1, 10);
+            admissionControl.offer(first, () -> 0, 4);
+            admissionControl.offer(large, () -> 0, 4);
+            admissionControl.offer(last, () -> 0, 4);
+
+            Order expectedShed = policy == SheddingPolicy.REJECT_NEWEST ? last
+                    : policy == SheddingPolicy.REJECT_OLDEST ? first : large;
+            assertEquals(OrderState.REJECTED, expectedShed.getState());
+            assertEquals(1, admissionControl.getShedCount());
+            assertEquals(3, admissionControl.getArrivedCount());
+            assertEquals(1, (long) rejections.getCountsByReason().get(policy.getRejectionReason()));
+            assertEquals(2, admissionControl.size());
+            for (Order order = admissionControl.poll(); order != null; order = admissionControl.poll()) {
+                assertNotSame(expectedShed, order);
+            }
+        }
+    }
+
+    /**
+     * Test that orders are shed while the arriving order's expected wait is over the limit.
+     */
+    public void testOffer_MaxExpectedWait() {
+        AdmissionControl admissionControl =
+                new AdmissionControl(0, 10 * 60000L, SheddingPolicy.REJECT_OLDEST, new OrderRejections());
+        Order first = order(0, 1, 10);
+        Order second = order(1, 1, 10);
+        // 10 item minutes processing, over 2 slots.
+        admissionControl.offer(first, () -> 10 * 60000L, 2);
+        admissionControl.offer(second, () -> 10 * 60000L, 2);
+        assertEquals(2, admissionControl.size());
+        // With 20 item minutes processing, and 20 queued ahead, the wait is 20 minutes. Shedding the oldest order
+        // brings it to 15 minutes, and shedding the next to 10.
+        Order third = order(2, 1, 10);
+        admissionControl.offer(third, () -> 20 * 60000L, 2);
+        assertEquals(2, admissionControl.getShedCount());
+        assertSame(third, admissionControl.poll());
+        assertTrue(admissionControl.isEmpty());
+    }
+
+    /**
+     * Test that a kitchen with one slot sheds the newest order once one is waiting behind the head of the line.
+     */
+    public void testRun_KitchenSimulator() {
+        Order[] orders = {order(0, 1, 10), order(1, 1, 10), order(2, 1, 10), order(3, 1, 10)};
+        OrderStore pendingOrders = new OrderInMemoryStore();
+        for (Order order : orders) {
+            pendingOrders.addOrder(order);
+        }
+        OrderStore completedOrders = new OrderInMemoryStore();
+        OrderRejections rejections = new OrderRejections();
+        KitchenSimulator simulator = new KitchenSimulator(pendingOrders, new OrderInMemoryStore(1), completedOrders,
+                OrderProcessingStrategy.FIRST_COME_FIRST_SERVE);
+        simulator.setAdmissionControl(new AdmissionControl(1, 0, SheddingPolicy.REJECT_NEWEST, rejections));
+        simulator.run();
+
+        // The second order waits at the head of the line, the third in the queue, and the fourth is shed.
+        assertEquals(3, completedOrders.getCurrentNumOrders());
+        assertEquals(OrderState.REJECTED, orders[3].getState());
+        assertEquals(1, (long) rejections.getCountsByReason().get(RejectionReason.SHED_NEWEST));
+    }
+}
@@ -0,0 +1,72 @@
+package com.marcop.foodsystem.simulation;
+
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+import com.marcop.foodsystem.model.OrderProcessingStrategy;
+import junit.framework.TestCase;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Unit test for CapacitySolver. Results should match probing every capacity in turn.
+ */
+public class CapacitySolverTest extends TestCase {
+
+    private static final long LIMIT_MILLIS = 10 * 60000L;
+
+    private static List<Order> orders() {
+        Random random = new Random(7);
+        List<Order> orders = new ArrayList<>();
+        long time = Timestamp.valueOf("2019-01-01 12:00:00").getTime();
+        for (int i = 0; i < 300; i++) {
+            time += random.nextInt(3) * 60000L;
+            List<OrderItem> items = new ArrayList<>();
+            int maxCookTimeSeconds = 0;
+            for (int j = 0, n = 1 + random.nextInt(3); j < n; j++) {
+                OrderItem item = new OrderItem("item", 100);
+                item.setCookTimeSeconds(300 + random.nextInt(900));
+                maxCookTimeSeconds = Math.max(maxCookTimeSeconds, item.getCookTimeSeconds());
+                items.add(item);
+            }
+            Order order = new Order(new Timestamp(time), "name", "service", items);
+            order.setTotalCookTimeSeconds(maxCookTimeSeconds);
+            orders.add(order);
+        }
+        return orders;
+    }
+
+    /**
+     * Test that the solved capacity meets the limit where one less breaks it, and that probes stopped early agree
+     * with probes run to the end. Pending time is not strictly monotonic in capacity (e.g. 29 meets the limit
+     * here, 30 does not), so the solved capacity may be above the smallest which meets it.
+     */
+    public void testSolve() {
+        List<Order> orders = orders();
+        CapacitySolver solver = new CapacitySolver(orders, 3, OrderProcessingStrategy.FIRST_COME_FIRST_SERVE);
+        int expectedCapacity = 0;
+        for (int capacity = 3; expectedCapacity == 0; capacity++) {
+            CapacitySolver.Probe probe = solver.probe(capacity, LIMIT_MILLIS);
+            // No order waits forever, so this probe always runs to the end.
+            CapacitySolver.Probe fullProbe = solver.probe(capacity, Long.MAX_VALUE);
+            assertFalse(fullProbe.isStoppedEarly());
+            assertEquals(fullProbe.getPercentilePendingMillis() < LIMIT_MILLIS, probe.isMet());
+            if (probe.isMet()) {
+                expectedCapacity = capacity;
+            }
+        }
+        assertTrue(expectedCapacity > 3);
+
+        CapacitySolver.Result result = solver.solve(LIMIT_MILLIS);
+        assertTrue(result.getCapacity() >= expectedCapacity);
+        assertTrue(solver.probe(result.getCapacity(), LIMIT_MILLIS).isMet());
+        assertFalse(solver.probe(result.getCapacity() - 1, LIMIT_MILLIS).isMet());
+        for (CapacitySolver.Probe probe : result.getProbes()) {
+            assertEquals(probe.getCapacity() >= result.getCapacity(), probe.isMet());
+        }
+        // Orders are copied for each probe.
+        assertNull(orders.get(0).getProcessingStartedAt());
+    }
+}
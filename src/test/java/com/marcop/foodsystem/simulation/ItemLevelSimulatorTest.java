@@ -0,0 +1,107 @@
+package com.marcop.foodsystem.simulation;
+
+import com.marcop.foodsystem.model.ItemState;
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+import com.marcop.foodsystem.model.OrderProcessingStrategy;
+import com.marcop.foodsystem.model.OrderState;
+import com.marcop.foodsystem.store.OrderInMemoryStore;
+import com.marcop.foodsystem.store.OrderStore;
+import junit.framework.TestCase;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit test for ItemLevelSimulator.
+ */
+public class ItemLevelSimulatorTest extends TestCase {
+
+    private static final long START = Timestamp.valueOf("2019-01-01 12:00:00").getTime();
+
+    private static Order order(int minute, int... itemCookMinutes) {
+        List<OrderItem> items = new ArrayList<>();
+        int maxCookMinutes = 0;
+        for (int cookMinutes : itemCookMinutes) {
+            OrderItem item = new OrderItem("item", 100);
+            item.setCookTimeSeconds(cookMinutes * 60);
+            items.add(item);
+            maxCookMinutes = Math.max(maxCookMinutes, cookMinutes);
+        }
+        Order order = new Order(new Timestamp(START + minute * 60000L), "name", "service", items);
+        order.setTotalCookTimeSeconds(maxCookMinutes * 60);
+        return order;
+    }
+
+    private static OrderStore completedRun(int maxConcurrentItems, boolean wholeOrder, Order... orders) {
+        OrderStore pendingOrders = new OrderInMemoryStore();
+        for (Order order : orders) {
+            order.resetProgress();
+            pendingOrders.addOrder(order);
+        }
+        OrderStore completedOrders = new OrderInMemoryStore();
+        ItemLevelSimulator simulator = new ItemLevelSimulator(pendingOrders, completedOrders, maxConcurrentItems,
+                OrderProcessingStrategy.FIRST_COME_FIRST_SERVE);
+        simulator.setWholeOrder(wholeOrder);
+        simulator.run();
+        return completedOrders;
+    }
+
+    private static long minutes(Timestamp timestamp) {
+        return (timestamp.getTime() - START) / 60000;
+    }
+
+    /**
+     * Test that a short item is staggered to finish with its order's longest item, which leaves a slot free for
+     * the next order. With whole order admission, the next order waits for the first to complete.
+     */
+    public void testRun_StaggeredItems() {
+        Order first = order(0, 10, 4);
+        Order second = order(1, 3);
+
+        assertEquals(2, completedRun(2, false, first, second).getCurrentNumOrders());
+        assertEquals(0, minutes(first.getProcessingStartedAt()));
+        assertEquals(10, minutes(first.getCompletedAt()));
+        assertEquals(1, minutes(second.getProcessingStartedAt()));
+        assertEquals(4, minutes(second.getCompletedAt()));
+        // Items keep their own times: the short item starts late, to finish with the long one.
+        assertEquals(0, minutes(first.getOrderItems().get(0).getProcessingStartedAt()));
+        assertEquals(6, minutes(first.getOrderItems().get(1).getProcessingStartedAt()));
+        assertEquals(10, minutes(first.getOrderItems().get(1).getCompletedAt()));
+        SchedulingStats itemLevel = SchedulingStats.of(Arrays.asList(first, second), 2);
+
+        completedRun(2, true, first, second);
+        assertEquals(10, minutes(second.getProcessingStartedAt()));
+        assertEquals(13, minutes(second.getCompletedAt()));
+        SchedulingStats wholeOrder = SchedulingStats.of(Arrays.asList(first, second), 2);
+
+        assertEquals(0.0, itemLevel.getMeanPendingMillis(), 1e-9);
+        assertEquals(4.5 * 60000, wholeOrder.getMeanPendingMillis(), 1e-9);
+        // 17 cooking minutes, over 2 slots for 10 and 13 minutes.
+        assertEquals(17.0 / 20, itemLevel.getUtilization(), 1e-9);
+        assertEquals(17.0 / 26, wholeOrder.getUtilization(), 1e-9);
+    }
+
+    /**
+     * Test that an order with more items than the kitchen has slots is made, a few items at a time.
+     */
+    public void testRun_OrderLargerThanKitchen() {
+        Order order = order(0, 5, 5, 5);
+        assertEquals(1, completedRun(2, false, order).getCurrentNumOrders());
+        assertEquals(OrderState.COMPLETE, order.getState());
+        assertEquals(0, minutes(order.getProcessingStartedAt()));
+        assertEquals(10, minutes(order.getCompletedAt()));
+        for (OrderItem item : order.getOrderItems()) {
+            assertEquals(ItemState.COMPLETE, item.getState());
+        }
+
+        try {
+            completedRun(2, true, order);
+            fail("Whole order admission should not accept an order larger than the kitchen.");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+}
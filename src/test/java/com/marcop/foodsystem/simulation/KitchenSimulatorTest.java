@@ -0,0 +1,57 @@
+package com.marcop.foodsystem.simulation;
+
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+import com.marcop.foodsystem.model.OrderProcessingStrategy;
+import com.marcop.foodsystem.store.OrderInMemoryStore;
+import com.marcop.foodsystem.store.OrderStore;
+import junit.framework.TestCase;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit test for KitchenSimulator.
+ */
+public class KitchenSimulatorTest extends TestCase {
+
+    private static final int MAX_CONCURRENT_ITEMS = 8;
+
+    /**
+     * Test that orders held up by a full kitchen do not start before earlier orders, so utilization stays in bounds.
+     */
+    public void testRun_UtilizationAtMostOne() {
+        QueueingMetrics metrics = new QueueingMetrics(MAX_CONCURRENT_ITEMS);
+        OrderStore pendingOrders =
+                ParallelKitchenSimulatorTest.pendingStore(ParallelKitchenSimulatorTest.generateOrders(42));
+        KitchenSimulator simulator = new KitchenSimulator(pendingOrders, new OrderInMemoryStore(MAX_CONCURRENT_ITEMS),
+                new OrderInMemoryStore(), OrderProcessingStrategy.FIRST_COME_FIRST_SERVE);
+        simulator.setQueueingMetrics(metrics);
+        simulator.run();
+
+        assertTrue(metrics.getMeanPendingMillis() > 0);
+        assertTrue(metrics.getMeanUtilization() <= 1);
+        for (double utilization : metrics.getUtilizationByBucket()) {
+            assertTrue(utilization <= 1 + 1e-9);
+        }
+    }
+
+    /**
+     * Test that the last order is not lost, when it cannot be submitted straight away.
+     */
+    public void testRun_LastOrderWaitsForCapacity() {
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            List<OrderItem> items = new ArrayList<>();
+            items.add(new OrderItem("item", 100));
+            Order order = new Order(Timestamp.valueOf("2019-01-01 12:00:00"), "name", "service", items);
+            order.setTotalCookTimeSeconds(300);
+            orders.add(order);
+        }
+        OrderStore completed = new OrderInMemoryStore();
+        new KitchenSimulator(ParallelKitchenSimulatorTest.pendingStore(orders), new OrderInMemoryStore(1), completed,
+                OrderProcessingStrategy.FIRST_COME_FIRST_SERVE).run();
+        assertEquals(2, completed.getCurrentNumOrders());
+    }
+}
@@ -0,0 +1,130 @@
+package com.marcop.foodsystem.simulation;
+
+import com.marcop.foodsystem.builders.KitchenBuilder;
+import com.marcop.foodsystem.indexing.KitchenMenuItemIndexes;
+import com.marcop.foodsystem.model.CookTimeDistribution;
+import com.marcop.foodsystem.model.Menu;
+import com.marcop.foodsystem.model.MenuItem;
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+import com.marcop.foodsystem.model.OrderProcessingStrategy;
+import com.marcop.foodsystem.store.OrderInMemoryStore;
+import com.marcop.foodsystem.store.OrderStore;
+import junit.framework.TestCase;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * Unit test for MonteCarloSimulator.
+ */
+public class MonteCarloSimulatorTest extends TestCase {
+
+    private static final int MAX_CONCURRENT_ITEMS = 6;
+
+    private static KitchenMenuItemIndexes indexes(CookTimeDistribution steak, CookTimeDistribution salad) {
+        Menu menu = new Menu("menu");
+        menu.addMenuItem(new MenuItem("steak", 600, "grill", steak));
+        menu.addMenuItem(new MenuItem("salad", 120, null, salad));
+        KitchenBuilder kitchenBuilder = new KitchenBuilder();
+        kitchenBuilder.setName("kitchen");
+        kitchenBuilder.addMenu(menu);
+        return new KitchenMenuItemIndexes(kitchenBuilder.build());
+    }
+
+    private static List<Order> orders(KitchenMenuItemIndexes indexes) {
+        Random random = new Random(11);
+        List<Order> orders = new ArrayList<>();
+        long time = Timestamp.valueOf("2019-01-01 12:00:00").getTime();
+        for (int i = 0; i < 200; i++) {
+            time += (1 + random.nextInt(3)) * 60000L;
+            List<OrderItem> items = new ArrayList<>();
+            int maxCookTimeSeconds = 0;
+            for (int j = 0, n = 1 + random.nextInt(3); j < n; j++) {
+                OrderItem item = new OrderItem(random.nextBoolean() ? "steak" : "salad", 100);
+                item.setCookTimeSeconds(indexes.getCookTime(item.getName()));
+                maxCookTimeSeconds = Math.max(maxCookTimeSeconds, item.getCookTimeSeconds());
+                items.add(item);
+            }
+            Order order = new Order(new Timestamp(time), "name", "service", items);
+            order.setTotalCookTimeSeconds(maxCookTimeSeconds);
+            orders.add(order);
+        }
+        return orders;
+    }
+
+    /**
+     * Test that with fixed cook times every replica matches a whole order simulation, with no spread.
+     */
+    public void testRun_FixedCookTimes() {
+        KitchenMenuItemIndexes indexes = indexes(null, null);
+        List<Order> orders = orders(indexes);
+        MonteCarloSimulator.Result result =
+                new MonteCarloSimulator(orders, indexes, MAX_CONCURRENT_ITEMS, 2).run(5, 3);
+
+        OrderStore pendingOrders = new OrderInMemoryStore();
+        for (Order order : orders) {
+            pendingOrders.addOrder(order);
+        }
+        ItemLevelSimulator simulator = new ItemLevelSimulator(pendingOrders, new OrderInMemoryStore(),
+                MAX_CONCURRENT_ITEMS, OrderProcessingStrategy.FIRST_COME_FIRST_SERVE);
+        simulator.setWholeOrder(true);
+        simulator.run();
+        SchedulingStats stats = SchedulingStats.of(orders, MAX_CONCURRENT_ITEMS);
+
+        assertEquals(5, result.getReplicas());
+        assertTrue(stats.getMeanPendingMillis() > 0);
+        for (int i = 0; i < result.getReplicas(); i++) {
+            assertEquals(stats.getMeanPendingMillis(), result.getMeanPendingMillis()[i], 1e-6);
+            assertEquals(stats.getMeanLeadMillis(), result.getMeanCompletionMillis()[i], 1e-6);
+        }
+        MonteCarloSimulator.Estimate pending = result.getPendingEstimate();
+        assertEquals(stats.getMeanPendingMillis(), pending.getMean(), 1e-6);
+        assertEquals(pending.getLow(), pending.getHigh(), 1e-6);
+    }
+
+    /**
+     * Test that replicas with varying cook times are reproducible from the seed, whatever the number of threads.
+     */
+    public void testRun_SampledCookTimes() {
+        KitchenMenuItemIndexes indexes =
+                indexes(CookTimeDistribution.logNormal(600, 0.3), CookTimeDistribution.uniform(60, 180));
+        List<Order> orders = orders(indexes);
+        MonteCarloSimulator.Result single = new MonteCarloSimulator(orders, indexes, MAX_CONCURRENT_ITEMS, 1)
+                .run(50, 7);
+        MonteCarloSimulator.Result parallel = new MonteCarloSimulator(orders, indexes, MAX_CONCURRENT_ITEMS, 4)
+                .run(50, 7);
+        assertTrue(Arrays.equals(single.getMeanPendingMillis(), parallel.getMeanPendingMillis()));
+        assertTrue(Arrays.equals(single.getCompletionsPerHour(), parallel.getCompletionsPerHour()));
+        assertFalse(Arrays.equals(single.getMeanPendingMillis(),
+                new MonteCarloSimulator(orders, indexes, MAX_CONCURRENT_ITEMS, 1).run(50, 8).getMeanPendingMillis()));
+
+        MonteCarloSimulator.Estimate completion = single.getCompletionEstimate();
+        assertTrue(completion.getLow() < completion.getMean());
+        assertTrue(completion.getMean() < completion.getHigh());
+        // Every order takes at least its sampled cook time.
+        assertTrue(completion.getLow() > single.getPendingEstimate().getHigh());
+    }
+
+    /**
+     * Test that sampled cook times follow their distribution.
+     */
+    public void testCookTimeDistribution_Sample() {
+        SplittableRandom random = new SplittableRandom(1);
+        for (CookTimeDistribution distribution : Arrays.asList(CookTimeDistribution.uniform(100, 200),
+                CookTimeDistribution.normal(300, 30), CookTimeDistribution.logNormal(300, 0.2))) {
+            double sum = 0;
+            for (int i = 0; i < 100000; i++) {
+                int cookTimeSeconds = distribution.sample(random);
+                assertTrue(cookTimeSeconds > 0);
+                sum += cookTimeSeconds;
+            }
+            assertEquals(distribution.getMeanSeconds(), sum / 100000, distribution.getMeanSeconds() * 0.01);
+        }
+        assertEquals(120, CookTimeDistribution.fixed(120).sample(random));
+    }
+}
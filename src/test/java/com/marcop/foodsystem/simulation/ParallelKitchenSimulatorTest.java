@@ -0,0 +1,86 @@
+package com.marcop.foodsystem.simulation;
+
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+import com.marcop.foodsystem.model.OrderProcessingStrategy;
+import com.marcop.foodsystem.model.OrderState;
+import com.marcop.foodsystem.store.OrderInMemoryStore;
+import com.marcop.foodsystem.store.OrderStore;
+import junit.framework.TestCase;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Unit test for ParallelKitchenSimulator.
+ */
+public class ParallelKitchenSimulatorTest extends TestCase {
+
+    private static final int MAX_CONCURRENT_ITEMS = 8;
+
+    /** Generate a few days of orders. Busy evenings, and short idle gaps, but closed overnight. */
+    static List<Order> generateOrders(long seed) {
+        Random random = new Random(seed);
+        List<Order> orders = new ArrayList<>();
+        for (int day = 0; day < 4; day++) {
+            long time = Timestamp.valueOf("2019-01-01 08:00:00").getTime() + day * 24 * 3600 * 1000L;
+            long closingTime = time + 14 * 3600 * 1000L;
+            while (time < closingTime) {
+                // Arrivals every ~90 seconds, and the occasional quiet hour.
+                time += random.nextInt(10) == 0 ? random.nextInt(3600 * 1000) : random.nextInt(180 * 1000);
+                List<OrderItem> items = new ArrayList<>();
+                int maxCookTime = 0;
+                for (int i = 0, n = 1 + random.nextInt(4); i < n; i++) {
+                    OrderItem item = new OrderItem("item" + random.nextInt(20), 100 + random.nextInt(2000));
+                    item.setCookTimeSeconds(60 + random.nextInt(900));
+                    maxCookTime = Math.max(maxCookTime, item.getCookTimeSeconds());
+                    items.add(item);
+                }
+                Order order = new Order(
+                        new Timestamp(time), "name" + random.nextInt(5), "service" + random.nextInt(3), items);
+                order.setTotalCookTimeSeconds(maxCookTime);
+                orders.add(order);
+            }
+        }
+        return orders;
+    }
+
+    static OrderStore pendingStore(List<Order> orders) {
+        OrderStore pendingOrders = new OrderInMemoryStore();
+        for (Order order : orders) {
+            pendingOrders.addOrder(order);
+        }
+        return pendingOrders;
+    }
+
+    /**
+     * Test that a parallel simulation gives exactly the same result as a serial simulation.
+     */
+    public void testRun_SameAsSerial() {
+        List<Order> serialOrders = generateOrders(42);
+        List<Order> parallelOrders = generateOrders(42);
+
+        OrderStore serialCompleted = new OrderInMemoryStore();
+        new KitchenSimulator(pendingStore(serialOrders), new OrderInMemoryStore(MAX_CONCURRENT_ITEMS),
+                serialCompleted, OrderProcessingStrategy.FIRST_COME_FIRST_SERVE).run();
+
+        OrderStore parallelCompleted = new OrderInMemoryStore();
+        new ParallelKitchenSimulator(4, 30, OrderProcessingStrategy.FIRST_COME_FIRST_SERVE,
+                () -> new OrderInMemoryStore(MAX_CONCURRENT_ITEMS))
+                .run(pendingStore(parallelOrders), parallelCompleted);
+
+        assertEquals(serialOrders.size(), serialCompleted.getCurrentNumOrders());
+        assertEquals(serialOrders.size(), parallelCompleted.getCurrentNumOrders());
+        for (int i = 0; i < serialOrders.size(); i++) {
+            Order serialOrder = serialOrders.get(i);
+            Order parallelOrder = parallelOrders.get(i);
+            assertEquals(OrderState.COMPLETE, parallelOrder.getState());
+            assertEquals(serialOrder.getProcessingStartedAt(), parallelOrder.getProcessingStartedAt());
+            assertEquals(serialOrder.getCompletedAt(), parallelOrder.getCompletedAt());
+        }
+        assertEquals(serialCompleted.getOrderStateCountsByTime(), parallelCompleted.getOrderStateCountsByTime());
+        assertEquals(serialCompleted.getRevenueByService(), parallelCompleted.getRevenueByService());
+    }
+}
@@ -0,0 +1,69 @@
+package com.marcop.foodsystem.simulation;
+
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+import junit.framework.TestCase;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit test for QueueingMetrics.
+ */
+public class QueueingMetricsTest extends TestCase {
+
+    private static final long START = Timestamp.valueOf("2019-01-01 12:00:00").getTime();
+
+    private static Order completedOrder(int orderedMinute, int startedMinute, int completedMinute, int itemCount) {
+        List<OrderItem> items = new ArrayList<>();
+        for (int i = 0; i < itemCount; i++) {
+            items.add(new OrderItem("item", 100));
+        }
+        Order order = new Order(new Timestamp(START + orderedMinute * 60000L), "name", "service", items);
+        order.setProcessingStartedAt(new Timestamp(START + startedMinute * 60000L));
+        order.setCompletedAt(new Timestamp(START + completedMinute * 60000L));
+        return order;
+    }
+
+    /**
+     * Test time-weighted means and series by bucket, with orders recorded out of time order.
+     */
+    public void testRecordCompleted() {
+        QueueingMetrics metrics = new QueueingMetrics(4, 10);
+        // Pending 10 minutes, in process 10 minutes with 2 items.
+        metrics.recordCompleted(completedOrder(20, 30, 40, 2));
+        // Recorded later, but ordered first, so the series grow at the front.
+        metrics.recordCompleted(completedOrder(5, 5, 25, 4));
+
+        assertEquals(35 * 60000L, metrics.getSpanMillis());
+        assertEquals(2, metrics.getArrivals());
+        assertEquals(2 / 35.0 * 60, metrics.getArrivalsPerHour(), 1e-9);
+        assertEquals(5 * 60000.0, metrics.getMeanPendingMillis(), 1e-9);
+        assertEquals(15 * 60000.0, metrics.getMeanProcessingMillis(), 1e-9);
+        // 10 pending order minutes, and 30 processing order minutes, over 35 minutes.
+        assertEquals(10 / 35.0, metrics.getMeanPendingDepth(), 1e-9);
+        assertEquals(metrics.getMeanPendingDepth(), metrics.getLittlesLawPendingDepth(), 1e-9);
+        assertEquals(30 / 35.0, metrics.getMeanProcessingOrders(), 1e-9);
+        // 100 item minutes, over 4 slots for 35 minutes.
+        assertEquals(100 / (4 * 35.0), metrics.getMeanUtilization(), 1e-9);
+
+        // Buckets from 12:00 to 12:40.
+        long[] bucketStartMillis = metrics.getBucketStartMillis();
+        assertEquals(5, bucketStartMillis.length);
+        assertEquals(START, bucketStartMillis[0]);
+        assertEquals(START + 40 * 60000L, bucketStartMillis[4]);
+        double[] pendingDepth = metrics.getPendingDepthByBucket();
+        double[] expectedPendingDepth = {0, 0, 1, 0, 0};
+        double[] utilization = metrics.getUtilizationByBucket();
+        double[] expectedUtilization = {0.5, 1, 0.5, 0.5, 0};
+        for (int i = 0; i < 5; i++) {
+            assertEquals(expectedPendingDepth[i], pendingDepth[i], 1e-9);
+            assertEquals(expectedUtilization[i], utilization[i], 1e-9);
+        }
+        assertEquals(1, metrics.getArrivalsByBucket()[0]);
+        assertEquals(1, metrics.getArrivalsByBucket()[2]);
+        assertEquals(1, metrics.getCompletionsByBucket()[2]);
+        assertEquals(1, metrics.getCompletionsByBucket()[4]);
+    }
+}
@@ -0,0 +1,192 @@
+package com.marcop.foodsystem.simulation;
+
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderProcessingStrategy;
+import com.marcop.foodsystem.model.OrderState;
+import com.marcop.foodsystem.store.OrderInMemoryStore;
+import com.marcop.foodsystem.store.OrderStore;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Unit test for SimulationCheckpointer.
+ */
+public class SimulationCheckpointerTest extends TestCase {
+
+    private static final int MAX_CONCURRENT_ITEMS = 8;
+
+    /** Checkpointer which fails after a number of checkpoints, as if the process had crashed. */
+    private static class CrashingCheckpointer extends SimulationCheckpointer {
+        private int checkpointsBeforeCrash;
+
+        CrashingCheckpointer(Path directory, int checkpointsBeforeCrash) {
+            super(directory, 0);
+            this.checkpointsBeforeCrash = checkpointsBeforeCrash;
+        }
+
+        @Override
+        void writeCheckpoint(Checkpoint checkpoint) {
+            if (checkpointsBeforeCrash-- == 0) {
+                throw new IllegalStateException("Crash.");
+            }
+            super.writeCheckpoint(checkpoint);
+        }
+    }
+
+    /** Checkpointer which never checkpoints, and fails after a number of completions. */
+    private static class CrashBeforeCheckpointer extends SimulationCheckpointer {
+        private int completionsBeforeCrash;
+
+        CrashBeforeCheckpointer(Path directory, int completionsBeforeCrash) {
+            super(directory, Long.MAX_VALUE);
+            this.completionsBeforeCrash = completionsBeforeCrash;
+        }
+
+        @Override
+        void recordCompletion(long dequeueIndex, long processingStartedAtMillis) {
+            if (completionsBeforeCrash-- == 0) {
+                throw new IllegalStateException("Crash.");
+            }
+            super.recordCompletion(dequeueIndex, processingStartedAtMillis);
+        }
+    }
+
+    private static KitchenSimulator simulator(List<Order> orders, OrderStore completedOrders) {
+        OrderStore pendingOrders = new OrderInMemoryStore();
+        for (Order order : orders) {
+            pendingOrders.addOrder(order);
+        }
+        return new KitchenSimulator(pendingOrders, new OrderInMemoryStore(MAX_CONCURRENT_ITEMS), completedOrders,
+                OrderProcessingStrategy.FIRST_COME_FIRST_SERVE);
+    }
+
+    /**
+     * Test that a simulation resumed after a crash gives exactly the same result as an uninterrupted simulation.
+     */
+    public void testResume_SameAsUninterrupted() throws IOException {
+        Path checkpointDir = Files.createTempDirectory("checkpoint");
+
+        List<Order> expectedOrders = ParallelKitchenSimulatorTest.generateOrders(7);
+        OrderStore expectedCompleted = new OrderInMemoryStore();
+        simulator(expectedOrders, expectedCompleted).run();
+
+        KitchenSimulator crashingSimulator =
+                simulator(ParallelKitchenSimulatorTest.generateOrders(7), new OrderInMemoryStore());
+        crashingSimulator.setCheckpointer(new CrashingCheckpointer(checkpointDir, 500));
+        try {
+            crashingSimulator.run();
+            fail("Simulation should have crashed.");
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+
+        List<Order> resumedOrders = ParallelKitchenSimulatorTest.generateOrders(7);
+        OrderStore resumedCompleted = new OrderInMemoryStore();
+        KitchenSimulator resumedSimulator = simulator(resumedOrders, resumedCompleted);
+        resumedSimulator.setCheckpointer(new SimulationCheckpointer(checkpointDir, 0));
+        assertTrue(resumedSimulator.resume());
+        resumedSimulator.run();
+
+        assertEquals(expectedOrders.size(), resumedCompleted.getCurrentNumOrders());
+        for (int i = 0; i < expectedOrders.size(); i++) {
+            Order expectedOrder = expectedOrders.get(i);
+            Order resumedOrder = resumedOrders.get(i);
+            assertEquals(OrderState.COMPLETE, resumedOrder.getState());
+            assertEquals(expectedOrder.getProcessingStartedAt(), resumedOrder.getProcessingStartedAt());
+            assertEquals(expectedOrder.getCompletedAt(), resumedOrder.getCompletedAt());
+        }
+        assertEquals(expectedCompleted.getOrderStateCountsByTime(), resumedCompleted.getOrderStateCountsByTime());
+        assertEquals(expectedCompleted.getTotalRevenue(), resumedCompleted.getTotalRevenue());
+        // The checkpoint is deleted once the simulation completes.
+        assertFalse(Files.exists(checkpointDir.resolve("checkpoint.bin")));
+    }
+
+    private static KitchenSimulator pooledSimulator(List<Order> orders) {
+        KitchenSimulator simulator = simulator(orders, new OrderInMemoryStore());
+        simulator.setStationPools(new StationPools(MAX_CONCURRENT_ITEMS, Collections.<String, Integer>emptyMap()));
+        return simulator;
+    }
+
+    /**
+     * Test that station pool stats of a resumed simulation, including orders held up by a full pool and for how
+     * long, are the same as an uninterrupted simulation's.
+     */
+    public void testResume_StationPoolStats() throws IOException {
+        Path checkpointDir = Files.createTempDirectory("checkpoint");
+
+        KitchenSimulator expectedSimulator = pooledSimulator(ParallelKitchenSimulatorTest.generateOrders(7));
+        expectedSimulator.run();
+
+        KitchenSimulator crashingSimulator = pooledSimulator(ParallelKitchenSimulatorTest.generateOrders(7));
+        crashingSimulator.setCheckpointer(new CrashingCheckpointer(checkpointDir, 500));
+        try {
+            crashingSimulator.run();
+            fail("Simulation should have crashed.");
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+
+        KitchenSimulator resumedSimulator = pooledSimulator(ParallelKitchenSimulatorTest.generateOrders(7));
+        resumedSimulator.setCheckpointer(new SimulationCheckpointer(checkpointDir, 0));
+        assertTrue(resumedSimulator.resume());
+        resumedSimulator.run();
+
+        List<StationPools.PoolStats> expectedStats = expectedSimulator.getStationPools().getStats();
+        List<StationPools.PoolStats> resumedStats = resumedSimulator.getStationPools().getStats();
+        assertTrue(expectedStats.get(StationPools.KITCHEN_POOL).getHeldOrders() > 0);
+        for (int pool = 0; pool < expectedStats.size(); pool++) {
+            assertEquals(expectedStats.get(pool).getHeldOrders(), resumedStats.get(pool).getHeldOrders());
+            assertEquals(expectedStats.get(pool).getBlockedMillis(), resumedStats.get(pool).getBlockedMillis());
+            assertEquals(expectedStats.get(pool).getBusyItemMillis(), resumedStats.get(pool).getBusyItemMillis());
+            assertEquals(expectedStats.get(pool).getPeakInUse(), resumedStats.get(pool).getPeakInUse());
+        }
+    }
+
+    /**
+     * Test that a new simulation in the directory of a crashed one, which crashes before its first checkpoint, does
+     * not leave the old checkpoint paired with its own completions log.
+     */
+    public void testResume_StaleCheckpointDeleted() throws IOException {
+        Path checkpointDir = Files.createTempDirectory("checkpoint");
+        KitchenSimulator crashingSimulator =
+                simulator(ParallelKitchenSimulatorTest.generateOrders(7), new OrderInMemoryStore());
+        crashingSimulator.setCheckpointer(new CrashingCheckpointer(checkpointDir, 500));
+        try {
+            crashingSimulator.run();
+            fail("Simulation should have crashed.");
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+        assertTrue(Files.exists(checkpointDir.resolve("checkpoint.bin")));
+
+        KitchenSimulator restartedSimulator =
+                simulator(ParallelKitchenSimulatorTest.generateOrders(7), new OrderInMemoryStore());
+        restartedSimulator.setCheckpointer(new CrashBeforeCheckpointer(checkpointDir, 10));
+        try {
+            restartedSimulator.run();
+            fail("Simulation should have crashed.");
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+
+        KitchenSimulator resumedSimulator =
+                simulator(ParallelKitchenSimulatorTest.generateOrders(7), new OrderInMemoryStore());
+        resumedSimulator.setCheckpointer(new SimulationCheckpointer(checkpointDir, 0));
+        assertFalse(resumedSimulator.resume());
+    }
+
+    /**
+     * Test that resuming without a checkpoint starts from the beginning.
+     */
+    public void testResume_NoCheckpoint() throws IOException {
+        KitchenSimulator simulator =
+                simulator(ParallelKitchenSimulatorTest.generateOrders(7), new OrderInMemoryStore());
+        simulator.setCheckpointer(new SimulationCheckpointer(Files.createTempDirectory("checkpoint"), 0));
+        assertFalse(simulator.resume());
+    }
+}
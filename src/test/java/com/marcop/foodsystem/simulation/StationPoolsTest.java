@@ -0,0 +1,84 @@
+package com.marcop.foodsystem.simulation;
+
+import com.google.common.collect.ImmutableMap;
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+import com.marcop.foodsystem.model.OrderProcessingStrategy;
+import com.marcop.foodsystem.store.OrderInMemoryStore;
+import com.marcop.foodsystem.store.OrderStore;
+import junit.framework.TestCase;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit test for StationPools, through a KitchenSimulator.
+ */
+public class StationPoolsTest extends TestCase {
+
+    private static final long START = Timestamp.valueOf("2019-01-01 12:00:00").getTime();
+
+    private static Order order(int minute, int cookMinutes, String... stations) {
+        List<OrderItem> items = new ArrayList<>();
+        for (String station : stations) {
+            OrderItem item = new OrderItem("item", 100);
+            item.setCookTimeSeconds(cookMinutes * 60);
+            item.setStation(station);
+            items.add(item);
+        }
+        Order order = new Order(new Timestamp(START + minute * 60000L), "name", "service", items);
+        order.setTotalCookTimeSeconds(cookMinutes * 60);
+        return order;
+    }
+
+    /**
+     * Test that an order waits for a full station, even though the kitchen has room, and that the wait is
+     * accounted to that station.
+     */
+    public void testRun_StationLimitsThroughput() {
+        OrderStore pendingOrders = new OrderInMemoryStore();
+        Order first = order(0, 10, "grill", "oven");
+        Order second = order(1, 10, "grill");
+        Order third = order(2, 5, "oven");
+        pendingOrders.addOrder(first);
+        pendingOrders.addOrder(second);
+        pendingOrders.addOrder(third);
+        StationPools stationPools = new StationPools(10, ImmutableMap.of("grill", 1, "oven", 2));
+        KitchenSimulator simulator = new KitchenSimulator(pendingOrders, new OrderInMemoryStore(10),
+                new OrderInMemoryStore(), OrderProcessingStrategy.FIRST_COME_FIRST_SERVE);
+        simulator.setStationPools(stationPools);
+        simulator.run();
+
+        assertEquals(START, first.getProcessingStartedAt().getTime());
+        // Held until the grill is free, once the first order is done. Time steps by minutes, so it is found
+        // done at 11 minutes.
+        long secondStart = second.getProcessingStartedAt().getTime();
+        assertEquals(START + 11 * 60000L, secondStart);
+        // Dequeued after the second order, so started with it, even though the oven had room before.
+        assertEquals(secondStart, third.getProcessingStartedAt().getTime());
+
+        List<StationPools.PoolStats> stats = stationPools.getStats();
+        assertEquals(StationPools.KITCHEN_POOL_NAME, stats.get(0).getName());
+        assertEquals(0, stats.get(0).getHeldOrders());
+        StationPools.PoolStats grill = stats.get(1);
+        assertEquals("grill", grill.getName());
+        assertEquals(1, grill.getHeldOrders());
+        assertEquals(10 * 60000L, grill.getBlockedMillis());
+        assertEquals(20 * 60000L, grill.getBusyItemMillis());
+        // Busy for 20 of the 21 minutes until the second order is done.
+        assertEquals(20.0 / 21, grill.getUtilization(), 1e-9);
+        StationPools.PoolStats oven = stats.get(2);
+        assertEquals(15 * 60000L, oven.getBusyItemMillis());
+        assertEquals(1, oven.getPeakInUse());
+    }
+
+    /**
+     * Test that an order with more items for a station than its capacity is found.
+     */
+    public void testFindOversizedPool() {
+        StationPools stationPools = new StationPools(0, ImmutableMap.of("fryer", 1));
+        assertEquals(StationPools.NO_POOL, stationPools.findOversizedPool(order(0, 5, "fryer", "oven", "oven")));
+        assertEquals(1, stationPools.findOversizedPool(order(0, 5, "fryer", "fryer")));
+    }
+}
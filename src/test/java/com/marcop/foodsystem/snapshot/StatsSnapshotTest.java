@@ -0,0 +1,145 @@
+package com.marcop.foodsystem.snapshot;
+
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+import com.marcop.foodsystem.model.OrderProcessingStrategy;
+import com.marcop.foodsystem.model.OrderState;
+import com.marcop.foodsystem.model.RejectionReason;
+import com.marcop.foodsystem.simulation.KitchenSimulator;
+import com.marcop.foodsystem.simulation.QueueingMetrics;
+import com.marcop.foodsystem.store.OrderInMemoryStore;
+import com.marcop.foodsystem.store.OrderIndex;
+import com.marcop.foodsystem.store.OrderRejections;
+import com.marcop.foodsystem.store.OrderStore;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Unit test for StatsSnapshot. Merged snapshots of separate runs should match a snapshot of one run over them all.
+ */
+public class StatsSnapshotTest extends TestCase {
+
+    private static final int MAX_CONCURRENT_ITEMS = 4;
+
+    /** Busy orders over a few hours of a day. */
+    private static List<Order> orders(String day, int seed) {
+        Random random = new Random(seed);
+        List<Order> orders = new ArrayList<>();
+        long time = Timestamp.valueOf(day + " 11:00:00").getTime();
+        for (int i = 0; i < 100; i++) {
+            time += random.nextInt(4) * 60000L;
+            List<OrderItem> items = new ArrayList<>();
+            int maxCookTimeSeconds = 0;
+            for (int j = 0, n = 1 + random.nextInt(3); j < n; j++) {
+                OrderItem item = new OrderItem(random.nextBoolean() ? "steak" : "salad", 100 + random.nextInt(900));
+                item.setCookTimeSeconds(60 * (1 + random.nextInt(10)));
+                maxCookTimeSeconds = Math.max(maxCookTimeSeconds, item.getCookTimeSeconds());
+                items.add(item);
+            }
+            Order order = new Order(new Timestamp(time), "name", random.nextBoolean() ? "Eat In" : "Delivery", items);
+            order.setTotalCookTimeSeconds(maxCookTimeSeconds);
+            orders.add(order);
+        }
+        return orders;
+    }
+
+    private static StatsSnapshot run(List<Order> orders, int rejectedCount) {
+        OrderStore pendingOrders = new OrderInMemoryStore();
+        for (Order order : orders) {
+            pendingOrders.addOrder(order);
+        }
+        OrderStore completedOrders = new OrderInMemoryStore(EnumSet.allOf(OrderIndex.class));
+        QueueingMetrics queueingMetrics = new QueueingMetrics(MAX_CONCURRENT_ITEMS);
+        KitchenSimulator simulator = new KitchenSimulator(pendingOrders, new OrderInMemoryStore(MAX_CONCURRENT_ITEMS),
+                completedOrders, OrderProcessingStrategy.FIRST_COME_FIRST_SERVE);
+        simulator.setQueueingMetrics(queueingMetrics);
+        simulator.run();
+        OrderRejections rejections = new OrderRejections();
+        for (int i = 0; i < rejectedCount; i++) {
+            rejections.reject(orders.get(i), RejectionReason.UNKNOWN_ITEM, "item " + i);
+        }
+        return StatsSnapshot.of("kitchen", MAX_CONCURRENT_ITEMS, completedOrders, rejections, queueingMetrics);
+    }
+
+    private static StatsSnapshot roundTrip(StatsSnapshot snapshot) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        snapshot.writeTo(out);
+        return StatsSnapshot.readFrom(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    /**
+     * Test that snapshots of two days, written and read back, merge into the stats of simulating both days at once.
+     */
+    public void testMerge() throws IOException {
+        StatsSnapshot merged = roundTrip(run(orders("2019-01-01", 1), 2));
+        merged.merge(roundTrip(run(orders("2019-01-02", 2), 1)));
+        List<Order> bothDays = new ArrayList<>(orders("2019-01-01", 1));
+        bothDays.addAll(orders("2019-01-02", 2));
+        StatsSnapshot expected = run(bothDays, 3);
+
+        assertEquals(2, merged.getRunCount());
+        assertEquals(expected.getPriceDistribution(), merged.getPriceDistribution());
+        assertEquals(expected.getPendingDurationDistribution(), merged.getPendingDurationDistribution());
+        assertEquals(expected.getOrderStateCountsByTime().size(), merged.getOrderStateCountsByTime().size());
+        assertEquals(expected.getOrderStateCountsByTime(), merged.getOrderStateCountsByTime());
+        assertEquals(expected.getRevenueByItem(), merged.getRevenueByItem());
+        assertEquals(expected.getRevenueByService(), merged.getRevenueByService());
+        assertEquals(expected.getTotalRevenue(), merged.getTotalRevenue());
+        assertEquals(3, merged.getRejections().getCount(RejectionReason.UNKNOWN_ITEM));
+        assertEquals(3, merged.getRejections().getExamples(RejectionReason.UNKNOWN_ITEM).size());
+
+        QueueingMetrics expectedMetrics = expected.getSimulationReport().getQueueingMetrics();
+        QueueingMetrics mergedMetrics = merged.getSimulationReport().getQueueingMetrics();
+        assertEquals(expectedMetrics.getSpanMillis(), mergedMetrics.getSpanMillis());
+        assertEquals(expectedMetrics.getMeanPendingMillis(), mergedMetrics.getMeanPendingMillis(), 1e-9);
+        assertEquals(expectedMetrics.getMeanUtilization(), mergedMetrics.getMeanUtilization(), 1e-9);
+        assertEquals(expectedMetrics.getMeanPendingDepth(), mergedMetrics.getMeanPendingDepth(), 1e-9);
+        assertTrue(Arrays.equals(expectedMetrics.getBucketStartMillis(), mergedMetrics.getBucketStartMillis()));
+        assertTrue(Arrays.equals(expectedMetrics.getArrivalsByBucket(), mergedMetrics.getArrivalsByBucket()));
+        assertTrue(Arrays.equals(expectedMetrics.getPendingDepthByBucket(), mergedMetrics.getPendingDepthByBucket()));
+        assertTrue(Arrays.equals(expectedMetrics.getUtilizationByBucket(), mergedMetrics.getUtilizationByBucket()));
+        assertTrue(expected.getOrderStateCountsByTime().values().iterator().next()
+                .containsKey(OrderState.CREATED));
+    }
+
+    /**
+     * Test that revenue merged past the range of an int is kept, and written and read back.
+     */
+    public void testMerge_RevenueBeyondInt() throws IOException {
+        StatsSnapshot merged = run(orders("2019-01-01", 1), 0);
+        long dayRevenue = merged.getTotalRevenue();
+        String service = merged.getRevenueByService().keySet().iterator().next();
+        long dayServiceRevenue = merged.getRevenueByService().get(service);
+        // Doubles each time, so 2^20 days of revenue.
+        for (int i = 0; i < 20; i++) {
+            merged.merge(roundTrip(merged));
+        }
+        merged = roundTrip(merged);
+        assertTrue(merged.getTotalRevenue() > Integer.MAX_VALUE);
+        assertEquals(dayRevenue << 20, merged.getTotalRevenue());
+        assertEquals(dayServiceRevenue << 20, (long) merged.getRevenueByService().get(service));
+    }
+
+    /**
+     * Test that snapshots of different kitchens do not merge.
+     */
+    public void testMerge_DifferentKitchens() {
+        StatsSnapshot snapshot = run(orders("2019-01-01", 1), 0);
+        try {
+            snapshot.merge(StatsSnapshot.of("other", MAX_CONCURRENT_ITEMS, new OrderInMemoryStore(),
+                    new OrderRejections(), new QueueingMetrics(MAX_CONCURRENT_ITEMS)));
+            fail("Snapshots of different kitchens should not merge.");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.marcop.foodsystem.store;
+
+import com.marcop.foodsystem.model.ItemState;
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+import com.marcop.foodsystem.model.OrderState;
+import junit.framework.TestCase;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Unit test for OrderInMemoryStore.
+ */
+public class OrderInMemoryStoreTest extends TestCase {
+
+    private static Order newOrder(String orderedAt, String name, String service, int... itemPrices) {
+        List<OrderItem> items = new ArrayList<>();
+        for (int price : itemPrices) {
+            items.add(new OrderItem("item" + price, price));
+        }
+        return new Order(Timestamp.valueOf(orderedAt), name, service, items);
+    }
+
+    /**
+     * Test that identical orders are kept as separate entities, and can be looked up and removed by ID.
+     */
+    public void testOrderIds_IdenticalOrdersNotCollapsed() {
+        OrderInMemoryStore store = new OrderInMemoryStore(EnumSet.allOf(OrderIndex.class));
+        Order first = newOrder("2019-01-01 12:00:00", "a", "s1", 100);
+        Order second = newOrder("2019-01-01 12:00:00", "a", "s1", 100);
+        assertTrue(store.addOrder(first));
+        assertTrue(store.addOrder(second));
+        assertFalse(store.addOrder(second));
+        assertEquals(2, store.getCurrentNumOrders());
+        assertEquals(200, store.getTotalRevenue());
+        assertSame(second, store.getOrder(second.getId()));
+
+        assertSame(second, store.removeOrder(second.getId()));
+        assertNull(store.removeOrder(second.getId()));
+        assertNull(store.getOrder(second.getId()));
+        assertEquals(1, store.getCurrentNumOrders());
+        assertEquals(1, store.findOrders(new OrderQuery().withService("s1")).size());
+        assertSame(first, store.getAndDequeueOrder(null));
+        assertEquals(0, store.getCurrentNumItems());
+    }
+
+    /**
+     * Test paging through orders by orderedAt, within a window.
+     */
+    public void testGetOrdersByOrderedAt_Paged() {
+        OrderInMemoryStore store = new OrderInMemoryStore();
+        for (int minute = 0; minute < 10; minute++) {
+            store.addOrder(newOrder(String.format("2019-01-01 12:%02d:00", minute), "a", "s1", 100));
+        }
+
+        List<Order> seen = new ArrayList<>();
+        OrderCursor cursor = null;
+        int pages = 0;
+        do {
+            OrderPage page = store.getOrdersByOrderedAt(
+                    Timestamp.valueOf("2019-01-01 12:02:00"), Timestamp.valueOf("2019-01-01 12:09:00"), cursor, 3);
+            seen.addAll(page.getOrders());
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(7, seen.size());
+        assertEquals(Timestamp.valueOf("2019-01-01 12:02:00"), seen.get(0).getOrderedAt());
+        assertEquals(Timestamp.valueOf("2019-01-01 12:08:00"), seen.get(6).getOrderedAt());
+    }
+
+    /**
+     * Test that a cursor stays valid when orders at the same timestamp are removed between pages.
+     */
+    public void testGetOrdersByService_CursorStable() {
+        OrderInMemoryStore store = new OrderInMemoryStore();
+        for (String name : Arrays.asList("a", "b", "c", "d")) {
+            store.addOrder(newOrder("2019-01-01 12:00:00", name, "s1", 100));
+        }
+        store.addOrder(newOrder("2019-01-01 12:01:00", "e", "s2", 100));
+
+        OrderPage first = store.getOrdersByService("s1", null, null, null, 2);
+        assertEquals(2, first.getOrders().size());
+        assertTrue(first.hasNext());
+
+        // Dequeue an order which has already been returned.
+        assertTrue(first.getOrders().contains(store.getAndDequeueOrder(null)));
+
+        OrderPage second = store.getOrdersByService("s1", null, null, first.getNextCursor(), 2);
+        assertEquals(2, second.getOrders().size());
+        assertFalse(second.hasNext());
+        for (Order order : second.getOrders()) {
+            assertFalse(first.getOrders().contains(order));
+            assertEquals("s1", order.getService());
+        }
+        assertTrue(store.getOrdersByService("unknown", null, null, null, 2).getOrders().isEmpty());
+    }
+
+    /**
+     * Test that the service index returns the same pages as walking the orderedAt index.
+     */
+    public void testGetOrdersByService_Indexed() {
+        OrderInMemoryStore indexed = new OrderInMemoryStore(EnumSet.of(OrderIndex.SERVICE));
+        OrderInMemoryStore unindexed = new OrderInMemoryStore();
+        for (int minute = 0; minute < 10; minute++) {
+            String service = minute % 3 == 0 ? "s1" : "s2";
+            indexed.addOrder(newOrder(String.format("2019-01-01 12:%02d:00", minute), "a", service, 100));
+            unindexed.addOrder(newOrder(String.format("2019-01-01 12:%02d:00", minute), "a", service, 100));
+        }
+        OrderPage indexedPage = indexed.getOrdersByService("s1", null, null, null, 2);
+        OrderPage unindexedPage = unindexed.getOrdersByService("s1", null, null, null, 2);
+        assertEquals(2, indexedPage.getOrders().size());
+        assertEquals(indexedPage.getOrders().get(1).getOrderedAt(), unindexedPage.getOrders().get(1).getOrderedAt());
+
+        indexedPage = indexed.getOrdersByService("s1", null, null, indexedPage.getNextCursor(), 2);
+        unindexedPage = unindexed.getOrdersByService("s1", null, null, unindexedPage.getNextCursor(), 2);
+        assertEquals(2, indexedPage.getOrders().size());
+        assertEquals(2, unindexedPage.getOrders().size());
+        assertFalse(indexedPage.hasNext());
+        assertFalse(unindexedPage.hasNext());
+    }
+
+    /**
+     * Test lookups through secondary indexes, and that they are kept up to date on dequeue.
+     */
+    public void testFindOrders() {
+        OrderInMemoryStore store = new OrderInMemoryStore(EnumSet.allOf(OrderIndex.class));
+        store.addOrder(newOrder("2019-01-01 12:00:00", "a", "s1", 100, 200));
+        store.addOrder(newOrder("2019-01-01 12:01:00", "b", "s1", 200));
+        store.addOrder(newOrder("2019-01-01 12:02:00", "c", "s2", 200, 2500));
+
+        assertEquals(2, store.findOrders(new OrderQuery().withItem("item200").withService("s1")).size());
+        assertEquals(1, store.findOrders(new OrderQuery().withItem("item2500")).size());
+        assertEquals(1, store.findOrders(new OrderQuery().withPriceBucket(2)).size());
+        assertEquals(0, store.findOrders(new OrderQuery().withItem("unknown")).size());
+        assertEquals(0, store.findOrders(new OrderQuery().withState(OrderState.COMPLETE)).size());
+
+        store.getAndDequeueOrder(null);
+        assertEquals(1, store.findOrders(new OrderQuery().withItem("item200").withService("s1")).size());
+        assertEquals(0, store.findOrders(new OrderQuery().withItem("item100")).size());
+    }
+
+    /**
+     * Test top-N by price, and paging past the first N.
+     */
+    public void testGetTopOrdersByPrice() {
+        OrderInMemoryStore store = new OrderInMemoryStore();
+        store.addOrder(newOrder("2019-01-01 12:00:00", "a", "s1", 500));
+        store.addOrder(newOrder("2019-01-01 12:01:00", "b", "s1", 100, 200));
+        store.addOrder(newOrder("2019-01-01 12:02:00", "c", "s1", 900));
+        store.addOrder(newOrder("2019-01-01 12:03:00", "d", "s1", 300));
+
+        OrderPage top = store.getTopOrdersByPrice(null, 2);
+        assertEquals(900, top.getOrders().get(0).getTotalPriceCents());
+        assertEquals(500, top.getOrders().get(1).getTotalPriceCents());
+
+        OrderPage rest = store.getTopOrdersByPrice(top.getNextCursor(), 2);
+        assertEquals(300, rest.getOrders().get(0).getTotalPriceCents());
+        assertEquals(300, rest.getOrders().get(1).getTotalPriceCents());
+        assertFalse(rest.hasNext());
+    }
+
+    /**
+     * Test that completed orders are indexed by completion time and pending duration.
+     */
+    public void testGetOrdersByCompletedAt() {
+        OrderInMemoryStore processing = new OrderInMemoryStore();
+        OrderInMemoryStore completed = new OrderInMemoryStore();
+        Order quick = newOrder("2019-01-01 12:00:00", "a", "s1", 100);
+        quick.setTotalCookTimeSeconds(60);
+        Order slow = newOrder("2019-01-01 12:00:00", "b", "s1", 100);
+        slow.setTotalCookTimeSeconds(600);
+        processing.submitOrder(quick, Timestamp.valueOf("2019-01-01 12:05:00"));
+        processing.submitOrder(slow, Timestamp.valueOf("2019-01-01 12:00:00"));
+
+        for (Order order : processing.clearFinishedOrders(Timestamp.valueOf("2019-01-01 13:00:00"))) {
+            completed.addOrder(order);
+        }
+        assertEquals(0, processing.getCurrentNumOrders());
+        assertFalse(processing.getTopOrdersByPendingDuration(null, 10).hasNext());
+
+        OrderPage page = completed.getOrdersByCompletedAt(
+                Timestamp.valueOf("2019-01-01 12:06:00"), Timestamp.valueOf("2019-01-01 12:10:00"), null, 10);
+        assertEquals(1, page.getOrders().size());
+        assertSame(quick, page.getOrders().get(0));
+        assertSame(quick, completed.getTopOrdersByPendingDuration(null, 1).getOrders().get(0));
+    }
+
+    /**
+     * Test that state stats can be rebuilt for a past time, from the store's history of state transitions.
+     */
+    public void testGetOrderStateProjection_PastTime() {
+        OrderInMemoryStore processing = new OrderInMemoryStore();
+        OrderInMemoryStore completed = new OrderInMemoryStore(EnumSet.of(OrderIndex.EVENT_LOG));
+        Order first = newOrder("2019-01-01 12:00:00", "a", "s1", 100, 200);
+        Order second = newOrder("2019-01-01 12:01:00", "b", "s1", 300);
+        first.setTotalCookTimeSeconds(300);
+        second.setTotalCookTimeSeconds(600);
+        processing.submitOrder(first, Timestamp.valueOf("2019-01-01 12:00:00"));
+        processing.submitOrder(second, Timestamp.valueOf("2019-01-01 12:02:00"));
+        for (Order order : processing.clearFinishedOrders(Timestamp.valueOf("2019-01-01 12:20:00"))) {
+            assertEquals(ItemState.COMPLETE, order.getOrderItems().get(0).getState());
+            completed.addOrder(order);
+        }
+
+        OrderStateProjection atStart = completed.getOrderStateProjection(Timestamp.valueOf("2019-01-01 12:01:00"));
+        assertEquals(1, (int) atStart.getOrderCountsByState().get(OrderState.PROCESSING));
+        assertEquals(1, (int) atStart.getOrderCountsByState().get(OrderState.CREATED));
+        assertEquals(2, (int) atStart.getItemCountsByState().get(ItemState.IN_PROCESS));
+        assertEquals(1, (int) atStart.getItemCountsByState().get(ItemState.PENDING));
+
+        OrderStateProjection later = completed.getOrderStateProjection(Timestamp.valueOf("2019-01-01 12:06:00"));
+        assertEquals(1, (int) later.getOrderCountsByState().get(OrderState.COMPLETE));
+        assertEquals(1, (int) later.getOrderCountsByState().get(OrderState.PROCESSING));
+        assertEquals(2, (int) later.getItemCountsByState().get(ItemState.COMPLETE));
+        // Only the first order was complete, and both had started.
+        assertEquals(300, later.getTotalRevenue());
+        assertEquals(Long.valueOf(300), later.getRevenueByService().get("s1"));
+        assertEquals(Long.valueOf(200), later.getRevenueByItem().get("item200"));
+        assertNull(later.getRevenueByItem().get("item300"));
+        assertEquals(1, later.getPriceDistribution().size());
+        assertEquals(Integer.valueOf(1), later.getPendingDurationDistribution().get(1));
+
+        OrderStateProjection now = completed.getOrderStateProjection(null);
+        assertEquals(2, (int) now.getOrderCountsByState().get(OrderState.COMPLETE));
+        assertEquals(3, (int) now.getItemCountsByState().get(ItemState.COMPLETE));
+        assertEquals(completed.getOrderStateCountsByTime(), now.getOrderStateCountsByTime());
+        assertEquals(completed.getTotalRevenue(), now.getTotalRevenue());
+        assertEquals(completed.getPriceDistribution(), now.getPriceDistribution());
+        assertEquals(completed.getPendingDurationDistribution(), now.getPendingDurationDistribution());
+
+        // A store without history counts the transitions of its orders, but cannot go back in time.
+        OrderInMemoryStore withoutHistory = new OrderInMemoryStore();
+        withoutHistory.addOrder(first);
+        withoutHistory.addOrder(second);
+        assertEquals(completed.getOrderStateCountsByTime(), withoutHistory.getOrderStateCountsByTime());
+        try {
+            withoutHistory.getOrderStateProjection(null);
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+    }
+}
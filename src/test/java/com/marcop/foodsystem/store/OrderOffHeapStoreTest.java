@@ -0,0 +1,258 @@
+package com.marcop.foodsystem.store;
+
+import com.marcop.foodsystem.model.ItemState;
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+import com.marcop.foodsystem.model.OrderState;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Unit test for OrderOffHeapStore. Results should match an OrderInMemoryStore holding the same orders.
+ */
+public class OrderOffHeapStoreTest extends TestCase {
+
+    private static List<Order> completedOrders() {
+        Random random = new Random(3);
+        List<Order> orders = new ArrayList<>();
+        long time = Timestamp.valueOf("2019-01-01 12:00:00").getTime();
+        for (int i = 0; i < 500; i++) {
+            time += random.nextInt(120) * 1000L;
+            List<OrderItem> items = new ArrayList<>();
+            for (int j = 0, n = 1 + random.nextInt(3); j < n; j++) {
+                OrderItem item = new OrderItem("item" + random.nextInt(10), 100 * random.nextInt(20));
+                item.setCookTimeSeconds(60 + random.nextInt(600));
+                items.add(item);
+            }
+            Order order = new Order(new Timestamp(time), "name" + random.nextInt(5), "s" + random.nextInt(3), items);
+            order.setTotalCookTimeSeconds(600);
+            order.setProcessingStartedAt(new Timestamp(time + random.nextInt(3) * 60 * 1000L));
+            order.setCompletedAt(new Timestamp(order.getProcessingStartedAt().getTime() + 600 * 1000L));
+            order.updateState(OrderState.COMPLETE);
+            orders.add(order);
+        }
+        return orders;
+    }
+
+    private static List<Long> ids(List<Order> orders) {
+        List<Long> ids = new ArrayList<>();
+        for (Order order : orders) {
+            ids.add(order.getId());
+        }
+        return ids;
+    }
+
+    private interface PageQuery {
+        OrderPage get(CompletedOrderStore store, OrderCursor cursor);
+    }
+
+    /** Page through a query, and return the IDs in the order returned. */
+    private static List<Long> pageIds(CompletedOrderStore store, PageQuery query) {
+        List<Long> ids = new ArrayList<>();
+        OrderCursor cursor = null;
+        do {
+            OrderPage page = query.get(store, cursor);
+            assertTrue(page.getOrders().size() <= 7);
+            ids.addAll(ids(page.getOrders()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return ids;
+    }
+
+    private static void assertSameResults(CompletedOrderStore expected, CompletedOrderStore actual) {
+        assertEquals(expected.getCurrentNumOrders(), actual.getCurrentNumOrders());
+        assertEquals(expected.getCurrentNumItems(), actual.getCurrentNumItems());
+        assertEquals(expected.getTotalRevenue(), actual.getTotalRevenue());
+        assertEquals(expected.getRevenueByService(), actual.getRevenueByService());
+        assertEquals(expected.getRevenueByItem(), actual.getRevenueByItem());
+        assertEquals(expected.getItemFrequencyCount(), actual.getItemFrequencyCount());
+        assertEquals(expected.getPriceDistribution(), actual.getPriceDistribution());
+        assertEquals(expected.getPendingDurationDistribution(), actual.getPendingDurationDistribution());
+        assertEquals(expected.getOrderStateCountsByTime(), actual.getOrderStateCountsByTime());
+        Timestamp asOf = Timestamp.valueOf("2019-01-01 15:00:00");
+        assertEquals(expected.getOrderStateProjection(asOf).getItemCountsByState(),
+                actual.getOrderStateProjection(asOf).getItemCountsByState());
+        assertEquals(expected.getOrderStateProjection(asOf).getRevenueByService(),
+                actual.getOrderStateProjection(asOf).getRevenueByService());
+
+        OrderQuery query = new OrderQuery().withService("s1").withItem("item3");
+        assertEquals(ids(expected.findOrders(query)), ids(actual.findOrders(query)));
+
+        assertSamePages(expected, actual);
+    }
+
+    private static void assertSamePages(CompletedOrderStore expected, CompletedOrderStore actual) {
+        Timestamp from = Timestamp.valueOf("2019-01-01 13:00:00");
+        Timestamp to = Timestamp.valueOf("2019-01-01 16:00:00");
+        PageQuery[] queries = {
+                (store, cursor) -> store.getOrdersByOrderedAt(from, to, cursor, 7),
+                (store, cursor) -> store.getOrdersByService("s2", null, to, cursor, 7),
+                (store, cursor) -> store.getOrdersByCompletedAt(from, null, cursor, 7),
+                (store, cursor) -> store.getTopOrdersByPrice(cursor, 7),
+                (store, cursor) -> store.getTopOrdersByPendingDuration(cursor, 7)
+        };
+        for (PageQuery pageQuery : queries) {
+            assertEquals(pageIds(expected, pageQuery), pageIds(actual, pageQuery));
+        }
+    }
+
+    /**
+     * Test that stats, queries and pages match an in-memory store.
+     */
+    public void testSameAsInMemory() {
+        CompletedOrderStore expected = new OrderInMemoryStore(EnumSet.of(OrderIndex.EVENT_LOG));
+        OrderOffHeapStore actual = new OrderOffHeapStore();
+        for (Order order : completedOrders()) {
+            assertTrue(expected.addOrder(order));
+            assertTrue(actual.addOrder(order));
+        }
+        assertSameResults(expected, actual);
+
+        Order order = completedOrders().get(0);
+        assertTrue(actual.addOrder(order));
+        assertFalse(actual.addOrder(order));
+        Order copy = actual.getOrder(order.getId());
+        assertEquals(0, copy.compareTo(order));
+        assertEquals(order.getCompletedAt(), copy.getCompletedAt());
+        assertEquals(order.getOrderItems().get(0).getName(), copy.getOrderItems().get(0).getName());
+        assertNull(actual.getOrder(-1));
+    }
+
+    /** Replay a store's events at or before a time, as strings. */
+    private static List<String> events(CompletedOrderStore store, Timestamp asOf) {
+        List<String> events = new ArrayList<>();
+        store.replayEvents(asOf, new OrderEventLog.Visitor() {
+            @Override
+            public void onOrderEvent(long timeMillis, long orderId, int numItems, OrderState state) {
+                events.add(timeMillis + " " + orderId + " " + state);
+            }
+
+            @Override
+            public void onItemEvent(long timeMillis, long orderId, int itemIndex, ItemState state) {
+                events.add(timeMillis + " " + orderId + "/" + itemIndex + " " + state);
+            }
+        });
+        return events;
+    }
+
+    /**
+     * Test that items are replayed at their own transition times, where they were recorded.
+     */
+    public void testItemEvents() throws IOException {
+        CompletedOrderStore expected = new OrderInMemoryStore(EnumSet.of(OrderIndex.EVENT_LOG));
+        try (OrderOffHeapStore actual = new OrderOffHeapStore()) {
+            List<Order> orders = completedOrders();
+            for (int i = 0; i < orders.size(); i++) {
+                Order order = orders.get(i);
+                // Every other order has item times, finishing each item with the order, as staggered items do.
+                for (OrderItem item : i % 2 == 0 ? order.getOrderItems() : new ArrayList<OrderItem>()) {
+                    item.setCompletedAt(order.getCompletedAt());
+                    item.setProcessingStartedAt(new Timestamp(
+                            order.getCompletedAt().getTime() - item.getCookTimeSeconds() * 1000L));
+                }
+                expected.addOrder(order);
+                actual.addOrder(order);
+            }
+            Order order = orders.get(0);
+            OrderItem copy = actual.getOrder(order.getId()).getOrderItems().get(0);
+            assertEquals(order.getOrderItems().get(0).getProcessingStartedAt(), copy.getProcessingStartedAt());
+            assertTrue(events(actual, null).contains(copy.getProcessingStartedAt().getTime() + " " + order.getId()
+                    + "/0 " + ItemState.IN_PROCESS));
+            assertEquals(events(expected, null), events(actual, null));
+            Timestamp asOf = Timestamp.valueOf("2019-01-01 15:00:00");
+            assertEquals(events(expected, asOf), events(actual, asOf));
+        }
+    }
+
+    /**
+     * Test that pages stay the same as an in-memory store's while orders are added between queries, so that the
+     * page indexes are made of several sorted runs.
+     */
+    public void testPagesWhileAdding() throws IOException {
+        CompletedOrderStore expected = new OrderInMemoryStore();
+        try (OrderOffHeapStore actual = new OrderOffHeapStore()) {
+            List<Order> orders = completedOrders();
+            for (int i = 0; i < orders.size(); i++) {
+                expected.addOrder(orders.get(i));
+                actual.addOrder(orders.get(i));
+                if (i % 97 == 0 || i == orders.size() - 1) {
+                    assertSamePages(expected, actual);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that customer names are kept in full, outside of the dictionary.
+     */
+    public void testNames() throws IOException {
+        try (OrderOffHeapStore store = new OrderOffHeapStore()) {
+            String longName = new String(new char[1000]).replace('\0', 'x');
+            Order unicode = new Order(new Timestamp(0), "Zo\u00eb \u5f20\ud83c\udf55", "s1", new ArrayList<OrderItem>());
+            Order large = new Order(new Timestamp(0), longName, "s1", new ArrayList<OrderItem>());
+            assertTrue(store.addOrder(unicode));
+            assertTrue(store.addOrder(large));
+            assertEquals(unicode.getName(), store.getOrder(unicode.getId()).getName());
+            assertEquals(longName, store.getOrder(large.getId()).getName());
+            List<Long> byName = ids(store.getOrdersByOrderedAt(null, null, null, 10).getOrders());
+            assertEquals(unicode.compareTo(large) < 0 ? unicode.getId() : large.getId(), (long) byName.get(0));
+        }
+    }
+
+    /**
+     * Test that the store cannot be used once its memory is released.
+     */
+    public void testClosed() throws IOException {
+        OrderOffHeapStore store = new OrderOffHeapStore();
+        Order order = completedOrders().get(0);
+        store.addOrder(order);
+        store.getTopOrdersByPrice(null, 1);
+        store.close();
+        store.close();
+        try {
+            store.getOrder(order.getId());
+            fail("Expected IllegalStateException.");
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+        try {
+            store.getTopOrdersByPrice(null, 1);
+            fail("Expected IllegalStateException.");
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+        try {
+            store.addOrder(completedOrders().get(1));
+            fail("Expected IllegalStateException.");
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+    }
+
+    /**
+     * Test a store memory-mapped to a file.
+     */
+    public void testMemoryMapped() throws IOException {
+        Path file = Files.createTempFile("orders", ".bin");
+        CompletedOrderStore expected = new OrderInMemoryStore(EnumSet.of(OrderIndex.EVENT_LOG));
+        OrderOffHeapStore actual = new OrderOffHeapStore(file);
+        try {
+            for (Order order : completedOrders()) {
+                expected.addOrder(order);
+                actual.addOrder(order);
+            }
+            assertSameResults(expected, actual);
+        } finally {
+            actual.close();
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.marcop.foodsystem.store;
+
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+import junit.framework.TestCase;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Unit test for OrderPendingQueue. Orders should be dequeued as from an OrderInMemoryStore.
+ */
+public class OrderPendingQueueTest extends TestCase {
+
+    private static final long START = Timestamp.valueOf("2019-01-01 12:00:00").getTime();
+
+    private static Order newOrder(int minute, String name, String service) {
+        List<OrderItem> items = new ArrayList<>();
+        items.add(new OrderItem("item", 100));
+        return new Order(new Timestamp(START + minute * 60000L), name, service, items);
+    }
+
+    /** Orders by minute with many ties, swapped locally, and a few moved far out of order. */
+    private static List<Order> nearlySortedOrders(Random random, int count) {
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            orders.add(newOrder(i / 3, random.nextBoolean() ? "a" : "b", random.nextBoolean() ? "s1" : "s2"));
+        }
+        for (int i = 0; i + 1 < count; i += 1 + random.nextInt(5)) {
+            Collections.swap(orders, i, i + 1 + random.nextInt(Math.min(10, count - i - 1)));
+        }
+        for (int i = 0; i < count / 50; i++) {
+            orders.add(random.nextInt(count), orders.remove(random.nextInt(count)));
+        }
+        return orders;
+    }
+
+    /**
+     * Test that orders added nearly sorted, with dequeues in between, come out as from an OrderInMemoryStore.
+     */
+    public void testGetAndDequeueOrder_SameOrderAsInMemoryStore() {
+        Random random = new Random(3);
+        for (int window : new int[] {0, 4, OrderPendingQueue.DEFAULT_WINDOW}) {
+            OrderPendingQueue queue = new OrderPendingQueue(window);
+            OrderInMemoryStore store = new OrderInMemoryStore();
+            for (Order order : nearlySortedOrders(random, 2000)) {
+                assertTrue(queue.addOrder(order));
+                store.addOrder(order);
+                if (random.nextInt(4) == 0) {
+                    assertSame(store.getAndDequeueOrder(null), queue.getAndDequeueOrder(null));
+                }
+                assertEquals(store.getCurrentNumOrders(), queue.getCurrentNumOrders());
+            }
+            while (store.getCurrentNumOrders() > 0) {
+                assertSame(store.getAndDequeueOrder(null), queue.getAndDequeueOrder(null));
+            }
+            assertNull(queue.getAndDequeueOrder(null));
+            assertEquals(0, queue.getCurrentNumItems());
+            assertTrue(queue.getFallbackCount() > 0);
+        }
+    }
+
+    /**
+     * Test that sorted orders never fall back to the tree, and that orders can be looked up and removed by ID.
+     */
+    public void testAddOrder_Sorted() {
+        OrderPendingQueue queue = new OrderPendingQueue();
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            orders.add(newOrder(i, "a", "s1"));
+            assertTrue(queue.addOrder(orders.get(i)));
+        }
+        assertFalse(queue.addOrder(orders.get(5)));
+        assertEquals(0, queue.getFallbackCount());
+        assertSame(orders.get(50), queue.getOrder(orders.get(50).getId()));
+        assertSame(orders.get(50), queue.removeOrder(orders.get(50).getId()));
+        assertNull(queue.removeOrder(orders.get(50).getId()));
+        for (int i = 0; i < 100; i++) {
+            if (i != 50) {
+                assertSame(orders.get(i), queue.peekOrder());
+                assertSame(orders.get(i), queue.getAndDequeueOrder(null));
+            }
+        }
+        assertNull(queue.peekOrder());
+        assertNull(queue.getAndDequeueOrder(null));
+    }
+}
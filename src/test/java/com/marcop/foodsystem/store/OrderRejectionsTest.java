@@ -0,0 +1,48 @@
+package com.marcop.foodsystem.store;
+
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+import com.marcop.foodsystem.model.RejectionReason;
+import junit.framework.TestCase;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit test for OrderRejections.
+ */
+public class OrderRejectionsTest extends TestCase {
+
+    /**
+     * Test that rejections from many threads are all counted, and only the first few are kept as examples.
+     */
+    public void testReject_CountsAndBoundedExamples() throws InterruptedException {
+        OrderRejections rejections = new OrderRejections(3, Long.MAX_VALUE);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    List<OrderItem> items = new ArrayList<>();
+                    items.add(new OrderItem("item", 100));
+                    Order order = new Order(new Timestamp(i * 1000L), "name", "service", items);
+                    rejections.reject(order, i % 2 == 0 ? RejectionReason.NO_ITEMS : RejectionReason.UNKNOWN_ITEM,
+                            "detail");
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40000, rejections.getTotal());
+        assertEquals(20000, rejections.getCount(RejectionReason.UNKNOWN_ITEM));
+        assertEquals(2, rejections.getCountsByReason().size());
+        assertFalse(rejections.getCountsByReason().containsKey(RejectionReason.MISSING_TIMESTAMP));
+        assertEquals(3, rejections.getExamples(RejectionReason.NO_ITEMS).size());
+        assertTrue(rejections.getExamples(RejectionReason.NO_ITEMS).get(0).endsWith("detail."));
+        assertTrue(rejections.getExamples(RejectionReason.TOO_MANY_ITEMS).isEmpty());
+    }
+}
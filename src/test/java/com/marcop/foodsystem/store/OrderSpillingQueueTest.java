@@ -0,0 +1,190 @@
+package com.marcop.foodsystem.store;
+
+import com.marcop.foodsystem.model.Order;
+import com.marcop.foodsystem.model.OrderItem;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Unit test for OrderSpillingQueue. Orders should be dequeued as from an OrderInMemoryStore, whether spilled or not.
+ */
+public class OrderSpillingQueueTest extends TestCase {
+
+    private static final long START = Timestamp.valueOf("2019-01-01 12:00:00").getTime();
+
+    private Path directory;
+
+    @Override
+    protected void setUp() throws IOException {
+        directory = Files.createTempDirectory("spilling-queue-test");
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Collections.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private static Order newOrder(Random random, int minute) {
+        List<OrderItem> items = new ArrayList<>();
+        int totalCookTimeSeconds = 0;
+        for (int i = 0, n = 1 + random.nextInt(3); i < n; i++) {
+            OrderItem item = new OrderItem(random.nextBoolean() ? "steak" : "salad", 100 + random.nextInt(900));
+            item.setCookTimeSeconds(60 * (1 + random.nextInt(10)));
+            if (random.nextBoolean()) {
+                item.setStation("grill");
+            }
+            totalCookTimeSeconds = Math.max(totalCookTimeSeconds, item.getCookTimeSeconds());
+            items.add(item);
+        }
+        Order order = new Order(new Timestamp(START + minute * 60000L), random.nextBoolean() ? "a" : "b",
+                random.nextBoolean() ? "Eat In" : "Delivery", items);
+        order.setTotalCookTimeSeconds(totalCookTimeSeconds);
+        return order;
+    }
+
+    /** Orders by minute with many ties, swapped locally, and a few moved far out of order. */
+    private static List<Order> nearlySortedOrders(Random random, int count) {
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            orders.add(newOrder(random, i / 3));
+        }
+        for (int i = 0; i + 1 < count; i += 1 + random.nextInt(5)) {
+            Collections.swap(orders, i, i + 1 + random.nextInt(Math.min(10, count - i - 1)));
+        }
+        for (int i = 0; i < count / 50; i++) {
+            orders.add(random.nextInt(count), orders.remove(random.nextInt(count)));
+        }
+        return orders;
+    }
+
+    private static void assertSameOrder(Order expected, Order actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getOrderedAt(), actual.getOrderedAt());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getService(), actual.getService());
+        assertEquals(expected.getTotalCookTimeSeconds(), actual.getTotalCookTimeSeconds());
+        assertEquals(expected.getOrderItemsSize(), actual.getOrderItemsSize());
+        for (int i = 0; i < expected.getOrderItemsSize(); i++) {
+            OrderItem expectedItem = expected.getOrderItems().get(i);
+            OrderItem actualItem = actual.getOrderItems().get(i);
+            assertEquals(expectedItem.getName(), actualItem.getName());
+            assertEquals(expectedItem.getPriceCents(), actualItem.getPriceCents());
+            assertEquals(expectedItem.getCookTimeSeconds(), actualItem.getCookTimeSeconds());
+            assertEquals(expectedItem.getStation(), actualItem.getStation());
+        }
+    }
+
+    /**
+     * Test that orders added nearly sorted, with dequeues in between, come out as from an OrderInMemoryStore, and
+     * that spilled runs are deleted.
+     */
+    public void testGetAndDequeueOrder_SameOrderAsInMemoryStore() throws IOException {
+        Random random = new Random(5);
+        OrderInMemoryStore store = new OrderInMemoryStore();
+        try (OrderSpillingQueue queue = new OrderSpillingQueue(directory, 100)) {
+            for (Order order : nearlySortedOrders(random, 3000)) {
+                assertTrue(queue.addOrder(order));
+                store.addOrder(order);
+                // Dequeue rarely, so that orders pile up and spill, and later runs join the merge.
+                if (random.nextInt(8) == 0) {
+                    assertSameOrder(store.getAndDequeueOrder(null), queue.getAndDequeueOrder(null));
+                }
+                assertEquals(store.getCurrentNumOrders(), queue.getCurrentNumOrders());
+                assertEquals(store.getCurrentNumItems(), queue.getCurrentNumItems());
+            }
+            assertTrue(queue.getRunCount() > 1);
+            assertTrue(queue.getSpilledOrderCount() > 0);
+            while (store.getCurrentNumOrders() > 0) {
+                assertSameOrder(store.getAndDequeueOrder(null), queue.getAndDequeueOrder(null));
+            }
+            assertNull(queue.getAndDequeueOrder(null));
+            assertEquals(0, queue.getCurrentNumItems());
+        }
+        assertEquals(0, directory.toFile().list().length);
+    }
+
+    /**
+     * Test that orders under the limit are never spilled, and are returned as added.
+     */
+    public void testAddOrder_UnderLimit() throws IOException {
+        Random random = new Random(7);
+        try (OrderSpillingQueue queue = new OrderSpillingQueue(directory, 100)) {
+            List<Order> orders = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                orders.add(newOrder(random, i));
+                assertTrue(queue.addOrder(orders.get(i)));
+            }
+            assertEquals(0, queue.getRunCount());
+            assertFalse(queue.addOrder(orders.get(50)));
+            for (int i = 0; i < 100; i++) {
+                assertSame(orders.get(i), queue.peekOrder());
+                assertSame(orders.get(i), queue.getAndDequeueOrder(null));
+            }
+            assertNull(queue.peekOrder());
+            assertNull(queue.getAndDequeueOrder(null));
+        }
+    }
+
+    /**
+     * Test that an order queued again after it was spilled is only dequeued once, whether the copy is in memory or
+     * spilled to another run.
+     */
+    public void testGetAndDequeueOrder_DuplicatesAcrossRuns() throws IOException {
+        Random random = new Random(9);
+        try (OrderSpillingQueue queue = new OrderSpillingQueue(directory, 10)) {
+            List<Order> orders = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                orders.add(newOrder(random, i));
+                assertTrue(queue.addOrder(orders.get(i)));
+            }
+            assertTrue(queue.getRunCount() > 0);
+            // Spilled already, so only found as runs are merged. The first copies spill again, and the rest stay in
+            // memory, where a third copy is found straight away.
+            for (int i = 0; i < 11; i++) {
+                assertTrue(queue.addOrder(orders.get(i)));
+            }
+            assertFalse(queue.addOrder(orders.get(10)));
+            for (Order order : orders) {
+                assertSameOrder(order, queue.peekOrder());
+                assertSameOrder(order, queue.getAndDequeueOrder(null));
+            }
+            assertNull(queue.getAndDequeueOrder(null));
+            assertEquals(0, queue.getCurrentNumOrders());
+            assertEquals(0, queue.getCurrentNumItems());
+        }
+    }
+
+    /**
+     * Test that names, which are stored in the runs rather than a dictionary, are read back as written.
+     */
+    public void testGetAndDequeueOrder_Names() throws IOException {
+        Random random = new Random(11);
+        try (OrderSpillingQueue queue = new OrderSpillingQueue(directory, 1)) {
+            List<Order> orders = new ArrayList<>();
+            String[] names = {"", "Zoë", "\u5c0f\u660e", new String(new char[5000]).replace('\0', 'x')};
+            for (int i = 0; i < names.length; i++) {
+                Order order = newOrder(random, i);
+                orders.add(new Order(order.getId(), order.getOrderedAt(), names[i], order.getService(),
+                        order.getOrderItems()));
+                orders.get(i).setTotalCookTimeSeconds(order.getTotalCookTimeSeconds());
+                assertTrue(queue.addOrder(orders.get(i)));
+            }
+            assertEquals(names.length, queue.getSpilledOrderCount());
+            for (Order order : orders) {
+                assertSameOrder(order, queue.getAndDequeueOrder(null));
+            }
+        }
+    }
+}